@@ -196,9 +196,17 @@ public class EventLogUserService
 	private boolean wasEventProcessedbyHandler(@NonNull final Class<?> handlerClass)
 	{
 		final EventLogEntryCollector eventLogCollector = EventLogEntryCollector.getThreadLocal();
+		return wasEventProcessedByHandler(eventLogCollector.getEvent(), handlerClass);
+	}
 
-		final Collection<String> processedByHandlerClassNames = eventLogCollector.getEvent()
-				.getProperty(PROPERTY_PROCESSED_BY_HANDLER_CLASS_NAMES);
+	/**
+	 * @return {@code true} if the given event was reposted and the given handler already processed it before.
+	 */
+	public boolean wasEventProcessedByHandler(
+			@NonNull final Event event,
+			@NonNull final Class<?> handlerClass)
+	{
+		final Collection<String> processedByHandlerClassNames = event.getProperty(PROPERTY_PROCESSED_BY_HANDLER_CLASS_NAMES);
 
 		return processedByHandlerClassNames != null
 				&& processedByHandlerClassNames.contains(handlerClass.getName());
@@ -31,6 +31,7 @@ import org.adempiere.exceptions.AdempiereException;
 import org.adempiere.model.InterfaceWrapperHelper;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
+import org.compiere.util.CCache;
 import org.compiere.util.Util;
 import org.compiere.util.Util.ArrayKey;
 
@@ -38,6 +39,9 @@ import de.metas.aggregation.api.IAggregation;
 import de.metas.aggregation.api.IAggregationDAO;
 import de.metas.aggregation.api.IAggregationFactory;
 import de.metas.aggregation.api.IAggregationKeyBuilder;
+import de.metas.aggregation.model.I_C_Aggregation;
+import de.metas.aggregation.model.I_C_AggregationItem;
+import de.metas.aggregation.model.I_C_Aggregation_Attribute;
 
 public class AggregationFactory implements IAggregationFactory
 {
@@ -48,6 +52,14 @@ public class AggregationFactory implements IAggregationFactory
 	 */
 	private final Map<ArrayKey, IAggregationKeyBuilder<?>> defaultAggregationKeyBuilders = new ConcurrentHashMap<>();
 
+	/**
+	 * The compiled {@link GenericAggregationKeyBuilder}s, by model class and C_Aggregation_ID.
+	 * Compiling is done once per aggregation, and again after a C_Aggregation, C_AggregationItem or C_Aggregation_Attribute was changed.
+	 */
+	private final CCache<ArrayKey, GenericAggregationKeyBuilder<?>> aggregationKeyBuilders = CCache.<ArrayKey, GenericAggregationKeyBuilder<?>> newCache(I_C_Aggregation.Table_Name + "#GenericAggregationKeyBuilder", 50, CCache.EXPIREMINUTES_Never)
+			.addResetForTableName(I_C_AggregationItem.Table_Name)
+			.addResetForTableName(I_C_Aggregation_Attribute.Table_Name);
+
 	@Override
 	public <ModelType> IAggregationKeyBuilder<ModelType> getAggregationKeyBuilder(final Properties ctx, final Class<ModelType> modelClass, final int aggregationId)
 	{
@@ -109,7 +121,11 @@ public class AggregationFactory implements IAggregationFactory
 
 	private final <ModelType> IAggregationKeyBuilder<ModelType> createAggregationKeyBuilder(final Class<ModelType> modelClass, final IAggregation aggregation)
 	{
-		final GenericAggregationKeyBuilder<ModelType> aggregationKeyBuilder = new GenericAggregationKeyBuilder<>(modelClass, aggregation);
+		final ArrayKey key = Util.mkKey(modelClass.getName(), aggregation.getC_Aggregation_ID());
+
+		@SuppressWarnings("unchecked")
+		final GenericAggregationKeyBuilder<ModelType> aggregationKeyBuilder = (GenericAggregationKeyBuilder<ModelType>)aggregationKeyBuilders
+				.getOrLoad(key, () -> new GenericAggregationKeyBuilder<>(modelClass, aggregation));
 		return aggregationKeyBuilder;
 	}
 }
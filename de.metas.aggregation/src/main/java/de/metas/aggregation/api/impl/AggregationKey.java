@@ -39,7 +39,8 @@ public final class AggregationKey implements IAggregationKey
 	public static final transient AggregationKey NULL = new AggregationKey((String)null, -1);
 
 	private final String keyString;
-	private final IStringExpression keyStringExpr;
+	/** compiled on demand, because most keys are never parsed */
+	private volatile IStringExpression keyStringExpr;
 	private final int aggregationId;
 
 	public AggregationKey(final ArrayKey key, final int aggregationId)
@@ -51,7 +52,6 @@ public final class AggregationKey implements IAggregationKey
 	{
 		super();
 		this.keyString = keyString;
-		keyStringExpr = Services.get(IExpressionFactory.class).compile(keyString, IStringExpression.class);
 		this.aggregationId = aggregationId <= 0 ? -1 : aggregationId;
 	}
 
@@ -103,7 +103,17 @@ public final class AggregationKey implements IAggregationKey
 	@Override
 	public IAggregationKey parse(final Evaluatee ctx)
 	{
-		final String keyStringNew = keyStringExpr.evaluate(ctx, OnVariableNotFound.Preserve);
+		final String keyStringNew = getKeyStringExpression().evaluate(ctx, OnVariableNotFound.Preserve);
 		return new AggregationKey(keyStringNew, aggregationId);
 	}
+
+	private IStringExpression getKeyStringExpression()
+	{
+		IStringExpression keyStringExpr = this.keyStringExpr;
+		if (keyStringExpr == null)
+		{
+			keyStringExpr = this.keyStringExpr = Services.get(IExpressionFactory.class).compile(keyString, IStringExpression.class);
+		}
+		return keyStringExpr;
+	}
 }
@@ -23,18 +23,20 @@ package de.metas.aggregation.api.impl;
  */
 
 
-import java.util.ArrayList;
+
 import java.util.List;
+import java.util.function.Function;
 
+import org.adempiere.ad.expression.api.ILogicExpression;
 import org.adempiere.exceptions.AdempiereException;
 import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.model.POWrapper;
 import org.adempiere.util.Check;
 import org.adempiere.util.text.annotation.ToStringBuilder;
 import org.adempiere.util.time.SimpleDateFormatThreadLocal;
 import org.compiere.Adempiere;
 import org.compiere.util.DisplayType;
 import org.compiere.util.Evaluatee;
-import org.compiere.util.Util;
 import org.slf4j.Logger;
 
 import com.google.common.collect.ImmutableList;
@@ -48,6 +50,17 @@ import de.metas.aggregation.api.IAggregationKey;
 import de.metas.logging.LogManager;
 import lombok.NonNull;
 
+/**
+ * Builds the aggregation keys of a given {@link IAggregation}.
+ * <p>
+ * The aggregation is compiled once, when the builder is created: for each item we decide up front how its value is extracted and normalized.
+ * Items whose include logic is constant false are dropped, constant true include logics are not evaluated
+ * and the model's {@link Evaluatee} is only created if some item needs it.
+ * For PO models, the override columns of each item (see {@link InterfaceWrapperHelper#getValueOverrideOrValue(Object, String)}) are resolved from the first model.
+ * <p>
+ * The key strings are the same as they were before compiling, because they are persisted (e.g. as invoice candidates' header aggregation keys) and compared with new ones.
+ * Instances are shared, see {@link AggregationFactory}.
+ */
 /* package */
 final class GenericAggregationKeyBuilder<ModelType> extends AbstractAggregationKeyBuilder<ModelType>
 {
@@ -64,12 +77,23 @@ final class GenericAggregationKeyBuilder<ModelType> extends AbstractAggregationK
 	/** Debug? if enabled, the generated keys will also contain the source column name */
 	private static final boolean debug = Adempiere.isUnitTestMode(); // only for JUnit tests; easy to debug them
 
+	/** Separator and null value, as used by {@link org.compiere.util.Util.ArrayKey#toString()} */
+	private static final char KEY_SEPARATOR = '#';
+	private static final String KEY_NULL = "NULL";
+
 	//
 	// Parameters
 	private final IAggregation aggregation;
 	@ToStringBuilder(skip = true)
 	private final List<String> columnNames;
 
+	//
+	// Compiled aggregation
+	@ToStringBuilder(skip = true)
+	private final ImmutableList<KeyItem<ModelType>> keyItems;
+	@ToStringBuilder(skip = true)
+	private final boolean evaluateeRequired;
+
 	public GenericAggregationKeyBuilder(
 			@NonNull final Class<ModelType> modelClass,
 			@NonNull final IAggregation aggregation)
@@ -80,8 +104,10 @@ final class GenericAggregationKeyBuilder<ModelType> extends AbstractAggregationK
 		this.aggregation = aggregation;
 
 		//
-		// Collect column names
+		// Collect column names and compile the items
 		final ImmutableList.Builder<String> columnNames = ImmutableList.builder();
+		final ImmutableList.Builder<KeyItem<ModelType>> keyItems = ImmutableList.builder();
+		boolean evaluateeRequired = false;
 		for (final IAggregationItem aggregationItem : aggregation.getItems())
 		{
 			final Type type = aggregationItem.getType();
@@ -89,8 +115,38 @@ final class GenericAggregationKeyBuilder<ModelType> extends AbstractAggregationK
 			{
 				columnNames.add(aggregationItem.getColumnName());
 			}
+
+			final ILogicExpression includeLogic = aggregationItem.getIncludeLogic();
+			if (includeLogic.isConstantFalse())
+			{
+				continue;
+			}
+
+			final KeyValueExtractor<ModelType> valueExtractor;
+			if (Type.ModelColumn == type)
+			{
+				valueExtractor = new ColumnValueExtractor<>(aggregationItem);
+			}
+			else if (Type.Attribute == type)
+			{
+				valueExtractor = new AttributeValueExtractor<>(aggregationItem.getAttribute());
+				evaluateeRequired = true;
+			}
+			else
+			{
+				final AdempiereException ex = new AdempiereException("@Unknown@ @Type@: " + type + " [IGNORED]"
+						+ "\n Aggregation Item: " + aggregationItem);
+				logger.warn(ex.getLocalizedMessage(), ex);
+				continue;
+			}
+
+			final boolean alwaysInclude = includeLogic.isConstantTrue();
+			keyItems.add(new KeyItem<>(alwaysInclude ? null : aggregationItem, valueExtractor));
+			evaluateeRequired = evaluateeRequired || !alwaysInclude;
 		}
 		this.columnNames = columnNames.build();
+		this.keyItems = keyItems.build();
+		this.evaluateeRequired = evaluateeRequired;
 	}
 
 	@Override
@@ -108,11 +164,13 @@ final class GenericAggregationKeyBuilder<ModelType> extends AbstractAggregationK
 	@Override
 	public IAggregationKey buildAggregationKey(final ModelType model)
 	{
-		final List<Object> keyValues = extractKeyValues(model);
-		return new AggregationKey(Util.mkKey(keyValues.toArray()), aggregation.getC_Aggregation_ID());
+		return new AggregationKey(buildKeyString(model), aggregation.getC_Aggregation_ID());
 	}
 
-	private final List<Object> extractKeyValues(@NonNull final ModelType model)
+	/**
+	 * @return the key values, joined like {@link org.compiere.util.Util#mkKey(Object...)} would do it
+	 */
+	private final String buildKeyString(@NonNull final ModelType model)
 	{
 		// Assert model's table name is matching
 		final String modelTableName = InterfaceWrapperHelper.getModelTableName(model);
@@ -121,113 +179,193 @@ final class GenericAggregationKeyBuilder<ModelType> extends AbstractAggregationK
 			throw new AdempiereException("Aggregation " + aggregation + " cannot be applied on " + model);
 		}
 
-		final List<Object> keyValues = new ArrayList<>();
-
 		//
 		// Collect C_Aggregation_ID to make sure we are not comparing things from different aggregation keys
 		// because they could have a total different meaning (even if they are identical)
-		keyValues.add(aggregation.getC_Aggregation_ID());
+		final StringBuilder keyString = new StringBuilder();
+		keyString.append(aggregation.getC_Aggregation_ID());
 
 		//
 		// Collect values for all items
-		final Evaluatee evaluatee = InterfaceWrapperHelper.getEvaluatee(model);
-		for (final IAggregationItem aggregationItem : aggregation.getItems())
+		final Evaluatee evaluatee = evaluateeRequired ? InterfaceWrapperHelper.getEvaluatee(model) : null;
+		for (final KeyItem<ModelType> keyItem : keyItems)
 		{
 			// Check if we shall include this item in our aggregation
-			if (!aggregationItem.isInclude(evaluatee))
+			if (!keyItem.isInclude(evaluatee))
 			{
 				continue;
 			}
 
-			// Collect values for current item
-			final Type type = aggregationItem.getType();
-			if (Type.ModelColumn == type)
-			{
-				addKeyValue_ColumnValue(keyValues, model, aggregationItem);
-			}
-			else if (Type.Attribute == type)
-			{
-				addKeyValue_Attribute(keyValues, model, aggregationItem);
-			}
-			else
-			{
-				final AdempiereException ex = new AdempiereException("@Unknown@ @Type@: " + type + " [IGNORED]"
-						+ "\n Aggregation Item: " + aggregationItem);
-				logger.warn(ex.getLocalizedMessage(), ex);
-				continue;
-			}
+			final Object value = keyItem.extractValue(model, evaluatee);
+			keyString.append(KEY_SEPARATOR).append(value == null ? KEY_NULL : value.toString());
 		}
 
-		return keyValues;
+		return keyString.toString();
 	}
 
-	private void addKeyValue_ColumnValue(final List<Object> values, final ModelType model, final IAggregationItem aggregationItem)
+	private static final class KeyItem<ModelType>
 	{
-		final String columnName = aggregationItem.getColumnName();
-		final Object value = InterfaceWrapperHelper.getValueOverrideOrValue(model, columnName);
+		/** the item whose include logic shall be evaluated, or {@code null} if it shall always be included */
+		private final IAggregationItem includeLogicItem;
+		private final KeyValueExtractor<ModelType> valueExtractor;
+
+		private KeyItem(final IAggregationItem includeLogicItem, final KeyValueExtractor<ModelType> valueExtractor)
+		{
+			this.includeLogicItem = includeLogicItem;
+			this.valueExtractor = valueExtractor;
+		}
 
-		Object valueNormalized = normalizeValue(value, model, aggregationItem);
-		if (debug)
+		public boolean isInclude(final Evaluatee evaluatee)
 		{
-			valueNormalized = aggregationItem.getColumnName() + "=" + valueNormalized;
+			return includeLogicItem == null || includeLogicItem.isInclude(evaluatee);
 		}
 
-		values.add(valueNormalized);
+		public Object extractValue(final ModelType model, final Evaluatee evaluatee)
+		{
+			return valueExtractor.extractValue(model, evaluatee);
+		}
+	}
+
+	@FunctionalInterface
+	private static interface KeyValueExtractor<ModelType>
+	{
+		Object extractValue(ModelType model, Evaluatee evaluatee);
 	}
 
-	private void addKeyValue_Attribute(List<Object> values, ModelType model, IAggregationItem aggregationItem)
+	private static final class AttributeValueExtractor<ModelType> implements KeyValueExtractor<ModelType>
 	{
-		final IAggregationAttribute attribute = aggregationItem.getAttribute();
-		final Evaluatee ctx = InterfaceWrapperHelper.getEvaluatee(model);
+		private final IAggregationAttribute attribute;
 
-		Object value = attribute.evaluate(ctx);
+		private AttributeValueExtractor(@NonNull final IAggregationAttribute attribute)
+		{
+			this.attribute = attribute;
+		}
 
-		values.add(value);
+		@Override
+		public Object extractValue(final ModelType model, final Evaluatee evaluatee)
+		{
+			return attribute.evaluate(evaluatee);
+		}
 	}
 
-	private Object normalizeValue(final Object value, final ModelType model, final IAggregationItem aggregationItem)
+	private static final class ColumnValueExtractor<ModelType> implements KeyValueExtractor<ModelType>
 	{
-		final int displayType = aggregationItem.getDisplayType();
+		private static final String COLUMNNAME_SUFFIX_Override = "_Override";
 
-		if (DisplayType.isID(displayType))
+		private final String columnName;
+		private final ImmutableList<String> overrideColumnNameCandidates;
+		private final Function<Object, Object> normalizer;
+		private final String debugPrefix;
+
+		/** the override columns which the PO models actually have, or {@code null} if not resolved yet */
+		private volatile ImmutableList<String> poOverrideColumnNames;
+
+		private ColumnValueExtractor(@NonNull final IAggregationItem aggregationItem)
+		{
+			columnName = aggregationItem.getColumnName();
+
+			// same order as in InterfaceWrapperHelper.getValueOverrideOrValue, e.g. C_Tax_ID_Override and then C_Tax_Override_ID
+			final ImmutableList.Builder<String> overrideColumnNameCandidates = ImmutableList.builder();
+			overrideColumnNameCandidates.add(columnName + COLUMNNAME_SUFFIX_Override);
+			if (columnName.endsWith("_ID"))
+			{
+				overrideColumnNameCandidates.add(columnName.substring(0, columnName.length() - 3) + COLUMNNAME_SUFFIX_Override + "_ID");
+			}
+			this.overrideColumnNameCandidates = overrideColumnNameCandidates.build();
+
+			normalizer = createNormalizer(aggregationItem.getDisplayType());
+			debugPrefix = debug ? columnName + "=" : null;
+		}
+
+		@Override
+		public Object extractValue(final ModelType model, final Evaluatee evaluatee)
 		{
-			final Integer valueInt = (Integer)value;
-			if (valueInt == null)
+			final Object valueNormalized = normalizer.apply(getValueOverrideOrValue(model));
+			if (debugPrefix != null)
 			{
-				return 0;
+				return debugPrefix + valueNormalized;
 			}
-			else if (valueInt <= 0)
+			return valueNormalized;
+		}
+
+		private Object getValueOverrideOrValue(final ModelType model)
+		{
+			if (!POWrapper.isHandled(model))
 			{
-				return 0;
+				return InterfaceWrapperHelper.getValueOverrideOrValue(model, columnName);
 			}
-			else
+
+			for (final String overrideColumnName : getPOOverrideColumnNames(model))
+			{
+				final Object valueOverride = InterfaceWrapperHelper.getValueOrNull(model, overrideColumnName);
+				if (valueOverride != null)
+				{
+					return valueOverride;
+				}
+			}
+			return InterfaceWrapperHelper.getValue(model, columnName).orNull();
+		}
+
+		/**
+		 * The columns of a PO depend only on its table, so it's sufficient to check them on the first model.
+		 */
+		private ImmutableList<String> getPOOverrideColumnNames(final ModelType model)
+		{
+			ImmutableList<String> poOverrideColumnNames = this.poOverrideColumnNames;
+			if (poOverrideColumnNames == null)
 			{
-				return valueInt;
+				poOverrideColumnNames = overrideColumnNameCandidates.stream()
+						.filter(overrideColumnName -> InterfaceWrapperHelper.hasModelColumnName(model, overrideColumnName))
+						.collect(ImmutableList.toImmutableList());
+				this.poOverrideColumnNames = poOverrideColumnNames;
 			}
+			return poOverrideColumnNames;
+		}
+	}
+
+	private static Function<Object, Object> createNormalizer(final int displayType)
+	{
+		if (DisplayType.isID(displayType))
+		{
+			return value -> {
+				final Integer valueInt = (Integer)value;
+				if (valueInt == null)
+				{
+					return 0;
+				}
+				else if (valueInt <= 0)
+				{
+					return 0;
+				}
+				else
+				{
+					return valueInt;
+				}
+			};
 		}
 		else if (displayType == DisplayType.Date)
 		{
-			return value == null ? null : dateFormat.format(value);
+			return value -> value == null ? null : dateFormat.format(value);
 		}
 		else if (displayType == DisplayType.Time)
 		{
-			return value == null ? null : timeFormat.format(value);
+			return value -> value == null ? null : timeFormat.format(value);
 		}
 		else if (displayType == DisplayType.DateTime)
 		{
-			return value == null ? null : dateTimeFormat.format(value);
+			return value -> value == null ? null : dateTimeFormat.format(value);
 		}
 		else if (DisplayType.isText(displayType))
 		{
-			return value == null ? 0 : toHashcode(value.toString());
+			return value -> value == null ? 0 : toHashcode(value.toString());
 		}
 		else if (displayType == DisplayType.YesNo)
 		{
-			return DisplayType.toBoolean(value, false);
+			return value -> DisplayType.toBoolean(value, false);
 		}
 		else
 		{
-			return value;
+			return Function.identity();
 		}
 	}
 
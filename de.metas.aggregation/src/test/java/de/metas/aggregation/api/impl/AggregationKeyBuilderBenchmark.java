@@ -0,0 +1,154 @@
+package de.metas.aggregation.api.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.adempiere.ad.expression.api.ConstantLogicExpression;
+import org.adempiere.ad.expression.api.IExpressionFactory;
+import org.adempiere.ad.expression.api.ILogicExpression;
+import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.test.AdempiereTestHelper;
+import org.adempiere.util.Services;
+import org.compiere.model.I_Test;
+import org.compiere.util.DisplayType;
+import org.compiere.util.Env;
+import org.compiere.util.TimeUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.ImmutableList;
+
+import de.metas.aggregation.api.IAggregation;
+import de.metas.aggregation.api.IAggregationAttribute;
+import de.metas.aggregation.api.IAggregationDAO;
+import de.metas.aggregation.api.IAggregationFactory;
+import de.metas.aggregation.api.IAggregationItem;
+import de.metas.aggregation.api.IAggregationItem.Type;
+
+/*
+ * #%L
+ * de.metas.aggregation
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Measures building the aggregation keys of {@code records} models, the way the invoice candidate updates do it, i.e. getting the key builder from the {@link IAggregationFactory} for every record.
+ * The models are {@code distinctRecords} in-memory models which are cycled over, so that a million records fit into a normal heap.
+ * With {@code conditionalItem=true}, one of the items has a non-constant include logic, so the models' evaluatees have to be created.
+ * <p>
+ * To compare the compiled key builders with the former ones, run it once on this revision and once on the revision before the compiled key builders were introduced.
+ * It's not a unit test, so surefire doesn't run it. Run it from the module directory with e.g.
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test -Dexec.args="-classpath %classpath org.openjdk.jmh.Main AggregationKeyBuilderBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AggregationKeyBuilderBenchmark
+{
+	private static final int AGGREGATION_ID = 1;
+
+	@State(Scope.Thread)
+	public static class RecordsState
+	{
+		@Param({ "false", "true" })
+		public boolean conditionalItem;
+
+		@Param({ "1000000" })
+		public int records;
+
+		@Param({ "10000" })
+		public int distinctRecords;
+
+		Properties ctx;
+		IAggregationFactory aggregationFactory;
+		List<I_Test> models;
+
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			AdempiereTestHelper.get().init();
+			ctx = Env.getCtx();
+
+			final ILogicExpression includeLogic = conditionalItem
+					? Services.get(IExpressionFactory.class).compile("@T_Integer@!0", ILogicExpression.class)
+					: ConstantLogicExpression.TRUE;
+			final List<IAggregationItem> items = ImmutableList.of(
+					new AggregationItem(1, Type.ModelColumn, I_Test.COLUMNNAME_C_BPartner_ID, DisplayType.Search, IAggregationAttribute.NULL, ConstantLogicExpression.TRUE),
+					new AggregationItem(2, Type.ModelColumn, I_Test.COLUMNNAME_M_Product_ID, DisplayType.Search, IAggregationAttribute.NULL, ConstantLogicExpression.TRUE),
+					new AggregationItem(3, Type.ModelColumn, I_Test.COLUMNNAME_Name, DisplayType.String, IAggregationAttribute.NULL, ConstantLogicExpression.TRUE),
+					new AggregationItem(4, Type.ModelColumn, I_Test.COLUMNNAME_T_Date, DisplayType.Date, IAggregationAttribute.NULL, ConstantLogicExpression.TRUE),
+					new AggregationItem(5, Type.ModelColumn, I_Test.COLUMNNAME_Processed, DisplayType.YesNo, IAggregationAttribute.NULL, ConstantLogicExpression.TRUE),
+					new AggregationItem(6, Type.ModelColumn, I_Test.COLUMNNAME_T_Integer, DisplayType.Integer, IAggregationAttribute.NULL, includeLogic));
+			final IAggregation aggregation = new Aggregation(I_Test.Table_Name, items, AGGREGATION_ID);
+
+			// the DAO is cached anyway, so just serve the aggregation
+			Services.registerService(IAggregationDAO.class, new AggregationDAO()
+			{
+				@Override
+				public IAggregation retrieveAggregation(final Properties ctx, final int aggregationId)
+				{
+					return aggregation;
+				}
+			});
+			aggregationFactory = new AggregationFactory();
+
+			models = new ArrayList<>(distinctRecords);
+			for (int i = 0; i < distinctRecords; i++)
+			{
+				final I_Test model = InterfaceWrapperHelper.newInstance(I_Test.class);
+				model.setC_BPartner_ID(1 + i % 100);
+				model.setM_Product_ID(1 + i % 1000);
+				model.setName("Name" + i % 10);
+				model.setT_Date(TimeUtil.getDay(2018, 1 + i % 12, 1));
+				model.setProcessed(i % 2 == 0);
+				model.setT_Integer(i % 3);
+				models.add(model);
+			}
+		}
+	}
+
+	@Benchmark
+	public void buildKeys(final RecordsState state, final Blackhole blackhole)
+	{
+		final List<I_Test> models = state.models;
+		for (int i = 0; i < state.records; i++)
+		{
+			final I_Test model = models.get(i % models.size());
+			blackhole.consume(state.aggregationFactory.getAggregationKeyBuilder(state.ctx, I_Test.class, AGGREGATION_ID).buildAggregationKey(model));
+		}
+	}
+}
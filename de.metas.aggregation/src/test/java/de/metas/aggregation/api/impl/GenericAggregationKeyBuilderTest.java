@@ -0,0 +1,137 @@
+package de.metas.aggregation.api.impl;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Properties;
+
+import org.adempiere.ad.expression.api.ConstantLogicExpression;
+import org.adempiere.ad.expression.api.IExpressionFactory;
+import org.adempiere.ad.expression.api.ILogicExpression;
+import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.test.AdempiereTestHelper;
+import org.adempiere.util.Services;
+import org.compiere.model.I_Test;
+import org.compiere.util.CacheMgt;
+import org.compiere.util.DisplayType;
+import org.compiere.util.Env;
+import org.compiere.util.TimeUtil;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import de.metas.aggregation.api.IAggregation;
+import de.metas.aggregation.api.IAggregationAttribute;
+import de.metas.aggregation.api.IAggregationDAO;
+import de.metas.aggregation.api.IAggregationFactory;
+import de.metas.aggregation.api.IAggregationItem;
+import de.metas.aggregation.api.IAggregationItem.Type;
+import de.metas.aggregation.api.IAggregationKeyBuilder;
+import de.metas.aggregation.model.I_C_AggregationItem;
+
+/*
+ * #%L
+ * de.metas.aggregation
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+public class GenericAggregationKeyBuilderTest
+{
+	private static final int AGGREGATION_ID = 1;
+
+	private Aggregation aggregation;
+
+	@Before
+	public void init()
+	{
+		AdempiereTestHelper.get().init();
+
+		final ILogicExpression includeIfIntegerSet = Services.get(IExpressionFactory.class).compile("@T_Integer@!0", ILogicExpression.class);
+
+		final List<IAggregationItem> items = ImmutableList.of(
+				new AggregationItem(1, Type.ModelColumn, I_Test.COLUMNNAME_C_BPartner_ID, DisplayType.Search, IAggregationAttribute.NULL, ConstantLogicExpression.TRUE),
+				new AggregationItem(2, Type.ModelColumn, I_Test.COLUMNNAME_Name, DisplayType.String, IAggregationAttribute.NULL, ConstantLogicExpression.TRUE),
+				new AggregationItem(3, Type.ModelColumn, I_Test.COLUMNNAME_T_Date, DisplayType.Date, IAggregationAttribute.NULL, ConstantLogicExpression.TRUE),
+				new AggregationItem(4, Type.ModelColumn, I_Test.COLUMNNAME_T_Integer, DisplayType.Integer, IAggregationAttribute.NULL, includeIfIntegerSet),
+				new AggregationItem(5, Type.ModelColumn, I_Test.COLUMNNAME_Description, DisplayType.String, IAggregationAttribute.NULL, ConstantLogicExpression.FALSE));
+		aggregation = new Aggregation(I_Test.Table_Name, items, AGGREGATION_ID);
+	}
+
+	@Test
+	public void buildKey()
+	{
+		final GenericAggregationKeyBuilder<I_Test> keyBuilder = new GenericAggregationKeyBuilder<>(I_Test.class, aggregation);
+
+		Assert.assertEquals(
+				ImmutableList.of(
+						I_Test.COLUMNNAME_C_BPartner_ID,
+						I_Test.COLUMNNAME_Name,
+						I_Test.COLUMNNAME_T_Date,
+						I_Test.COLUMNNAME_T_Integer,
+						I_Test.COLUMNNAME_Description),
+				keyBuilder.getDependsOnColumnNames());
+
+		final I_Test model = newTest(5, "name", TimeUtil.getDay(2018, 3, 1), 20);
+		Assert.assertEquals("1#C_BPartner_ID=5#Name=" + "name".hashCode() + "#T_Date=20180301#T_Integer=20", keyBuilder.buildKey(model));
+
+		model.setT_Integer(0);
+		Assert.assertEquals("1#C_BPartner_ID=5#Name=" + "name".hashCode() + "#T_Date=20180301", keyBuilder.buildKey(model));
+	}
+
+	@Test
+	public void buildKey_nullValues()
+	{
+		final GenericAggregationKeyBuilder<I_Test> keyBuilder = new GenericAggregationKeyBuilder<>(I_Test.class, aggregation);
+
+		final I_Test model = newTest(0, null, null, 0);
+		Assert.assertEquals("1#C_BPartner_ID=0#Name=0#T_Date=null", keyBuilder.buildKey(model));
+	}
+
+	@Test
+	public void aggregationFactory_compilesOnceUntilAggregationChanges()
+	{
+		Services.registerService(IAggregationDAO.class, new AggregationDAO()
+		{
+			@Override
+			public IAggregation retrieveAggregation(final Properties ctx, final int aggregationId)
+			{
+				return aggregation;
+			}
+		});
+		final IAggregationFactory aggregationFactory = new AggregationFactory();
+
+		final IAggregationKeyBuilder<I_Test> keyBuilder = aggregationFactory.getAggregationKeyBuilder(Env.getCtx(), I_Test.class, AGGREGATION_ID);
+		Assert.assertSame(keyBuilder, aggregationFactory.getAggregationKeyBuilder(Env.getCtx(), I_Test.class, AGGREGATION_ID));
+
+		CacheMgt.get().reset(I_C_AggregationItem.Table_Name);
+		Assert.assertNotSame(keyBuilder, aggregationFactory.getAggregationKeyBuilder(Env.getCtx(), I_Test.class, AGGREGATION_ID));
+	}
+
+	private static I_Test newTest(final int bpartnerId, final String name, final Timestamp date, final int integer)
+	{
+		final I_Test model = InterfaceWrapperHelper.newInstance(I_Test.class);
+		model.setC_BPartner_ID(bpartnerId);
+		model.setName(name);
+		model.setT_Date(date);
+		model.setT_Integer(integer);
+		model.setDescription("description");
+		return model;
+	}
+}
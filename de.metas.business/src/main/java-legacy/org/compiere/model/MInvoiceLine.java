@@ -23,6 +23,7 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Properties;
 
+import org.adempiere.ad.persistence.ModelDynAttributeAccessor;
 import org.adempiere.exceptions.AdempiereException;
 import org.adempiere.exceptions.TaxNotFoundException;
 import org.adempiere.invoice.service.IInvoiceBL;
@@ -174,6 +175,12 @@ public class MInvoiceLine extends X_C_InvoiceLine
 	private Timestamp m_DateInvoiced = null;
 	private int m_C_BPartner_ID = 0;
 	//private int m_C_BPartner_Location_ID = 0;
+	/**
+	 * If set to <code>true</code> on an invoice line, saving it does not recalculate the invoice's taxes and totals.
+	 * Meant for creating many lines of one invoice at once; the caller needs to make sure that the invoice is prepared or completed afterwards, because {@link MInvoice#prepareIt()} recalculates its taxes and totals from all lines.
+	 */
+	public static final ModelDynAttributeAccessor<org.compiere.model.I_C_InvoiceLine, Boolean> DYNATTR_SkipUpdateHeaderTax = new ModelDynAttributeAccessor<>(MInvoiceLine.class.getName(), "SkipUpdateHeaderTax", Boolean.class);
+
 	private boolean m_IsSOTrx = true;
 	private boolean m_priceSet = false;
 	private MProduct m_product = null;
@@ -1136,6 +1143,10 @@ public class MInvoiceLine extends X_C_InvoiceLine
 	{
 		if (!success)
 			return success;
+		if (DYNATTR_SkipUpdateHeaderTax.getValue(this, false))
+		{
+			return true; // MInvoice.prepareIt() recalculates the invoice's taxes and totals once for all lines
+		}
 		if (!newRecord && is_ValueChanged("C_Tax_ID"))
 		{
 			// Recalculate Tax for old Tax
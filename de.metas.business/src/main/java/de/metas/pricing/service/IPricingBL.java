@@ -23,6 +23,7 @@ package de.metas.pricing.service;
  */
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Set;
 
 import org.adempiere.util.ISingletonService;
@@ -70,6 +71,19 @@ public interface IPricingBL extends ISingletonService
 	 */
 	IPricingResult calculatePrice(IPricingContext pricingCtx);
 
+	/**
+	 * Calculates the prices of many pricing contexts, e.g. of all invoice candidates that are updated in one go.
+	 * <p>
+	 * Same as calling {@link #calculatePrice(IPricingContext)} for each context, but:
+	 * <ul>
+	 * <li>identical contexts are calculated only once; a context which has a referenced object or custom properties is only identical to itself</li>
+	 * <li>the main product prices and the bpartners' discount schemas are loaded in bulk before the pricing rules run</li>
+	 * </ul>
+	 *
+	 * @return one result per context, in the contexts' order; each result is a separate instance, even for identical contexts
+	 */
+	List<IPricingResult> calculatePrices(List<IPricingContext> pricingCtxs);
+
 	/**
 	 * Creates an initial {@link IPricingResult}. Copies some of the given <code>pricingCtx</code>'s properties to the pricing result.
 	 *
@@ -1,21 +1,32 @@
 package de.metas.pricing.service;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.annotation.Nullable;
 
+import org.adempiere.ad.dao.IQueryBL;
+import org.adempiere.ad.dao.IQueryBuilder;
 import org.adempiere.exceptions.AdempiereException;
 import org.adempiere.model.InterfaceWrapperHelper;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
+import org.adempiere.util.lang.IAutoCloseable;
 import org.compiere.model.I_M_PriceList;
 import org.compiere.model.I_M_PriceList_Version;
 import org.compiere.model.I_M_PricingSystem;
 import org.compiere.model.I_M_ProductPrice;
+import org.compiere.util.Util.ArrayKey;
 import org.slf4j.Logger;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multimaps;
+
 import de.metas.adempiere.model.I_M_Product;
 import de.metas.i18n.IMsgBL;
 import de.metas.logging.LogManager;
@@ -50,6 +61,9 @@ public class ProductPrices
 
 	private static final Logger logger = LogManager.getLogger(ProductPrices.class);
 
+	/** Main product prices which were prefetched for the current thread, by {@code M_PriceList_Version_ID} and {@code M_Product_ID}; {@code null} if nothing was prefetched */
+	private static final ThreadLocal<Map<ArrayKey, List<I_M_ProductPrice>>> prefetchedMainPricesRef = new ThreadLocal<>();
+
 	public static final ProductPriceQuery newQuery()
 	{
 		return new ProductPriceQuery();
@@ -107,7 +121,7 @@ public class ProductPrices
 
 	public static final I_M_ProductPrice retrieveMainProductPriceOrNull(final I_M_PriceList_Version plv, final int productId)
 	{
-		final List<I_M_ProductPrice> allMainPrices = retrieveAllMainPrices(plv, productId);
+		final List<I_M_ProductPrice> allMainPrices = retrievePrefetchedOrAllMainPrices(plv, productId);
 
 		if (allMainPrices.isEmpty())
 		{
@@ -121,6 +135,28 @@ public class ProductPrices
 		return getFirstOrThrowExceptionIfMoreThanOne(allMainPrices);
 	}
 
+	/**
+	 * Like {@link #retrieveAllMainPrices(I_M_PriceList_Version, int)}, but serves the prices from {@link #prefetchMainProductPrices(Collection, Set)} if available.
+	 * <p>
+	 * Only meant for reading prices; checks like {@link #assertIsNoMainPriceDuplicate(I_M_ProductPrice)} need to see the current database state.
+	 */
+	private static List<I_M_ProductPrice> retrievePrefetchedOrAllMainPrices(
+			@NonNull final I_M_PriceList_Version plv,
+			final int productId)
+	{
+		final Map<ArrayKey, List<I_M_ProductPrice>> prefetchedMainPrices = prefetchedMainPricesRef.get();
+		if (prefetchedMainPrices != null)
+		{
+			final List<I_M_ProductPrice> allMainPricesPrefetched = prefetchedMainPrices.get(ArrayKey.of(plv.getM_PriceList_Version_ID(), productId));
+			if (allMainPricesPrefetched != null)
+			{
+				return allMainPricesPrefetched;
+			}
+		}
+
+		return retrieveAllMainPrices(plv, productId);
+	}
+
 	private static List<I_M_ProductPrice> retrieveAllMainPrices(
 			@NonNull final I_M_PriceList_Version plv,
 			final int productId)
@@ -131,6 +167,55 @@ public class ProductPrices
 		return allMainPrices;
 	}
 
+	/**
+	 * Loads the main product prices of the given products in the given price list versions, with one query per price list version.
+	 * Until the returned instance is closed, {@link #retrieveMainProductPriceOrNull(I_M_PriceList_Version, int)} serves those products from memory in the current thread.
+	 * <p>
+	 * Meant to be used with try-with-resources around a bulk operation such as {@link IPricingBL#calculatePrices(List)}.
+	 */
+	public static IAutoCloseable prefetchMainProductPrices(
+			@NonNull final Collection<I_M_PriceList_Version> plvs,
+			@NonNull final Set<Integer> productIds)
+	{
+		final Map<ArrayKey, List<I_M_ProductPrice>> prefetchedMainPrices = new HashMap<>();
+		if (!productIds.isEmpty())
+		{
+			for (final I_M_PriceList_Version plv : plvs)
+			{
+				final int plvId = plv.getM_PriceList_Version_ID();
+				productIds.forEach(productId -> prefetchedMainPrices.put(ArrayKey.of(plvId, productId), ImmutableList.of()));
+
+				Multimaps.index(retrieveAllMainPrices(plv, productIds), I_M_ProductPrice::getM_Product_ID)
+						.asMap()
+						.forEach((productId, productPrices) -> prefetchedMainPrices.put(ArrayKey.of(plvId, productId), ImmutableList.copyOf(productPrices)));
+			}
+		}
+
+		final Map<ArrayKey, List<I_M_ProductPrice>> prefetchedMainPricesOld = prefetchedMainPricesRef.get();
+		prefetchedMainPricesRef.set(prefetchedMainPrices);
+		logger.debug("Prefetched main product prices for {} price list versions and {} products", plvs.size(), productIds.size());
+
+		return () -> prefetchedMainPricesRef.set(prefetchedMainPricesOld);
+	}
+
+	/**
+	 * Same filters as {@link #newMainProductPriceQuery(I_M_PriceList_Version, int)}, but for many products.
+	 */
+	private static List<I_M_ProductPrice> retrieveAllMainPrices(
+			@NonNull final I_M_PriceList_Version plv,
+			@NonNull final Set<Integer> productIds)
+	{
+		final IQueryBuilder<I_M_ProductPrice> queryBuilder = Services.get(IQueryBL.class)
+				.createQueryBuilder(I_M_ProductPrice.class, plv)
+				.addOnlyActiveRecordsFilter()
+				.addEqualsFilter(I_M_ProductPrice.COLUMNNAME_M_PriceList_Version_ID, plv.getM_PriceList_Version_ID())
+				.addInArrayFilter(I_M_ProductPrice.COLUMNNAME_M_Product_ID, productIds)
+				.addEqualsFilter(I_M_ProductPrice.COLUMN_IsAttributeDependant, false);
+		MATCHERS_MainProductPrice.forEach(matcher -> queryBuilder.filter(matcher.getQueryFilter()));
+
+		return queryBuilder.create().list();
+	}
+
 	private static final ProductPriceQuery newMainProductPriceQuery(final I_M_PriceList_Version plv, final int productId)
 	{
 		return newQuery(plv)
@@ -27,7 +27,12 @@ import static org.adempiere.model.InterfaceWrapperHelper.loadOutOfTrx;
 import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -36,6 +41,7 @@ import org.adempiere.pricing.model.I_C_PricingRule;
 import org.adempiere.uom.api.IUOMConversionBL;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
+import org.adempiere.util.lang.IAutoCloseable;
 import org.adempiere.util.proxy.Cached;
 import org.compiere.model.I_C_UOM;
 import org.compiere.model.I_M_PriceList;
@@ -45,16 +51,22 @@ import org.compiere.model.I_M_ProductPrice;
 import org.compiere.util.DisplayType;
 import org.compiere.util.Env;
 import org.compiere.util.Util;
+import org.compiere.util.Util.ArrayKey;
 import org.slf4j.Logger;
 
+import com.google.common.base.Equivalence;
+
 import de.metas.adempiere.model.I_C_InvoiceLine;
 import de.metas.adempiere.util.CacheCtx;
 import de.metas.bpartner.BPartnerId;
+import de.metas.bpartner.service.IBPartnerBL;
 import de.metas.logging.LogManager;
 import de.metas.pricing.IEditablePricingContext;
 import de.metas.pricing.IPricingContext;
 import de.metas.pricing.IPricingResult;
 import de.metas.pricing.PriceListId;
+import de.metas.pricing.conditions.PricingConditionsId;
+import de.metas.pricing.conditions.service.IPricingConditionsRepository;
 import de.metas.pricing.exceptions.PriceListVersionNotFoundException;
 import de.metas.pricing.exceptions.ProductNotOnPriceListException;
 import de.metas.pricing.limit.CompositePriceLimitRule;
@@ -113,6 +125,111 @@ public class PricingBL implements IPricingBL
 	public IPricingResult calculatePrice(final IPricingContext pricingCtx)
 	{
 		final IPricingContext pricingCtxToUse = setupPricingContext(pricingCtx);
+		return calculatePriceForSetupContext(pricingCtxToUse);
+	}
+
+	@Override
+	public List<IPricingResult> calculatePrices(@NonNull final List<IPricingContext> pricingCtxs)
+	{
+		//
+		// Find out which contexts are identical, so that we calculate each of them just once
+		final List<Object> calculationKeys = new ArrayList<>(pricingCtxs.size());
+		final Map<Object, IPricingContext> pricingCtxsToUseByKey = new LinkedHashMap<>();
+		for (final IPricingContext pricingCtx : pricingCtxs)
+		{
+			final Object calculationKey = createCalculationKey(pricingCtx);
+			calculationKeys.add(calculationKey);
+			if (!pricingCtxsToUseByKey.containsKey(calculationKey))
+			{
+				pricingCtxsToUseByKey.put(calculationKey, setupPricingContext(pricingCtx));
+			}
+		}
+
+		//
+		// Calculate, having the product prices and the pricing conditions of all contexts loaded in bulk
+		final Map<Object, IPricingResult> resultsByKey = new HashMap<>(pricingCtxsToUseByKey.size());
+		prefetchPricingConditions(pricingCtxsToUseByKey.values());
+		try (final IAutoCloseable prefetchedProductPrices = prefetchMainProductPrices(pricingCtxsToUseByKey.values()))
+		{
+			pricingCtxsToUseByKey.forEach((calculationKey, pricingCtxToUse) -> resultsByKey.put(calculationKey, calculatePriceForSetupContext(pricingCtxToUse)));
+		}
+
+		//
+		// Hand out the results in the contexts' order; each context gets its own result instance
+		final Set<Object> calculationKeysHandedOut = new HashSet<>(resultsByKey.size());
+		final List<IPricingResult> results = new ArrayList<>(pricingCtxs.size());
+		for (final Object calculationKey : calculationKeys)
+		{
+			final PricingResult result = (PricingResult)resultsByKey.get(calculationKey);
+			results.add(calculationKeysHandedOut.add(calculationKey) ? result : result.copy());
+		}
+
+		logger.debug("calculatePrices: calculated {} prices for {} pricing contexts", resultsByKey.size(), pricingCtxs.size());
+		return results;
+	}
+
+	/**
+	 * @return a key which is equal for pricing contexts which can share their result; contexts that we can't compare are only equal to themselves
+	 */
+	private static Object createCalculationKey(final IPricingContext pricingCtx)
+	{
+		final Object calculationKey = pricingCtx instanceof PricingContext ? ((PricingContext)pricingCtx).toCalculationKeyOrNull() : null;
+		return calculationKey != null ? calculationKey : Equivalence.identity().wrap(pricingCtx);
+	}
+
+	private static IAutoCloseable prefetchMainProductPrices(final Collection<IPricingContext> pricingCtxs)
+	{
+		final Map<Integer, I_M_PriceList_Version> plvsById = new HashMap<>();
+		final Set<Integer> productIds = new HashSet<>();
+		for (final IPricingContext pricingCtx : pricingCtxs)
+		{
+			if (pricingCtx.getM_PriceList_Version_ID() <= 0 || pricingCtx.getM_Product_ID() <= 0)
+			{
+				continue;
+			}
+			plvsById.computeIfAbsent(pricingCtx.getM_PriceList_Version_ID(), plvId -> pricingCtx.getM_PriceList_Version());
+			productIds.add(pricingCtx.getM_Product_ID());
+		}
+
+		return ProductPrices.prefetchMainProductPrices(plvsById.values(), productIds);
+	}
+
+	/**
+	 * Loads the discount schemas (incl. their breaks) of the contexts' bpartners with one query, so that the {@link de.metas.pricing.rules.Discount} rule finds them in the cache.
+	 */
+	private static void prefetchPricingConditions(final Collection<IPricingContext> pricingCtxs)
+	{
+		final IBPartnerBL bpartnerBL = Services.get(IBPartnerBL.class);
+
+		final Set<ArrayKey> bpartnerAndSOTrxSeen = new HashSet<>();
+		final Set<Integer> discountSchemaIds = new HashSet<>();
+		for (final IPricingContext pricingCtx : pricingCtxs)
+		{
+			final BPartnerId bpartnerId = pricingCtx.getBPartnerId();
+			if (bpartnerId == null || pricingCtx.isDisallowDiscount())
+			{
+				continue;
+			}
+			if (!bpartnerAndSOTrxSeen.add(ArrayKey.of(bpartnerId, pricingCtx.isSOTrx())))
+			{
+				continue;
+			}
+
+			final int discountSchemaId = bpartnerBL.getDiscountSchemaId(bpartnerId, pricingCtx.getSoTrx());
+			if (discountSchemaId > 0)
+			{
+				discountSchemaIds.add(discountSchemaId);
+			}
+		}
+
+		if (!discountSchemaIds.isEmpty())
+		{
+			Services.get(IPricingConditionsRepository.class).getPricingConditionsByIds(PricingConditionsId.ofDiscountSchemaIds(discountSchemaIds));
+		}
+	}
+
+	private IPricingResult calculatePriceForSetupContext(final IPricingContext pricingCtxToUse)
+	{
 		final IPricingResult result = createInitialResult(pricingCtxToUse);
 
 		//
@@ -35,6 +35,7 @@ import org.adempiere.util.time.SystemTime;
 import org.compiere.model.I_M_PriceList_Version;
 import org.compiere.model.I_M_Product;
 import org.compiere.util.Env;
+import org.compiere.util.Util.ArrayKey;
 
 import de.metas.bpartner.BPartnerId;
 import de.metas.money.CurrencyId;
@@ -487,4 +488,44 @@ class PricingContext implements IEditablePricingContext
 		this.forcePricingConditionsBreak = forcePricingConditionsBreak;
 		return this;
 	}
+
+	/**
+	 * The key is built from the pricing inputs only: {@code AD_Table_ID}/{@code Record_ID} are left out because no pricing rule looks at them, the qty is compared without trailing zeros
+	 * and contexts without a price date are equal regardless of the moment they were created.
+	 * <p>
+	 * Note: contexts with a referenced object (e.g. an order line) or with custom properties get no key, because pricing rules like the attribute, contract or HU based ones look at those.
+	 * Such contexts are only calculated once if the very same instance is passed more than once.
+	 *
+	 * @return a key which is equal for contexts that yield the same price; {@code null} if we can't tell
+	 */
+	/* package */ ArrayKey toCalculationKeyOrNull()
+	{
+		if (referencedObject != null || !properties.isEmpty())
+		{
+			return null;
+		}
+
+		return ArrayKey.builder()
+				.append(pricingSystemId)
+				.append(priceListId)
+				.append(M_PriceList_Version_ID)
+				.append(skipCheckingPriceListSOTrxFlag)
+				.append(M_Product_ID)
+				.append(priceDateTS > 0 ? priceDateTS : 0) // "now" is the same for all contexts of one bulk calculation
+				.append(C_Country_ID)
+				.append(C_UOM_ID)
+				.append(currencyId)
+				.append(bpartnerId)
+				.append(qty == null ? null : qty.stripTrailingZeros())
+				.append(isSOTrx)
+				.append(m_PP_Product_BOM_ID)
+				.append(m_PP_Product_BOMLine_ID)
+				.append(trxName)
+				.append(convertPriceToContextUOM)
+				.append(isManualPrice)
+				.append(failIfNotCalculated)
+				.append(disallowDiscount)
+				.append(forcePricingConditionsBreak)
+				.build();
+	}
 }
@@ -93,6 +93,39 @@ class PricingResult implements IPricingResult
 
 	private final List<IPricingAttribute> pricingAttributes = new ArrayList<>();
 
+	/**
+	 * @return a copy of this result, so that it can be handed out to another caller which might change it
+	 */
+	/* package */ PricingResult copy()
+	{
+		final PricingResult resultNew = new PricingResult();
+		resultNew.calculated = calculated;
+		resultNew.pricingSystemId = pricingSystemId;
+		resultNew.priceListId = priceListId;
+		resultNew.currencyId = currencyId;
+		resultNew.C_UOM_ID = C_UOM_ID;
+		resultNew.M_Product_ID = M_Product_ID;
+		resultNew.M_Product_Category_ID = M_Product_Category_ID;
+		resultNew.M_PriceList_Version_ID = M_PriceList_Version_ID;
+		resultNew.C_TaxCategory_ID = C_TaxCategory_ID;
+		resultNew.pricingConditions = pricingConditions;
+		resultNew.precision = precision;
+		resultNew.priceList = priceList;
+		resultNew.priceStd = priceStd;
+		resultNew.priceLimit = priceLimit;
+		resultNew.discount = discount;
+		resultNew.enforcePriceLimit = enforcePriceLimit;
+		resultNew.taxIncluded = taxIncluded;
+		resultNew.isUseDiscountSchema = isUseDiscountSchema;
+		resultNew.disallowDiscount = disallowDiscount;
+		resultNew.priceDateTS = priceDateTS == null ? null : new Timestamp(priceDateTS.getTime());
+		resultNew.isPriceEditable = isPriceEditable;
+		resultNew.isDiscountEditable = isDiscountEditable;
+		resultNew.rulesApplied.addAll(rulesApplied);
+		resultNew.pricingAttributes.addAll(pricingAttributes);
+		return resultNew;
+	}
+
 	/**
 	 * @return the c_UOM_ID
 	 */
@@ -1,17 +1,23 @@
 package de.metas.pricing.service.impl;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 import org.adempiere.test.AdempiereTestHelper;
 import org.adempiere.test.AdempiereTestWatcher;
+import org.adempiere.util.Services;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+
 import de.metas.pricing.IEditablePricingContext;
+import de.metas.pricing.IPricingContext;
 import de.metas.pricing.IPricingResult;
+import de.metas.pricing.service.IPricingBL;
 
 /*
  * #%L
@@ -92,4 +98,89 @@ public class PricingTest
 			Assert.assertThat("Bio PriceStd\n" + result, result.getPriceStd(), Matchers.comparesEqualTo(BigDecimal.valueOf(3)));
 		}
 	}
+
+	@Test
+	public void test_calculatePrices_resultsInContextsOrder()
+	{
+		helper.newProductPriceBuilder()
+				.setASI(ASIBuilder.newInstance()
+						.setAttribute(helper.attr_Country, helper.attr_Country_CH)
+						.setAttribute(helper.attr_Label, helper.attr_Label_Bio)
+						.build())
+				.setPrice(3)
+				.build();
+		helper.newProductPriceBuilder()
+				.setASI(ASIBuilder.newInstance()
+						.setAttribute(helper.attr_Country, helper.attr_Country_CH)
+						.setAttribute(helper.attr_Label, helper.attr_Label_NULL)
+						.build())
+				.setPrice(2)
+				.build();
+
+		final IEditablePricingContext pricingCtxNonBio = helper.createPricingContextWithASI(ASIBuilder.newInstance()
+				.setAttribute(helper.attr_Country, helper.attr_Country_CH)
+				.build());
+		final IEditablePricingContext pricingCtxBio = helper.createPricingContextWithASI(ASIBuilder.newInstance()
+				.setAttribute(helper.attr_Country, helper.attr_Country_CH)
+				.setAttribute(helper.attr_Label, helper.attr_Label_Bio)
+				.build());
+
+		final List<IPricingResult> results = Services.get(IPricingBL.class).calculatePrices(ImmutableList.<IPricingContext> of(pricingCtxNonBio, pricingCtxBio, pricingCtxNonBio));
+
+		Assert.assertEquals(3, results.size());
+		Assert.assertThat(results.get(0).getPriceStd(), Matchers.comparesEqualTo(BigDecimal.valueOf(2)));
+		Assert.assertThat(results.get(1).getPriceStd(), Matchers.comparesEqualTo(BigDecimal.valueOf(3)));
+		Assert.assertThat(results.get(2).getPriceStd(), Matchers.comparesEqualTo(BigDecimal.valueOf(2)));
+
+		// the same context was calculated once, but each occurrence shall get its own result
+		Assert.assertNotSame(results.get(0), results.get(2));
+	}
+
+	/**
+	 * Two contexts which were set up independently from each other, like two order lines of the same product, but without a referenced object.
+	 */
+	@Test
+	public void test_calculatePrices_equalContextsShareTheirCalculation()
+	{
+		helper.newProductPriceBuilder()
+				.setPrice(5)
+				.build();
+
+		final IEditablePricingContext pricingCtx1 = helper.createPricingContext();
+		pricingCtx1.setQty(new BigDecimal("10"));
+		pricingCtx1.setAD_Table_ID(1);
+		pricingCtx1.setRecord_ID(100);
+
+		final IEditablePricingContext pricingCtx2 = helper.createPricingContext();
+		pricingCtx2.setQty(new BigDecimal("10.000"));
+		pricingCtx2.setAD_Table_ID(1);
+		pricingCtx2.setRecord_ID(101);
+
+		Assert.assertNotNull(((PricingContext)pricingCtx1).toCalculationKeyOrNull());
+		Assert.assertEquals(((PricingContext)pricingCtx1).toCalculationKeyOrNull(), ((PricingContext)pricingCtx2).toCalculationKeyOrNull());
+
+		final List<IPricingResult> results = Services.get(IPricingBL.class).calculatePrices(ImmutableList.<IPricingContext> of(pricingCtx1, pricingCtx2));
+
+		Assert.assertEquals(2, results.size());
+		Assert.assertThat(results.get(0).getPriceStd(), Matchers.comparesEqualTo(BigDecimal.valueOf(5)));
+		Assert.assertThat(results.get(1).getPriceStd(), Matchers.comparesEqualTo(BigDecimal.valueOf(5)));
+		Assert.assertNotSame(results.get(0), results.get(1));
+
+		// a different qty might hit a different price break, so it shall not share the calculation
+		pricingCtx2.setQty(new BigDecimal("11"));
+		Assert.assertNotEquals(((PricingContext)pricingCtx1).toCalculationKeyOrNull(), ((PricingContext)pricingCtx2).toCalculationKeyOrNull());
+	}
+
+	/**
+	 * Pricing rules might look at the referenced object, so contexts which have one are only equal to themselves.
+	 */
+	@Test
+	public void test_calculatePrices_noCalculationKeyWithReferencedObject()
+	{
+		final IEditablePricingContext pricingCtx = helper.createPricingContextWithASI(ASIBuilder.newInstance()
+				.setAttribute(helper.attr_Country, helper.attr_Country_CH)
+				.build());
+
+		Assert.assertNull(((PricingContext)pricingCtx).toCalculationKeyOrNull());
+	}
 }
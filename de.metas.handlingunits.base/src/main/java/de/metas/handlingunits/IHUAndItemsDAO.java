@@ -85,4 +85,14 @@ public interface IHUAndItemsDAO
 	 * Retrieve the Aggregated Item from an HU in case it has one
 	 */
 	I_M_HU_Item retrieveAggregatedItemOrNull(I_M_HU hu);
+
+	/**
+	 * Loads the whole hierarchy below the given top level HU at once, so that subsequent calls like {@link #retrieveItems(I_M_HU)} and {@link #retrieveIncludedHUs(I_M_HU_Item)} can be served from cache.
+	 * <p>
+	 * Implementations which don't cache do nothing.
+	 */
+	default void prefetchTree(final I_M_HU topLevelHU)
+	{
+		// nothing
+	}
 }
@@ -370,6 +370,23 @@ public interface IHUQueryBuilder
 	 */
 	IHUQueryBuilder addOnlyWithAttributeInList(String attributeName, Object... values);
 
+	/**
+	 * Filter only those HUs which have the given number or date <code>attribute</code> with a value between <code>valueFrom</code> and <code>valueTo</code> (both inclusive).
+	 *
+	 * @param valueFrom lower bound or <code>null</code> if there is no lower bound
+	 * @param valueTo upper bound or <code>null</code> if there is no upper bound
+	 * @return this
+	 */
+	IHUQueryBuilder addOnlyWithAttributeInRange(I_M_Attribute attribute, Object valueFrom, Object valueTo);
+
+	/**
+	 * Filter only those HUs which have the given number or date attribute with a value between <code>valueFrom</code> and <code>valueTo</code> (both inclusive).
+	 *
+	 * @param attributeName (i.e. M_Attribute.Value)
+	 * @see #addOnlyWithAttributeInRange(I_M_Attribute, Object, Object)
+	 */
+	IHUQueryBuilder addOnlyWithAttributeInRange(String attributeName, Object valueFrom, Object valueTo);
+
 	/**
 	 * Filter only those HUs which have <code>attributeName</code> and it's value is not null.
 	 * 
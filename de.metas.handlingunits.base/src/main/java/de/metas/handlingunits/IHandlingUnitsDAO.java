@@ -176,6 +176,12 @@ public interface IHandlingUnitsDAO extends ISingletonService
 
 	List<I_M_HU> retrieveIncludedHUs(I_M_HU hu);
 
+	/**
+	 * If the given HU is a top level HU, then load its whole hierarchy at once, in case we are running in a transaction.
+	 * See {@link de.metas.handlingunits.IHUAndItemsDAO#prefetchTree(I_M_HU)}.
+	 */
+	void prefetchTreeIfTopLevel(I_M_HU hu);
+
 	// Handling Unit PI Retrieval
 
 	List<I_M_HU_PI_Item> retrievePIItems(final I_M_HU_PI handlingUnitPI, final I_C_BPartner partner);
@@ -139,6 +139,12 @@ public abstract class AbstractFIFOStrategy extends AbstractAllocationStrategy
 		final List<I_M_HU> includedHUs = getHandlingUnitsDAO().retrieveIncludedHUs(item);
 		for (final I_M_HU includedHU : includedHUs)
 		{
+			// no need to create zero-qty requests and results for the remaining included HUs
+			if (result.isCompleted())
+			{
+				break;
+			}
+
 			final IAllocationRequest includedRequest = AllocationUtils.createQtyRequestForRemaining(request, result);
 			final IAllocationResult includedResult = allocateOnIncludedHU(includedHU, includedRequest);
 			AllocationUtils.mergeAllocationResult(result, includedResult);
@@ -213,6 +213,9 @@ public final class AllocationUtils
 
 	/**
 	 * This method creates a new request that represents the portion of the given {@code request} that is not yet covered by the given {@code result}.
+	 * <p>
+	 * If nothing was allocated yet, then the given {@code request} itself is returned, because the new one would be the same.
+	 * Allocation requests are immutable, so that's safe and spares us one request (and builder) per HU and item while walking down an HU hierarchy.
 	 *
 	 * @param request
 	 * @param status
@@ -220,10 +223,28 @@ public final class AllocationUtils
 	 */
 	public static IAllocationRequest createQtyRequestForRemaining(final IAllocationRequest request, final IMutableAllocationResult status)
 	{
+		if (isNothingAllocatedYet(request, status))
+		{
+			return request;
+		}
+
 		return deriveAsQtyRequestForRemaining(request, status)
 				.create();
 	}
 
+	private static boolean isNothingAllocatedYet(final IAllocationRequest request, final IMutableAllocationResult status)
+	{
+		final Quantity quantity = request.getQuantity();
+		if (quantity.getQty().compareTo(status.getQtyToAllocate()) != 0)
+		{
+			return false;
+		}
+
+		// deriveAsQtyRequestForRemaining drops the source qty/UOM, so we may only reuse the request if it has none
+		return quantity.getSourceUOM() == quantity.getUOM()
+				&& quantity.getSourceQty().compareTo(quantity.getQty()) == 0;
+	}
+
 	public static IAllocationRequestBuilder deriveAsQtyRequestForRemaining(final IAllocationRequest request, final IMutableAllocationResult status)
 	{
 		// NOTE: we assume "status" quantities are in request's UOM
@@ -250,6 +271,11 @@ public final class AllocationUtils
 			@NonNull final IMutableAllocationResult to,
 			@NonNull final IAllocationResult from)
 	{
+		if (from == NullAllocationResult.instance)
+		{
+			return;
+		}
+
 		to.subtractAllocatedQty(from.getQtyAllocated());
 		to.addTransactions(from.getTransactions());
 		to.addAttributeTransactions(from.getAttributeTransactions());
@@ -380,6 +380,7 @@ public class HUListAllocationSourceDestination implements IAllocationSource, IAl
 		iterator.setDate(huContext.getDate());
 		iterator.setStorageFactory(huContext.getHUStorageFactory());
 		iterator.setListener(huIteratorListener);
+		iterator.setPrefetchTree(true); // we unload every storage of the HU's tree
 		iterator.iterate(hu);
 
 		return result;
@@ -142,6 +142,11 @@ import lombok.NonNull;
 	@Override
 	public void subtractAllocatedQty(final BigDecimal qtyAllocated)
 	{
+		if (qtyAllocated.signum() == 0)
+		{
+			return;
+		}
+
 		final BigDecimal qtyToAllocateNew = qtyToAllocate.subtract(qtyAllocated);
 		Check.assume(qtyToAllocateNew.signum() >= 0,
 				"Cannot allocate {} when qtyToAllocate is {}", qtyAllocated, qtyToAllocate);
@@ -170,7 +175,7 @@ import lombok.NonNull;
 	@Override
 	public void addTransactions(final List<IHUTransactionCandidate> trxs)
 	{
-		trxs.forEach(trx -> addTransaction(trx));
+		transactions.addAll(trxs);
 	}
 
 	@Override
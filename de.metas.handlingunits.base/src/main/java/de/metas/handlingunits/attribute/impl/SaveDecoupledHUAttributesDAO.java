@@ -290,17 +290,7 @@ public class SaveDecoupledHUAttributesDAO implements IHUAttributesDAO
 
 		if (retrieveIfNotFound)
 		{
-			final List<I_M_HU_Attribute> huAttributesList = db.retrieveAttributesOrdered(hu);
-			huAttributes = new HashMap<>(huAttributesList.size());
-			for (final I_M_HU_Attribute huAttribute : huAttributesList)
-			{
-				// Make sure HU attributes are cached using ThreadInherited trx and NOT hu's transaction (08776)
-				InterfaceWrapperHelper.setTrxName(huAttribute, ITrx.TRXNAME_ThreadInherited);
-
-				final Object huAttributeKey = mkHUAttributeKey(huAttribute);
-				huAttributes.put(huAttributeKey, huAttribute);
-				setReadonly(huAttribute, true);
-			}
+			huAttributes = createHUAttributesMap(db.retrieveAttributesOrdered(hu));
 		}
 		else
 		{
@@ -312,6 +302,31 @@ public class SaveDecoupledHUAttributesDAO implements IHUAttributesDAO
 		return huAttributes;
 	}
 
+	private final Map<Object, I_M_HU_Attribute> createHUAttributesMap(final List<I_M_HU_Attribute> huAttributesList)
+	{
+		final Map<Object, I_M_HU_Attribute> huAttributes = new HashMap<>(huAttributesList.size());
+		for (final I_M_HU_Attribute huAttribute : huAttributesList)
+		{
+			// Make sure HU attributes are cached using ThreadInherited trx and NOT hu's transaction (08776)
+			InterfaceWrapperHelper.setTrxName(huAttribute, ITrx.TRXNAME_ThreadInherited);
+
+			final Object huAttributeKey = mkHUAttributeKey(huAttribute);
+			huAttributes.put(huAttributeKey, huAttribute);
+			setReadonly(huAttribute, true);
+		}
+		return huAttributes;
+	}
+
+	/**
+	 * Adds the given (already loaded) attributes to our cache, unless we already have the given HU's attributes.
+	 *
+	 * @param huAttributesList all active attributes of the given HU
+	 */
+	public synchronized void cacheHUAttributesIfAbsent(final I_M_HU hu, final List<I_M_HU_Attribute> huAttributesList)
+	{
+		_hu2huAttributes.computeIfAbsent(mkHUKey(hu), huKey -> createHUAttributesMap(huAttributesList));
+	}
+
 	@Override
 	public synchronized I_M_HU_Attribute retrieveAttribute(final I_M_HU hu, final I_M_Attribute attribute)
 	{
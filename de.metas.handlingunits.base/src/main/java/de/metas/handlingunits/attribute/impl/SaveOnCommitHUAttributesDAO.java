@@ -27,14 +27,13 @@ import java.util.List;
 import org.adempiere.ad.trx.api.ITrx;
 import org.adempiere.ad.trx.api.ITrxListenerManager.TrxEventTiming;
 import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.ad.trx.api.OnTrxMissingPolicy;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
 import org.adempiere.util.lang.IAutoCloseable;
 import org.adempiere.util.lang.NullAutoCloseable;
 import org.compiere.model.I_M_Attribute;
 
-import com.google.common.base.Supplier;
-
 import de.metas.handlingunits.attribute.IHUAttributesDAO;
 import de.metas.handlingunits.model.I_M_HU;
 import de.metas.handlingunits.model.I_M_HU_Attribute;
@@ -42,6 +41,7 @@ import de.metas.handlingunits.model.I_M_HU_Attribute;
 public class SaveOnCommitHUAttributesDAO implements IHUAttributesDAO
 {
 	private static final String TRX_PROPERTY_SaveDecoupledHUAttributesDAO = SaveDecoupledHUAttributesDAO.class.getName();
+	private static final String TRX_PROPERTY_FlushOnCommitListenerRegistered = SaveOnCommitHUAttributesDAO.class.getName() + ".FlushOnCommitListenerRegistered";
 	private final transient ITrxManager trxManager = Services.get(ITrxManager.class);
 	private final HUAttributesDAO dbHUAttributesDAO;
 
@@ -59,38 +59,85 @@ public class SaveOnCommitHUAttributesDAO implements IHUAttributesDAO
 		//
 		// Get an existing storage DAO from transaction.
 		// If no storage DAO exists => create a new one
-		return trx.getProperty(TRX_PROPERTY_SaveDecoupledHUAttributesDAO, new Supplier<SaveDecoupledHUAttributesDAO>()
-		{
-			@Override
-			public SaveDecoupledHUAttributesDAO get()
-			{
-				// Create a new attributes storage
-				final SaveDecoupledHUAttributesDAO huAttributesDAO = new SaveDecoupledHUAttributesDAO(dbHUAttributesDAO);
-
-				// Listen this transaction for COMMIT events
-				// Before committing the transaction, this listener makes sure we are also saving all storages
-				trx.getTrxListenerManager()
-						.newEventListener(TrxEventTiming.BEFORE_COMMIT)
-						.registerHandlingMethod(innerTrx -> {
-
-							// Get and remove the save-decoupled HU Storage DAO
-							final SaveDecoupledHUAttributesDAO innerHuAttributesDAO = innerTrx.setProperty(TRX_PROPERTY_SaveDecoupledHUAttributesDAO, null);
-							if (innerHuAttributesDAO == null)
-							{
-								// shall not happen, because this handlerMetghod is invoked only once, 
-								// but silently ignore it
-								return;
-							}
-
-							// Save everything to database
-							innerHuAttributesDAO.flush();
-						});
-
-				return huAttributesDAO;
-			}
+		return trx.getProperty(TRX_PROPERTY_SaveDecoupledHUAttributesDAO, () -> {
+			registerFlushOnCommitListenerIfAbsent(trx);
+			return new SaveDecoupledHUAttributesDAO(dbHUAttributesDAO);
+		});
+	}
+
+	/**
+	 * Registers the listener only once per trx, because after {@link #flush()} or {@link #discard()}, the next {@link #getDelegate(Object)} call creates a new {@link SaveDecoupledHUAttributesDAO} for the same trx.
+	 */
+	private static void registerFlushOnCommitListenerIfAbsent(final ITrx trx)
+	{
+		trx.getProperty(TRX_PROPERTY_FlushOnCommitListenerRegistered, () -> {
+
+			// Listen this transaction for COMMIT events
+			// Before committing the transaction, this listener makes sure we are also saving all storages
+			trx.getTrxListenerManager()
+					.newEventListener(TrxEventTiming.BEFORE_COMMIT)
+					.invokeMethodJustOnce(false) // the trx might be committed more than once, and there might be a new attributes DAO each time
+					.registerHandlingMethod(innerTrx -> {
+
+						// Get and remove the save-decoupled HU Storage DAO
+						final SaveDecoupledHUAttributesDAO innerHuAttributesDAO = innerTrx.setProperty(TRX_PROPERTY_SaveDecoupledHUAttributesDAO, null);
+						if (innerHuAttributesDAO == null)
+						{
+							// nothing was buffered since the last flush
+							return;
+						}
+
+						// Save everything to database
+						innerHuAttributesDAO.flush();
+					});
+
+			return Boolean.TRUE;
 		});
 	}
 
+	/**
+	 * Saves the attributes which were buffered for the current (inherited) trx right now, and starts over with an empty buffer.
+	 */
+	public void flush()
+	{
+		final ITrx trx = trxManager.getThreadInheritedTrx(OnTrxMissingPolicy.ReturnTrxNone);
+		if (trxManager.isNull(trx))
+		{
+			return;
+		}
+
+		final SaveDecoupledHUAttributesDAO huAttributesDAO = trx.setProperty(TRX_PROPERTY_SaveDecoupledHUAttributesDAO, null);
+		if (huAttributesDAO != null)
+		{
+			huAttributesDAO.flush();
+		}
+	}
+
+	/**
+	 * Drops the attributes which were buffered for the current (inherited) trx, without saving them.
+	 * <p>
+	 * See {@link de.metas.handlingunits.storage.impl.SaveOnCommitHUStorageDAO#discard()}.
+	 */
+	public void discard()
+	{
+		final ITrx trx = trxManager.getThreadInheritedTrx(OnTrxMissingPolicy.ReturnTrxNone);
+		if (trxManager.isNull(trx))
+		{
+			return;
+		}
+
+		trx.setProperty(TRX_PROPERTY_SaveDecoupledHUAttributesDAO, null);
+	}
+
+	/**
+	 * See {@link SaveDecoupledHUAttributesDAO#cacheHUAttributesIfAbsent(I_M_HU, List)}.
+	 */
+	public void cacheHUAttributesIfAbsent(final I_M_HU hu, final List<I_M_HU_Attribute> huAttributes)
+	{
+		final SaveDecoupledHUAttributesDAO delegate = getDelegate(hu);
+		delegate.cacheHUAttributesIfAbsent(hu, huAttributes);
+	}
+
 	@Override
 	public I_M_HU_Attribute newHUAttribute(final Object contextProvider)
 	{
@@ -197,9 +197,10 @@ public class HUTransactionProcessor implements IHUTransactionProcessor
 
 	private final void processTrxLine(final I_M_HU_Trx_Line trxLine)
 	{
-		// Skip if already processed
+		// Skip if already processed, but still make sure it's saved (e.g. the counterpart link)
 		if (trxLine.isProcessed())
 		{
+			saveTrxLine(trxLine);
 			return;
 		}
 
@@ -312,9 +313,8 @@ public class HUTransactionProcessor implements IHUTransactionProcessor
 			final I_M_HU_Trx_Line trxLine = trxCandidate2trxLine.get(trxCandidate);
 			Check.assumeNotNull(trxLine, "trxLine shall exist for {}", trxCandidate);
 
+			// NOTE: we don't save the link right now; it will be saved together with the Processed flag in processTrxLine()
 			trxLine.setParent_HU_Trx_Line(counterpartTrxLine);
-
-			saveTrxLine(trxLine);
 		}
 
 		return trxLines;
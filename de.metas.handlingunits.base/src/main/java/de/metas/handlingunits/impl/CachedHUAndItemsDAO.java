@@ -37,19 +37,24 @@ import org.adempiere.ad.modelvalidator.AbstractModelInterceptor;
 import org.adempiere.ad.modelvalidator.IModelInterceptorRegistry;
 import org.adempiere.ad.modelvalidator.IModelValidationEngine;
 import org.adempiere.ad.modelvalidator.ModelChangeType;
+import org.adempiere.ad.trx.api.ITrxManager;
 import org.adempiere.exceptions.AdempiereException;
 import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.service.ISysConfigBL;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
 import org.compiere.model.I_AD_Client;
 
+import de.metas.handlingunits.HUConstants;
 import de.metas.handlingunits.IHUAndItemsDAO;
 import de.metas.handlingunits.IHandlingUnitsBL;
 import de.metas.handlingunits.IHandlingUnitsDAO;
+import de.metas.handlingunits.attribute.impl.SaveOnCommitHUAttributesDAO;
 import de.metas.handlingunits.exceptions.HUException;
 import de.metas.handlingunits.model.I_M_HU;
 import de.metas.handlingunits.model.I_M_HU_Item;
 import de.metas.handlingunits.model.I_M_HU_PI_Item;
+import de.metas.handlingunits.storage.impl.SaveOnCommitHUStorageDAO;
 import lombok.NonNull;
 
 /**
@@ -70,6 +75,12 @@ public class CachedHUAndItemsDAO extends AbstractHUAndItemsDAO
 	private final Map<Object, List<I_M_HU_Item>> huKey2huItems = new HashMap<>();
 	private final Map<Object, List<I_M_HU>> huItemKey2includedHUs = new HashMap<>();
 
+	/**
+	 * If enabled, {@link #prefetchTree(I_M_HU)} loads the whole HU hierarchy with one query per table.
+	 */
+	public static final String SYSCONFIG_PrefetchTree = CachedHUAndItemsDAO.class.getName() + ".PrefetchTree";
+	private static final boolean DEFAULT_PrefetchTree = true;
+
 	private final IHUAndItemsDAO db = HUAndItemsDAO.instance;
 
 	/* package */CachedHUAndItemsDAO()
@@ -375,6 +386,66 @@ public class CachedHUAndItemsDAO extends AbstractHUAndItemsDAO
 		return new ArrayList<>(includedHUs);
 	}
 
+	/**
+	 * Loads the given top level HU's whole hierarchy by using {@link HUTreeLoader} and adds the HUs' items and included HUs to this cache.
+	 * Already cached entries are preserved, because they might contain changes which were not yet saved.
+	 * <p>
+	 * If the HU storages and attributes are saved on commit (see {@link HUConstants#isUseCacheWhenCreatingHUs()}),
+	 * then the loaded storages and attributes are also added to the transaction's {@link SaveOnCommitHUStorageDAO} and {@link SaveOnCommitHUAttributesDAO}.
+	 */
+	@Override
+	public void prefetchTree(@NonNull final I_M_HU topLevelHU)
+	{
+		if (topLevelHU.getM_HU_ID() <= 0 || topLevelHU.getM_HU_Item_Parent_ID() > 0)
+		{
+			return;
+		}
+		if (huKey2huItems.containsKey(mkHUKey(topLevelHU)))
+		{
+			// already loaded (or created) in this transaction
+			return;
+		}
+		if (!Services.get(ISysConfigBL.class).getBooleanValue(SYSCONFIG_PrefetchTree, DEFAULT_PrefetchTree))
+		{
+			return;
+		}
+
+		final HUTreeLoader tree = HUTreeLoader.load(topLevelHU);
+
+		for (final I_M_HU hu : tree.getHus())
+		{
+			final Object huKey = mkHUKey(hu);
+			if (huKey2huItems.containsKey(huKey))
+			{
+				continue;
+			}
+
+			final List<I_M_HU_Item> huItems = tree.getItems(hu);
+			huKey2huItems.put(huKey, new ArrayList<>(huItems));
+
+			for (final I_M_HU_Item huItem : huItems)
+			{
+				huItemKey2includedHUs.putIfAbsent(mkHUItemKey(huItem), new ArrayList<>(tree.getIncludedHUs(huItem)));
+			}
+		}
+
+		final ITrxManager trxManager = Services.get(ITrxManager.class);
+		if (HUConstants.isUseCacheWhenCreatingHUs() && !trxManager.isNull(trxManager.getThreadInheritedTrxName()))
+		{
+			final SaveOnCommitHUStorageDAO huStorageDAO = new SaveOnCommitHUStorageDAO();
+			final SaveOnCommitHUAttributesDAO huAttributesDAO = new SaveOnCommitHUAttributesDAO();
+			for (final I_M_HU hu : tree.getHus())
+			{
+				huStorageDAO.cacheHUStoragesIfAbsent(hu, tree.getStorages(hu));
+				huAttributesDAO.cacheHUAttributesIfAbsent(hu, tree.getAttributes(hu));
+				for (final I_M_HU_Item huItem : tree.getItems(hu))
+				{
+					huStorageDAO.cacheHUItemStoragesIfAbsent(huItem, tree.getItemStorages(huItem));
+				}
+			}
+		}
+	}
+
 	@Override
 	public void setParentItem(final I_M_HU hu, final I_M_HU_Item parentItem)
 	{
@@ -26,6 +26,7 @@ import java.util.List;
 
 import org.adempiere.ad.trx.api.ITrx;
 import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.ad.trx.api.OnTrxMissingPolicy;
 import org.adempiere.model.InterfaceWrapperHelper;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
@@ -75,6 +76,23 @@ public class CachedIfInTransactionHUAndItemsDAO implements IHUAndItemsDAO
 		return huAndItemsDAO;
 	}
 
+	/**
+	 * Drops the HUs and items which were cached for the current (inherited) trx.
+	 * <p>
+	 * Call it after rolling back to a savepoint, because the cache might contain HUs and items which were rolled back.
+	 * Unlike the HU storages and attributes, nothing is lost, because the HUs and items are saved right away.
+	 */
+	public void discard()
+	{
+		final ITrx trx = trxManager.getThreadInheritedTrx(OnTrxMissingPolicy.ReturnTrxNone);
+		if (trxManager.isNull(trx))
+		{
+			return;
+		}
+
+		trx.setProperty(TRX_PROPERTY_CachedHUAndItemsDAO, null);
+	}
+
 	private final ITrx extractAndValidateTrx(final Object contextProvider)
 	{
 		final String trxName = trxManager.getThreadInheritedTrxName();
@@ -181,4 +199,10 @@ public class CachedIfInTransactionHUAndItemsDAO implements IHUAndItemsDAO
 	{
 		return getDelegate(hu).retrieveAggregatedItemOrNull(hu);
 	}
+
+	@Override
+	public void prefetchTree(@NonNull final I_M_HU topLevelHU)
+	{
+		getDelegate(topLevelHU).prefetchTree(topLevelHU);
+	}
 }
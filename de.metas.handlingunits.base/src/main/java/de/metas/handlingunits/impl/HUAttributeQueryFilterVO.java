@@ -23,6 +23,8 @@ package de.metas.handlingunits.impl;
  */
 
 
+import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Objects;
@@ -30,6 +32,8 @@ import java.util.Set;
 
 import org.adempiere.ad.dao.ICompositeQueryFilter;
 import org.adempiere.ad.dao.IQueryBL;
+import org.adempiere.ad.dao.IQueryBuilder;
+import org.adempiere.ad.dao.impl.CompareQueryFilter.Operator;
 import org.adempiere.mm.attributes.api.IAttributeDAO;
 import org.adempiere.mm.attributes.api.IAttributeSet;
 import org.adempiere.model.ModelColumn;
@@ -43,6 +47,7 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.compiere.model.IQuery;
 import org.compiere.model.I_M_Attribute;
 import org.compiere.model.X_M_Attribute;
+import org.compiere.util.TimeUtil;
 
 import de.metas.handlingunits.model.I_M_HU;
 import de.metas.handlingunits.model.I_M_HU_Attribute;
@@ -62,6 +67,8 @@ import de.metas.handlingunits.model.I_M_HU_Attribute;
 		NotNull,
 		MissingOrNull,
 		ValuesList,
+		/** Value is between {@link HUAttributeQueryFilterVO#valueFrom} and {@link HUAttributeQueryFilterVO#valueTo} (both inclusive); only for number and date attributes */
+		ValueRange,
 	};
 
 	// services
@@ -76,6 +83,8 @@ import de.metas.handlingunits.model.I_M_HU_Attribute;
 	private AttributeValueMatchingType matchingType = AttributeValueMatchingType.ValuesList;
 	private final Set<Object> _values = new HashSet<>();
 	private Set<Object> _valuesAndSubstitutes = null;
+	private Object valueFrom = null;
+	private Object valueTo = null;
 
 	/* package */HUAttributeQueryFilterVO(final I_M_Attribute attribute, final String attributeValueType)
 	{
@@ -129,6 +138,8 @@ import de.metas.handlingunits.model.I_M_HU_Attribute;
 		matchingType = from.matchingType;
 		_valuesAndSubstitutes = from._valuesAndSubstitutes == null ? null : new HashSet<>(_valuesAndSubstitutes);
 		_values.addAll(from._values);
+		valueFrom = from.valueFrom;
+		valueTo = from.valueTo;
 	}
 
 	@Override
@@ -142,6 +153,8 @@ import de.metas.handlingunits.model.I_M_HU_Attribute;
 				.append(matchingType)
 				.append(_values)
 				// .append(_valuesAndSubstitutes) // those are loaded on demand based on the other values
+				.append(valueFrom)
+				.append(valueTo)
 				.toHashCode();
 	}
 
@@ -167,6 +180,8 @@ import de.metas.handlingunits.model.I_M_HU_Attribute;
 				.append(matchingType, other.matchingType)
 				.append(_values, other._values)
 				// .append(_valuesAndSubstitutes) // those are loaded on demand based on the other values
+				.append(valueFrom, other.valueFrom)
+				.append(valueTo, other.valueTo)
 				.isEqual();
 	}
 
@@ -190,8 +205,16 @@ import de.metas.handlingunits.model.I_M_HU_Attribute;
 	public final String getSummary()
 	{
 		final String attributeName = getM_Attribute().getName();
-		final Set<Object> values = getValuesAndSubstitutes();
-		final String valuesStr = ListUtils.toString(values, ", ");
+		final String valuesStr;
+		if (matchingType == AttributeValueMatchingType.ValueRange)
+		{
+			valuesStr = (valueFrom == null ? "" : valueFrom) + " - " + (valueTo == null ? "" : valueTo);
+		}
+		else
+		{
+			final Set<Object> values = getValuesAndSubstitutes();
+			valuesStr = ListUtils.toString(values, ", ");
+		}
 
 		final StringBuilder sb = new StringBuilder();
 		sb.append(attributeName).append(": ").append(valuesStr);
@@ -219,6 +242,9 @@ import de.metas.handlingunits.model.I_M_HU_Attribute;
 			case ValuesList:
 				appendQueryFilter_ValuesList(contextProvider, huFilters);
 				return;
+			case ValueRange:
+				appendQueryFilter_ValueRange(contextProvider, huFilters);
+				return;
 			default:
 				throw new IllegalStateException("MatchingType not supported: " + matchingType); // shall not happen
 		}
@@ -275,6 +301,27 @@ import de.metas.handlingunits.model.I_M_HU_Attribute;
 		huFilters.addInSubQueryFilter(I_M_HU.COLUMN_M_HU_ID, I_M_HU_Attribute.COLUMN_M_HU_ID, attributesQuery);
 	}
 
+	/**
+	 * Note: the typed value columns are backed by partial (M_Attribute_ID, Value*, M_HU_ID) indexes, so the range can be evaluated on the index alone.
+	 */
+	private final void appendQueryFilter_ValueRange(final Object contextProvider, final ICompositeQueryFilter<I_M_HU> huFilters)
+	{
+		final IQueryBuilder<I_M_HU_Attribute> attributesQueryBuilder = queryBL.createQueryBuilder(I_M_HU_Attribute.class, contextProvider)
+				.addOnlyActiveRecordsFilter()
+				.addEqualsFilter(I_M_HU_Attribute.COLUMN_M_Attribute_ID, getM_Attribute_ID())
+				.addNotNull(getHUAttributeValueColumn());
+		if (valueFrom != null)
+		{
+			attributesQueryBuilder.addCompareFilter(getHUAttributeValueColumn(), Operator.GREATER_OR_EQUAL, valueFrom);
+		}
+		if (valueTo != null)
+		{
+			attributesQueryBuilder.addCompareFilter(getHUAttributeValueColumn(), Operator.LESS_OR_EQUAL, valueTo);
+		}
+
+		huFilters.addInSubQueryFilter(I_M_HU.COLUMN_M_HU_ID, I_M_HU_Attribute.COLUMN_M_HU_ID, attributesQueryBuilder.create());
+	}
+
 	/**
 	 * NOTE: keep in sync with {@link #createQueryFilter()}
 	 */
@@ -288,6 +335,8 @@ import de.metas.handlingunits.model.I_M_HU_Attribute;
 				return matches_MissingOrNull(attributes);
 			case ValuesList:
 				return matches_ValuesList(attributes);
+			case ValueRange:
+				return matches_ValueRange(attributes);
 			default:
 				throw new IllegalStateException("MatchingType not supported: " + matchingType); // shall not happen
 		}
@@ -357,6 +406,52 @@ import de.metas.handlingunits.model.I_M_HU_Attribute;
 		return true; // matched
 	}
 	
+	private boolean matches_ValueRange(final IAttributeSet attributes)
+	{
+		final I_M_Attribute attribute = attributes.getAttributeByIdIfExists(getM_Attribute_ID());
+		if (attribute == null)
+		{
+			return false; // not matched
+		}
+
+		final Comparable<Object> recordAttributeValue = toComparableValue(attributes.getValue(attribute));
+		if (recordAttributeValue == null)
+		{
+			return false; // not matched
+		}
+		if (valueFrom != null && recordAttributeValue.compareTo(toComparableValue(valueFrom)) < 0)
+		{
+			return false; // not matched
+		}
+		if (valueTo != null && recordAttributeValue.compareTo(toComparableValue(valueTo)) > 0)
+		{
+			return false; // not matched
+		}
+		return true; // matched
+	}
+
+	/**
+	 * Converts the given number or date value to a {@link BigDecimal} or a {@link Timestamp}, so that values of different classes (e.g. {@link Integer} and {@link BigDecimal}) can be compared.
+	 */
+	@SuppressWarnings("unchecked")
+	private Comparable<Object> toComparableValue(final Object value)
+	{
+		if (value == null)
+		{
+			return null;
+		}
+		else if (X_M_Attribute.ATTRIBUTEVALUETYPE_Number.equals(attributeValueType))
+		{
+			final BigDecimal valueBD = value instanceof BigDecimal ? (BigDecimal)value : new BigDecimal(value.toString());
+			return (Comparable<Object>)(Comparable<?>)valueBD;
+		}
+		else
+		{
+			final Timestamp valueTS = TimeUtil.asTimestamp(value);
+			return (Comparable<Object>)(Comparable<?>)valueTS;
+		}
+	}
+
 	public HUAttributeQueryFilterVO setMatchingType(final AttributeValueMatchingType matchingType)
 	{
 		Check.assumeNotNull(matchingType, "Parameter matchingType is not null");
@@ -388,6 +483,22 @@ import de.metas.handlingunits.model.I_M_HU_Attribute;
 		return this;
 	}
 
+	/**
+	 * @param valueFrom lower bound (inclusive) or <code>null</code> if there is no lower bound
+	 * @param valueTo upper bound (inclusive) or <code>null</code> if there is no upper bound
+	 */
+	public HUAttributeQueryFilterVO setValueRange(final Object valueFrom, final Object valueTo)
+	{
+		Check.assume(X_M_Attribute.ATTRIBUTEVALUETYPE_Number.equals(attributeValueType) || X_M_Attribute.ATTRIBUTEVALUETYPE_Date.equals(attributeValueType),
+				"Value ranges are supported only for number and date attributes: {}", this);
+		Check.assume(valueFrom != null || valueTo != null, "At least one of valueFrom and valueTo shall be set: {}", this);
+
+		setMatchingType(AttributeValueMatchingType.ValueRange);
+		this.valueFrom = valueFrom;
+		this.valueTo = valueTo;
+		return this;
+	}
+
 	private final int getM_Attribute_ID()
 	{
 		return attributeId;
@@ -61,6 +61,21 @@ public class HUDisplayNameBuilder implements IHUDisplayNameBuilder
 			return "";
 		}
 
+		// extending classes might count the included HUs differently, so only our own names are memoized
+		if (getClass() == HUDisplayNameBuilder.class)
+		{
+			return HUDisplayNameCache.instance.getHUDisplayName(getM_HU(), getOptionsAsString(), this::buildNow);
+		}
+		return buildNow();
+	}
+
+	private String getOptionsAsString()
+	{
+		return showIncludedHUCount + "|" + includedHUCountSuffix + "|" + showHUPINameNextLine + "|" + showIfDestroyed;
+	}
+
+	private String buildNow()
+	{
 		//
 		// Get HU Value
 		final String huValue = getHUValue();
@@ -201,8 +216,10 @@ public class HUDisplayNameBuilder implements IHUDisplayNameBuilder
 		}
 		else
 		{
-			final I_M_HU_PI pi = Services.get(IHandlingUnitsBL.class).getPI(hu);
-			piNameRaw = pi != null ? pi.getName() : "?";
+			piNameRaw = HUDisplayNameCache.instance.getPIName(hu.getM_HU_PI_Version_ID(), () -> {
+				final I_M_HU_PI pi = handlingUnitsBL.getPI(hu);
+				return pi != null ? pi.getName() : "?";
+			});
 		}
 
 		final String piName = escape(piNameRaw);
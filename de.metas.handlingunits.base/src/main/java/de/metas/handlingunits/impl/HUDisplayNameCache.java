@@ -0,0 +1,248 @@
+package de.metas.handlingunits.impl;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.service.ISysConfigBL;
+import org.adempiere.util.Services;
+import org.compiere.model.I_C_UOM;
+import org.compiere.util.CCache;
+import org.compiere.util.Env;
+
+import com.google.common.collect.ImmutableList;
+
+import de.metas.handlingunits.model.I_M_HU;
+import de.metas.handlingunits.model.I_M_HU_Item;
+import de.metas.handlingunits.model.I_M_HU_PI;
+import de.metas.handlingunits.model.I_M_HU_PI_Item;
+import de.metas.handlingunits.model.I_M_HU_PI_Item_Product;
+import de.metas.handlingunits.model.I_M_HU_PI_Version;
+import lombok.NonNull;
+import lombok.Value;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Memoizes what {@link HUDisplayNameBuilder} and {@link HUPIItemProductDisplayNameBuilder} compute, so that rendering long HU lists does not navigate the PI models for every row.
+ * <ul>
+ * <li>the PI names, by {@code M_HU_PI_Version_ID}</li>
+ * <li>the packing instruction display names, by {@code M_HU_PI_Item_Product_ID}</li>
+ * <li>the HU display names, by {@code M_HU_ID} and {@code Updated}, so that a changed HU is never served its old name, not even from another transaction</li>
+ * </ul>
+ * The caches are reset by {@link org.compiere.util.CacheMgt} whenever a record of one of the tables they depend on is changed; e.g. the HU display names also when an {@link I_M_HU_Item} is changed, because that changes the included HUs count.
+ * Models which are not saved or have unsaved changes are never cached.
+ * <p>
+ * Set {@value #SYSCONFIG_Enabled} to {@code N} to disable the memoization.
+ */
+public final class HUDisplayNameCache
+{
+	public static final HUDisplayNameCache instance = new HUDisplayNameCache();
+
+	static final String SYSCONFIG_Enabled = "de.metas.handlingunits.impl.HUDisplayNameCache.Enabled";
+
+	private final CCache<Integer, String> piNamesByVersionId = CCache.<Integer, String> newLRUCache(I_M_HU_PI_Version.Table_Name + "#by#Name", 500, CCache.EXPIREMINUTES_Never)
+			.addResetForTableName(I_M_HU_PI.Table_Name);
+	private final HitRateCounter piNamesCounter = new HitRateCounter(I_M_HU_PI_Version.Table_Name + "#by#Name");
+
+	private final CCache<ItemProductDisplayNameKey, String> itemProductDisplayNames = CCache.<ItemProductDisplayNameKey, String> newLRUCache(I_M_HU_PI_Item_Product.Table_Name + "#DisplayName", 2000, CCache.EXPIREMINUTES_Never)
+			.addResetForTableName(I_M_HU_PI_Item.Table_Name)
+			.addResetForTableName(I_M_HU_PI_Version.Table_Name)
+			.addResetForTableName(I_M_HU_PI.Table_Name)
+			.addResetForTableName(I_C_UOM.Table_Name);
+	private final HitRateCounter itemProductDisplayNamesCounter = new HitRateCounter(I_M_HU_PI_Item_Product.Table_Name + "#DisplayName");
+
+	private final CCache<HUDisplayNameKey, String> huDisplayNames = CCache.<HUDisplayNameKey, String> newLRUCache(I_M_HU.Table_Name + "#DisplayName", 20000, CCache.EXPIREMINUTES_Never)
+			.addResetForTableName(I_M_HU_Item.Table_Name)
+			.addResetForTableName(I_M_HU_PI_Item.Table_Name)
+			.addResetForTableName(I_M_HU_PI_Version.Table_Name)
+			.addResetForTableName(I_M_HU_PI.Table_Name);
+	private final HitRateCounter huDisplayNamesCounter = new HitRateCounter(I_M_HU.Table_Name + "#DisplayName");
+
+	private HUDisplayNameCache()
+	{
+	}
+
+	public String getPIName(final int huPIVersionId, @NonNull final Supplier<String> piNameBuilder)
+	{
+		if (huPIVersionId <= 0 || !isEnabled())
+		{
+			return piNameBuilder.get();
+		}
+		return getOrBuild(piNamesByVersionId, piNamesCounter, huPIVersionId, piNameBuilder);
+	}
+
+	public String getItemProductDisplayName(
+			@NonNull final I_M_HU_PI_Item_Product itemProduct,
+			final boolean showAnyProductIndicator,
+			@NonNull final Supplier<String> displayNameBuilder)
+	{
+		if (!isCacheable(itemProduct) || !isEnabled())
+		{
+			return displayNameBuilder.get();
+		}
+
+		final ItemProductDisplayNameKey key = new ItemProductDisplayNameKey(
+				itemProduct.getM_HU_PI_Item_Product_ID(),
+				itemProduct.getUpdated(),
+				showAnyProductIndicator,
+				extractAD_Language(itemProduct));
+		return getOrBuild(itemProductDisplayNames, itemProductDisplayNamesCounter, key, displayNameBuilder);
+	}
+
+	public String getHUDisplayName(
+			@NonNull final I_M_HU hu,
+			@NonNull final String options,
+			@NonNull final Supplier<String> displayNameBuilder)
+	{
+		if (!isCacheable(hu) || !isEnabled())
+		{
+			return displayNameBuilder.get();
+		}
+
+		final HUDisplayNameKey key = new HUDisplayNameKey(
+				hu.getM_HU_ID(),
+				hu.getUpdated(),
+				options,
+				extractAD_Language(hu));
+		return getOrBuild(huDisplayNames, huDisplayNamesCounter, key, displayNameBuilder);
+	}
+
+	private static <K> String getOrBuild(
+			final CCache<K, String> cache,
+			final HitRateCounter counter,
+			final K key,
+			final Supplier<String> valueBuilder)
+	{
+		final String cachedValue = cache.get(key);
+		if (cachedValue != null)
+		{
+			counter.hit();
+			return cachedValue;
+		}
+
+		counter.miss();
+		final String value = valueBuilder.get();
+		if (value != null)
+		{
+			cache.put(key, value);
+		}
+		return value;
+	}
+
+	private static boolean isCacheable(final Object model)
+	{
+		return InterfaceWrapperHelper.getId(model) > 0 && !InterfaceWrapperHelper.hasChanges(model);
+	}
+
+	private static String extractAD_Language(final Object model)
+	{
+		return Env.getAD_Language(InterfaceWrapperHelper.getCtx(model));
+	}
+
+	private static boolean isEnabled()
+	{
+		return Services.get(ISysConfigBL.class).getBooleanValue(SYSCONFIG_Enabled, true);
+	}
+
+	/**
+	 * @return the hit rates of the caches since the JVM was started
+	 */
+	public List<HitRate> getHitRates()
+	{
+		return ImmutableList.of(
+				piNamesCounter.toHitRate(),
+				itemProductDisplayNamesCounter.toHitRate(),
+				huDisplayNamesCounter.toHitRate());
+	}
+
+	@Override
+	public String toString()
+	{
+		return "HUDisplayNameCache" + getHitRates();
+	}
+
+	@Value
+	private static class ItemProductDisplayNameKey
+	{
+		int itemProductId;
+		Timestamp updated;
+		boolean showAnyProductIndicator;
+		String adLanguage;
+	}
+
+	@Value
+	private static class HUDisplayNameKey
+	{
+		int huId;
+		Timestamp updated;
+		String options;
+		String adLanguage;
+	}
+
+	private static final class HitRateCounter
+	{
+		private final String cacheName;
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+
+		private HitRateCounter(final String cacheName)
+		{
+			this.cacheName = cacheName;
+		}
+
+		private void hit()
+		{
+			hits.incrementAndGet();
+		}
+
+		private void miss()
+		{
+			misses.incrementAndGet();
+		}
+
+		private HitRate toHitRate()
+		{
+			return new HitRate(cacheName, hits.get(), misses.get());
+		}
+	}
+
+	@Value
+	public static class HitRate
+	{
+		String cacheName;
+		long hits;
+		long misses;
+
+		/**
+		 * @return hits / (hits + misses), or {@code 0} if nothing was requested yet
+		 */
+		public double getRate()
+		{
+			final long requests = hits + misses;
+			return requests == 0 ? 0 : (double)hits / requests;
+		}
+	}
+}
@@ -35,6 +35,7 @@ import org.compiere.util.TrxRunnable;
 
 import de.metas.handlingunits.IHUContext;
 import de.metas.handlingunits.IHUIterator;
+import de.metas.handlingunits.IHandlingUnitsDAO;
 import de.metas.handlingunits.IMutableHUContext;
 import de.metas.handlingunits.model.I_M_HU;
 import de.metas.handlingunits.model.I_M_HU_Item;
@@ -42,6 +43,10 @@ import de.metas.handlingunits.storage.IHUItemStorage;
 
 public class HUIterator extends AbstractHUIterator
 {
+	private final transient IHandlingUnitsDAO handlingUnitsDAO = Services.get(IHandlingUnitsDAO.class);
+
+	private boolean prefetchTree = false;
+
 	public HUIterator()
 	{
 		registerNodeIterator(I_M_HU.class, new HUNodeIterator());
@@ -70,6 +75,24 @@ public class HUIterator extends AbstractHUIterator
 		return this;
 	}
 
+	/**
+	 * If enabled, the whole hierarchy of each top level HU is loaded before it's iterated; see {@link IHandlingUnitsDAO#prefetchTreeIfTopLevel(I_M_HU)}.
+	 * Enable it if the iteration is going to visit (almost) all of a big HU tree. Disabled by default.
+	 */
+	public final HUIterator setPrefetchTree(final boolean prefetchTree)
+	{
+		this.prefetchTree = prefetchTree;
+		return this;
+	}
+
+	private void prefetchTreeIfEnabled(final I_M_HU hu)
+	{
+		if (prefetchTree)
+		{
+			handlingUnitsDAO.prefetchTreeIfTopLevel(hu);
+		}
+	}
+
 	@Override
 	public final IHUIterator iterate(final I_M_HU hu)
 	{
@@ -90,6 +113,7 @@ public class HUIterator extends AbstractHUIterator
 
 		for (final I_M_HU hu : hus)
 		{
+			prefetchTreeIfEnabled(hu);
 			huNodeIterator.iterate(hu);
 		}
 
@@ -154,6 +178,7 @@ public class HUIterator extends AbstractHUIterator
 						InterfaceWrapperHelper.setTrxName(hu, localTrxName);
 						try
 						{
+							prefetchTreeIfEnabled(hu);
 							huNodeIterator.iterate(hu);
 						}
 						finally
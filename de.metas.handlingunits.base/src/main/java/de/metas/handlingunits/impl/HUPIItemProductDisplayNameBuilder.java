@@ -116,6 +116,16 @@ import de.metas.handlingunits.model.I_M_HU_PI_Item_Product;
 
 	@Override
 	public String buildItemProductDisplayName()
+	{
+		// If we customized the capacity, we shall build the display string again
+		if (_qtyCapacity != null)
+		{
+			return buildItemProductDisplayNameNow();
+		}
+		return HUDisplayNameCache.instance.getItemProductDisplayName(getM_HU_PI_Item_Product(), isShowAnyProductIndicator(), this::buildItemProductDisplayNameNow);
+	}
+
+	private String buildItemProductDisplayNameNow()
 	{
 		final I_M_HU_PI_Item_Product itemProduct = getM_HU_PI_Item_Product();
 		final I_M_HU_PI_Item piItem = itemProduct.getM_HU_PI_Item();
@@ -1057,6 +1057,21 @@ import lombok.NonNull;
 		return this;
 	}
 
+	@Override
+	public IHUQueryBuilder addOnlyWithAttributeInRange(final I_M_Attribute attribute, final Object valueFrom, final Object valueTo)
+	{
+		getAttributeFilterVO(attribute, HUAttributeQueryFilterVO.ATTRIBUTEVALUETYPE_Unknown)
+				.setValueRange(valueFrom, valueTo);
+		return this;
+	}
+
+	@Override
+	public IHUQueryBuilder addOnlyWithAttributeInRange(final String attributeName, final Object valueFrom, final Object valueTo)
+	{
+		final I_M_Attribute attribute = Services.get(IAttributeDAO.class).retrieveAttributeByValue(getCtx(), attributeName, I_M_Attribute.class);
+		return addOnlyWithAttributeInRange(attribute, valueFrom, valueTo);
+	}
+
 	@Override
 	public IHUQueryBuilder addOnlyWithAttributeNotNull(final String attributeName)
 	{
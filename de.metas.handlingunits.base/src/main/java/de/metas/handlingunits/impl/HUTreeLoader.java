@@ -0,0 +1,293 @@
+package de.metas.handlingunits.impl;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.adempiere.ad.dao.IQueryBL;
+import org.adempiere.ad.dao.IQueryBuilder;
+import org.adempiere.ad.dao.impl.TypedSqlQueryFilter;
+import org.adempiere.util.Services;
+import org.compiere.Adempiere;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+
+import de.metas.handlingunits.IHandlingUnitsDAO;
+import de.metas.handlingunits.attribute.impl.HUAttributesBySeqNoComparator;
+import de.metas.handlingunits.model.I_M_HU;
+import de.metas.handlingunits.model.I_M_HU_Attribute;
+import de.metas.handlingunits.model.I_M_HU_Item;
+import de.metas.handlingunits.model.I_M_HU_Item_Storage;
+import de.metas.handlingunits.model.I_M_HU_Storage;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Loads a whole HU hierarchy, i.e. the given HU and all its (recursively) included HUs, together with their
+ * {@link I_M_HU_Item}s, {@link I_M_HU_Storage}s, {@link I_M_HU_Item_Storage}s and {@link I_M_HU_Attribute}s.
+ * <p>
+ * On a database, each table is loaded with one query which selects the tree's {@code M_HU_ID}s using a recursive CTE.
+ * When running in unit test mode, the IDs are collected level by level instead.
+ * <p>
+ * The records are filtered and ordered the same way as {@link HUAndItemsDAO}, {@link de.metas.handlingunits.storage.impl.HUStorageDAO} and {@link de.metas.handlingunits.attribute.impl.HUAttributesDAO} do it,
+ * so the result can be used to seed the caches that would otherwise be populated by those DAOs.
+ */
+/* package */ final class HUTreeLoader
+{
+	private static final String SQL_SelectTreeHUIds = "WITH RECURSIVE hu_tree(M_HU_ID) AS ("
+			+ " SELECT ?::numeric"
+			+ " UNION ALL"
+			+ " SELECT hu." + I_M_HU.COLUMNNAME_M_HU_ID
+			+ " FROM " + I_M_HU.Table_Name + " hu"
+			+ " INNER JOIN " + I_M_HU_Item.Table_Name + " item ON item." + I_M_HU_Item.COLUMNNAME_M_HU_Item_ID + "=hu." + I_M_HU.COLUMNNAME_M_HU_Item_Parent_ID + " AND item.IsActive='Y'"
+			+ " INNER JOIN hu_tree ON hu_tree.M_HU_ID=item." + I_M_HU_Item.COLUMNNAME_M_HU_ID
+			+ ")"
+			+ " SELECT M_HU_ID FROM hu_tree";
+
+	private final transient IQueryBL queryBL = Services.get(IQueryBL.class);
+
+	private final I_M_HU topLevelHU;
+
+	/** All HUs of the tree, including the top level HU */
+	@Getter
+	private final List<I_M_HU> hus = new ArrayList<>();
+	private final ListMultimap<Integer, I_M_HU_Item> huId2items = ArrayListMultimap.create();
+	private final ListMultimap<Integer, I_M_HU> parentItemId2includedHUs = ArrayListMultimap.create();
+	private final ListMultimap<Integer, I_M_HU_Storage> huId2storages = ArrayListMultimap.create();
+	private final ListMultimap<Integer, I_M_HU_Item_Storage> huItemId2itemStorages = ArrayListMultimap.create();
+	private final ListMultimap<Integer, I_M_HU_Attribute> huId2attributes = ArrayListMultimap.create();
+
+	public static HUTreeLoader load(@NonNull final I_M_HU topLevelHU)
+	{
+		final HUTreeLoader loader = new HUTreeLoader(topLevelHU);
+		loader.load();
+		return loader;
+	}
+
+	private HUTreeLoader(@NonNull final I_M_HU topLevelHU)
+	{
+		this.topLevelHU = topLevelHU;
+	}
+
+	private void load()
+	{
+		final boolean useRecursiveSql = !Adempiere.isUnitTestMode();
+		final Set<Integer> huIds = useRecursiveSql ? null : collectHUIdsLevelByLevel();
+
+		//
+		// M_HU
+		// Note: we use the given top level HU instance and not a freshly loaded one
+		final Map<Integer, I_M_HU> huId2hu = new HashMap<>();
+		huId2hu.put(topLevelHU.getM_HU_ID(), topLevelHU);
+		hus.add(topLevelHU);
+
+		final List<I_M_HU> includedHUs = filterByTree(queryBL.createQueryBuilder(I_M_HU.class, topLevelHU), I_M_HU.COLUMNNAME_M_HU_ID, huIds)
+				.addNotEqualsFilter(I_M_HU.COLUMNNAME_M_HU_ID, topLevelHU.getM_HU_ID())
+				// Retrieve all HUs, even if they are not active; see IncludedHUsLocalCache
+				.orderBy().addColumn(I_M_HU.COLUMNNAME_M_HU_ID).endOrderBy()
+				.create()
+				.list(I_M_HU.class);
+		for (final I_M_HU includedHU : includedHUs)
+		{
+			huId2hu.put(includedHU.getM_HU_ID(), includedHU);
+			hus.add(includedHU);
+		}
+
+		//
+		// M_HU_Item
+		final Map<Integer, I_M_HU_Item> itemId2item = new HashMap<>();
+		final List<I_M_HU_Item> items = filterByTree(queryBL.createQueryBuilder(I_M_HU_Item.class, topLevelHU), I_M_HU_Item.COLUMNNAME_M_HU_ID, huIds)
+				.addOnlyActiveRecordsFilter()
+				.create()
+				.list(I_M_HU_Item.class);
+		for (final I_M_HU_Item item : items)
+		{
+			item.setM_HU(huId2hu.get(item.getM_HU_ID()));
+			itemId2item.put(item.getM_HU_Item_ID(), item);
+			huId2items.put(item.getM_HU_ID(), item);
+		}
+		for (final Integer huId : huId2items.keySet())
+		{
+			Collections.sort(huId2items.get(huId), IHandlingUnitsDAO.HU_ITEMS_COMPARATOR);
+		}
+
+		for (final I_M_HU includedHU : includedHUs)
+		{
+			final I_M_HU_Item parentItem = itemId2item.get(includedHU.getM_HU_Item_Parent_ID());
+			if (parentItem == null)
+			{
+				continue; // shall not happen, because we navigated the tree via the active items
+			}
+			includedHU.setM_HU_Item_Parent(parentItem);
+			parentItemId2includedHUs.put(parentItem.getM_HU_Item_ID(), includedHU);
+		}
+
+		//
+		// M_HU_Storage
+		final List<I_M_HU_Storage> storages = filterByTree(queryBL.createQueryBuilder(I_M_HU_Storage.class, topLevelHU), I_M_HU_Storage.COLUMNNAME_M_HU_ID, huIds)
+				.addOnlyActiveRecordsFilter()
+				.create()
+				.list(I_M_HU_Storage.class);
+		for (final I_M_HU_Storage storage : storages)
+		{
+			storage.setM_HU(huId2hu.get(storage.getM_HU_ID()));
+			huId2storages.put(storage.getM_HU_ID(), storage);
+		}
+
+		//
+		// M_HU_Item_Storage
+		final IQueryBuilder<I_M_HU_Item_Storage> itemStoragesQuery = queryBL.createQueryBuilder(I_M_HU_Item_Storage.class, topLevelHU);
+		if (useRecursiveSql)
+		{
+			itemStoragesQuery.filter(TypedSqlQueryFilter.of(I_M_HU_Item_Storage.COLUMNNAME_M_HU_Item_ID + " IN ("
+					+ "SELECT " + I_M_HU_Item.COLUMNNAME_M_HU_Item_ID + " FROM " + I_M_HU_Item.Table_Name
+					+ " WHERE " + I_M_HU_Item.COLUMNNAME_M_HU_ID + " IN (" + SQL_SelectTreeHUIds + "))",
+					new Object[] { topLevelHU.getM_HU_ID() }));
+		}
+		else
+		{
+			itemStoragesQuery.addInArrayFilter(I_M_HU_Item_Storage.COLUMNNAME_M_HU_Item_ID, itemId2item.keySet());
+		}
+		final List<I_M_HU_Item_Storage> itemStorages = itemStoragesQuery
+				.addOnlyActiveRecordsFilter()
+				.orderBy().addColumn(I_M_HU_Item_Storage.COLUMNNAME_M_HU_Item_Storage_ID).endOrderBy()
+				.create()
+				.list(I_M_HU_Item_Storage.class);
+		for (final I_M_HU_Item_Storage itemStorage : itemStorages)
+		{
+			final I_M_HU_Item item = itemId2item.get(itemStorage.getM_HU_Item_ID());
+			if (item == null)
+			{
+				continue; // the storage of an inactive item; not relevant
+			}
+			itemStorage.setM_HU_Item(item);
+			huItemId2itemStorages.put(item.getM_HU_Item_ID(), itemStorage);
+		}
+
+		//
+		// M_HU_Attribute
+		final List<I_M_HU_Attribute> attributes = filterByTree(queryBL.createQueryBuilder(I_M_HU_Attribute.class, topLevelHU), I_M_HU_Attribute.COLUMNNAME_M_HU_ID, huIds)
+				.addOnlyActiveRecordsFilter()
+				.create()
+				.list(I_M_HU_Attribute.class);
+		for (final I_M_HU_Attribute attribute : attributes)
+		{
+			attribute.setM_HU(huId2hu.get(attribute.getM_HU_ID()));
+			huId2attributes.put(attribute.getM_HU_ID(), attribute);
+		}
+		for (final Integer huId : huId2attributes.keySet())
+		{
+			Collections.sort(huId2attributes.get(huId), HUAttributesBySeqNoComparator.instance);
+		}
+	}
+
+	/**
+	 * @param huIds the tree's HU IDs, or {@code null} if they shall be selected using the recursive SQL
+	 */
+	private <T> IQueryBuilder<T> filterByTree(
+			@NonNull final IQueryBuilder<T> queryBuilder,
+			@NonNull final String huIdColumnName,
+			final Collection<Integer> huIds)
+	{
+		if (huIds == null)
+		{
+			return queryBuilder.filter(TypedSqlQueryFilter.of(huIdColumnName + " IN (" + SQL_SelectTreeHUIds + ")", new Object[] { topLevelHU.getM_HU_ID() }));
+		}
+		return queryBuilder.addInArrayFilter(huIdColumnName, huIds);
+	}
+
+	/**
+	 * Fallback for when recursive SQL is not available; needs two queries per tree level.
+	 */
+	private Set<Integer> collectHUIdsLevelByLevel()
+	{
+		final Set<Integer> huIds = new LinkedHashSet<>();
+		huIds.add(topLevelHU.getM_HU_ID());
+
+		Collection<Integer> currentLevelHUIds = ImmutableList.of(topLevelHU.getM_HU_ID());
+		while (!currentLevelHUIds.isEmpty())
+		{
+			final List<Integer> itemIds = queryBL.createQueryBuilder(I_M_HU_Item.class, topLevelHU)
+					.addInArrayFilter(I_M_HU_Item.COLUMNNAME_M_HU_ID, currentLevelHUIds)
+					.addOnlyActiveRecordsFilter()
+					.create()
+					.listIds();
+			if (itemIds.isEmpty())
+			{
+				break;
+			}
+
+			final List<Integer> includedHUIds = queryBL.createQueryBuilder(I_M_HU.class, topLevelHU)
+					.addInArrayFilter(I_M_HU.COLUMNNAME_M_HU_Item_Parent_ID, itemIds)
+					.create()
+					.listIds();
+
+			currentLevelHUIds = new ArrayList<>();
+			for (final Integer includedHUId : includedHUIds)
+			{
+				if (huIds.add(includedHUId))
+				{
+					currentLevelHUIds.add(includedHUId);
+				}
+			}
+		}
+		return huIds;
+	}
+
+	/** @return the active items of the given HU, ordered like {@link IHandlingUnitsDAO#retrieveItems(I_M_HU)} does it */
+	public List<I_M_HU_Item> getItems(@NonNull final I_M_HU hu)
+	{
+		return huId2items.get(hu.getM_HU_ID());
+	}
+
+	/** @return the included HUs of the given item, ordered by {@code M_HU_ID} */
+	public List<I_M_HU> getIncludedHUs(@NonNull final I_M_HU_Item item)
+	{
+		return parentItemId2includedHUs.get(item.getM_HU_Item_ID());
+	}
+
+	public List<I_M_HU_Storage> getStorages(@NonNull final I_M_HU hu)
+	{
+		return huId2storages.get(hu.getM_HU_ID());
+	}
+
+	public List<I_M_HU_Item_Storage> getItemStorages(@NonNull final I_M_HU_Item item)
+	{
+		return huItemId2itemStorages.get(item.getM_HU_Item_ID());
+	}
+
+	/** @return the active attributes of the given HU, ordered by {@link HUAttributesBySeqNoComparator} */
+	public List<I_M_HU_Attribute> getAttributes(@NonNull final I_M_HU hu)
+	{
+		return huId2attributes.get(hu.getM_HU_ID());
+	}
+}
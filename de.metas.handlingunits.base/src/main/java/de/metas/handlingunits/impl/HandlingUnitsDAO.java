@@ -280,6 +280,12 @@ public class HandlingUnitsDAO implements IHandlingUnitsDAO
 		return result;
 	}
 
+	@Override
+	public void prefetchTreeIfTopLevel(@NonNull final I_M_HU hu)
+	{
+		getHUAndItemsDAO().prefetchTree(hu);
+	}
+
 	@Override
 	public I_M_HU_Item createHUItem(final I_M_HU hu, final I_M_HU_PI_Item piItem)
 	{
@@ -1,13 +1,21 @@
 package de.metas.handlingunits.picking;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
+import org.adempiere.ad.dao.ICompositeQueryUpdater;
 import org.adempiere.ad.dao.IQueryBL;
+import org.adempiere.ad.dao.cache.CacheInvalidateMultiRequest;
+import org.adempiere.ad.dao.cache.CacheInvalidateRequest;
+import org.adempiere.ad.trx.api.ITrxManager;
 import org.adempiere.model.InterfaceWrapperHelper;
 import org.adempiere.util.Services;
+import org.adempiere.util.time.SystemTime;
+import org.compiere.util.CacheMgt;
+import org.compiere.util.Env;
 import org.slf4j.Logger;
 import org.springframework.stereotype.Service;
 
@@ -149,6 +157,63 @@ public class PickingCandidateRepository
 				.list(I_M_Picking_Candidate.class);
 	}
 
+	public List<I_M_Picking_Candidate> retrievePickingCandidatesByPickingSlotIdsAndStatus(
+			@NonNull final Collection<Integer> pickingSlotIds,
+			@NonNull final String status)
+	{
+		// tolerate empty
+		if (pickingSlotIds.isEmpty())
+		{
+			return ImmutableList.of();
+		}
+
+		final IQueryBL queryBL = Services.get(IQueryBL.class);
+		return queryBL.createQueryBuilder(I_M_Picking_Candidate.class)
+				.addOnlyActiveRecordsFilter()
+				.addEqualsFilter(I_M_Picking_Candidate.COLUMNNAME_Status, status)
+				.addInArrayFilter(I_M_Picking_Candidate.COLUMN_M_PickingSlot_ID, pickingSlotIds)
+				.orderBy().addColumn(I_M_Picking_Candidate.COLUMN_M_Picking_Candidate_ID).endOrderBy()
+				.create()
+				.list(I_M_Picking_Candidate.class);
+	}
+
+	/**
+	 * Sets the given status to all given picking candidates, using one SQL UPDATE.
+	 * No model interceptors are fired, but the candidates' cache entries are invalidated.
+	 *
+	 * @return how many candidates were updated
+	 */
+	public int updateStatus(@NonNull final Collection<Integer> pickingCandidateIds, @NonNull final String status)
+	{
+		if (pickingCandidateIds.isEmpty())
+		{
+			return 0;
+		}
+
+		final IQueryBL queryBL = Services.get(IQueryBL.class);
+		final ICompositeQueryUpdater<I_M_Picking_Candidate> queryUpdater = queryBL.createCompositeQueryUpdater(I_M_Picking_Candidate.class)
+				.addSetColumnValue(I_M_Picking_Candidate.COLUMNNAME_Status, status)
+				// the update bypasses the model's save, so we need to set the who-columns ourselves
+				.addSetColumnValue(I_M_Picking_Candidate.COLUMNNAME_Updated, SystemTime.asTimestamp())
+				.addSetColumnValue(I_M_Picking_Candidate.COLUMNNAME_UpdatedBy, Env.getAD_User_ID(Env.getCtx()));
+
+		final int updated = queryBL.createQueryBuilder(I_M_Picking_Candidate.class)
+				.addInArrayFilter(I_M_Picking_Candidate.COLUMN_M_Picking_Candidate_ID, pickingCandidateIds)
+				.create()
+				.updateDirectly(queryUpdater);
+
+		final List<CacheInvalidateRequest> cacheInvalidateRequests = new ArrayList<>(pickingCandidateIds.size());
+		for (final Integer pickingCandidateId : pickingCandidateIds)
+		{
+			cacheInvalidateRequests.add(CacheInvalidateRequest.rootRecord(I_M_Picking_Candidate.Table_Name, pickingCandidateId));
+		}
+		final String trxName = Services.get(ITrxManager.class).getThreadInheritedTrxName();
+		CacheMgt.get().resetLocalNowAndBroadcastOnTrxCommit(trxName, CacheInvalidateMultiRequest.of(cacheInvalidateRequests));
+
+		logger.debug("Updated {} M_Picking_Candidates to Status={}", updated, status);
+		return updated;
+	}
+
 	public boolean hasNotClosedCandidatesForPickingSlot(final int pickingSlotId)
 	{
 		final IQueryBL queryBL = Services.get(IQueryBL.class);
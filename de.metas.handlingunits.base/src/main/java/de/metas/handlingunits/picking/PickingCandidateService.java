@@ -19,6 +19,8 @@ import de.metas.handlingunits.picking.pickingCandidateCommands.AddQtyToHUCommand
 import de.metas.handlingunits.picking.pickingCandidateCommands.ClosePickingCandidateCommand;
 import de.metas.handlingunits.picking.pickingCandidateCommands.ClosePickingCandidateCommand.ClosePickingCandidateCommandBuilder;
 import de.metas.handlingunits.picking.pickingCandidateCommands.ProcessPickingCandidateCommand;
+import de.metas.handlingunits.picking.pickingCandidateCommands.ProcessPickingSlotsCommand;
+import de.metas.handlingunits.picking.pickingCandidateCommands.ProcessPickingSlotsCommand.ProcessPickingSlotsResult;
 import de.metas.handlingunits.picking.pickingCandidateCommands.RemoveHUFromPickingSlotCommand;
 import de.metas.handlingunits.picking.pickingCandidateCommands.RemoveQtyFromHUCommand;
 import de.metas.handlingunits.picking.pickingCandidateCommands.RemoveQtyFromHUCommand.RemoveQtyFromHUCommandBuilder;
@@ -131,6 +133,22 @@ public class PickingCandidateService
 				.perform();
 	}
 
+	/**
+	 * Processes all in-progress {@link I_M_Picking_Candidate}s of the given picking slots in one go and closes those which are not on a rack system picking slot.
+	 * <p>
+	 * Unlike {@link #processForHUIds(List, int, OptionalInt)}, a candidate that fails does not make the others fail. Check the result's errors.
+	 */
+	public ProcessPickingSlotsResult processForPickingSlotIds(@NonNull final Collection<Integer> pickingSlotIds)
+	{
+		return ProcessPickingSlotsCommand.builder()
+				.sourceHUsRepository(sourceHUsRepository)
+				.pickingCandidateRepository(pickingCandidateRepository)
+				.pickingConfigRepository(pickingConfigRepository)
+				.pickingSlotIds(pickingSlotIds)
+				.build()
+				.perform();
+	}
+
 	public void unprocessForHUId(final int huId)
 	{
 		UnProcessPickingCandidateCommand.builder()
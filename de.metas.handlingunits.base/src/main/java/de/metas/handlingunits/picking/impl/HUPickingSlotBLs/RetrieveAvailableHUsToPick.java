@@ -1,11 +1,10 @@
 package de.metas.handlingunits.picking.impl.HUPickingSlotBLs;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.function.Function;
 
 import org.adempiere.model.PlainContextAware;
@@ -97,7 +96,7 @@ public class RetrieveAvailableHUsToPick
 		// Create storage queries from shipment schedules
 
 		final IShipmentScheduleBL shipmentScheduleBL = Services.get(IShipmentScheduleBL.class);
-		final Set<IStorageQuery> storageQueries = new HashSet<>();
+		final List<IStorageQuery> storageQueries = new ArrayList<>();
 		for (final I_M_ShipmentSchedule shipmentSchedule : shipmentSchedules)
 		{
 			final IStorageQuery storageQuery = shipmentScheduleBL.createStorageQuery(shipmentSchedule, considerAttributes);
@@ -105,16 +104,22 @@ public class RetrieveAvailableHUsToPick
 		}
 
 		//
-		// Retrieve Storage records
+		// Retrieve Storage records, one database query per chunk of storage queries
 		final IStorageEngineService storageEngineProvider = Services.get(IStorageEngineService.class);
 		final IStorageEngine storageEngine = storageEngineProvider.getStorageEngine();
 		final IContextAware context = PlainContextAware.createUsingOutOfTransaction();
-		final Collection<IStorageRecord> storageRecords = storageEngine.retrieveStorageRecords(context, storageQueries);
+		final Map<IStorageQuery, List<IStorageRecord>> storageRecordsByQuery = storageEngine.retrieveStorageRecordsByQuery(context, storageQueries);
+
+		// a storage record might be matched by the queries of more than one shipment schedule
+		final Map<String, IStorageRecord> storageRecords = new LinkedHashMap<>();
+		storageRecordsByQuery.values().stream()
+				.flatMap(List::stream)
+				.forEach(storageRecord -> storageRecords.putIfAbsent(storageRecord.getId(), storageRecord));
 
 		//
 		// Fetch VHUs from storage records
 		final List<I_M_HU> vhus = new ArrayList<>();
-		for (final IStorageRecord storageRecord : storageRecords)
+		for (final IStorageRecord storageRecord : storageRecords.values())
 		{
 			addToVhusIfValid(storageRecord, vhus);
 		}
@@ -0,0 +1,434 @@
+package de.metas.handlingunits.picking.pickingCandidateCommands;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.adempiere.ad.dao.IQueryBL;
+import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.exceptions.AdempiereException;
+import org.adempiere.util.GuavaCollectors;
+import org.adempiere.util.Services;
+import org.compiere.util.Env;
+import org.slf4j.Logger;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import de.metas.handlingunits.IHandlingUnitsBL;
+import de.metas.handlingunits.attribute.impl.SaveOnCommitHUAttributesDAO;
+import de.metas.handlingunits.impl.CachedIfInTransactionHUAndItemsDAO;
+import de.metas.handlingunits.model.I_M_HU;
+import de.metas.handlingunits.model.I_M_PickingSlot;
+import de.metas.handlingunits.model.I_M_Picking_Candidate;
+import de.metas.handlingunits.model.X_M_Picking_Candidate;
+import de.metas.handlingunits.picking.IHUPickingSlotBL;
+import de.metas.handlingunits.picking.IHUPickingSlotDAO;
+import de.metas.handlingunits.picking.PickingCandidateRepository;
+import de.metas.handlingunits.sourcehu.HuId2SourceHUsService;
+import de.metas.handlingunits.sourcehu.SourceHUsService;
+import de.metas.handlingunits.storage.IHUStorageFactory;
+import de.metas.handlingunits.storage.impl.SaveOnCommitHUStorageDAO;
+import de.metas.inoutcandidate.model.I_M_ShipmentSchedule;
+import de.metas.logging.LogManager;
+import de.metas.picking.api.PickingConfigRepository;
+import de.metas.picking.service.FreshPackingItemHelper;
+import de.metas.picking.service.IFreshPackingItem;
+import de.metas.picking.service.IPackingContext;
+import de.metas.picking.service.IPackingService;
+import de.metas.picking.service.PackingItemsMap;
+import de.metas.picking.service.impl.HU2PackingItemsAllocator;
+import de.metas.quantity.Quantity;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Singular;
+import lombok.Value;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Process and close all in-progress picking candidates of a set of picking slots in one go.
+ * <p>
+ * It does what {@link ProcessPickingCandidateCommand} and {@link ClosePickingCandidateCommand} do, but
+ * <ul>
+ * <li>retrieves the candidates, their HUs, shipment schedules and picking slots with one query each</li>
+ * <li>allocates each HU to its shipment schedules within a savepoint, so that a failing HU is reported for its candidates and doesn't roll back the others;
+ * the transaction's buffered HU storages and attributes are saved before each savepoint and dropped if the savepoint is rolled back</li>
+ * <li>updates the candidates' status with one SQL UPDATE per status, instead of saving them one by one</li>
+ * <li>adds the HUs to the picking slot queue per picking slot; only if that fails, it falls back to adding them one by one, to find out the failing candidates</li>
+ * </ul>
+ * Like {@link de.metas.handlingunits.picking.PickingCandidateService#processForHUIds(List, int, java.util.OptionalInt)}, only the candidates which are not on a rack system picking slot are closed.
+ *
+ * @author metas-dev <dev@metasfresh.com>
+ *
+ */
+public class ProcessPickingSlotsCommand
+{
+	private static final Logger logger = LogManager.getLogger(ProcessPickingSlotsCommand.class);
+	private final transient IQueryBL queryBL = Services.get(IQueryBL.class);
+	private final transient ITrxManager trxManager = Services.get(ITrxManager.class);
+	private final transient IPackingService packingService = Services.get(IPackingService.class);
+	private final transient IHandlingUnitsBL handlingUnitsBL = Services.get(IHandlingUnitsBL.class);
+	private final transient IHUPickingSlotBL huPickingSlotBL = Services.get(IHUPickingSlotBL.class);
+	private final transient IHUPickingSlotDAO huPickingSlotDAO = Services.get(IHUPickingSlotDAO.class);
+	private final transient SaveOnCommitHUStorageDAO huStorageDAO = new SaveOnCommitHUStorageDAO();
+	private final transient SaveOnCommitHUAttributesDAO huAttributesDAO = new SaveOnCommitHUAttributesDAO();
+	private final transient CachedIfInTransactionHUAndItemsDAO huAndItemsDAO = new CachedIfInTransactionHUAndItemsDAO();
+
+	private final HuId2SourceHUsService sourceHUsRepository;
+	private final PickingCandidateRepository pickingCandidateRepository;
+	private final PickingConfigRepository pickingConfigRepository;
+
+	private final ImmutableSet<Integer> pickingSlotIds;
+
+	private ImmutableMap<Integer, I_M_ShipmentSchedule> shipmentSchedulesById;
+	private ImmutableMap<Integer, I_M_PickingSlot> pickingSlotsById;
+	private final Map<Integer, AdempiereException> errorsByPickingCandidateId = new LinkedHashMap<>();
+
+	@Builder
+	private ProcessPickingSlotsCommand(
+			@NonNull final HuId2SourceHUsService sourceHUsRepository,
+			@NonNull final PickingCandidateRepository pickingCandidateRepository,
+			@NonNull final PickingConfigRepository pickingConfigRepository,
+			@NonNull @Singular final Collection<Integer> pickingSlotIds)
+	{
+		this.sourceHUsRepository = sourceHUsRepository;
+		this.pickingCandidateRepository = pickingCandidateRepository;
+		this.pickingConfigRepository = pickingConfigRepository;
+		this.pickingSlotIds = ImmutableSet.copyOf(pickingSlotIds); // tolerate empty
+	}
+
+	public ProcessPickingSlotsResult perform()
+	{
+		final Stopwatch stopwatch = Stopwatch.createStarted();
+
+		final List<I_M_Picking_Candidate> pickingCandidates = pickingCandidateRepository.retrievePickingCandidatesByPickingSlotIdsAndStatus(pickingSlotIds, X_M_Picking_Candidate.STATUS_IP);
+		if (pickingCandidates.isEmpty())
+		{
+			return ProcessPickingSlotsResult.EMPTY;
+		}
+
+		shipmentSchedulesById = retrieveShipmentSchedules(pickingCandidates);
+		pickingSlotsById = retrievePickingSlots(pickingCandidates);
+
+		final List<I_M_Picking_Candidate> processedCandidates = allocateHUsToShipmentSchedules(pickingCandidates);
+		destroyEmptySourceHUs(extractHUIds(processedCandidates));
+		markCandidates(processedCandidates, X_M_Picking_Candidate.STATUS_PR);
+
+		final List<I_M_Picking_Candidate> closedCandidates = closeCandidatesNotOnRackSystem(processedCandidates);
+		pickingSlotsById.values().forEach(huPickingSlotBL::releasePickingSlotIfPossible);
+
+		logger.info("Processed {} and closed {} of {} picking candidates of M_PickingSlot_IDs={} in {}; {} candidates failed",
+				processedCandidates.size(), closedCandidates.size(), pickingCandidates.size(), pickingSlotIds, stopwatch, errorsByPickingCandidateId.size());
+
+		return ProcessPickingSlotsResult.builder()
+				.processedCandidates(processedCandidates)
+				.closedCandidates(closedCandidates)
+				.errorsByPickingCandidateId(errorsByPickingCandidateId)
+				.build();
+	}
+
+	private ImmutableMap<Integer, I_M_ShipmentSchedule> retrieveShipmentSchedules(final List<I_M_Picking_Candidate> pickingCandidates)
+	{
+		final Set<Integer> shipmentScheduleIds = extractIds(pickingCandidates, I_M_Picking_Candidate::getM_ShipmentSchedule_ID);
+		return queryBL.createQueryBuilder(I_M_ShipmentSchedule.class)
+				.addInArrayFilter(I_M_ShipmentSchedule.COLUMNNAME_M_ShipmentSchedule_ID, shipmentScheduleIds)
+				.create()
+				.stream(I_M_ShipmentSchedule.class)
+				.collect(GuavaCollectors.toImmutableMapByKey(I_M_ShipmentSchedule::getM_ShipmentSchedule_ID));
+	}
+
+	private ImmutableMap<Integer, I_M_PickingSlot> retrievePickingSlots(final List<I_M_Picking_Candidate> pickingCandidates)
+	{
+		final Set<Integer> pickingSlotIds = extractIds(pickingCandidates, I_M_Picking_Candidate::getM_PickingSlot_ID);
+		return queryBL.createQueryBuilder(I_M_PickingSlot.class)
+				.addInArrayFilter(I_M_PickingSlot.COLUMNNAME_M_PickingSlot_ID, pickingSlotIds)
+				.create()
+				.stream(I_M_PickingSlot.class)
+				.collect(GuavaCollectors.toImmutableMapByKey(I_M_PickingSlot::getM_PickingSlot_ID));
+	}
+
+	/**
+	 * @return the candidates whose HUs were allocated
+	 */
+	private List<I_M_Picking_Candidate> allocateHUsToShipmentSchedules(final List<I_M_Picking_Candidate> pickingCandidates)
+	{
+		final ImmutableListMultimap<Integer, I_M_Picking_Candidate> pickingCandidatesByHUId = pickingCandidates.stream()
+				.collect(GuavaCollectors.toImmutableListMultimap(I_M_Picking_Candidate::getM_HU_ID));
+
+		// HU2PackingItemsAllocator wants them to be out of trx
+		final Map<Integer, I_M_HU> husById = retrieveHUs(pickingCandidatesByHUId.keySet(), true);
+		final boolean isAllowOverdelivery = pickingConfigRepository.getPickingConfig().isAllowOverDelivery();
+
+		final List<I_M_Picking_Candidate> processedCandidates = new ArrayList<>(pickingCandidates.size());
+		for (final Integer huId : pickingCandidatesByHUId.keySet())
+		{
+			final List<I_M_Picking_Candidate> huPickingCandidates = pickingCandidatesByHUId.get(huId);
+			final I_M_HU hu = husById.get(huId);
+			if (hu == null)
+			{
+				addError(huPickingCandidates, new AdempiereException("No HU found for M_HU_ID=" + huId));
+				continue;
+			}
+
+			try
+			{
+				runInSavepoint(() -> allocateHUToShipmentSchedules(hu, huPickingCandidates, isAllowOverdelivery));
+				processedCandidates.addAll(huPickingCandidates);
+			}
+			catch (final Exception ex)
+			{
+				addError(huPickingCandidates, ex);
+			}
+		}
+		return processedCandidates;
+	}
+
+	/**
+	 * Runs the given runnable within a savepoint of the thread inherited trx, which is rolled back if the runnable fails.
+	 * <p>
+	 * The HU storages and attributes which are buffered in the trx until commit are not covered by the savepoint.
+	 * So we save them before, and drop them together with the cached HUs and items if the savepoint is rolled back.
+	 */
+	private void runInSavepoint(final Runnable runnable)
+	{
+		huStorageDAO.flush();
+		huAttributesDAO.flush();
+		try
+		{
+			trxManager.runInThreadInheritedTrx(runnable);
+		}
+		catch (final RuntimeException ex)
+		{
+			huStorageDAO.discard();
+			huAttributesDAO.discard();
+			huAndItemsDAO.discard();
+			throw ex;
+		}
+	}
+
+	private void allocateHUToShipmentSchedules(
+			@NonNull final I_M_HU hu,
+			@NonNull final List<I_M_Picking_Candidate> huPickingCandidates,
+			final boolean isAllowOverdelivery)
+	{
+		final IFreshPackingItem itemToPack = createItemToPack(huPickingCandidates);
+
+		final PackingItemsMap packingItemsMap = new PackingItemsMap();
+		packingItemsMap.addUnpackedItem(itemToPack);
+
+		final IPackingContext packingContext = packingService.createPackingContext(Env.getCtx());
+		packingContext.setPackingItemsMap(packingItemsMap);
+		packingContext.setPackingItemsMapKey(huPickingCandidates.get(0).getM_PickingSlot_ID());
+
+		new HU2PackingItemsAllocator()
+				.setItemToPack(itemToPack)
+				.setAllowOverdelivery(isAllowOverdelivery)
+				.setPackingContext(packingContext)
+				.setFromHUs(ImmutableList.of(hu))
+				.allocate();
+	}
+
+	private IFreshPackingItem createItemToPack(final List<I_M_Picking_Candidate> huPickingCandidates)
+	{
+		final Map<I_M_ShipmentSchedule, Quantity> scheds2Qtys = new IdentityHashMap<>();
+		for (final I_M_Picking_Candidate pc : huPickingCandidates)
+		{
+			final I_M_ShipmentSchedule shipmentSchedule = shipmentSchedulesById.get(pc.getM_ShipmentSchedule_ID());
+			if (shipmentSchedule == null)
+			{
+				throw new AdempiereException("No shipment schedule found for M_ShipmentSchedule_ID=" + pc.getM_ShipmentSchedule_ID());
+			}
+			final BigDecimal qty = pc.getQtyPicked();
+			scheds2Qtys.put(shipmentSchedule, Quantity.of(qty, pc.getC_UOM()));
+		}
+		return FreshPackingItemHelper.create(scheds2Qtys);
+	}
+
+	private void destroyEmptySourceHUs(final Set<Integer> huIds)
+	{
+		if (huIds.isEmpty())
+		{
+			return;
+		}
+
+		final SourceHUsService sourceHuService = SourceHUsService.get();
+		final IHUStorageFactory storageFactory = handlingUnitsBL.getStorageFactory();
+
+		// clean up and unselect used up source HUs
+		for (final I_M_HU sourceHU : sourceHUsRepository.retrieveActualSourceHUs(ImmutableList.copyOf(huIds)))
+		{
+			if (!storageFactory.getStorage(sourceHU).isEmpty())
+			{
+				continue;
+			}
+
+			try
+			{
+				trxManager.runInThreadInheritedTrx(() -> {
+					sourceHuService.snapshotHuIfMarkedAsSourceHu(sourceHU);
+					handlingUnitsBL.destroyIfEmptyStorage(sourceHU);
+				});
+				logger.info("Source M_HU with M_HU_ID={} is now destroyed", sourceHU.getM_HU_ID());
+			}
+			catch (final Exception ex)
+			{
+				// the picked HUs are fine anyways, so don't fail because of the source HU
+				logger.warn("Failed destroying the empty source HU {}. Skipped", sourceHU, ex);
+			}
+		}
+	}
+
+	/**
+	 * @return the candidates which were closed
+	 */
+	private List<I_M_Picking_Candidate> closeCandidatesNotOnRackSystem(final List<I_M_Picking_Candidate> processedCandidates)
+	{
+		final ImmutableListMultimap<Integer, I_M_Picking_Candidate> candidatesToCloseByPickingSlotId = processedCandidates.stream()
+				.filter(pc -> !huPickingSlotDAO.isPickingRackSystem(pc.getM_PickingSlot_ID()))
+				.collect(GuavaCollectors.toImmutableListMultimap(I_M_Picking_Candidate::getM_PickingSlot_ID));
+		if (candidatesToCloseByPickingSlotId.isEmpty())
+		{
+			return ImmutableList.of();
+		}
+
+		// addToPickingSlotQueue wants HUs in trx
+		final Map<Integer, I_M_HU> husById = retrieveHUs(extractHUIds(candidatesToCloseByPickingSlotId.values()), false);
+
+		final List<I_M_Picking_Candidate> closedCandidates = new ArrayList<>(candidatesToCloseByPickingSlotId.size());
+		for (final Integer pickingSlotId : candidatesToCloseByPickingSlotId.keySet())
+		{
+			final I_M_PickingSlot pickingSlot = pickingSlotsById.get(pickingSlotId);
+			final List<I_M_Picking_Candidate> pickingSlotCandidates = candidatesToCloseByPickingSlotId.get(pickingSlotId);
+			try
+			{
+				trxManager.runInThreadInheritedTrx(() -> addToPickingSlotQueue(pickingSlot, pickingSlotCandidates, husById));
+				closedCandidates.addAll(pickingSlotCandidates);
+			}
+			catch (final Exception ex)
+			{
+				logger.debug("Failed adding the HUs of {} candidates to {} in one go; retrying one by one", pickingSlotCandidates.size(), pickingSlot, ex);
+				for (final I_M_Picking_Candidate pickingCandidate : pickingSlotCandidates)
+				{
+					try
+					{
+						trxManager.runInThreadInheritedTrx(() -> addToPickingSlotQueue(pickingSlot, ImmutableList.of(pickingCandidate), husById));
+						closedCandidates.add(pickingCandidate);
+					}
+					catch (final Exception candidateEx)
+					{
+						// NOTE: the candidate stays processed, like it does with ClosePickingCandidateCommand
+						addError(ImmutableList.of(pickingCandidate), candidateEx);
+					}
+				}
+			}
+		}
+
+		markCandidates(closedCandidates, X_M_Picking_Candidate.STATUS_CL);
+		return closedCandidates;
+	}
+
+	private void addToPickingSlotQueue(
+			final I_M_PickingSlot pickingSlot,
+			final List<I_M_Picking_Candidate> pickingCandidates,
+			final Map<Integer, I_M_HU> husById)
+	{
+		final List<I_M_HU> hus = pickingCandidates.stream()
+				.map(pc -> husById.get(pc.getM_HU_ID()))
+				.distinct()
+				.collect(ImmutableList.toImmutableList());
+		huPickingSlotBL.addToPickingSlotQueue(pickingSlot, hus);
+	}
+
+	private void markCandidates(final List<I_M_Picking_Candidate> pickingCandidates, final String status)
+	{
+		pickingCandidateRepository.updateStatus(extractIds(pickingCandidates, I_M_Picking_Candidate::getM_Picking_Candidate_ID), status);
+
+		// keep our instances in sync with the database; they won't be saved again
+		pickingCandidates.forEach(pc -> pc.setStatus(status));
+	}
+
+	private Map<Integer, I_M_HU> retrieveHUs(final Collection<Integer> huIds, final boolean outOfTrx)
+	{
+		return (outOfTrx ? queryBL.createQueryBuilderOutOfTrx(I_M_HU.class) : queryBL.createQueryBuilder(I_M_HU.class))
+				.addInArrayFilter(I_M_HU.COLUMN_M_HU_ID, huIds)
+				.create()
+				.stream(I_M_HU.class)
+				.collect(GuavaCollectors.toImmutableMapByKey(I_M_HU::getM_HU_ID));
+	}
+
+	private void addError(final List<I_M_Picking_Candidate> pickingCandidates, final Exception ex)
+	{
+		for (final I_M_Picking_Candidate pickingCandidate : pickingCandidates)
+		{
+			final AdempiereException error = AdempiereException.wrapIfNeeded(ex)
+					.appendParametersToMessage()
+					.setParameter("pickingCandidate", pickingCandidate);
+			errorsByPickingCandidateId.put(pickingCandidate.getM_Picking_Candidate_ID(), error);
+			logger.warn("Failed processing {}. Skipped", pickingCandidate, ex);
+		}
+	}
+
+	private static Set<Integer> extractHUIds(final Collection<I_M_Picking_Candidate> pickingCandidates)
+	{
+		return extractIds(pickingCandidates, I_M_Picking_Candidate::getM_HU_ID);
+	}
+
+	private static Set<Integer> extractIds(final Collection<I_M_Picking_Candidate> pickingCandidates, final Function<I_M_Picking_Candidate, Integer> idExtractor)
+	{
+		return pickingCandidates.stream()
+				.map(idExtractor)
+				.collect(ImmutableSet.toImmutableSet());
+	}
+
+	@Value
+	@Builder
+	public static class ProcessPickingSlotsResult
+	{
+		public static final ProcessPickingSlotsResult EMPTY = builder().build();
+
+		@Singular
+		ImmutableList<I_M_Picking_Candidate> processedCandidates;
+
+		@Singular
+		ImmutableList<I_M_Picking_Candidate> closedCandidates;
+
+		/** Candidates which could not be processed or closed */
+		@Singular("errorByPickingCandidateId")
+		ImmutableMap<Integer, AdempiereException> errorsByPickingCandidateId;
+
+		public boolean hasErrors()
+		{
+			return !errorsByPickingCandidateId.isEmpty();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package de.metas.handlingunits.picking.process;
+
+import java.util.List;
+
+import org.compiere.Adempiere;
+
+import de.metas.handlingunits.picking.PickingCandidateService;
+import de.metas.handlingunits.picking.pickingCandidateCommands.ProcessPickingSlotsCommand.ProcessPickingSlotsResult;
+import de.metas.picking.model.I_M_PickingSlot;
+import de.metas.process.JavaProcess;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Processes and closes the in-progress picking candidates of the selected picking slots in one pass (see {@link PickingCandidateService#processForPickingSlotIds(java.util.Collection)}).
+ * Candidates that fail are logged, but don't prevent the others from being processed.
+ */
+public class M_PickingSlot_ProcessPickingCandidates extends JavaProcess
+{
+	@Override
+	protected String doIt() throws Exception
+	{
+		final List<Integer> pickingSlotIds = retrieveSelectedRecordsQueryBuilder(I_M_PickingSlot.class)
+				.create()
+				.listIds();
+
+		final ProcessPickingSlotsResult result = Adempiere.getBean(PickingCandidateService.class).processForPickingSlotIds(pickingSlotIds);
+		addLog("Processed {} and closed {} picking candidates of {} picking slots",
+				result.getProcessedCandidates().size(), result.getClosedCandidates().size(), pickingSlotIds.size());
+
+		// not returning MSG_Error, because that would roll back the candidates which were processed successfully
+		result.getErrorsByPickingCandidateId().forEach((pickingCandidateId, error) -> addLog("M_Picking_Candidate_ID={}: {}", pickingCandidateId, error.getLocalizedMessage()));
+
+		return MSG_OK;
+	}
+}
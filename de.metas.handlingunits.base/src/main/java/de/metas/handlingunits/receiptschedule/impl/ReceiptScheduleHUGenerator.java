@@ -1,10 +1,19 @@
 package de.metas.handlingunits.receiptschedule.impl;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.adempiere.ad.trx.api.ITrx;
 import org.adempiere.ad.trx.api.ITrxManager;
@@ -14,13 +23,23 @@ import org.adempiere.ad.trx.api.ITrxRunConfig.TrxPropagation;
 import org.adempiere.exceptions.AdempiereException;
 import org.adempiere.model.InterfaceWrapperHelper;
 import org.adempiere.model.PlainContextAware;
+import org.adempiere.service.ISysConfigBL;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
+import org.adempiere.util.concurrent.CustomizableThreadFactory;
+import org.adempiere.util.lang.IAutoCloseable;
 import org.adempiere.util.lang.IContextAware;
 import org.adempiere.util.time.SystemTime;
+import org.compiere.Adempiere;
 import org.compiere.model.I_M_Product;
+import org.compiere.util.Env;
 import org.compiere.util.TrxRunnable;
 import org.compiere.util.TrxRunnableAdapter;
+import org.slf4j.Logger;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import de.metas.handlingunits.IHUContext;
 import de.metas.handlingunits.IHandlingUnitsBL;
@@ -34,6 +53,8 @@ import de.metas.handlingunits.allocation.impl.AllocationUtils;
 import de.metas.handlingunits.allocation.impl.GenericAllocationSourceDestination;
 import de.metas.handlingunits.allocation.impl.GenericListAllocationSourceDestination;
 import de.metas.handlingunits.allocation.impl.HULoader;
+import de.metas.handlingunits.allocation.impl.TotalQtyCUBreakdownCalculator;
+import de.metas.handlingunits.allocation.impl.TotalQtyCUBreakdownCalculator.LUQtys;
 import de.metas.handlingunits.document.IHUAllocations;
 import de.metas.handlingunits.exceptions.HUException;
 import de.metas.handlingunits.impl.IDocumentLUTUConfigurationManager;
@@ -42,11 +63,15 @@ import de.metas.handlingunits.model.I_M_HU_Assignment;
 import de.metas.handlingunits.model.I_M_HU_LUTU_Configuration;
 import de.metas.handlingunits.model.I_M_ReceiptSchedule;
 import de.metas.handlingunits.model.I_M_ReceiptSchedule_Alloc;
+import de.metas.handlingunits.model.X_M_HU;
 import de.metas.handlingunits.receiptschedule.IHUReceiptScheduleBL;
+import de.metas.handlingunits.receiptschedule.impl.ReceiptScheduleHUTrxListener.DeferredAllocation;
 import de.metas.handlingunits.storage.IProductStorage;
 import de.metas.inoutcandidate.api.IReceiptScheduleBL;
+import de.metas.logging.LogManager;
 import de.metas.quantity.Quantity;
 import lombok.NonNull;
+import lombok.Value;
 
 /**
  * Helper class for massive generation of HUs for receipt schedule(s).
@@ -55,6 +80,7 @@ import lombok.NonNull;
  * <li>The respective {@link I_M_ReceiptSchedule_Alloc}s and {@link I_M_HU_Assignment}s are created via {@link ReceiptScheduleHUTrxListener}.
  * <li>This class can also be configured to go with pre existing HUs (if they are still valid) instead of creating new ones,
  * see {@link ILUTUProducerAllocationDestination#setExistingHUs(IHUAllocations)} which is called from this class.
+ * <li>{@link #generateWithinOwnTransaction()} can generate large quantities of LUs in parallel; see {@link #SYSCONFIG_Parallelism}.
  *
  * @author tsa
  *
@@ -82,6 +108,31 @@ public class ReceiptScheduleHUGenerator
 				.setContext(contextToUse);
 	}
 
+	private static final Logger logger = LogManager.getLogger(ReceiptScheduleHUGenerator.class);
+
+	/**
+	 * Number of worker threads which {@link #generateWithinOwnTransaction()} may use to generate the LUs. The default is 1, i.e. no parallel generation.
+	 * <p>
+	 * If greater than one, the LU/TU layout is planned up front, and chunks of LUs are generated in parallel, each in its own transaction.
+	 * The LUs are linked to the receipt schedule afterwards, in one transaction. If anything fails, the LUs that were already generated are destroyed.
+	 * This compensation is not atomic: if destroying fails too, the error is logged and the LUs remain as planning HUs which are not linked to the receipt schedule.
+	 */
+	public static final String SYSCONFIG_Parallelism = "de.metas.handlingunits.receiptschedule.impl.ReceiptScheduleHUGenerator.Parallelism";
+	private static final int DEFAULT_Parallelism = 1;
+
+	/** Minimum number of LUs per parallel worker; fewer LUs are not worth a separate transaction. */
+	public static final String SYSCONFIG_MinLUsPerWorker = "de.metas.handlingunits.receiptschedule.impl.ReceiptScheduleHUGenerator.MinLUsPerWorker";
+	private static final int DEFAULT_MinLUsPerWorker = 10;
+
+	/**
+	 * Gets notified about the progress of a parallel generation; invoked in the caller's thread.
+	 */
+	@FunctionalInterface
+	public interface ProgressListener
+	{
+		void onLUsGenerated(int countLUsGenerated, int countLUsPlanned);
+	}
+
 	// services
 	private final transient IHandlingUnitsBL handlingUnitsBL = Services.get(IHandlingUnitsBL.class);
 	private final transient IHUReceiptScheduleBL huReceiptScheduleBL = Services.get(IHUReceiptScheduleBL.class);
@@ -97,6 +148,8 @@ public class ReceiptScheduleHUGenerator
 	private Quantity _qtyToAllocateTarget = null;
 	//
 	private boolean updateReceiptScheduleDefaultConfiguration = false; // default false, backward compatible; this flag is not considered by #generateAllPlanningHUs_InChunks()
+	private Integer _parallelism = null; // null => use sysconfig
+	private ProgressListener progressListener = null;
 
 	//
 	// Status
@@ -155,6 +208,35 @@ public class ReceiptScheduleHUGenerator
 		return updateReceiptScheduleDefaultConfiguration;
 	}
 
+	/**
+	 * Overrides the {@link #SYSCONFIG_Parallelism} sysconfig.
+	 */
+	public ReceiptScheduleHUGenerator setParallelism(final int parallelism)
+	{
+		assertConfigurable();
+		_parallelism = parallelism;
+		return this;
+	}
+
+	private int getParallelism()
+	{
+		if (_parallelism != null)
+		{
+			return _parallelism;
+		}
+		return Services.get(ISysConfigBL.class).getIntValue(SYSCONFIG_Parallelism, DEFAULT_Parallelism);
+	}
+
+	/**
+	 * Sets the listener to be notified while LUs are generated in parallel. Not notified if the HUs are generated sequentially.
+	 */
+	public ReceiptScheduleHUGenerator setProgressListener(final ProgressListener progressListener)
+	{
+		assertConfigurable();
+		this.progressListener = progressListener;
+		return this;
+	}
+
 	private final Quantity getQtyToAllocateTarget()
 	{
 		if (_qtyToAllocateTarget == null || _qtyToAllocateTarget.signum() <= 0)
@@ -292,8 +374,17 @@ public class ReceiptScheduleHUGenerator
 		final Quantity qtyCUsTotal = getQtyToAllocateTarget();
 		Check.assume(!qtyCUsTotal.isInfinite(), "QtyToAllocate(target) shall not be infinite");
 
-		final IAllocationRequest request = createAllocationRequest(qtyCUsTotal);
-		final List<I_M_HU> hus = generateLUTUHandlingUnitsForQtyToAllocate(request, true); // runInOwntransaction == true
+		final List<I_M_HU> hus;
+		final List<List<LUQtys>> luChunks = planLUChunksForParallelGeneration(qtyCUsTotal);
+		if (!luChunks.isEmpty())
+		{
+			hus = generateLUsInParallel(luChunks);
+		}
+		else
+		{
+			final IAllocationRequest request = createAllocationRequest(qtyCUsTotal);
+			hus = generateLUTUHandlingUnitsForQtyToAllocate(request, true); // runInOwntransaction == true
+		}
 
 		//
 		// Update receipt schedule's LU/TU configuration
@@ -422,6 +513,317 @@ public class ReceiptScheduleHUGenerator
 		return handlingUnits;
 	}
 
+	/**
+	 * Plans the LUs for the given qty, using the current LU/TU configuration, and splits them into one chunk per parallel worker.
+	 *
+	 * @return the LU chunks, or an empty list if the HUs shall be generated sequentially
+	 */
+	private List<List<LUQtys>> planLUChunksForParallelGeneration(@NonNull final Quantity qtyCUsTotal)
+	{
+		final int parallelism = getParallelism();
+		if (parallelism <= 1)
+		{
+			return ImmutableList.of();
+		}
+
+		//
+		// Parallel generation supports only the plain case: one receipt schedule, a concrete LU/TU configuration,
+		// and no planning HUs which the LU/TU producer would have to reuse or destroy.
+		final I_M_ReceiptSchedule receiptSchedule = getSingleReceiptScheduleOrNull();
+		if (receiptSchedule == null)
+		{
+			return ImmutableList.of();
+		}
+		final I_M_HU_LUTU_Configuration lutuConfiguration = getM_HU_LUTU_Configuration();
+		if (lutuConfiguration.getM_HU_LUTU_Configuration_ID() <= 0
+				|| lutuConfigurationFactory.isNoLU(lutuConfiguration)
+				|| lutuConfiguration.isInfiniteQtyTU()
+				|| lutuConfiguration.isInfiniteQtyCU())
+		{
+			return ImmutableList.of();
+		}
+		final boolean hasPlanningHUs = getHUAllocations(receiptSchedule)
+				.getAssignedHUs()
+				.stream()
+				.anyMatch(hu -> X_M_HU.HUSTATUS_Planning.equals(hu.getHUStatus()));
+		if (hasPlanningHUs)
+		{
+			return ImmutableList.of();
+		}
+
+		//
+		// Plan the LUs, like the LU/TU producer would create them
+		final Quantity qtyCUsTotalConv = lutuConfigurationFactory.convertQtyToLUTUConfigurationUOM(qtyCUsTotal.getQty(), qtyCUsTotal.getUOM(), lutuConfiguration);
+		final List<LUQtys> lus = TotalQtyCUBreakdownCalculator.builder()
+				.setQtyCUsTotal(qtyCUsTotalConv.getQty())
+				.setStandardQtyCUsPerTU(lutuConfiguration.getQtyCU())
+				.setStandardQtyTUsPerLU(lutuConfiguration.getQtyTU())
+				.build()
+				.subtractAllLUs();
+		final int countLUs = lutuConfiguration.isInfiniteQtyLU() ? lus.size() : Math.min(lus.size(), lutuConfiguration.getQtyLU().intValueExact());
+
+		final int minLUsPerWorker = Math.max(1, Services.get(ISysConfigBL.class).getIntValue(SYSCONFIG_MinLUsPerWorker, DEFAULT_MinLUsPerWorker));
+		if (countLUs < 2 * minLUsPerWorker)
+		{
+			return ImmutableList.of();
+		}
+
+		//
+		// Split them into consecutive chunks; only the very last LU might be a partial one
+		final int countLUsPerChunk = Math.max(minLUsPerWorker, (countLUs + parallelism - 1) / parallelism);
+		final List<List<LUQtys>> chunks = new ArrayList<>();
+		for (int from = 0; from < countLUs; from += countLUsPerChunk)
+		{
+			chunks.add(ImmutableList.copyOf(lus.subList(from, Math.min(from + countLUsPerChunk, countLUs))));
+		}
+		return chunks;
+	}
+
+	@Value
+	private static class LUChunkResult
+	{
+		int countLUsPlanned;
+		List<Integer> huIds;
+		List<DeferredAllocation> deferredAllocations;
+		Throwable error;
+	}
+
+	/**
+	 * Generates each chunk of LUs in its own worker thread and transaction, without linking them to the receipt schedule.
+	 * Then links all of them in one transaction.
+	 * <p>
+	 * The chunks are not linked within their own transactions, because then all workers would update the same receipt schedule row concurrently,
+	 * and because the chunks which were already committed would have to be undone anyway if another one fails.
+	 * <p>
+	 * All or nothing: if one chunk, the progress listener or the linking fails, all LUs which were generated so far are destroyed and an exception is thrown.
+	 * Each worker and the compensation get their own copy of the context, because the context's {@link Properties} are not thread-safe.
+	 */
+	private List<I_M_HU> generateLUsInParallel(@NonNull final List<List<LUQtys>> luChunks)
+	{
+		markNotConfigurable();
+
+		final Stopwatch stopwatch = Stopwatch.createStarted();
+		final int countLUsPlanned = luChunks.stream().mapToInt(List::size).sum();
+		final int receiptScheduleId = getSingleReceiptScheduleOrNull().getM_ReceiptSchedule_ID();
+		final int lutuConfigurationId = getM_HU_LUTU_Configuration().getM_HU_LUTU_Configuration_ID();
+		final Properties ctx = Env.copyCtx(getContextInitial().getCtx());
+
+		final List<LUChunkResult> results = new ArrayList<>();
+		Throwable firstError = null;
+
+		final ExecutorService executor = createExecutor(Math.min(getParallelism(), luChunks.size()));
+		final CompletionService<LUChunkResult> completionService = new ExecutorCompletionService<>(executor);
+		try
+		{
+			for (final List<LUQtys> luChunk : luChunks)
+			{
+				final Properties workerCtx = Env.copyCtx(ctx);
+				completionService.submit(() -> generateLUChunk(workerCtx, receiptScheduleId, lutuConfigurationId, luChunk));
+			}
+
+			int countLUsGenerated = 0;
+			for (int i = 0; i < luChunks.size() && firstError == null; i++)
+			{
+				final LUChunkResult result = completionService.take().get();
+				results.add(result);
+
+				if (result.getError() != null)
+				{
+					firstError = result.getError();
+				}
+				else
+				{
+					countLUsGenerated += result.getCountLUsPlanned();
+					if (progressListener != null)
+					{
+						progressListener.onLUsGenerated(countLUsGenerated, countLUsPlanned);
+					}
+				}
+			}
+		}
+		catch (final InterruptedException | ExecutionException | RuntimeException e)
+		{
+			firstError = e;
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		if (firstError != null)
+		{
+			// the chunks which were already running when the error occurred might still commit their LUs; collect them too
+			awaitTermination(executor);
+			for (Future<LUChunkResult> future = completionService.poll(); future != null; future = completionService.poll())
+			{
+				results.add(getNow(future));
+			}
+
+			destroyGeneratedLUs(Env.copyCtx(ctx), results);
+			throw AdempiereException.wrapIfNeeded(firstError)
+					.appendParametersToMessage()
+					.setParameter("M_ReceiptSchedule_ID", receiptScheduleId)
+					.setParameter("countLUsPlanned", countLUsPlanned);
+		}
+
+		//
+		// Link the generated LUs to the receipt schedule
+		try
+		{
+			trxManager.run(getClass().getSimpleName(), trxManager.newTrxRunConfigBuilder()
+					.setTrxPropagation(TrxPropagation.REQUIRES_NEW)
+					.setOnRunnableSuccess(OnRunnableSuccess.COMMIT)
+					.build(),
+					new TrxRunnableAdapter()
+					{
+						@Override
+						public void run(final String localTrxName)
+						{
+							final I_M_ReceiptSchedule receiptSchedule = InterfaceWrapperHelper.load(receiptScheduleId, I_M_ReceiptSchedule.class);
+							for (final LUChunkResult result : results)
+							{
+								result.getDeferredAllocations().forEach(deferredAllocation -> ReceiptScheduleHUTrxListener.allocateDeferred(receiptSchedule, deferredAllocation));
+							}
+						}
+					});
+		}
+		catch (final RuntimeException e)
+		{
+			destroyGeneratedLUs(Env.copyCtx(ctx), results);
+			throw e;
+		}
+
+		final List<I_M_HU> hus = new ArrayList<>();
+		results.forEach(result -> result.getHuIds().forEach(huId -> hus.add(InterfaceWrapperHelper.loadOutOfTrx(huId, I_M_HU.class))));
+
+		logger.info("Generated {} LUs in {} chunks for M_ReceiptSchedule_ID={} in {}", countLUsPlanned, luChunks.size(), receiptScheduleId, stopwatch);
+		return hus;
+	}
+
+	private static ExecutorService createExecutor(final int countThreads)
+	{
+		// the in-memory database which is used in unit test mode is not thread-safe; run the chunks one after the other
+		if (Adempiere.isUnitTestMode())
+		{
+			return MoreExecutors.newDirectExecutorService();
+		}
+
+		return Executors.newFixedThreadPool(
+				countThreads,
+				CustomizableThreadFactory.builder()
+						.setThreadNamePrefix(ReceiptScheduleHUGenerator.class.getName())
+						.setDaemon(true)
+						.build());
+	}
+
+	/**
+	 * Generates the given LUs in a new transaction which is committed on success. Runs in a worker thread.
+	 */
+	private LUChunkResult generateLUChunk(
+			@NonNull final Properties ctx,
+			final int receiptScheduleId,
+			final int lutuConfigurationId,
+			@NonNull final List<LUQtys> luChunk)
+	{
+		final List<Integer> huIds = new ArrayList<>();
+		final ReceiptScheduleHUTrxListener deferringListener = ReceiptScheduleHUTrxListener.newDeferringInstance();
+
+		try (final IAutoCloseable c = Env.switchContext(ctx))
+		{
+			trxManager.run(() -> {
+				final I_M_ReceiptSchedule receiptSchedule = InterfaceWrapperHelper.load(receiptScheduleId, I_M_ReceiptSchedule.class);
+				final I_M_HU_LUTU_Configuration lutuConfiguration = InterfaceWrapperHelper.load(lutuConfigurationId, I_M_HU_LUTU_Configuration.class);
+
+				final ILUTUProducerAllocationDestination destination = lutuConfigurationFactory.createLUTUProducerAllocationDestination(lutuConfiguration);
+				destination.setMaxLUs(luChunk.size());
+
+				// the receipt schedule allocations are created afterwards, in one go for all chunks
+				final IMutableHUContext huContext = handlingUnitsBL.createMutableHUContextForProcessing(PlainContextAware.newWithThreadInheritedTrx(ctx));
+				huContext.getTrxListeners().removeListener(ReceiptScheduleHUTrxListener.instance);
+				huContext.getTrxListeners().addListener(deferringListener);
+
+				final BigDecimal qtyCUs = luChunk.stream().map(LUQtys::getQtyCUsPerLU).reduce(BigDecimal.ZERO, BigDecimal::add);
+				final boolean forceQtyAllocation = true; // same as in createAllocationRequest
+				IAllocationRequest request = AllocationUtils.createQtyRequest(
+						huContext,
+						lutuConfiguration.getM_Product(),
+						new Quantity(qtyCUs, lutuConfiguration.getC_UOM()),
+						SystemTime.asDate(),
+						receiptSchedule, // referencedModel,
+						forceQtyAllocation);
+				request = huReceiptScheduleBL.setInitialAttributeValueDefaults(request, receiptSchedule);
+
+				final IAllocationSource source = huReceiptScheduleBL.createAllocationSource(receiptSchedule);
+				final HULoader loader = HULoader.of(source, destination);
+				loader.setAllowPartialUnloads(false);
+				loader.setAllowPartialLoads(true);
+				loader.load(request);
+
+				destination.getCreatedHUs().forEach(hu -> huIds.add(hu.getM_HU_ID()));
+			});
+		}
+		catch (final RuntimeException e)
+		{
+			logger.warn("Failed generating {} LUs for M_ReceiptSchedule_ID={}", luChunk.size(), receiptScheduleId, e);
+			return new LUChunkResult(luChunk.size(), ImmutableList.of(), ImmutableList.of(), e);
+		}
+
+		return new LUChunkResult(luChunk.size(), huIds, deferringListener.getDeferredAllocations(), null);
+	}
+
+	private static LUChunkResult getNow(final Future<LUChunkResult> completedFuture)
+	{
+		try
+		{
+			return completedFuture.get();
+		}
+		catch (final InterruptedException | ExecutionException e)
+		{
+			// generateLUChunk doesn't throw; so that's about a chunk which never started
+			return new LUChunkResult(0, ImmutableList.of(), ImmutableList.of(), e);
+		}
+	}
+
+	private static void awaitTermination(final ExecutorService executor)
+	{
+		try
+		{
+			executor.awaitTermination(5, TimeUnit.MINUTES);
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Destroys the LUs of the given results. They are not linked to anything yet, so this undoes their generation.
+	 */
+	private void destroyGeneratedLUs(@NonNull final Properties ctx, @NonNull final List<LUChunkResult> results)
+	{
+		final List<Integer> huIds = new ArrayList<>();
+		results.forEach(result -> huIds.addAll(result.getHuIds()));
+		if (huIds.isEmpty())
+		{
+			return;
+		}
+
+		try (final IAutoCloseable c = Env.switchContext(ctx))
+		{
+			trxManager.run(() -> {
+				final List<I_M_HU> hus = new ArrayList<>();
+				huIds.forEach(huId -> hus.add(InterfaceWrapperHelper.load(huId, I_M_HU.class)));
+
+				final IMutableHUContext huContext = handlingUnitsBL.createMutableHUContextForProcessing(PlainContextAware.newWithThreadInheritedTrx(ctx));
+				handlingUnitsBL.markDestroyed(huContext, hus);
+			});
+		}
+		catch (final RuntimeException e)
+		{
+			logger.error("Failed destroying the generated LUs {}", huIds, e);
+		}
+	}
+
 	private IAllocationSource createAllocationSource()
 	{
 		final List<I_M_ReceiptSchedule> receiptSchedules = getReceiptSchedules();
@@ -23,6 +23,8 @@ package de.metas.handlingunits.receiptschedule.impl;
  */
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.adempiere.model.InterfaceWrapperHelper;
 import org.adempiere.util.Check;
@@ -41,6 +43,8 @@ import de.metas.handlingunits.model.I_M_HU_Trx_Line;
 import de.metas.handlingunits.model.I_M_ReceiptSchedule;
 import de.metas.handlingunits.model.I_M_ReceiptSchedule_Alloc;
 import de.metas.handlingunits.receiptschedule.IHUReceiptScheduleDAO;
+import lombok.NonNull;
+import lombok.Value;
 
 /**
  *
@@ -53,10 +57,49 @@ import de.metas.handlingunits.receiptschedule.IHUReceiptScheduleDAO;
  */
 public final class ReceiptScheduleHUTrxListener implements IHUTrxListener
 {
-	public static final ReceiptScheduleHUTrxListener instance = new ReceiptScheduleHUTrxListener();
+	public static final ReceiptScheduleHUTrxListener instance = new ReceiptScheduleHUTrxListener(null);
 
-	private ReceiptScheduleHUTrxListener()
+	/**
+	 * Creates a listener which does not create the {@link I_M_ReceiptSchedule_Alloc}s right away, but only collects them.
+	 * They can be created later, using {@link #allocateDeferred(I_M_ReceiptSchedule, DeferredAllocation)}.
+	 * <p>
+	 * To be used instead of {@link #instance} in the HU context of {@link ReceiptScheduleHUGenerator}'s parallel workers;
+	 * they shall not update the receipt schedule from their own transactions.
+	 */
+	static ReceiptScheduleHUTrxListener newDeferringInstance()
+	{
+		return new ReceiptScheduleHUTrxListener(new ArrayList<>());
+	}
+
+	/**
+	 * A receipt schedule allocation which was collected by a {@link #newDeferringInstance() deferring listener}.
+	 * The LU is not recorded, because the TU might still be moved to another LU.
+	 */
+	@Value
+	static class DeferredAllocation
+	{
+		int receiptScheduleId;
+		int tuHUId;
+		int vhuId;
+		BigDecimal qty;
+		int uomId;
+	}
+
+	/** Collected allocations, or {@code null} if the allocations shall be created right away. */
+	private final List<DeferredAllocation> deferredAllocations;
+
+	private ReceiptScheduleHUTrxListener(final List<DeferredAllocation> deferredAllocations)
 	{
+		this.deferredAllocations = deferredAllocations;
+	}
+
+	/**
+	 * @return the allocations that were collected so far; only available for listeners which were created by {@link #newDeferringInstance()}
+	 */
+	List<DeferredAllocation> getDeferredAllocations()
+	{
+		Check.assumeNotNull(deferredAllocations, "this listener shall be a deferring one: {}", this);
+		return deferredAllocations;
 	}
 
 	/**
@@ -125,6 +168,17 @@ public final class ReceiptScheduleHUTrxListener implements IHUTrxListener
 			luHU = handlingUnitsBL.getLoadingUnitHU(tuHU);
 		}
 
+		if (deferredAllocations != null)
+		{
+			deferredAllocations.add(new DeferredAllocation(
+					receiptSchedule.getM_ReceiptSchedule_ID(),
+					tuHU.getM_HU_ID(),
+					vhu == null ? -1 : vhu.getM_HU_ID(),
+					qtyToAllocateOnHU,
+					uom.getC_UOM_ID()));
+			return;
+		}
+
 		//
 		// Create TU/LU allocation to Receipt Schedule
 		final ReceiptScheduleHUAllocations huAllocations = new ReceiptScheduleHUAllocations(receiptSchedule);
@@ -135,12 +189,50 @@ public final class ReceiptScheduleHUTrxListener implements IHUTrxListener
 		huAllocations.allocate(luHU, tuHU, vhu, qtyToAllocateOnHU, uom, deleteOldTUAllocations);
 	}
 
+	/**
+	 * Creates the given allocation, like this listener would have done right away if it wasn't a deferring one.
+	 * <p>
+	 * Shall be called in the given {@code receiptSchedule}'s transaction.
+	 */
+	static void allocateDeferred(
+			@NonNull final I_M_ReceiptSchedule receiptSchedule,
+			@NonNull final DeferredAllocation deferredAllocation)
+	{
+		Check.assume(receiptSchedule.getM_ReceiptSchedule_ID() == deferredAllocation.getReceiptScheduleId(),
+				"{} shall be about {}", deferredAllocation, receiptSchedule);
+
+		final I_M_HU tuHU = InterfaceWrapperHelper.create(
+				InterfaceWrapperHelper.getCtx(receiptSchedule),
+				deferredAllocation.getTuHUId(),
+				I_M_HU.class,
+				InterfaceWrapperHelper.getTrxName(receiptSchedule));
+		final I_M_HU vhu = deferredAllocation.getVhuId() > 0
+				? InterfaceWrapperHelper.create(
+						InterfaceWrapperHelper.getCtx(receiptSchedule),
+						deferredAllocation.getVhuId(),
+						I_M_HU.class,
+						InterfaceWrapperHelper.getTrxName(receiptSchedule))
+				: null;
+		final I_M_HU luHU = Services.get(IHandlingUnitsBL.class).getLoadingUnitHU(tuHU);
+		final I_C_UOM uom = InterfaceWrapperHelper.loadOutOfTrx(deferredAllocation.getUomId(), I_C_UOM.class);
+
+		final ReceiptScheduleHUAllocations huAllocations = new ReceiptScheduleHUAllocations(receiptSchedule);
+		final boolean deleteOldTUAllocations = false;
+		huAllocations.allocate(luHU, tuHU, vhu, deferredAllocation.getQty(), uom, deleteOldTUAllocations);
+	}
+
 	/**
 	 * Change all {@link I_M_ReceiptSchedule_Alloc}s which are about the given TU and set the new LU to them.
 	 */
 	@Override
 	public void huParentChanged(final I_M_HU hu, final I_M_HU_Item parentHUItemOld)
 	{
+		// the deferred allocations don't have an LU yet, so there is nothing to update
+		if (deferredAllocations != null)
+		{
+			return;
+		}
+
 		final IHandlingUnitsBL handlingUnitsBL = Services.get(IHandlingUnitsBL.class);
 
 		// If it's not an TU or VHU, we shall do nothing
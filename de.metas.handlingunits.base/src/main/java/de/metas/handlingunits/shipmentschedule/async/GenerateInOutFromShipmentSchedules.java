@@ -25,25 +25,43 @@ package de.metas.handlingunits.shipmentschedule.async;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 import org.adempiere.ad.dao.IQueryBuilder;
 import org.adempiere.ad.dao.IQueryOrderBy.Direction;
 import org.adempiere.ad.dao.IQueryOrderBy.Nulls;
 import org.adempiere.ad.trx.api.ITrx;
+import org.adempiere.ad.trx.api.ITrxManager;
 import org.adempiere.ad.trx.processor.api.FailTrxItemExceptionHandler;
 import org.adempiere.exceptions.AdempiereException;
 import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.service.ISysConfigBL;
 import org.adempiere.util.Check;
+import org.adempiere.util.ILoggable;
 import org.adempiere.util.Loggables;
 import org.adempiere.util.Services;
 import org.adempiere.util.api.IParams;
+import org.adempiere.util.concurrent.CustomizableThreadFactory;
+import org.adempiere.util.lang.IAutoCloseable;
 import org.adempiere.util.lang.IContextAware;
 import org.adempiere.util.time.SystemTime;
+import org.compiere.Adempiere;
 import org.compiere.model.I_M_InOutLine;
+import org.compiere.util.Env;
 import org.slf4j.Logger;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import ch.qos.logback.classic.Level;
 import de.metas.async.api.IQueueDAO;
@@ -81,6 +99,7 @@ import de.metas.inoutcandidate.api.InOutGenerateResult;
 import de.metas.inoutcandidate.model.I_M_ShipmentSchedule;
 import de.metas.logging.LogManager;
 import lombok.NonNull;
+import lombok.Value;
 
 /**
  * Generate Shipments from given shipment schedules by processing enqueued work packages.<br>
@@ -108,11 +127,36 @@ public class GenerateInOutFromShipmentSchedules extends WorkpackageProcessorAdap
 
 	private static final String MSG_NoQtyPicked = "MSG_NoQtyPicked";
 
+	/**
+	 * If greater than one, the schedules are grouped by their effective bpartner and the groups' shipments are generated in parallel, each group in its own transaction.
+	 * Only if the shipments are completed; see {@link #getParallelism(boolean)}.
+	 */
+	public static final String SYSCONFIG_Parallelism = "de.metas.handlingunits.shipmentschedule.async.GenerateInOutFromShipmentSchedules.Parallelism";
+	private static final int DEFAULT_Parallelism = 1;
+
 	@Override
 	public Result processWorkPackage(final I_C_Queue_WorkPackage workpackage_NOTUSED, final String localTrxName_NOTUSED)
 	{
 		final List<I_M_ShipmentSchedule> shipmentSchedules = retriveShipmentSchedules();
 
+		final boolean isCompleteShipments = getParameters().getParameterAsBool(ShipmentScheduleWorkPackageParameters.PARAM_IsCompleteShipments);
+		final int parallelism = getParallelism(isCompleteShipments);
+		final List<List<I_M_ShipmentSchedule>> bpartnerGroups = parallelism > 1 ? groupByBPartner(shipmentSchedules) : ImmutableList.of(shipmentSchedules);
+		if (bpartnerGroups.size() > 1)
+		{
+			generateShipmentsInParallel(bpartnerGroups, parallelism, this::generateShipments);
+		}
+		else
+		{
+			final InOutGenerateResult result = generateShipments(shipmentSchedules);
+			Loggables.get().addLog("Generated: {}", result);
+		}
+
+		return Result.SUCCESS;
+	}
+
+	private InOutGenerateResult generateShipments(@NonNull final List<I_M_ShipmentSchedule> shipmentSchedules)
+	{
 		// Create candidates
 		final List<ShipmentScheduleWithHU> shipmentSchedulesWithHU = retrieveCandidates(shipmentSchedules);
 		if (shipmentSchedulesWithHU.isEmpty())
@@ -139,7 +183,7 @@ public class GenerateInOutFromShipmentSchedules extends WorkpackageProcessorAdap
 			manualPackingMaterial = true;
 		}
 
-		final InOutGenerateResult result = Services.get(IHUShipmentScheduleBL.class)
+		return Services.get(IHUShipmentScheduleBL.class)
 				.createInOutProducerFromShipmentSchedule()
 				.setProcessShipments(isCompleteShipments)
 				.setCreatePackingLines(createPackingLines)
@@ -149,9 +193,153 @@ public class GenerateInOutFromShipmentSchedules extends WorkpackageProcessorAdap
 				// Think about HUs which are linked to multiple shipments: you will not see then in Aggregation POS because are already assigned, but u are not able to create shipment from them again.
 				.setTrxItemExceptionHandler(FailTrxItemExceptionHandler.instance)
 				.createShipments(shipmentSchedulesWithHU);
-		Loggables.get().addLog("Generated: {}", result);
+	}
 
-		return Result.SUCCESS;
+	/**
+	 * @return the configured {@link #SYSCONFIG_Parallelism}, but one if the shipments are not completed.
+	 *         Only completed shipments make sure that a retry of the failed workpackage skips the schedules which the successful groups already shipped.
+	 */
+	@VisibleForTesting
+	static int getParallelism(final boolean isCompleteShipments)
+	{
+		if (!isCompleteShipments)
+		{
+			return 1;
+		}
+		return Services.get(ISysConfigBL.class).getIntValue(SYSCONFIG_Parallelism, DEFAULT_Parallelism);
+	}
+
+	/**
+	 * Splits the given schedules by their effective bpartner. Schedules of different bpartners never end up in the same shipment, so those groups can be shipped independently of each other.
+	 *
+	 * @return the groups, in the order of their first schedule; each group in the order of the given list
+	 */
+	@VisibleForTesting
+	List<List<I_M_ShipmentSchedule>> groupByBPartner(@NonNull final List<I_M_ShipmentSchedule> shipmentSchedules)
+	{
+		final Map<Integer, List<I_M_ShipmentSchedule>> groupsByBPartnerId = new LinkedHashMap<>();
+		for (final I_M_ShipmentSchedule shipmentSchedule : shipmentSchedules)
+		{
+			final int bpartnerId = shipmentScheduleEffectiveValuesBL.getC_BPartner_ID(shipmentSchedule);
+			groupsByBPartnerId.computeIfAbsent(bpartnerId, k -> new ArrayList<>()).add(shipmentSchedule);
+		}
+		return ImmutableList.copyOf(groupsByBPartnerId.values());
+	}
+
+	/**
+	 * Generates the shipments of each bpartner group in its own worker thread and transaction.
+	 * <p>
+	 * A failing group is rolled back on its own, i.e. the shipments of the other groups are committed anyways.
+	 * In that case, an exception is thrown after all groups are done, so that the workpackage is flagged as error and can be retried;
+	 * the schedules which were already shipped are skipped then, because their shipments were completed (see {@link #getParallelism(boolean)}).
+	 * <p>
+	 * Each worker gets its own copy of the caller's context, because the shipment generation changes the context it runs with.
+	 *
+	 * @param shipmentsGenerator generates the shipments of one group, within the worker's transaction
+	 */
+	@VisibleForTesting
+	void generateShipmentsInParallel(
+			@NonNull final List<List<I_M_ShipmentSchedule>> bpartnerGroups,
+			final int parallelism,
+			@NonNull final Function<List<I_M_ShipmentSchedule>, InOutGenerateResult> shipmentsGenerator)
+	{
+		final Properties ctx = Env.getCtx();
+		final ILoggable loggable = Loggables.get();
+
+		// the workpackage's loggable is not meant to be shared between threads
+		final ILoggable workerLoggable = (msg, msgParameters) -> {
+			synchronized (loggable)
+			{
+				loggable.addLog(msg, msgParameters);
+			}
+		};
+
+		final List<GroupResult> results = new ArrayList<>();
+		final ExecutorService executor = createExecutor(Math.min(parallelism, bpartnerGroups.size()));
+		try
+		{
+			final List<Future<GroupResult>> futures = new ArrayList<>();
+			for (final List<I_M_ShipmentSchedule> bpartnerGroup : bpartnerGroups)
+			{
+				final Properties workerCtx = Env.copyCtx(ctx);
+				futures.add(executor.submit(() -> generateShipmentsForGroup(workerCtx, workerLoggable, bpartnerGroup, shipmentsGenerator)));
+			}
+			for (final Future<GroupResult> future : futures)
+			{
+				results.add(future.get());
+			}
+		}
+		catch (final InterruptedException | ExecutionException e)
+		{
+			throw AdempiereException.wrapIfNeeded(e);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		final List<GroupResult> failedResults = results.stream()
+				.filter(result -> result.getError() != null)
+				.collect(ImmutableList.toImmutableList());
+		Loggables.get().addLog("Generated shipments for {} of {} bpartners", results.size() - failedResults.size(), results.size());
+
+		if (!failedResults.isEmpty())
+		{
+			throw new AdempiereException(failedResults.size() + " of " + results.size() + " bpartners could not be shipped; see the log for details")
+					.appendParametersToMessage()
+					.setParameter("failedResults", failedResults);
+		}
+	}
+
+	private static ExecutorService createExecutor(final int countThreads)
+	{
+		// the in-memory database which is used in unit test mode is not thread-safe; run the groups one after the other
+		if (Adempiere.isUnitTestMode())
+		{
+			return MoreExecutors.newDirectExecutorService();
+		}
+
+		return Executors.newFixedThreadPool(
+				countThreads,
+				CustomizableThreadFactory.builder()
+						.setThreadNamePrefix(GenerateInOutFromShipmentSchedules.class.getName())
+						.setDaemon(true)
+						.build());
+	}
+
+	private GroupResult generateShipmentsForGroup(
+			@NonNull final Properties ctx,
+			@NonNull final ILoggable loggable,
+			@NonNull final List<I_M_ShipmentSchedule> bpartnerGroup,
+			@NonNull final Function<List<I_M_ShipmentSchedule>, InOutGenerateResult> shipmentsGenerator)
+	{
+		final int bpartnerId = shipmentScheduleEffectiveValuesBL.getC_BPartner_ID(bpartnerGroup.get(0));
+		final Stopwatch stopwatch = Stopwatch.createStarted();
+
+		try (final IAutoCloseable contextRestorer = Env.switchContext(ctx);
+				final IAutoCloseable loggableRestorer = Loggables.temporarySetLoggable(loggable))
+		{
+			final InOutGenerateResult result = Services.get(ITrxManager.class).call(() -> {
+				bpartnerGroup.forEach(shipmentSchedule -> InterfaceWrapperHelper.setTrxName(shipmentSchedule, ITrx.TRXNAME_ThreadInherited));
+				return shipmentsGenerator.apply(bpartnerGroup);
+			});
+			loggable.addLog("C_BPartner_ID={}: generated {} in {}", bpartnerId, result, stopwatch);
+			return new GroupResult(bpartnerId, bpartnerGroup.size(), null);
+		}
+		catch (final RuntimeException e)
+		{
+			logger.error("Failed generating shipments for C_BPartner_ID={}", bpartnerId, e);
+			loggable.addLog("C_BPartner_ID={}: failed generating shipments for {} schedules: {}", bpartnerId, bpartnerGroup.size(), e.getLocalizedMessage());
+			return new GroupResult(bpartnerId, bpartnerGroup.size(), e);
+		}
+	}
+
+	@Value
+	private static class GroupResult
+	{
+		int bpartnerId;
+		int countSchedules;
+		Throwable error;
 	}
 
 	/**
@@ -22,15 +22,20 @@ package de.metas.handlingunits.snapshot.impl;
  * #L%
  */
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import javax.annotation.OverridingMethodsMustInvokeSuper;
 
 import org.adempiere.ad.dao.IQueryBL;
 import org.adempiere.ad.dao.IQueryBuilder;
+import org.adempiere.ad.dao.cache.CacheInvalidateMultiRequest;
+import org.adempiere.ad.dao.impl.TypedSqlQueryFilter;
 import org.adempiere.ad.trx.api.ITrx;
 import org.adempiere.ad.trx.api.ITrxManager;
 import org.adempiere.exceptions.AdempiereException;
@@ -41,8 +46,15 @@ import org.adempiere.util.Services;
 import org.adempiere.util.lang.IContextAware;
 import org.adempiere.util.lang.ObjectUtils;
 import org.adempiere.util.text.annotation.ToStringBuilder;
+import org.compiere.Adempiere;
+import org.compiere.util.CacheMgt;
+import org.compiere.util.DB;
+import org.compiere.util.Env;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSet;
 
 import de.metas.handlingunits.exceptions.HUException;
 import de.metas.handlingunits.snapshot.ISnapshotHandler;
@@ -50,6 +62,12 @@ import de.metas.handlingunits.snapshot.ISnapshotHandler;
 abstract class AbstractSnapshotHandler<ModelType, SnapshotModelType, ParentModelType>
 		implements ISnapshotHandler<ModelType, SnapshotModelType, ParentModelType>
 {
+	private static final String COLUMNNAME_Snapshot_UUID = "Snapshot_UUID";
+	private static final String COLUMNNAME_Created = "Created";
+	private static final String COLUMNNAME_CreatedBy = "CreatedBy";
+	private static final String COLUMNNAME_Updated = "Updated";
+	private static final String COLUMNNAME_UpdatedBy = "UpdatedBy";
+
 	// services
 	private final transient IQueryBL queryBL = Services.get(IQueryBL.class);
 	protected final transient ITrxManager trxManager = Services.get(ITrxManager.class);
@@ -359,4 +377,221 @@ abstract class AbstractSnapshotHandler<ModelType, SnapshotModelType, ParentModel
 	{
 		return queryBL.createQueryBuilder(modelClass, getContext());
 	}
+
+	/**
+	 * Adds a filter which accepts only the given IDs.
+	 * <p>
+	 * On a database, the IDs are passed as one array parameter (i.e. {@code ColumnName = ANY(?)}), so the SQL does not grow with the number of IDs.
+	 */
+	protected static final <T> IQueryBuilder<T> addInIdsFilter(final IQueryBuilder<T> queryBuilder, final String columnName, final Collection<Integer> ids)
+	{
+		if (Adempiere.isUnitTestMode())
+		{
+			return queryBuilder.addInArrayFilter(columnName, ids);
+		}
+		return queryBuilder.filter(TypedSqlQueryFilter.of(columnName + " = ANY(?::numeric[])", new Object[] { toSqlArray(ids) }));
+	}
+
+	/**
+	 * @return the given IDs as postgresql array literal (e.g. <code>{1,2,3}</code>), to be used as parameter for <code>?::numeric[]</code>
+	 */
+	protected static final String toSqlArray(final Collection<Integer> ids)
+	{
+		return "{" + Joiner.on(",").join(ids) + "}";
+	}
+
+	/**
+	 * Restores all models of the given parents from their snapshots.
+	 * <p>
+	 * This implementation calls {@link #restoreModelsFromSnapshotsByParent(Object)} for each parent.
+	 * Handlers whose models don't need model interceptors and {@link #saveRestoredModel(Object, Object)} may override it
+	 * and restore the models with one SQL UPDATE from the snapshot table; see {@link #restoreModelsFromSnapshotsByParentIds(Class, Class, String, Set, String)}.
+	 */
+	protected void restoreModelsFromSnapshotsByParents(final Collection<ParentModelType> parentModels)
+	{
+		for (final ParentModelType parentModel : parentModels)
+		{
+			restoreModelsFromSnapshotsByParent(parentModel);
+		}
+	}
+
+	/**
+	 * Set based implementation of {@link #restoreModelsFromSnapshotsByParents(Collection)} for handlers where the models and their snapshots are linked to the parent by the same column.
+	 * <p>
+	 * Like {@link #restoreModelAsNew(Object)}, it fails if a model was deleted after the snapshot was taken.
+	 *
+	 * @param sqlSetWhenSnapshotIsMissing SQL set clause (e.g. <code>Qty=0</code>) for the models which have no snapshot; the SQL equivalent of {@link #restoreModelWhenSnapshotIsMissing(Object)}.
+	 *            If <code>null</code>, a missing snapshot is not supported and an exception is thrown.
+	 */
+	protected final void restoreModelsFromSnapshotsByParentIds(
+			final Class<ModelType> modelClass,
+			final Class<SnapshotModelType> snapshotModelClass,
+			final String parentColumnName,
+			final Set<Integer> parentIds,
+			final String sqlSetWhenSnapshotIsMissing)
+	{
+		if (parentIds.isEmpty())
+		{
+			return;
+		}
+
+		if (Adempiere.isUnitTestMode())
+		{
+			restoreModelsFromSnapshotsByParentIdsInMemory(modelClass, snapshotModelClass, parentColumnName, parentIds);
+			return;
+		}
+
+		final String modelTableName = InterfaceWrapperHelper.getTableName(modelClass);
+		final String trxName = getContext().getTrxName();
+		final int updatedBy = Env.getAD_User_ID(getContext().getCtx());
+		final String parentIdsArray = toSqlArray(parentIds);
+
+		//
+		// Models which were deleted after the snapshot was taken: we can't restore them from ashes
+		{
+			final int countModelIsMissing = DB.getSQLValueEx(trxName,
+					buildSqlCountModelIsMissing(modelClass, snapshotModelClass, parentColumnName),
+					getSnapshotId(), parentIdsArray);
+			if (countModelIsMissing > 0)
+			{
+				throw new HUException("Cannot restore " + modelTableName + " because " + countModelIsMissing + " record(s) were deleted after the snapshot was taken")
+						.setParameter("snapshotId", getSnapshotId());
+			}
+		}
+
+		//
+		// Models which have a snapshot: copy all values from it
+		DB.executeUpdateEx(buildSqlUpdateFromSnapshot(modelClass, snapshotModelClass, parentColumnName),
+				new Object[] { updatedBy, getSnapshotId(), parentIdsArray },
+				trxName);
+
+		//
+		// Models which were created after the snapshot was taken
+		if (sqlSetWhenSnapshotIsMissing == null)
+		{
+			final int countSnapshotIsMissing = DB.getSQLValueEx(trxName,
+					"SELECT COUNT(1) FROM " + modelTableName + " t" + buildSqlWhereSnapshotIsMissing(modelClass, snapshotModelClass, parentColumnName),
+					parentIdsArray, getSnapshotId(), parentIdsArray);
+			if (countSnapshotIsMissing > 0)
+			{
+				throw new HUException("Cannot restore " + modelTableName + " because snapshot is missing for " + countSnapshotIsMissing + " record(s)")
+						.setParameter("snapshotId", getSnapshotId());
+			}
+		}
+		else
+		{
+			DB.executeUpdateEx(buildSqlUpdateWhenSnapshotIsMissing(modelClass, snapshotModelClass, parentColumnName, sqlSetWhenSnapshotIsMissing),
+					new Object[] { updatedBy, parentIdsArray, getSnapshotId(), parentIdsArray },
+					trxName);
+		}
+
+		CacheMgt.get().resetLocalNowAndBroadcastOnTrxCommit(trxName, CacheInvalidateMultiRequest.allRecordsForTable(modelTableName));
+	}
+
+	/**
+	 * @return SQL which copies the values of the snapshots of the given parents to their models; parameters: UpdatedBy, Snapshot_UUID, parent IDs array
+	 */
+	@VisibleForTesting
+	static String buildSqlUpdateFromSnapshot(final Class<?> modelClass, final Class<?> snapshotModelClass, final String parentColumnName)
+	{
+		final String keyColumnName = InterfaceWrapperHelper.getKeyColumnName(modelClass);
+
+		final Set<String> columnNames = new TreeSet<>(InterfaceWrapperHelper.getModelColumnNames(modelClass));
+		columnNames.retainAll(InterfaceWrapperHelper.getModelColumnNames(snapshotModelClass));
+		columnNames.removeAll(ImmutableSet.of(keyColumnName, COLUMNNAME_Created, COLUMNNAME_CreatedBy, COLUMNNAME_Updated, COLUMNNAME_UpdatedBy));
+
+		final StringBuilder sql = new StringBuilder("UPDATE " + InterfaceWrapperHelper.getTableName(modelClass) + " t SET ");
+		for (final String columnName : columnNames)
+		{
+			sql.append(columnName).append("=s.").append(columnName).append(", ");
+		}
+		sql.append(COLUMNNAME_Updated + "=now(), " + COLUMNNAME_UpdatedBy + "=?")
+				.append(" FROM " + InterfaceWrapperHelper.getTableName(snapshotModelClass) + " s")
+				.append(" WHERE s." + COLUMNNAME_Snapshot_UUID + "=? AND s." + parentColumnName + " = ANY(?::numeric[])")
+				.append(" AND t." + keyColumnName + "=s." + keyColumnName);
+		return sql.toString();
+	}
+
+	/**
+	 * @return SQL which updates the models of the given parents which have no snapshot; parameters: UpdatedBy, parent IDs array, Snapshot_UUID, parent IDs array
+	 */
+	@VisibleForTesting
+	static String buildSqlUpdateWhenSnapshotIsMissing(final Class<?> modelClass, final Class<?> snapshotModelClass, final String parentColumnName, final String sqlSetWhenSnapshotIsMissing)
+	{
+		return "UPDATE " + InterfaceWrapperHelper.getTableName(modelClass) + " t"
+				+ " SET " + sqlSetWhenSnapshotIsMissing + ", " + COLUMNNAME_Updated + "=now(), " + COLUMNNAME_UpdatedBy + "=?"
+				+ buildSqlWhereSnapshotIsMissing(modelClass, snapshotModelClass, parentColumnName);
+	}
+
+	/**
+	 * @return SQL where clause (on model table alias <code>t</code>) for the models of the given parents which have no snapshot; parameters: parent IDs array, Snapshot_UUID, parent IDs array
+	 */
+	private static String buildSqlWhereSnapshotIsMissing(final Class<?> modelClass, final Class<?> snapshotModelClass, final String parentColumnName)
+	{
+		final String keyColumnName = InterfaceWrapperHelper.getKeyColumnName(modelClass);
+		return " WHERE t." + parentColumnName + " = ANY(?::numeric[])"
+				+ " AND NOT EXISTS (SELECT 1 FROM " + InterfaceWrapperHelper.getTableName(snapshotModelClass) + " s"
+				+ " WHERE s." + COLUMNNAME_Snapshot_UUID + "=? AND s." + parentColumnName + " = ANY(?::numeric[]) AND s." + keyColumnName + "=t." + keyColumnName + ")";
+	}
+
+	/**
+	 * @return SQL which counts the snapshots of the given parents whose models were deleted; parameters: Snapshot_UUID, parent IDs array
+	 */
+	@VisibleForTesting
+	static String buildSqlCountModelIsMissing(final Class<?> modelClass, final Class<?> snapshotModelClass, final String parentColumnName)
+	{
+		final String modelTableName = InterfaceWrapperHelper.getTableName(modelClass);
+		final String keyColumnName = InterfaceWrapperHelper.getKeyColumnName(modelClass);
+		return "SELECT COUNT(1) FROM " + InterfaceWrapperHelper.getTableName(snapshotModelClass) + " s"
+				+ " WHERE s." + COLUMNNAME_Snapshot_UUID + "=? AND s." + parentColumnName + " = ANY(?::numeric[])"
+				+ " AND NOT EXISTS (SELECT 1 FROM " + modelTableName + " t WHERE t." + keyColumnName + "=s." + keyColumnName + ")";
+	}
+
+	/**
+	 * Does the same as the SQL in {@link #restoreModelsFromSnapshotsByParentIds(Class, Class, String, Set, String)}, but with the query API, so it can be used in unit test mode.
+	 */
+	private void restoreModelsFromSnapshotsByParentIdsInMemory(
+			final Class<ModelType> modelClass,
+			final Class<SnapshotModelType> snapshotModelClass,
+			final String parentColumnName,
+			final Set<Integer> parentIds)
+	{
+		final Map<Integer, SnapshotModelType> modelSnapshots = query(snapshotModelClass)
+				.addEqualsFilter(COLUMNNAME_Snapshot_UUID, getSnapshotId())
+				.addInArrayFilter(parentColumnName, parentIds)
+				.create()
+				.map(snapshotModelClass, snapshot2ModelIdFunction);
+		for (final SnapshotModelType modelSnapshot : modelSnapshots.values())
+		{
+			final ModelType model = getModel(modelSnapshot);
+			if (model == null)
+			{
+				// like the SQL implementation, we don't restore models from ashes
+				throw new HUException("Cannot restore " + InterfaceWrapperHelper.getTableName(modelClass) + " because a record was deleted after the snapshot was taken")
+						.setParameter("snapshotId", getSnapshotId())
+						.setParameter("modelSnapshot", modelSnapshot);
+			}
+			restoreModelValuesFromSnapshot(model, modelSnapshot);
+			InterfaceWrapperHelper.save(model, ITrx.TRXNAME_ThreadInherited);
+		}
+
+		final List<ModelType> modelsWithoutSnapshot = query(modelClass)
+				.addInArrayFilter(parentColumnName, parentIds)
+				.addNotInArrayFilter(InterfaceWrapperHelper.getKeyColumnName(modelClass), modelSnapshots.keySet())
+				.create()
+				.list(modelClass);
+		for (final ModelType model : modelsWithoutSnapshot)
+		{
+			restoreModelWhenSnapshotIsMissing(model);
+			InterfaceWrapperHelper.save(model, ITrx.TRXNAME_ThreadInherited);
+		}
+	}
+
+	/**
+	 * @return parent handler or <code>null</code> if this is a top level handler
+	 */
+	protected final AbstractSnapshotHandler<?, ?, ?> getParentHandler()
+	{
+		return _parentHandler;
+	}
 }
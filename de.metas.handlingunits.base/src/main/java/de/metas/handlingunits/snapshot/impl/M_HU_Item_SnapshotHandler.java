@@ -41,8 +41,7 @@ class M_HU_Item_SnapshotHandler extends AbstractSnapshotHandler<I_M_HU_Item, I_M
 	@Override
 	protected void createSnapshotsByParentIds(final Set<Integer> huIds)
 	{
-		query(I_M_HU_Item.class)
-				.addInArrayOrAllFilter(I_M_HU_Item.COLUMN_M_HU_ID, huIds)
+		addInIdsFilter(query(I_M_HU_Item.class), I_M_HU_Item.COLUMNNAME_M_HU_ID, huIds)
 				.create()
 				.insertDirectlyInto(I_M_HU_Item_Snapshot.class)
 				.mapCommonColumns()
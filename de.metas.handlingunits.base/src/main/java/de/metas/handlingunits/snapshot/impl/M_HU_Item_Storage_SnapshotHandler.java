@@ -63,8 +63,7 @@ class M_HU_Item_Storage_SnapshotHandler extends AbstractSnapshotHandler<I_M_HU_I
 	@Override
 	protected void createSnapshotsByParentIds(final Set<Integer> huItemIds)
 	{
-		query(I_M_HU_Item_Storage.class)
-				.addInArrayOrAllFilter(I_M_HU_Item_Storage.COLUMN_M_HU_Item_ID, huItemIds)
+		addInIdsFilter(query(I_M_HU_Item_Storage.class), I_M_HU_Item_Storage.COLUMNNAME_M_HU_Item_ID, huItemIds)
 				.create()
 				.insertDirectlyInto(I_M_HU_Item_Storage_Snapshot.class)
 				.mapCommonColumns()
@@ -30,15 +30,48 @@ import java.util.Map;
 import java.util.Set;
 
 import org.adempiere.ad.dao.IQueryBL;
+import org.adempiere.ad.dao.impl.TypedSqlQueryFilter;
 import org.adempiere.util.Services;
+import org.compiere.Adempiere;
+
+import com.google.common.collect.ImmutableList;
 
 import de.metas.handlingunits.exceptions.HUException;
 import de.metas.handlingunits.model.I_M_HU;
+import de.metas.handlingunits.model.I_M_HU_Attribute;
 import de.metas.handlingunits.model.I_M_HU_Item;
+import de.metas.handlingunits.model.I_M_HU_Item_Snapshot;
 import de.metas.handlingunits.model.I_M_HU_Snapshot;
+import de.metas.handlingunits.model.I_M_HU_Storage;
 
 class M_HU_SnapshotHandler extends AbstractSnapshotHandler<I_M_HU, I_M_HU_Snapshot, I_M_HU_Item>
 {
+	/** Selects the M_HU_IDs of the HU trees below the HU IDs given as array parameter; note that we are also following the inactive items, like {@link #collectHUAndItemIds(Set, Set, Set)} does */
+	private static final String SQL_SelectTreeHUIds = "WITH RECURSIVE hu_tree(M_HU_ID) AS ("
+			+ " SELECT unnest(?::numeric[])"
+			+ " UNION"
+			+ " SELECT hu." + I_M_HU.COLUMNNAME_M_HU_ID
+			+ " FROM " + I_M_HU.Table_Name + " hu"
+			+ " INNER JOIN " + I_M_HU_Item.Table_Name + " item ON item." + I_M_HU_Item.COLUMNNAME_M_HU_Item_ID + "=hu." + I_M_HU.COLUMNNAME_M_HU_Item_Parent_ID
+			+ " INNER JOIN hu_tree ON hu_tree.M_HU_ID=item." + I_M_HU_Item.COLUMNNAME_M_HU_ID
+			+ ")"
+			+ " SELECT M_HU_ID FROM hu_tree";
+
+	/** Like {@link #SQL_SelectTreeHUIds}, but selects the HU trees like they were when the snapshot (2nd parameter) was taken */
+	private static final String SQL_SelectSnapshotTreeHUIds = "WITH RECURSIVE hu_tree(M_HU_ID) AS ("
+			+ " SELECT unnest(?::numeric[])"
+			+ " UNION"
+			+ " SELECT hu." + I_M_HU_Snapshot.COLUMNNAME_M_HU_ID
+			+ " FROM " + I_M_HU_Snapshot.Table_Name + " hu"
+			+ " INNER JOIN " + I_M_HU_Item_Snapshot.Table_Name + " item ON item." + I_M_HU_Item_Snapshot.COLUMNNAME_M_HU_Item_ID + "=hu." + I_M_HU_Snapshot.COLUMNNAME_M_HU_Item_Parent_ID
+			+ " AND item." + I_M_HU_Item_Snapshot.COLUMNNAME_Snapshot_UUID + "=hu." + I_M_HU_Snapshot.COLUMNNAME_Snapshot_UUID
+			+ " INNER JOIN hu_tree ON hu_tree.M_HU_ID=item." + I_M_HU_Item_Snapshot.COLUMNNAME_M_HU_ID
+			+ " WHERE hu." + I_M_HU_Snapshot.COLUMNNAME_Snapshot_UUID + "=?"
+			+ ")"
+			+ " SELECT M_HU_ID FROM hu_tree";
+
+	private boolean storagesAndAttributesAlreadyRestored = false;
+
 	public M_HU_SnapshotHandler()
 	{
 		this(null); // no parent handler, this is a top level handler
@@ -51,8 +84,7 @@ class M_HU_SnapshotHandler extends AbstractSnapshotHandler<I_M_HU, I_M_HU_Snapsh
 
 	protected void createSnapshotsByIds(final Set<Integer> huIds)
 	{
-		query(I_M_HU.class)
-				.addInArrayOrAllFilter(I_M_HU.COLUMN_M_HU_ID, huIds)
+		addInIdsFilter(query(I_M_HU.class), I_M_HU.COLUMNNAME_M_HU_ID, huIds)
 				.create()
 				.insertDirectlyInto(I_M_HU_Snapshot.class)
 				.mapCommonColumns()
@@ -66,6 +98,11 @@ class M_HU_SnapshotHandler extends AbstractSnapshotHandler<I_M_HU, I_M_HU_Snapsh
 		final M_HU_Item_SnapshotHandler huItemSnapshotHandler = new M_HU_Item_SnapshotHandler(this);
 		huItemSnapshotHandler.restoreModelsFromSnapshotsByParent(hu);
 
+		if (isStoragesAndAttributesAlreadyRestored())
+		{
+			return;
+		}
+
 		final M_HU_Storage_SnapshotHandler huStoargeSnapshotHandler = new M_HU_Storage_SnapshotHandler(this);
 		huStoargeSnapshotHandler.restoreModelsFromSnapshotsByParent(hu);
 
@@ -73,6 +110,46 @@ class M_HU_SnapshotHandler extends AbstractSnapshotHandler<I_M_HU, I_M_HU_Snapsh
 		huAttributesSnapshotHandler.restoreModelsFromSnapshotsByParent(hu);
 	}
 
+	/**
+	 * Restores the {@link I_M_HU_Storage}s and {@link I_M_HU_Attribute}s of the given HUs and of all HUs which were included in them when the snapshot was taken, by using one SQL UPDATE per table.
+	 * <p>
+	 * Afterwards, {@link #restoreModelFromSnapshot(Object, Object)} will only restore the HUs, their items and item storages,
+	 * until {@link #clearStoragesAndAttributesAlreadyRestored()} is called.
+	 */
+	protected final void restoreStoragesAndAttributesSetBased(final Set<Integer> topLevelHUIds)
+	{
+		final Set<Integer> huIds = retrieveSnapshotTreeHUIds(topLevelHUIds);
+		final List<I_M_HU> hus = addInIdsFilter(query(I_M_HU.class), I_M_HU.COLUMNNAME_M_HU_ID, huIds)
+				.create()
+				.list(I_M_HU.class);
+
+		new M_HU_Storage_SnapshotHandler(this).restoreModelsFromSnapshotsByParents(hus);
+		new M_HU_Attribute_SnapshotHandler(this).restoreModelsFromSnapshotsByParents(hus);
+
+		storagesAndAttributesAlreadyRestored = true;
+	}
+
+	/**
+	 * Makes {@link #restoreModelFromSnapshot(Object, Object)} restore the HU storages and attributes again.
+	 * To be called when the HUs which were passed to {@link #restoreStoragesAndAttributesSetBased(Set)} are restored.
+	 */
+	protected final void clearStoragesAndAttributesAlreadyRestored()
+	{
+		storagesAndAttributesAlreadyRestored = false;
+	}
+
+	private boolean isStoragesAndAttributesAlreadyRestored()
+	{
+		for (AbstractSnapshotHandler<?, ?, ?> handler = this; handler != null; handler = handler.getParentHandler())
+		{
+			if (handler instanceof M_HU_SnapshotHandler && ((M_HU_SnapshotHandler)handler).storagesAndAttributesAlreadyRestored)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
 	@Override
 	protected I_M_HU_Snapshot retrieveModelSnapshot(final I_M_HU hu)
 	{
@@ -129,6 +206,17 @@ class M_HU_SnapshotHandler extends AbstractSnapshotHandler<I_M_HU, I_M_HU_Snapsh
 	 */
 	protected final void collectHUAndItemIds(final Set<Integer> startHUIds, final Set<Integer> huIdsCollector, final Set<Integer> huItemIdsCollector)
 	{
+		if (!Adempiere.isUnitTestMode())
+		{
+			final List<Integer> huIds = query(I_M_HU.class)
+					.filter(TypedSqlQueryFilter.of(I_M_HU.COLUMNNAME_M_HU_ID + " IN (" + SQL_SelectTreeHUIds + ")", new Object[] { toSqlArray(startHUIds) }))
+					.create()
+					.listIds();
+			huIdsCollector.addAll(huIds);
+			huItemIdsCollector.addAll(retrieveM_HU_Item_Ids(huIdsCollector));
+			return;
+		}
+
 		Set<Integer> huIdsToCheck = new HashSet<>(startHUIds);
 		while (!huIdsToCheck.isEmpty())
 		{
@@ -149,9 +237,7 @@ class M_HU_SnapshotHandler extends AbstractSnapshotHandler<I_M_HU, I_M_HU_Snapsh
 		{
 			return Collections.emptySet();
 		}
-		final List<Integer> huItemIdsList = Services.get(IQueryBL.class)
-				.createQueryBuilder(I_M_HU_Item.class, getContext())
-				.addInArrayOrAllFilter(I_M_HU_Item.COLUMN_M_HU_ID, huIds)
+		final List<Integer> huItemIdsList = addInIdsFilter(query(I_M_HU_Item.class), I_M_HU_Item.COLUMNNAME_M_HU_ID, huIds)
 				.create()
 				.listIds();
 		return new HashSet<>(huItemIdsList);
@@ -171,4 +257,43 @@ class M_HU_SnapshotHandler extends AbstractSnapshotHandler<I_M_HU, I_M_HU_Snapsh
 		return new HashSet<>(huIdsList);
 	}
 
+	/**
+	 * @return the given HU IDs and the IDs of all HUs which were (recursively) included in them when the snapshot was taken
+	 */
+	private Set<Integer> retrieveSnapshotTreeHUIds(final Set<Integer> topLevelHUIds)
+	{
+		if (!Adempiere.isUnitTestMode())
+		{
+			final List<Integer> huIds = query(I_M_HU.class)
+					.filter(TypedSqlQueryFilter.of(I_M_HU.COLUMNNAME_M_HU_ID + " IN (" + SQL_SelectSnapshotTreeHUIds + ")", new Object[] { toSqlArray(topLevelHUIds), getSnapshotId() }))
+					.create()
+					.listIds();
+			return new HashSet<>(huIds);
+		}
+
+		final Set<Integer> huIds = new HashSet<>();
+		Set<Integer> huIdsToCheck = new HashSet<>(topLevelHUIds);
+		while (!huIdsToCheck.isEmpty())
+		{
+			huIds.addAll(huIdsToCheck);
+
+			final List<Integer> huItemIds = query(I_M_HU_Item_Snapshot.class)
+					.addEqualsFilter(I_M_HU_Item_Snapshot.COLUMN_Snapshot_UUID, getSnapshotId())
+					.addInArrayFilter(I_M_HU_Item_Snapshot.COLUMN_M_HU_ID, huIdsToCheck)
+					.create()
+					.listDistinct(I_M_HU_Item_Snapshot.COLUMNNAME_M_HU_Item_ID, Integer.class);
+			final List<Integer> includedHUIds = huItemIds.isEmpty()
+					? ImmutableList.of()
+					: query(I_M_HU_Snapshot.class)
+							.addEqualsFilter(I_M_HU_Snapshot.COLUMN_Snapshot_UUID, getSnapshotId())
+							.addInArrayFilter(I_M_HU_Snapshot.COLUMN_M_HU_Item_Parent_ID, huItemIds)
+							.create()
+							.listDistinct(I_M_HU_Snapshot.COLUMNNAME_M_HU_ID, Integer.class);
+
+			huIdsToCheck = new HashSet<>(includedHUIds);
+			huIdsToCheck.removeAll(huIds);
+		}
+		return huIds;
+	}
+
 }
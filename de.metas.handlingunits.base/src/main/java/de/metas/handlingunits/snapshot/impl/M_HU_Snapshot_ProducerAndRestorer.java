@@ -30,9 +30,11 @@ import java.util.Set;
 
 import org.adempiere.ad.trx.api.ITrxManager;
 import org.adempiere.model.PlainContextAware;
+import org.adempiere.service.ISysConfigBL;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
 import org.adempiere.util.lang.IContextAware;
+import org.compiere.Adempiere;
 import org.compiere.util.TrxRunnableAdapter;
 
 import com.google.common.collect.ImmutableSet;
@@ -42,6 +44,8 @@ import de.metas.handlingunits.model.I_M_HU;
 import de.metas.handlingunits.model.I_M_HU_Snapshot;
 import de.metas.handlingunits.snapshot.ISnapshotProducer;
 import de.metas.handlingunits.snapshot.ISnapshotRestorer;
+import de.metas.storage.IStorageListeners;
+import de.metas.storage.spi.hu.impl.StorageSegmentFromHU;
 import lombok.NonNull;
 
 /**
@@ -52,6 +56,12 @@ import lombok.NonNull;
  */
 public class M_HU_Snapshot_ProducerAndRestorer implements ISnapshotRestorer<I_M_HU>, ISnapshotProducer<I_M_HU>
 {
+	/**
+	 * If enabled, the HU storages and attributes are restored with one SQL UPDATE per table for the whole HU trees, instead of record by record.
+	 */
+	public static final String SYSCONFIG_SetBasedRestore = M_HU_Snapshot_ProducerAndRestorer.class.getName() + ".SetBasedRestore";
+	private static final boolean DEFAULT_SetBasedRestore = true;
+
 	// services
 	private final transient ITrxManager trxManager = Services.get(ITrxManager.class);
 	private final M_HU_SnapshotHandler huSnapshotHandler = new M_HU_SnapshotHandler();
@@ -91,13 +101,39 @@ public class M_HU_Snapshot_ProducerAndRestorer implements ISnapshotRestorer<I_M_
 
 	private final void restoreInTrx()
 	{
-		final Collection<Integer> huIdsToRestore = getHUIdsAndClear();
+		final Set<Integer> huIdsToRestore = getHUIdsAndClear();
 		final List<I_M_HU> husToRestore = Services.get(IHandlingUnitsDAO.class).retrieveByIds(huIdsToRestore);
 
-		for (final I_M_HU hu : husToRestore)
+		final boolean setBasedRestore = Services.get(ISysConfigBL.class).getBooleanValue(SYSCONFIG_SetBasedRestore, DEFAULT_SetBasedRestore);
+		try
+		{
+			if (setBasedRestore)
+			{
+				huSnapshotHandler.restoreStoragesAndAttributesSetBased(huIdsToRestore);
+			}
+
+			for (final I_M_HU hu : husToRestore)
+			{
+				final I_M_HU_Snapshot huSnapshot = huSnapshotHandler.retrieveModelSnapshot(hu);
+				huSnapshotHandler.restoreModelFromSnapshot(hu, huSnapshot);
+			}
+		}
+		finally
+		{
+			// this restorer might be used again, maybe with the set based restore disabled
+			huSnapshotHandler.clearStoragesAndAttributesAlreadyRestored();
+		}
+
+		//
+		// The set based restore bypassed the M_HU_Storage and M_HU_Attribute model interceptors,
+		// so we notify about the storage segment changes here, once per restored HU tree.
+		if (setBasedRestore && !Adempiere.isUnitTestMode())
 		{
-			final I_M_HU_Snapshot huSnapshot = huSnapshotHandler.retrieveModelSnapshot(hu);
-			huSnapshotHandler.restoreModelFromSnapshot(hu, huSnapshot);
+			final IStorageListeners storageListeners = Services.get(IStorageListeners.class);
+			for (final I_M_HU hu : husToRestore)
+			{
+				storageListeners.notifyStorageSegmentChanged(new StorageSegmentFromHU(hu));
+			}
 		}
 	}
 
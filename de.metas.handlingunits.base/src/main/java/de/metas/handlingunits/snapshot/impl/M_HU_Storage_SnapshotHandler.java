@@ -24,11 +24,14 @@ package de.metas.handlingunits.snapshot.impl;
 
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
 import org.adempiere.util.Check;
 
+import com.google.common.collect.ImmutableSet;
+
 import de.metas.handlingunits.model.I_M_HU;
 import de.metas.handlingunits.model.I_M_HU_Storage;
 import de.metas.handlingunits.model.I_M_HU_Storage_Snapshot;
@@ -45,8 +48,7 @@ class M_HU_Storage_SnapshotHandler extends AbstractSnapshotHandler<I_M_HU_Storag
 	{
 		Check.assumeNotEmpty(huIds, "huIds not empty");
 
-		query(I_M_HU_Storage.class)
-				.addInArrayOrAllFilter(I_M_HU_Storage.COLUMN_M_HU_ID, huIds)
+		addInIdsFilter(query(I_M_HU_Storage.class), I_M_HU_Storage.COLUMNNAME_M_HU_ID, huIds)
 				.create()
 				.insertDirectlyInto(I_M_HU_Storage_Snapshot.class)
 				.mapCommonColumns()
@@ -54,6 +56,17 @@ class M_HU_Storage_SnapshotHandler extends AbstractSnapshotHandler<I_M_HU_Storag
 				.execute();
 	}
 
+	/**
+	 * Restores the storages of all given HUs with one SQL UPDATE. The storages which were created after the snapshot get a zero quantity.
+	 */
+	@Override
+	protected void restoreModelsFromSnapshotsByParents(final Collection<I_M_HU> hus)
+	{
+		final Set<Integer> huIds = hus.stream().map(I_M_HU::getM_HU_ID).collect(ImmutableSet.toImmutableSet());
+		restoreModelsFromSnapshotsByParentIds(I_M_HU_Storage.class, I_M_HU_Storage_Snapshot.class, I_M_HU_Storage.COLUMNNAME_M_HU_ID, huIds,
+				I_M_HU_Storage.COLUMNNAME_Qty + "=0");
+	}
+
 	@Override
 	protected Map<Integer, I_M_HU_Storage_Snapshot> retrieveModelSnapshotsByParent(final I_M_HU model)
 	{
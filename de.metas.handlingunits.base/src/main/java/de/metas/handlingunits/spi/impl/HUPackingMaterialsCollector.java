@@ -636,6 +636,7 @@ public class HUPackingMaterialsCollector implements IHUPackingMaterialsCollector
 
 		new HUIterator()
 				.setEnableStorageIteration(false)
+				.setPrefetchTree(true) // we visit every HU of the tree
 				.setCtx(InterfaceWrapperHelper.getCtx(hu))
 				.setListener(new HUIteratorListenerAdapter()
 				{
@@ -0,0 +1,212 @@
+package de.metas.handlingunits.storage.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.adempiere.ad.dao.cache.CacheInvalidateMultiRequest;
+import org.adempiere.ad.dao.cache.CacheInvalidateRequest;
+import org.adempiere.exceptions.DBException;
+import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.util.Services;
+import org.compiere.model.PO;
+import org.compiere.util.CacheMgt;
+import org.compiere.util.DB;
+import org.compiere.util.Env;
+
+import com.google.common.collect.ImmutableSet;
+
+import de.metas.handlingunits.model.I_M_HU_Item_Storage;
+import de.metas.handlingunits.model.I_M_HU_Storage;
+import de.metas.storage.IStorageListeners;
+import de.metas.storage.spi.hu.impl.StorageSegmentFromHUStorage;
+import lombok.NonNull;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Writes the quantity changes of existing {@link I_M_HU_Storage} and {@link I_M_HU_Item_Storage} records with one JDBC batch per table.
+ * <p>
+ * Only records where nothing but {@code Qty} and {@code C_UOM_ID} was changed are batch-updated; {@link #isBatchUpdatable(Object)} tells if that's the case.
+ * The model interceptors are bypassed, so this class does what they would do: it fires the storage segment changes of the updated {@link I_M_HU_Storage}s.
+ * <p>
+ * NOTE: the updated model instances still have their changes pending afterwards; so they shall be discarded, like {@link SaveDecoupledHUStorageDAO#flush()} does.
+ */
+final class HUStorageBatchUpdater
+{
+	private static final int BATCH_SIZE = 500;
+
+	private static final Set<String> BATCH_UPDATABLE_COLUMNNAMES = ImmutableSet.of(
+			I_M_HU_Storage.COLUMNNAME_Qty,
+			I_M_HU_Storage.COLUMNNAME_C_UOM_ID,
+			I_M_HU_Storage.COLUMNNAME_Updated,
+			I_M_HU_Storage.COLUMNNAME_UpdatedBy);
+
+	private static final String SQL_UPDATE_M_HU_Storage = "UPDATE " + I_M_HU_Storage.Table_Name
+			+ " SET " + I_M_HU_Storage.COLUMNNAME_Qty + "=?"
+			+ ", " + I_M_HU_Storage.COLUMNNAME_C_UOM_ID + "=?"
+			+ ", " + I_M_HU_Storage.COLUMNNAME_Updated + "=now()"
+			+ ", " + I_M_HU_Storage.COLUMNNAME_UpdatedBy + "=?"
+			+ " WHERE " + I_M_HU_Storage.COLUMNNAME_M_HU_Storage_ID + "=?";
+
+	private static final String SQL_UPDATE_M_HU_Item_Storage = "UPDATE " + I_M_HU_Item_Storage.Table_Name
+			+ " SET " + I_M_HU_Item_Storage.COLUMNNAME_Qty + "=?"
+			+ ", " + I_M_HU_Item_Storage.COLUMNNAME_C_UOM_ID + "=?"
+			+ ", " + I_M_HU_Item_Storage.COLUMNNAME_Updated + "=now()"
+			+ ", " + I_M_HU_Item_Storage.COLUMNNAME_UpdatedBy + "=?"
+			+ " WHERE " + I_M_HU_Item_Storage.COLUMNNAME_M_HU_Item_Storage_ID + "=?";
+
+	private final String trxName;
+
+	private int countStatements = 0;
+
+	public HUStorageBatchUpdater(final String trxName)
+	{
+		this.trxName = trxName;
+	}
+
+	/**
+	 * @return {@code true} if the given storage record already exists in DB and only its {@code Qty} and/or {@code C_UOM_ID} were changed.
+	 */
+	public static boolean isBatchUpdatable(@NonNull final Object storageModel)
+	{
+		final PO po = InterfaceWrapperHelper.getStrictPO(storageModel);
+		if (po == null || po.is_new() || !po.is_Changed())
+		{
+			return false;
+		}
+
+		for (int i = 0, columnCount = po.get_ColumnCount(); i < columnCount; i++)
+		{
+			if (po.is_ValueChanged(i) && !BATCH_UPDATABLE_COLUMNNAMES.contains(po.get_ColumnName(i)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void updateHUStorages(@NonNull final List<I_M_HU_Storage> huStorages)
+	{
+		if (huStorages.isEmpty())
+		{
+			return;
+		}
+
+		executeBatches(SQL_UPDATE_M_HU_Storage, huStorages, huStorage -> new Object[] {
+				huStorage.getQty(),
+				huStorage.getC_UOM_ID(),
+				Env.getAD_User_ID(InterfaceWrapperHelper.getCtx(huStorage)),
+				huStorage.getM_HU_Storage_ID() });
+
+		resetCache(I_M_HU_Storage.Table_Name, huStorages, I_M_HU_Storage::getM_HU_Storage_ID);
+
+		// that's what the M_HU_Storage model interceptor would do
+		final IStorageListeners storageListeners = Services.get(IStorageListeners.class);
+		for (final I_M_HU_Storage huStorage : huStorages)
+		{
+			storageListeners.notifyStorageSegmentChanged(new StorageSegmentFromHUStorage(huStorage));
+		}
+	}
+
+	public void updateHUItemStorages(@NonNull final List<I_M_HU_Item_Storage> huItemStorages)
+	{
+		if (huItemStorages.isEmpty())
+		{
+			return;
+		}
+
+		executeBatches(SQL_UPDATE_M_HU_Item_Storage, huItemStorages, huItemStorage -> new Object[] {
+				huItemStorage.getQty(),
+				huItemStorage.getC_UOM_ID(),
+				Env.getAD_User_ID(InterfaceWrapperHelper.getCtx(huItemStorage)),
+				huItemStorage.getM_HU_Item_Storage_ID() });
+
+		resetCache(I_M_HU_Item_Storage.Table_Name, huItemStorages, I_M_HU_Item_Storage::getM_HU_Item_Storage_ID);
+	}
+
+	private <T> void executeBatches(
+			@NonNull final String sql,
+			@NonNull final List<T> models,
+			@NonNull final Function<T, Object[]> paramsExtractor)
+	{
+		PreparedStatement pstmt = null;
+		try
+		{
+			pstmt = DB.prepareStatement(sql, trxName);
+
+			int countInBatch = 0;
+			for (final T model : models)
+			{
+				DB.setParameters(pstmt, paramsExtractor.apply(model));
+				pstmt.addBatch();
+				countInBatch++;
+
+				if (countInBatch >= BATCH_SIZE)
+				{
+					pstmt.executeBatch();
+					countStatements++;
+					countInBatch = 0;
+				}
+			}
+
+			if (countInBatch > 0)
+			{
+				pstmt.executeBatch();
+				countStatements++;
+			}
+		}
+		catch (final SQLException e)
+		{
+			throw new DBException(e, sql);
+		}
+		finally
+		{
+			DB.close(pstmt);
+		}
+	}
+
+	private <T> void resetCache(
+			@NonNull final String tableName,
+			@NonNull final List<T> models,
+			@NonNull final Function<T, Integer> idExtractor)
+	{
+		final List<CacheInvalidateRequest> requests = new ArrayList<>(models.size());
+		for (final T model : models)
+		{
+			requests.add(CacheInvalidateRequest.rootRecord(tableName, idExtractor.apply(model)));
+		}
+		CacheMgt.get().resetLocalNowAndBroadcastOnTrxCommit(trxName, CacheInvalidateMultiRequest.of(requests));
+	}
+
+	/**
+	 * @return the number of batches that were sent to the database so far
+	 */
+	public int getCountStatements()
+	{
+		return countStatements;
+	}
+}
@@ -30,17 +30,23 @@ import java.util.Map;
 
 import org.adempiere.ad.trx.api.ITrxManager;
 import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.service.ISysConfigBL;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
+import org.compiere.Adempiere;
 import org.compiere.model.I_C_UOM;
 import org.compiere.model.I_M_Product;
 import org.compiere.util.Util;
+import org.slf4j.Logger;
+
+import com.google.common.base.Stopwatch;
 
 import de.metas.handlingunits.model.I_M_HU;
 import de.metas.handlingunits.model.I_M_HU_Item;
 import de.metas.handlingunits.model.I_M_HU_Item_Storage;
 import de.metas.handlingunits.model.I_M_HU_Storage;
 import de.metas.handlingunits.storage.IHUStorageDAO;
+import de.metas.logging.LogManager;
 
 /**
  * {@link IHUStorageDAO} implementation which acts like a save buffer:
@@ -54,6 +60,13 @@ import de.metas.handlingunits.storage.IHUStorageDAO;
  */
 public class SaveDecoupledHUStorageDAO extends AbstractHUStorageDAO
 {
+	private static final Logger logger = LogManager.getLogger(SaveDecoupledHUStorageDAO.class);
+
+	/**
+	 * If {@code Y} (default), then {@link #flush()} writes the qty changes of existing storages with JDBC batches, see {@link HUStorageBatchUpdater}.
+	 */
+	public static final String SYSCONFIG_BatchUpdate = SaveDecoupledHUStorageDAO.class.getName() + ".BatchUpdate";
+
 	private final IHUStorageDAO db;
 
 	/** Cache: "M_HU key" to "M_HU_Storage key" to {@link I_M_HU_Storage} */
@@ -159,14 +172,7 @@ public class SaveDecoupledHUStorageDAO extends AbstractHUStorageDAO
 
 		if (retrieveIfNotFound)
 		{
-			final List<I_M_HU_Storage> huStoragesList = db.retrieveStorages(hu);
-			huStorages = new HashMap<>(huStoragesList.size());
-			for (final I_M_HU_Storage huStorage : huStoragesList)
-			{
-				final Object huStorageKey = mkHUStorageKey(huStorage);
-				huStorages.put(huStorageKey, huStorage);
-				setReadonly(huStorage);
-			}
+			huStorages = createHUStoragesMap(db.retrieveStorages(hu));
 		}
 		else
 		{
@@ -178,6 +184,28 @@ public class SaveDecoupledHUStorageDAO extends AbstractHUStorageDAO
 		return huStorages;
 	}
 
+	private final Map<Object, I_M_HU_Storage> createHUStoragesMap(final List<I_M_HU_Storage> huStoragesList)
+	{
+		final Map<Object, I_M_HU_Storage> huStorages = new HashMap<>(huStoragesList.size());
+		for (final I_M_HU_Storage huStorage : huStoragesList)
+		{
+			final Object huStorageKey = mkHUStorageKey(huStorage);
+			huStorages.put(huStorageKey, huStorage);
+			setReadonly(huStorage);
+		}
+		return huStorages;
+	}
+
+	/**
+	 * Adds the given (already loaded) storages to our cache, unless we already have the given HU's storages.
+	 *
+	 * @param huStoragesList all active storages of the given HU
+	 */
+	public void cacheHUStoragesIfAbsent(final I_M_HU hu, final List<I_M_HU_Storage> huStoragesList)
+	{
+		_hu2storage.computeIfAbsent(mkHUKey(hu), huKey -> createHUStoragesMap(huStoragesList));
+	}
+
 	@Override
 	public void save(final I_M_HU_Storage huStorage)
 	{
@@ -210,14 +238,7 @@ public class SaveDecoupledHUStorageDAO extends AbstractHUStorageDAO
 
 		if (retrieveIfNotFound)
 		{
-			final List<I_M_HU_Item_Storage> huItemStoragesList = db.retrieveItemStorages(item);
-			result = new HashMap<>(huItemStoragesList.size());
-			for (final I_M_HU_Item_Storage huItemStorage : huItemStoragesList)
-			{
-				final Object huItemStorageKey = mkHUItemStorageKey(huItemStorage);
-				result.put(huItemStorageKey, huItemStorage);
-				setReadonly(huItemStorage);
-			}
+			result = createHUItemStoragesMap(db.retrieveItemStorages(item));
 		}
 		else
 		{
@@ -229,6 +250,28 @@ public class SaveDecoupledHUStorageDAO extends AbstractHUStorageDAO
 		return result;
 	}
 
+	private final Map<Object, I_M_HU_Item_Storage> createHUItemStoragesMap(final List<I_M_HU_Item_Storage> huItemStoragesList)
+	{
+		final Map<Object, I_M_HU_Item_Storage> result = new HashMap<>(huItemStoragesList.size());
+		for (final I_M_HU_Item_Storage huItemStorage : huItemStoragesList)
+		{
+			final Object huItemStorageKey = mkHUItemStorageKey(huItemStorage);
+			result.put(huItemStorageKey, huItemStorage);
+			setReadonly(huItemStorage);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the given (already loaded) item storages to our cache, unless we already have the given item's storages.
+	 *
+	 * @param huItemStoragesList all active storages of the given item
+	 */
+	public void cacheHUItemStoragesIfAbsent(final I_M_HU_Item item, final List<I_M_HU_Item_Storage> huItemStoragesList)
+	{
+		_item2itemStorage.computeIfAbsent(mkHUItemKey(item), itemKey -> createHUItemStoragesMap(huItemStoragesList));
+	}
+
 	@Override
 	public void save(final I_M_HU_Item_Storage huItemStorage)
 	{
@@ -281,37 +324,85 @@ public class SaveDecoupledHUStorageDAO extends AbstractHUStorageDAO
 	}
 
 	/**
-	 * Save all storages to database
+	 * Save all storages to database.
+	 * <p>
+	 * New storages and storages with other changes than qty and UOM are saved one by one.
+	 * The others are updated with one JDBC batch per table, unless this is disabled via {@link #SYSCONFIG_BatchUpdate}.
 	 */
 	public final void flush()
 	{
+		final Stopwatch stopwatch = Stopwatch.createStarted();
 		final String trxName = Services.get(ITrxManager.class).getThreadInheritedTrxName();
+		final boolean batchUpdate = isBatchUpdate();
+
+		int countSaved = 0;
 
 		//
 		// Save HU Storages
+		final List<I_M_HU_Storage> huStoragesToBatchUpdate = new ArrayList<>();
 		for (final Map<Object, I_M_HU_Storage> huStorages : _hu2storage.values())
 		{
 			for (final I_M_HU_Storage huStorage : huStorages.values())
 			{
-				saveToDatabase(huStorage, trxName);
+				if (batchUpdate && HUStorageBatchUpdater.isBatchUpdatable(huStorage))
+				{
+					huStoragesToBatchUpdate.add(huStorage);
+				}
+				else if (saveToDatabase(huStorage, trxName))
+				{
+					countSaved++;
+				}
 			}
 		}
 
 		//
 		// Save HU Item Storages
+		final List<I_M_HU_Item_Storage> huItemStoragesToBatchUpdate = new ArrayList<>();
 		for (final Map<Object, I_M_HU_Item_Storage> huItemStorages : _item2itemStorage.values())
 		{
 			for (final I_M_HU_Item_Storage huItemStorage : huItemStorages.values())
 			{
-				saveToDatabase(huItemStorage, trxName);
+				if (batchUpdate && HUStorageBatchUpdater.isBatchUpdatable(huItemStorage))
+				{
+					huItemStoragesToBatchUpdate.add(huItemStorage);
+				}
+				else if (saveToDatabase(huItemStorage, trxName))
+				{
+					countSaved++;
+				}
 			}
 		}
+
+		//
+		// Batch-update the remaining HU and HU Item Storages
+		final HUStorageBatchUpdater batchUpdater = new HUStorageBatchUpdater(trxName);
+		batchUpdater.updateHUStorages(huStoragesToBatchUpdate);
+		batchUpdater.updateHUItemStorages(huItemStoragesToBatchUpdate);
+
+		logger.debug("Flushed HU storages in {}: {} saved one by one; {} M_HU_Storage and {} M_HU_Item_Storage records updated with {} batches; trxName={}",
+				stopwatch, countSaved, huStoragesToBatchUpdate.size(), huItemStoragesToBatchUpdate.size(), batchUpdater.getCountStatements(), trxName);
+	}
+
+	private static boolean isBatchUpdate()
+	{
+		if (Adempiere.isUnitTestMode())
+		{
+			return false; // there is no database
+		}
+		return Services.get(ISysConfigBL.class).getBooleanValue(SYSCONFIG_BatchUpdate, true);
 	}
 
-	private final void saveToDatabase(final Object model, final String trxName)
+	/**
+	 * @return {@code true} if the given model was new or had changes, i.e. if it was actually written to database
+	 */
+	private final boolean saveToDatabase(final Object model, final String trxName)
 	{
+		final boolean hasChanges = InterfaceWrapperHelper.isNew(model) || InterfaceWrapperHelper.hasChanges(model);
+
 		InterfaceWrapperHelper.setSaveDeleteDisabled(model, false);
 		InterfaceWrapperHelper.save(model, trxName);
 		// InterfaceWrapperHelper.setSaveDeleteDisabled(model, true); // not sure if is necessary
+
+		return hasChanges;
 	}
 }
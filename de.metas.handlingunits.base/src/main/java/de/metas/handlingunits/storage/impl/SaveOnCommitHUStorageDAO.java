@@ -27,13 +27,12 @@ import java.util.List;
 import org.adempiere.ad.trx.api.ITrx;
 import org.adempiere.ad.trx.api.ITrxListenerManager.TrxEventTiming;
 import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.ad.trx.api.OnTrxMissingPolicy;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
 import org.compiere.model.I_C_UOM;
 import org.compiere.model.I_M_Product;
 
-import com.google.common.base.Supplier;
-
 import de.metas.handlingunits.model.I_M_HU;
 import de.metas.handlingunits.model.I_M_HU_Item;
 import de.metas.handlingunits.model.I_M_HU_Item_Storage;
@@ -43,6 +42,7 @@ import de.metas.handlingunits.storage.IHUStorageDAO;
 public class SaveOnCommitHUStorageDAO implements IHUStorageDAO
 {
 	private static final String TRX_PROPERTY_SaveDecoupledHUStorageDAO = SaveDecoupledHUStorageDAO.class.getName();
+	private static final String TRX_PROPERTY_FlushOnCommitListenerRegistered = SaveOnCommitHUStorageDAO.class.getName() + ".FlushOnCommitListenerRegistered";
 	private final transient ITrxManager trxManager = Services.get(ITrxManager.class);
 	private final HUStorageDAO dbStorageDAO;
 
@@ -53,7 +53,7 @@ public class SaveOnCommitHUStorageDAO implements IHUStorageDAO
 
 	/**
 	 * For the current (inherited) trx, this method gets the {@link SaveDecoupledHUStorageDAO} that is added to the trx using {@link #TRX_PROPERTY_SaveDecoupledHUStorageDAO}.
-	 * If there isn't one added yet, it add one and also registers a {@link ITrxListener} that will invoke {@link SaveDecoupledHUStorageDAO#flush()} when the current trx is committed.
+	 * If there isn't one added yet, it adds one and makes sure that a {@link ITrxListener} is registered which will invoke {@link SaveDecoupledHUStorageDAO#flush()} when the current trx is committed.
 	 *
 	 * @param contextProvider
 	 * @return
@@ -64,35 +64,93 @@ public class SaveOnCommitHUStorageDAO implements IHUStorageDAO
 		final ITrx trx = trxManager.getTrx(trxName);
 		Check.assumeNotNull(trx, "Transaction shall exist: {}", trxName);
 
-		return trx.getProperty(TRX_PROPERTY_SaveDecoupledHUStorageDAO, new Supplier<SaveDecoupledHUStorageDAO>()
-		{
-			@Override
-			public SaveDecoupledHUStorageDAO get()
-			{
-				final SaveDecoupledHUStorageDAO huStorageDAO = new SaveDecoupledHUStorageDAO(dbStorageDAO);
-
-				// Listen this transaction for COMMIT events
-				// Before committing the transaction, this listener makes sure we are also saving all storages
-				trx.getTrxListenerManager()
-						.newEventListener(TrxEventTiming.BEFORE_COMMIT)
-						.invokeMethodJustOnce(false) // we need this to happen on every last single commit
-						.registerHandlingMethod(innerTrx -> {
-							// Get and remove the save-decoupled HU Storage DAO
-							final SaveDecoupledHUStorageDAO innerHuStorageDAO = innerTrx.setProperty(TRX_PROPERTY_SaveDecoupledHUStorageDAO, null);
-							if (innerHuStorageDAO == null)
-							{
-								return;
-							}
-
-							// Save everything to database
-							innerHuStorageDAO.flush();
-						});
-
-				return huStorageDAO;
-			}
+		return trx.getProperty(TRX_PROPERTY_SaveDecoupledHUStorageDAO, () -> {
+			registerFlushOnCommitListenerIfAbsent(trx);
+			return new SaveDecoupledHUStorageDAO(dbStorageDAO);
 		});
 	}
 
+	/**
+	 * Registers the listener only once per trx, because after {@link #flush()} or {@link #discard()}, the next {@link #getDelegate(Object)} call creates a new {@link SaveDecoupledHUStorageDAO} for the same trx.
+	 */
+	private static void registerFlushOnCommitListenerIfAbsent(final ITrx trx)
+	{
+		trx.getProperty(TRX_PROPERTY_FlushOnCommitListenerRegistered, () -> {
+
+			// Listen this transaction for COMMIT events
+			// Before committing the transaction, this listener makes sure we are also saving all storages
+			trx.getTrxListenerManager()
+					.newEventListener(TrxEventTiming.BEFORE_COMMIT)
+					.invokeMethodJustOnce(false) // we need this to happen on every last single commit
+					.registerHandlingMethod(innerTrx -> {
+						// Get and remove the save-decoupled HU Storage DAO
+						final SaveDecoupledHUStorageDAO innerHuStorageDAO = innerTrx.setProperty(TRX_PROPERTY_SaveDecoupledHUStorageDAO, null);
+						if (innerHuStorageDAO == null)
+						{
+							return;
+						}
+
+						// Save everything to database
+						innerHuStorageDAO.flush();
+					});
+
+			return Boolean.TRUE;
+		});
+	}
+
+	/**
+	 * Saves the storages which were buffered for the current (inherited) trx right now, and starts over with an empty buffer.
+	 */
+	public void flush()
+	{
+		final ITrx trx = trxManager.getThreadInheritedTrx(OnTrxMissingPolicy.ReturnTrxNone);
+		if (trxManager.isNull(trx))
+		{
+			return;
+		}
+
+		final SaveDecoupledHUStorageDAO huStorageDAO = trx.setProperty(TRX_PROPERTY_SaveDecoupledHUStorageDAO, null);
+		if (huStorageDAO != null)
+		{
+			huStorageDAO.flush();
+		}
+	}
+
+	/**
+	 * Drops the storages which were buffered for the current (inherited) trx, without saving them.
+	 * <p>
+	 * Call it after rolling back to a savepoint, because the buffered storages might contain changes which were rolled back.
+	 * Everything that shall survive needs to be {@link #flush()}ed before setting the savepoint.
+	 */
+	public void discard()
+	{
+		final ITrx trx = trxManager.getThreadInheritedTrx(OnTrxMissingPolicy.ReturnTrxNone);
+		if (trxManager.isNull(trx))
+		{
+			return;
+		}
+
+		trx.setProperty(TRX_PROPERTY_SaveDecoupledHUStorageDAO, null);
+	}
+
+	/**
+	 * See {@link SaveDecoupledHUStorageDAO#cacheHUStoragesIfAbsent(I_M_HU, List)}.
+	 */
+	public void cacheHUStoragesIfAbsent(final I_M_HU hu, final List<I_M_HU_Storage> huStorages)
+	{
+		final SaveDecoupledHUStorageDAO delegate = getDelegate(hu);
+		delegate.cacheHUStoragesIfAbsent(hu, huStorages);
+	}
+
+	/**
+	 * See {@link SaveDecoupledHUStorageDAO#cacheHUItemStoragesIfAbsent(I_M_HU_Item, List)}.
+	 */
+	public void cacheHUItemStoragesIfAbsent(final I_M_HU_Item item, final List<I_M_HU_Item_Storage> huItemStorages)
+	{
+		final SaveDecoupledHUStorageDAO delegate = getDelegate(item);
+		delegate.cacheHUItemStoragesIfAbsent(item, huItemStorages);
+	}
+
 	@Override
 	public <T> T newInstance(final Class<T> modelClass, final Object contextProvider)
 	{
@@ -6,11 +6,18 @@ import static org.adempiere.model.InterfaceWrapperHelper.save;
 import java.util.List;
 
 import org.adempiere.ad.dao.IQueryBuilder;
+import org.adempiere.service.ISysConfigBL;
 import org.adempiere.util.Check;
+import org.adempiere.util.Services;
+import org.compiere.util.CacheMgt;
 import org.slf4j.Logger;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.ImmutableList;
+
 import de.metas.handlingunits.model.I_M_HU_Trace;
+import de.metas.handlingunits.trace.HUTraceEventQuery.RecursionMode;
+import de.metas.handlingunits.trace.repository.HUTraceGraph;
 import de.metas.handlingunits.trace.repository.HuTraceEventToDbRecordUtil;
 import de.metas.handlingunits.trace.repository.RetrieveDbRecordsUtil;
 import de.metas.logging.LogManager;
@@ -42,6 +49,19 @@ public class HUTraceRepository
 {
 	private static final Logger logger = LogManager.getLogger(HUTraceRepository.class);
 
+	/**
+	 * If {@code Y}, then recursive queries get the VHU_IDs to load from the in-memory {@link HUTraceGraph} instead of querying {@code M_HU_Trace} once per hop.
+	 */
+	public static final String SYSCONFIG_UseTraceGraph = HUTraceRepository.class.getName() + ".UseTraceGraph";
+
+	private final HUTraceGraph graph = new HUTraceGraph();
+
+	public HUTraceRepository()
+	{
+		// the trace graphs in the other JVMs need to know which records were changed
+		CacheMgt.get().enableRemoteCacheInvalidationForTableName(I_M_HU_Trace.Table_Name);
+	}
+
 	/**
 	 * Persists the given event.<br>
 	 * If an event with the same properties was already persisted earlier,
@@ -63,6 +83,9 @@ public class HUTraceRepository
 
 			HuTraceEventToDbRecordUtil.copyToDbRecord(huTraceEvent, dbRecord);
 			save(dbRecord);
+
+			// the graph would also learn about it from the cache invalidation, but that's not fired for all kinds of models
+			graph.onRecordsChanged(ImmutableList.of(dbRecord.getM_HU_Trace_ID()));
 		}
 		else
 		{
@@ -84,6 +107,10 @@ public class HUTraceRepository
 	 */
 	public List<HUTraceEvent> query(@NonNull final HUTraceEventQuery query)
 	{
+		if (isUseGraph(query))
+		{
+			return RetrieveDbRecordsUtil.query(query, graph);
+		}
 		return RetrieveDbRecordsUtil.query(query);
 	}
 
@@ -92,6 +119,26 @@ public class HUTraceRepository
 	 */
 	public int queryToSelection(@NonNull final HUTraceEventQuery query)
 	{
+		if (isUseGraph(query))
+		{
+			return RetrieveDbRecordsUtil.queryToSelection(query, graph);
+		}
 		return RetrieveDbRecordsUtil.queryToSelection(query);
 	}
+
+	private static boolean isUseGraph(@NonNull final HUTraceEventQuery query)
+	{
+		return query.getRecursionMode() != RecursionMode.NONE
+				&& Services.get(ISysConfigBL.class).getBooleanValue(SYSCONFIG_UseTraceGraph, false);
+	}
+
+	/**
+	 * Discards the in-memory trace graph and loads it again from {@code M_HU_Trace}.
+	 *
+	 * @return the number of {@code VHU_Source_ID -> VHU_ID} links in the new graph
+	 */
+	public int rebuildGraph()
+	{
+		return graph.rebuild();
+	}
 }
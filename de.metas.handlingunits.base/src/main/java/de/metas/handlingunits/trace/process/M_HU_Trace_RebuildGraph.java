@@ -0,0 +1,44 @@
+package de.metas.handlingunits.trace.process;
+
+import org.compiere.Adempiere;
+
+import de.metas.handlingunits.trace.HUTraceRepository;
+import de.metas.process.JavaProcess;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Reloads the in-memory HU trace graph that is used for recursive trace queries (see {@link HUTraceRepository#SYSCONFIG_UseTraceGraph}).
+ * Needed after {@code M_HU_Trace} records were changed directly in the DB, because those changes don't cause cache invalidations.
+ */
+public class M_HU_Trace_RebuildGraph extends JavaProcess
+{
+	@Override
+	protected String doIt() throws Exception
+	{
+		final int countEdges = Adempiere.getBean(HUTraceRepository.class).rebuildGraph();
+		addLog("Rebuilt the HU trace graph with {} links", countEdges);
+
+		return MSG_OK;
+	}
+}
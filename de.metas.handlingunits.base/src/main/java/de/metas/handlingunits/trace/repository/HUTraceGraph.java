@@ -0,0 +1,388 @@
+package de.metas.handlingunits.trace.repository;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.adempiere.ad.dao.IQueryBL;
+import org.adempiere.ad.dao.cache.CacheInvalidateMultiRequest;
+import org.adempiere.ad.dao.cache.CacheInvalidateRequest;
+import org.adempiere.ad.dao.impl.CompareQueryFilter.Operator;
+import org.adempiere.ad.trx.api.ITrx;
+import org.adempiere.ad.trx.api.ITrxListenerManager.TrxEventTiming;
+import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.ad.trx.api.OnTrxMissingPolicy;
+import org.adempiere.util.Services;
+import org.compiere.util.CacheMgt;
+import org.slf4j.Logger;
+
+import de.metas.handlingunits.model.I_M_HU_Trace;
+import de.metas.logging.LogManager;
+import lombok.NonNull;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * In-memory graph of the {@code VHU_Source_ID -> VHU_ID} links of all active {@code M_HU_Trace} records.
+ * <p>
+ * It allows {@link RetrieveDbRecordsUtil} to compute the VHU_IDs of a recursive {@link de.metas.handlingunits.trace.HUTraceEventQuery} without one query per hop.
+ * The trace records themselves (incl. their document links) are then loaded with one query.
+ * <p>
+ * The graph is loaded on first use. Afterwards it's kept up to date by the {@code M_HU_Trace} cache invalidations:
+ * <ul>
+ * <li>the IDs of records which were created, changed or deleted are collected after their transaction was committed (or as they come in from other JVMs),
+ * and those records are loaded again before the next traversal. So it does not matter in which order the records were committed,
+ * and deactivated or deleted records are removed from the graph.</li>
+ * <li>a cache reset of the whole table (or of all caches) makes the graph load itself again from scratch before the next traversal.</li>
+ * </ul>
+ * Note that {@code M_HU_Trace} records which are changed directly in the DB don't cause cache invalidations; use {@link #rebuild()} after such changes.
+ * <p>
+ * The adjacency lists are stored as plain {@code int[]}s, since a VHU usually has only a few sources and follow-ups.
+ */
+public final class HUTraceGraph
+{
+	private static final Logger logger = LogManager.getLogger(HUTraceGraph.class);
+
+	private static final int LOAD_PAGE_SIZE = 50_000;
+
+	private static final int[] NO_IDS = new int[] {};
+
+	private static final String TRX_PROPERTY_ChangedTraceIds = HUTraceGraph.class.getName() + ".ChangedTraceIds";
+
+	/** VHU_Source_ID => VHU_IDs; one entry per trace record, so the same VHU_ID might be contained more than once */
+	private final Map<Integer, int[]> forwardLinks = new HashMap<>();
+
+	/** VHU_ID => VHU_Source_IDs; one entry per trace record, so the same VHU_Source_ID might be contained more than once */
+	private final Map<Integer, int[]> backwardLinks = new HashMap<>();
+
+	/** M_HU_Trace_ID => link, as {@link #toLink(int, int)} */
+	private final Map<Integer, Long> traceId2link = new HashMap<>();
+
+	/** M_HU_Trace_IDs which were changed since they were loaded */
+	private final Set<Integer> changedTraceIds = ConcurrentHashMap.newKeySet();
+
+	private final AtomicBoolean fullReloadRequired = new AtomicBoolean(true);
+
+	public HUTraceGraph()
+	{
+		CacheMgt.get().addCacheResetListener(I_M_HU_Trace.Table_Name, this::onCacheReset);
+	}
+
+	private int onCacheReset(@NonNull final CacheInvalidateMultiRequest multiRequest)
+	{
+		if (multiRequest.isResetAll())
+		{
+			fullReloadRequired.set(true);
+			return 1;
+		}
+
+		final Set<Integer> traceIds = new HashSet<>();
+		for (final CacheInvalidateRequest request : multiRequest.getRequests())
+		{
+			if (!I_M_HU_Trace.Table_Name.equals(request.getTableNameEffective()))
+			{
+				continue;
+			}
+
+			final int traceId = request.getRecordIdEffective();
+			if (traceId < 0) // i.e. CacheMgt.RECORD_ID_ALL
+			{
+				fullReloadRequired.set(true);
+				return 1;
+			}
+			traceIds.add(traceId);
+		}
+
+		onRecordsChanged(traceIds);
+		return traceIds.size();
+	}
+
+	/**
+	 * Makes the graph load the given records again, once the current transaction (if any) was committed.
+	 * <p>
+	 * Local cache invalidations arrive before the commit, so they are deferred; invalidations from other JVMs arrive out of transaction after the commit.
+	 */
+	public void onRecordsChanged(@NonNull final Collection<Integer> traceIds)
+	{
+		if (traceIds.isEmpty())
+		{
+			return;
+		}
+
+		final ITrxManager trxManager = Services.get(ITrxManager.class);
+		final ITrx trx = trxManager.getThreadInheritedTrx(OnTrxMissingPolicy.ReturnTrxNone);
+		if (trxManager.isNull(trx))
+		{
+			changedTraceIds.addAll(traceIds);
+			return;
+		}
+		getCreateUncommittedTraceIds(trx).addAll(traceIds);
+	}
+
+	private Set<Integer> getCreateUncommittedTraceIds(@NonNull final ITrx trx)
+	{
+		return trx.getProperty(TRX_PROPERTY_ChangedTraceIds, () -> {
+
+			final Set<Integer> traceIds = ConcurrentHashMap.newKeySet();
+			trx.getTrxListenerManager()
+					.newEventListener(TrxEventTiming.AFTER_COMMIT)
+					.invokeMethodJustOnce(false) // the same trx might be committed more than once
+					.registerHandlingMethod(innerTrx -> {
+						final Set<Integer> committedTraceIds = new HashSet<>(traceIds);
+						traceIds.removeAll(committedTraceIds);
+						changedTraceIds.addAll(committedTraceIds);
+					});
+			return traceIds;
+		});
+	}
+
+	private static long toLink(final int vhuId, final int vhuSourceId)
+	{
+		return ((long)vhuSourceId << 32) | (vhuId & 0xFFFFFFFFL);
+	}
+
+	private void putLink(final int traceId, final int vhuId, final int vhuSourceId)
+	{
+		final long link = toLink(vhuId, vhuSourceId);
+		final Long previousLink = traceId2link.put(traceId, link);
+		if (previousLink != null)
+		{
+			if (previousLink == link)
+			{
+				return;
+			}
+			removeLink0(previousLink);
+		}
+
+		forwardLinks.put(vhuSourceId, append(forwardLinks.getOrDefault(vhuSourceId, NO_IDS), vhuId));
+		backwardLinks.put(vhuId, append(backwardLinks.getOrDefault(vhuId, NO_IDS), vhuSourceId));
+	}
+
+	private void removeLink(final int traceId)
+	{
+		final Long link = traceId2link.remove(traceId);
+		if (link != null)
+		{
+			removeLink0(link);
+		}
+	}
+
+	private void removeLink0(final long link)
+	{
+		final int vhuSourceId = (int)(link >>> 32);
+		final int vhuId = (int)link;
+		removeOne(forwardLinks, vhuSourceId, vhuId);
+		removeOne(backwardLinks, vhuId, vhuSourceId);
+	}
+
+	private static int[] append(final int[] ids, final int id)
+	{
+		final int[] newIds = Arrays.copyOf(ids, ids.length + 1);
+		newIds[ids.length] = id;
+		return newIds;
+	}
+
+	private static void removeOne(final Map<Integer, int[]> links, final int fromId, final int toId)
+	{
+		final int[] toIds = links.getOrDefault(fromId, NO_IDS);
+		for (int i = 0; i < toIds.length; i++)
+		{
+			if (toIds[i] == toId)
+			{
+				if (toIds.length == 1)
+				{
+					links.remove(fromId);
+				}
+				else
+				{
+					final int[] newToIds = new int[toIds.length - 1];
+					System.arraycopy(toIds, 0, newToIds, 0, i);
+					System.arraycopy(toIds, i + 1, newToIds, i, toIds.length - i - 1);
+					links.put(fromId, newToIds);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the given VHU_IDs and the VHU_IDs of all their direct and indirect follow-ups, i.e. of those VHUs that have one of them as (indirect) {@code VHU_Source_ID}.
+	 */
+	public Set<Integer> getForwardClosure(@NonNull final Collection<Integer> vhuIds)
+	{
+		return getClosure(vhuIds, forwardLinks);
+	}
+
+	/**
+	 * @return the given VHU_IDs and the {@code VHU_Source_ID}s of all their direct and indirect sources.
+	 */
+	public Set<Integer> getBackwardClosure(@NonNull final Collection<Integer> vhuIds)
+	{
+		return getClosure(vhuIds, backwardLinks);
+	}
+
+	private synchronized Set<Integer> getClosure(
+			@NonNull final Collection<Integer> startIds,
+			@NonNull final Map<Integer, int[]> links)
+	{
+		refresh();
+
+		final Set<Integer> result = new TreeSet<>();
+		final Deque<Integer> queue = new ArrayDeque<>();
+		for (final Integer startId : startIds)
+		{
+			if (startId != null && startId > 0 && result.add(startId))
+			{
+				queue.add(startId);
+			}
+		}
+
+		while (!queue.isEmpty())
+		{
+			final int[] nextIds = links.getOrDefault(queue.poll(), NO_IDS);
+			for (final int nextId : nextIds)
+			{
+				if (result.add(nextId))
+				{
+					queue.add(nextId);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Discards the current graph and loads it from scratch.
+	 *
+	 * @return the number of links in the new graph
+	 */
+	public synchronized int rebuild()
+	{
+		fullReloadRequired.set(true);
+		refresh();
+		return getCountEdges();
+	}
+
+	/**
+	 * Loads the whole graph if required, and then the records which were changed since they were loaded.
+	 */
+	synchronized void refresh()
+	{
+		if (fullReloadRequired.getAndSet(false))
+		{
+			loadAll();
+		}
+
+		if (!changedTraceIds.isEmpty())
+		{
+			final Set<Integer> traceIds = new HashSet<>(changedTraceIds);
+			changedTraceIds.removeAll(traceIds);
+			reload(traceIds);
+		}
+	}
+
+	private void loadAll()
+	{
+		forwardLinks.clear();
+		backwardLinks.clear();
+		traceId2link.clear();
+
+		final IQueryBL queryBL = Services.get(IQueryBL.class);
+		int lastLoadedTraceId = 0;
+		while (true)
+		{
+			final List<Map<String, Object>> rows = queryBL.createQueryBuilder(I_M_HU_Trace.class)
+					.addOnlyActiveRecordsFilter()
+					.addCompareFilter(I_M_HU_Trace.COLUMN_M_HU_Trace_ID, Operator.GREATER, lastLoadedTraceId)
+					.addCompareFilter(I_M_HU_Trace.COLUMN_VHU_Source_ID, Operator.GREATER, 0)
+					.orderBy().addColumn(I_M_HU_Trace.COLUMN_M_HU_Trace_ID).endOrderBy()
+					.setLimit(LOAD_PAGE_SIZE)
+					.create()
+					.listColumns(I_M_HU_Trace.COLUMNNAME_M_HU_Trace_ID, I_M_HU_Trace.COLUMNNAME_VHU_ID, I_M_HU_Trace.COLUMNNAME_VHU_Source_ID);
+
+			for (final Map<String, Object> row : rows)
+			{
+				final int traceId = toInt(row.get(I_M_HU_Trace.COLUMNNAME_M_HU_Trace_ID));
+				putLink(traceId,
+						toInt(row.get(I_M_HU_Trace.COLUMNNAME_VHU_ID)),
+						toInt(row.get(I_M_HU_Trace.COLUMNNAME_VHU_Source_ID)));
+				lastLoadedTraceId = Math.max(lastLoadedTraceId, traceId);
+			}
+
+			if (rows.size() < LOAD_PAGE_SIZE)
+			{
+				break;
+			}
+		}
+
+		logger.info("Loaded HU trace graph with {} links", getCountEdges());
+	}
+
+	/**
+	 * Loads the given records again; those which are now inactive, have no {@code VHU_Source_ID} or don't exist anymore are removed from the graph.
+	 */
+	private void reload(@NonNull final Set<Integer> traceIds)
+	{
+		final List<Map<String, Object>> rows = Services.get(IQueryBL.class).createQueryBuilder(I_M_HU_Trace.class)
+				.addOnlyActiveRecordsFilter()
+				.addInArrayFilter(I_M_HU_Trace.COLUMN_M_HU_Trace_ID, traceIds)
+				.addCompareFilter(I_M_HU_Trace.COLUMN_VHU_Source_ID, Operator.GREATER, 0)
+				.create()
+				.listColumns(I_M_HU_Trace.COLUMNNAME_M_HU_Trace_ID, I_M_HU_Trace.COLUMNNAME_VHU_ID, I_M_HU_Trace.COLUMNNAME_VHU_Source_ID);
+
+		final Set<Integer> traceIdsToRemove = new HashSet<>(traceIds);
+		for (final Map<String, Object> row : rows)
+		{
+			final int traceId = toInt(row.get(I_M_HU_Trace.COLUMNNAME_M_HU_Trace_ID));
+			putLink(traceId,
+					toInt(row.get(I_M_HU_Trace.COLUMNNAME_VHU_ID)),
+					toInt(row.get(I_M_HU_Trace.COLUMNNAME_VHU_Source_ID)));
+			traceIdsToRemove.remove(traceId);
+		}
+		traceIdsToRemove.forEach(this::removeLink);
+
+		logger.debug("Reloaded {} changed trace records into the HU trace graph; {} of them were removed", traceIds.size(), traceIdsToRemove.size());
+	}
+
+	private static int toInt(final Object value)
+	{
+		return value == null ? 0 : ((Number)value).intValue();
+	}
+
+	/**
+	 * @return the number of active trace records with a {@code VHU_Source_ID} which are currently in the graph
+	 */
+	public synchronized int getCountEdges()
+	{
+		return traceId2link.size();
+	}
+}
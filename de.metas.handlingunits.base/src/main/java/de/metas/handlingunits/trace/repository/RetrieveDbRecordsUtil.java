@@ -68,6 +68,33 @@ public class RetrieveDbRecordsUtil
 		return resultOut.getSelectionId();
 	}
 
+	/**
+	 * Like {@link #query(HUTraceEventQuery)}, but gets the recursive VHU_IDs from the given {@code graph} and then loads their records with one query.
+	 */
+	public static List<HUTraceEvent> query(
+			@NonNull final HUTraceEventQuery query,
+			@NonNull final HUTraceGraph graph)
+	{
+		final ListResult resultOut = (ListResult)queryDbRecordUsingGraph(query, graph, new ListResult());
+
+		return resultOut.getList()
+				.stream()
+				.map(HuTraceEventToDbRecordUtil::fromDbRecord)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Like {@link #queryToSelection(HUTraceEventQuery)}, but gets the recursive VHU_IDs from the given {@code graph} and then loads their records with one query.
+	 */
+	public static int queryToSelection(
+			@NonNull final HUTraceEventQuery query,
+			@NonNull final HUTraceGraph graph)
+	{
+		final SelectionResult resultOut = (SelectionResult)queryDbRecordUsingGraph(query, graph, new SelectionResult());
+
+		return resultOut.getSelectionId();
+	}
+
 	private static interface EmptyResultSupplier
 	{
 		Result newEmptyResult();
@@ -274,6 +301,67 @@ public class RetrieveDbRecordsUtil
 		return resultOut;
 	}
 
+	/**
+	 * Same result as {@link #queryDbRecord(HUTraceEventQuery, EmptyResultSupplier)}:
+	 * <ul>
+	 * <li>forward: the records of all VHUs that can be reached from the {@code VHU_ID}s of the non-recursive result</li>
+	 * <li>backward: the records of all VHUs that can be reached backwards from the {@code VHU_Source_ID}s of the non-recursive result</li>
+	 * </ul>
+	 */
+	private Result queryDbRecordUsingGraph(
+			@NonNull final HUTraceEventQuery huTraceEventQuery,
+			@NonNull final HUTraceGraph graph,
+			@NonNull final EmptyResultSupplier emptyResultSupplier)
+	{
+		final Result resultOut = emptyResultSupplier.newEmptyResult();
+
+		final IQueryBuilder<I_M_HU_Trace> queryBuilder = createQueryBuilderOrNull(huTraceEventQuery);
+		if (queryBuilder == null)
+		{
+			return resultOut;
+		}
+
+		final IQuery<I_M_HU_Trace> query = queryBuilder
+				.orderBy().addColumn(I_M_HU_Trace.COLUMN_EventTime).endOrderBy()
+				.create();
+		resultOut.executeQueryAndAddAll(query);
+
+		final RecursionMode recursionMode = huTraceEventQuery.getRecursionMode();
+		final Set<Integer> recursiveVhuIds = new TreeSet<>();
+		switch (recursionMode)
+		{
+			case NONE:
+				break;
+			case FORWARD:
+				recursiveVhuIds.addAll(graph.getForwardClosure(resultOut.getVhuIds()));
+				break;
+			case BACKWARD:
+				recursiveVhuIds.addAll(graph.getBackwardClosure(resultOut.getVhuSourceIds()));
+				break;
+			case BOTH:
+				recursiveVhuIds.addAll(graph.getForwardClosure(resultOut.getVhuIds()));
+				recursiveVhuIds.addAll(graph.getBackwardClosure(resultOut.getVhuSourceIds()));
+				break;
+			default:
+				throw new AdempiereException("Unexpected RecursionMode=" + recursionMode)
+						.appendParametersToMessage()
+						.setParameter("HUTraceEventQuery", huTraceEventQuery);
+		}
+
+		if (!recursiveVhuIds.isEmpty())
+		{
+			final IQuery<I_M_HU_Trace> recursiveQuery = Services.get(IQueryBL.class).createQueryBuilder(I_M_HU_Trace.class)
+					.addOnlyActiveRecordsFilter()
+					.addInArrayFilter(I_M_HU_Trace.COLUMN_VHU_ID, recursiveVhuIds)
+					.orderBy().addColumn(I_M_HU_Trace.COLUMN_EventTime).endOrderBy()
+					.create();
+			final Result recursiveResult = emptyResultSupplier.newEmptyResult();
+			recursiveResult.executeQueryAndAddAll(recursiveQuery);
+			resultOut.addAll(recursiveResult);
+		}
+		return resultOut;
+	}
+
 	@VisibleForTesting
 	static IQueryBuilder<I_M_HU_Trace> createQueryBuilderOrNull(@NonNull final HUTraceEventQuery query)
 	{
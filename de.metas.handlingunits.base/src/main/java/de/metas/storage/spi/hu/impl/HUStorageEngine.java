@@ -28,6 +28,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -36,12 +37,19 @@ import org.adempiere.mm.attributes.api.IAttributeSet;
 import org.adempiere.model.InterfaceWrapperHelper;
 import org.adempiere.service.ISysConfigBL;
 import org.adempiere.util.Check;
+import org.adempiere.util.GuavaCollectors;
 import org.adempiere.util.Services;
 import org.adempiere.util.lang.IContextAware;
 import org.compiere.model.IQuery;
 import org.compiere.model.I_M_AttributeSetInstance;
 import org.slf4j.Logger;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+
 import de.metas.handlingunits.IHUContext;
 import de.metas.handlingunits.IHUContextFactory;
 import de.metas.handlingunits.attribute.storage.IAttributeStorage;
@@ -60,7 +68,8 @@ public class HUStorageEngine implements IStorageEngine
 
 	private static final Logger logger = LogManager.getLogger(HUStorageEngine.class);
 
-	private static final transient String SYSCONFIG_QueriesPerChunk = "de.metas.storage.spi.hu.impl.HUStorageEngine.QueriesPerChunk";
+	@VisibleForTesting
+	static final transient String SYSCONFIG_QueriesPerChunk = "de.metas.storage.spi.hu.impl.HUStorageEngine.QueriesPerChunk";
 	private static final transient int DEFAULT_QueriesPerChunk = 500;
 
 	private HUStorageEngine()
@@ -96,26 +105,90 @@ public class HUStorageEngine implements IStorageEngine
 
 		logger.debug("Retrieving storage records for {}", storageQueries);
 
-		final int queriesPerChunk = getQueriesPerChunk();
-		logger.debug("queriesPerChunk: {}", queriesPerChunk);
-
-		IQuery<I_M_HU_Storage> queryAgg = null;
-		int queriesCount = 0;
 		final Set<IStorageRecord> storageRecords = new HashSet<>();
+		for (final List<IStorageQuery> storageQueriesChunk : partitionIntoChunks(storageQueries))
+		{
+			final List<I_M_HU_Storage> huStoragesPerChunk = retrieveHUStorages(context, storageQueriesChunk);
+			final List<IStorageRecord> storageRecordsPerChunk = createHUStorageRecords(context, huStoragesPerChunk);
+			storageRecords.addAll(storageRecordsPerChunk);
+		}
 
-		for (final IStorageQuery storageQuery : storageQueries)
+		logger.debug("Returning {} storage records", storageRecords.size());
+		return storageRecords;
+	}
+
+	/**
+	 * Retrieves the union of each chunk's storage records and then assigns them to the queries of the chunk, using {@link IStorageQuery#matches(IStorageRecord)}.
+	 */
+	@Override
+	public Map<IStorageQuery, List<IStorageRecord>> retrieveStorageRecordsByQuery(
+			@NonNull final IContextAware context,
+			@NonNull final Collection<IStorageQuery> storageQueries)
+	{
+		final Map<IStorageQuery, List<IStorageRecord>> storageRecordsByQuery = new LinkedHashMap<>();
+		storageQueries.forEach(storageQuery -> storageRecordsByQuery.put(storageQuery, new ArrayList<>()));
+
+		for (final List<IStorageQuery> storageQueriesChunk : partitionIntoChunks(storageRecordsByQuery.keySet()))
 		{
-			//
-			// Retrieve stoarge records for current query aggregation / chunk
-			if (queriesPerChunk > 0 && queriesCount >= queriesPerChunk)
+			// the queries are indexed by product, because a storage record's product is the cheapest thing to check
+			final ListMultimap<Integer, IStorageQuery> storageQueriesByProductId = ArrayListMultimap.create();
+			final List<IStorageQuery> storageQueriesForAnyProduct = new ArrayList<>();
+			for (final IStorageQuery storageQuery : storageQueriesChunk)
+			{
+				final Set<Integer> productIds = HUStorageQuery.cast(storageQuery).getProductIds();
+				if (productIds.isEmpty())
+				{
+					storageQueriesForAnyProduct.add(storageQuery);
+				}
+				else
+				{
+					productIds.forEach(productId -> storageQueriesByProductId.put(productId, storageQuery));
+				}
+			}
+
+			// a storage might be matched by more than one of the union's subqueries
+			final Collection<I_M_HU_Storage> huStoragesPerChunk = retrieveHUStorages(context, storageQueriesChunk)
+					.stream()
+					.collect(GuavaCollectors.toImmutableMapByKey(I_M_HU_Storage::getM_HU_Storage_ID))
+					.values();
+
+			for (final IStorageRecord storageRecord : createHUStorageRecords(context, huStoragesPerChunk))
 			{
-				final List<I_M_HU_Storage> huStoragesPerChunk = queryAgg.list();
-				final List<IStorageRecord> storageRecordsPerChunk = createHUStorageRecords(context, huStoragesPerChunk);
-				storageRecords.addAll(storageRecordsPerChunk);
-				queryAgg = null;
-				queriesCount = 0;
+				final int productId = storageRecord.getProduct().getM_Product_ID();
+				for (final IStorageQuery storageQuery : Iterables.concat(storageQueriesByProductId.get(productId), storageQueriesForAnyProduct))
+				{
+					if (storageQuery.matches(storageRecord))
+					{
+						storageRecordsByQuery.get(storageQuery).add(storageRecord);
+					}
+				}
 			}
+		}
+
+		logger.debug("Retrieved storage records for {} storage queries", storageRecordsByQuery.size());
+		return storageRecordsByQuery;
+	}
+
+	private Iterable<List<IStorageQuery>> partitionIntoChunks(final Collection<IStorageQuery> storageQueries)
+	{
+		final int queriesPerChunk = getQueriesPerChunk();
+		logger.debug("queriesPerChunk: {}", queriesPerChunk);
+
+		if (queriesPerChunk <= 0)
+		{
+			return ImmutableList.<List<IStorageQuery>> of(ImmutableList.copyOf(storageQueries));
+		}
+		return Iterables.partition(storageQueries, queriesPerChunk);
+	}
 
+	/**
+	 * @return the {@link I_M_HU_Storage}s of all given queries, retrieved with one {@code UNION} query
+	 */
+	private static List<I_M_HU_Storage> retrieveHUStorages(final IContextAware context, final List<IStorageQuery> storageQueries)
+	{
+		IQuery<I_M_HU_Storage> queryAgg = null;
+		for (final IStorageQuery storageQuery : storageQueries)
+		{
 			//
 			// Create query
 			final HUStorageQuery huStorageQuery = HUStorageQuery.cast(storageQuery);
@@ -133,22 +206,13 @@ public class HUStorageEngine implements IStorageEngine
 				final boolean distinct = false;
 				queryAgg.addUnion(query, distinct);
 			}
-			queriesCount++;
 		}
 
-		//
-		// Retrieve storage records for last chunk
-		if (queryAgg != null)
+		if (queryAgg == null)
 		{
-			final List<I_M_HU_Storage> huStoragesPerChunk = queryAgg.list();
-			final List<IStorageRecord> storageRecordsPerChunk = createHUStorageRecords(context, huStoragesPerChunk);
-			storageRecords.addAll(storageRecordsPerChunk);
-			queryAgg = null;
-			queriesCount = 0;
+			return Collections.emptyList();
 		}
-
-		logger.debug("Returning {} storage records", storageRecords.size());
-		return storageRecords;
+		return queryAgg.list();
 	}
 
 	private final List<IStorageRecord> createHUStorageRecords(final IContextAware context, final Collection<I_M_HU_Storage> huStorages)
@@ -83,6 +83,7 @@ import lombok.NonNull;
 	private final transient List<I_M_Product> _products = new ArrayList<>(); // needed only for summary info
 	private final transient List<I_C_BPartner> _bpartners = new ArrayList<>(); // needed only for summary info
 	private final transient List<I_M_Warehouse> _warehouses = new ArrayList<>(); // needed only for summary info
+	private boolean _excludeAfterPickingLocator = true; // same as the huQueryBuilder's flag; needed in matches()
 
 	/* package */ HUStorageQuery()
 	{
@@ -260,9 +261,9 @@ import lombok.NonNull;
 		}
 
 		//
-		// Make sure we are not dealing with an After-Picking locator (08123)
+		// Make sure we are not dealing with an After-Picking locator (08123), unless this query was told to include them
 		final I_M_Locator recordLocator = InterfaceWrapperHelper.create(storageRecord.getLocator(), I_M_Locator.class);
-		if (recordLocator.isAfterPickingLocator())
+		if (_excludeAfterPickingLocator && recordLocator.isAfterPickingLocator())
 		{
 			return false;
 		}
@@ -319,7 +320,7 @@ import lombok.NonNull;
 		return this;
 	}
 
-	private final Set<Integer> getProductIds()
+	/* package */ final Set<Integer> getProductIds()
 	{
 		return _productIds;
 	}
@@ -431,6 +432,7 @@ import lombok.NonNull;
 	@Override
 	public IStorageQuery setExcludeAfterPickingLocator(final boolean excludeAfterPickingLocator)
 	{
+		_excludeAfterPickingLocator = excludeAfterPickingLocator;
 		huQueryBuilder.setExcludeAfterPickingLocator(excludeAfterPickingLocator);
 		return this;
 	}
@@ -0,0 +1,24 @@
+
+--
+-- Support HUAttributeQueryFilterVO, which selects the M_HU_IDs of the active M_HU_Attribute records with a given M_Attribute_ID and value (list or range).
+-- There is one partial index per value column; each one includes M_HU_ID, so that the subquery can be answered from the index alone.
+--
+CREATE INDEX IF NOT EXISTS m_hu_attribute_value_idx
+   ON m_hu_attribute (m_attribute_id, value, m_hu_id)
+   WHERE isactive = 'Y' AND value IS NOT NULL;
+COMMENT ON INDEX m_hu_attribute_value_idx IS 'Needed to support IHUQueryBuilder.addOnlyWithAttribute* for string attributes (e.g. lot number, serial number)';
+
+CREATE INDEX IF NOT EXISTS m_hu_attribute_valuenumber_idx
+   ON m_hu_attribute (m_attribute_id, valuenumber, m_hu_id)
+   WHERE isactive = 'Y' AND valuenumber IS NOT NULL;
+COMMENT ON INDEX m_hu_attribute_valuenumber_idx IS 'Needed to support IHUQueryBuilder.addOnlyWithAttribute* and addOnlyWithAttributeInRange for number attributes';
+
+CREATE INDEX IF NOT EXISTS m_hu_attribute_valuedate_idx
+   ON m_hu_attribute (m_attribute_id, valuedate, m_hu_id)
+   WHERE isactive = 'Y' AND valuedate IS NOT NULL;
+COMMENT ON INDEX m_hu_attribute_valuedate_idx IS 'Needed to support IHUQueryBuilder.addOnlyWithAttribute* and addOnlyWithAttributeInRange for date attributes (e.g. best-before date)';
+
+-- the MissingOrNull matching type looks for all of an attribute's M_HU_IDs
+CREATE INDEX IF NOT EXISTS m_hu_attribute_attribute_hu_idx
+   ON m_hu_attribute (m_attribute_id, m_hu_id)
+   WHERE isactive = 'Y';
@@ -0,0 +1,19 @@
+-- 2018-07-02T10:12:31.204
+-- I forgot to set the DICTIONARY_ID_COMMENTS System Configurator
+INSERT INTO AD_Process (AccessLevel,AD_Client_ID,AD_Org_ID,AD_Process_ID,AllowProcessReRun,Classname,CopyFromProcess,Created,CreatedBy,Description,EntityType,IsActive,IsApplySecuritySettings,IsBetaFunctionality,IsDirectPrint,IsOneInstanceOnly,IsReport,IsServerProcess,IsUseBPartnerLanguage,LockWaitTimeout,Name,RefreshAllAfterExecution,ShowHelp,Type,Updated,UpdatedBy,Value) VALUES ('4',0,0,540982,'Y','de.metas.handlingunits.trace.process.M_HU_Trace_RebuildGraph','N',TO_TIMESTAMP('2018-07-02 10:12:31','YYYY-MM-DD HH24:MI:SS'),100,'Lädt den In-Memory-Graphen neu, mit dem rekursive Rückverfolgbarkeits-Abfragen beantwortet werden (siehe AD_SysConfig de.metas.handlingunits.trace.HUTraceRepository.UseTraceGraph).','de.metas.handlingunits','Y','N','N','N','Y','N','N','Y',0,'Rückverfolgbarkeits-Graph neu aufbauen','N','N','Java',TO_TIMESTAMP('2018-07-02 10:12:31','YYYY-MM-DD HH24:MI:SS'),100,'M_HU_Trace_RebuildGraph')
+;
+
+-- 2018-07-02T10:12:31.211
+-- I forgot to set the DICTIONARY_ID_COMMENTS System Configurator
+INSERT INTO AD_Process_Trl (AD_Language,AD_Process_ID, Description,Help,Name, IsTranslated,AD_Client_ID,AD_Org_ID,Created,Createdby,Updated,UpdatedBy) SELECT l.AD_Language,t.AD_Process_ID, t.Description,t.Help,t.Name, 'N',t.AD_Client_ID,t.AD_Org_ID,t.Created,t.Createdby,t.Updated,t.UpdatedBy FROM AD_Language l, AD_Process t WHERE l.IsActive='Y' AND l.IsSystemLanguage='Y' AND l.IsBaseLanguage='N' AND t.AD_Process_ID=540982 AND NOT EXISTS (SELECT 1 FROM AD_Process_Trl tt WHERE tt.AD_Language=l.AD_Language AND tt.AD_Process_ID=t.AD_Process_ID)
+;
+
+-- 2018-07-02T10:13:02.517
+-- I forgot to set the DICTIONARY_ID_COMMENTS System Configurator
+UPDATE AD_Process_Trl SET IsTranslated='Y',Name='Rebuild HU trace graph',Description='Reloads the in-memory graph that is used to answer recursive HU trace queries (see AD_SysConfig de.metas.handlingunits.trace.HUTraceRepository.UseTraceGraph).',Updated=TO_TIMESTAMP('2018-07-02 10:13:02','YYYY-MM-DD HH24:MI:SS'),UpdatedBy=100 WHERE AD_Language='en_US' AND AD_Process_ID=540982
+;
+
+-- 2018-07-02T10:13:25.890
+-- I forgot to set the DICTIONARY_ID_COMMENTS System Configurator
+INSERT INTO AD_Table_Process (AD_Client_ID,AD_Org_ID,AD_Process_ID,AD_Table_ID,Created,CreatedBy,EntityType,IsActive,Updated,UpdatedBy,WEBUI_QuickAction,WEBUI_QuickAction_Default) VALUES (0,0,540982,540832,TO_TIMESTAMP('2018-07-02 10:13:25','YYYY-MM-DD HH24:MI:SS'),100,'de.metas.handlingunits','Y',TO_TIMESTAMP('2018-07-02 10:13:25','YYYY-MM-DD HH24:MI:SS'),100,'N','N')
+;
@@ -0,0 +1,19 @@
+-- 2018-07-09T14:21:07.318
+-- I forgot to set the DICTIONARY_ID_COMMENTS System Configurator
+INSERT INTO AD_Process (AccessLevel,AD_Client_ID,AD_Org_ID,AD_Process_ID,AllowProcessReRun,Classname,CopyFromProcess,Created,CreatedBy,Description,EntityType,IsActive,IsApplySecuritySettings,IsBetaFunctionality,IsDirectPrint,IsOneInstanceOnly,IsReport,IsServerProcess,IsUseBPartnerLanguage,LockWaitTimeout,Name,RefreshAllAfterExecution,ShowHelp,Type,Updated,UpdatedBy,Value) VALUES ('3',0,0,540983,'Y','de.metas.handlingunits.picking.process.M_PickingSlot_ProcessPickingCandidates','N',TO_TIMESTAMP('2018-07-09 14:21:07','YYYY-MM-DD HH24:MI:SS'),100,'Verarbeitet und schließt die offenen Kommissionierkandidaten der ausgewählten Kommissionierfächer. Fehlerhafte Kandidaten werden protokolliert und verhindern nicht die Verarbeitung der übrigen.','de.metas.handlingunits','Y','N','N','N','N','N','N','Y',0,'Kommissionierkandidaten verarbeiten','Y','N','Java',TO_TIMESTAMP('2018-07-09 14:21:07','YYYY-MM-DD HH24:MI:SS'),100,'M_PickingSlot_ProcessPickingCandidates')
+;
+
+-- 2018-07-09T14:21:07.325
+-- I forgot to set the DICTIONARY_ID_COMMENTS System Configurator
+INSERT INTO AD_Process_Trl (AD_Language,AD_Process_ID, Description,Help,Name, IsTranslated,AD_Client_ID,AD_Org_ID,Created,Createdby,Updated,UpdatedBy) SELECT l.AD_Language,t.AD_Process_ID, t.Description,t.Help,t.Name, 'N',t.AD_Client_ID,t.AD_Org_ID,t.Created,t.Createdby,t.Updated,t.UpdatedBy FROM AD_Language l, AD_Process t WHERE l.IsActive='Y' AND l.IsSystemLanguage='Y' AND l.IsBaseLanguage='N' AND t.AD_Process_ID=540983 AND NOT EXISTS (SELECT 1 FROM AD_Process_Trl tt WHERE tt.AD_Language=l.AD_Language AND tt.AD_Process_ID=t.AD_Process_ID)
+;
+
+-- 2018-07-09T14:21:41.902
+-- I forgot to set the DICTIONARY_ID_COMMENTS System Configurator
+UPDATE AD_Process_Trl SET IsTranslated='Y',Name='Process picking candidates',Description='Processes and closes the open picking candidates of the selected picking slots. Failed candidates are logged and don''t prevent the others from being processed.',Updated=TO_TIMESTAMP('2018-07-09 14:21:41','YYYY-MM-DD HH24:MI:SS'),UpdatedBy=100 WHERE AD_Language='en_US' AND AD_Process_ID=540983
+;
+
+-- 2018-07-09T14:22:03.114
+-- I forgot to set the DICTIONARY_ID_COMMENTS System Configurator
+INSERT INTO AD_Table_Process (AD_Client_ID,AD_Org_ID,AD_Process_ID,AD_Table_ID,Created,CreatedBy,EntityType,IsActive,Updated,UpdatedBy,WEBUI_QuickAction,WEBUI_QuickAction_Default) VALUES (0,0,540983,540543,TO_TIMESTAMP('2018-07-09 14:22:03','YYYY-MM-DD HH24:MI:SS'),100,'de.metas.handlingunits','Y',TO_TIMESTAMP('2018-07-09 14:22:03','YYYY-MM-DD HH24:MI:SS'),100,'N','N')
+;
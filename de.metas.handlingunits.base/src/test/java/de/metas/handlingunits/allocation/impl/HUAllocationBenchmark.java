@@ -0,0 +1,152 @@
+package de.metas.handlingunits.allocation.impl;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.compiere.model.I_C_UOM;
+import org.compiere.model.I_M_Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.metas.handlingunits.HUTestHelper;
+import de.metas.handlingunits.IHUContext;
+import de.metas.handlingunits.allocation.IAllocationDestination;
+import de.metas.handlingunits.allocation.IAllocationRequest;
+import de.metas.handlingunits.allocation.IAllocationResult;
+import de.metas.handlingunits.allocation.IAllocationSource;
+import de.metas.handlingunits.model.I_M_HU;
+import de.metas.handlingunits.model.I_M_HU_PI;
+import de.metas.handlingunits.model.I_M_HU_PI_Item;
+import de.metas.handlingunits.model.I_M_HU_PI_Item_Product;
+import de.metas.handlingunits.model.X_M_HU_PI_Version;
+import de.metas.quantity.Quantity;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Measures the FIFO allocation and deallocation strategies on LU/TU/CU hierarchies, against the in-memory {@code POJOLookupMap}.
+ * <ul>
+ * <li>{@link #loadLUs(LoadState)} creates {@code lus} LUs with {@code tusPerLU} TUs with {@code cusPerTU} CUs each</li>
+ * <li>{@link #unloadLUs(UnloadState)} takes the whole qty out of such LUs again; the LUs are created before each invocation and that's not measured</li>
+ * </ul>
+ * One benchmark operation is one load resp. unload, so the primary score is the time per load and {@code gc.alloc.rate.norm} of JMH's GC profiler ({@code -prof gc}) is the number of bytes allocated per load.
+ * <p>
+ * It's not a unit test, so surefire doesn't run it. Run it from the module directory with e.g.
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test -Dexec.args="-classpath %classpath org.openjdk.jmh.Main HUAllocationBenchmark -p tusPerLU=10,50 -prof gc"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HUAllocationBenchmark
+{
+	@State(Scope.Thread)
+	public static class LoadState
+	{
+		@Param({ "1" })
+		public int lus;
+
+		@Param({ "20" })
+		public int tusPerLU;
+
+		@Param({ "10" })
+		public int cusPerTU;
+
+		HUTestHelper helper;
+		I_M_HU_PI_Item piLU_Item;
+		I_M_HU_PI_Item_Product piTU_Item_Product;
+		BigDecimal qtyCUsTotal;
+
+		/**
+		 * Starts each iteration with an empty {@code POJOLookupMap}, so that the HUs of the previous iterations don't slow down the lookups.
+		 */
+		@Setup(Level.Iteration)
+		public void setupIteration()
+		{
+			helper = new HUTestHelper();
+
+			final I_M_HU_PI piTU = helper.createHUDefinition(HUTestHelper.NAME_IFCO_Product, X_M_HU_PI_Version.HU_UNITTYPE_TransportUnit);
+			final I_M_HU_PI_Item piTU_Item = helper.createHU_PI_Item_Material(piTU);
+			piTU_Item_Product = helper.assignProduct(piTU_Item, helper.pTomato, BigDecimal.valueOf(cusPerTU), helper.uomKg);
+
+			final I_M_HU_PI piLU = helper.createHUDefinition(HUTestHelper.NAME_Palet_Product, X_M_HU_PI_Version.HU_UNITTYPE_LoadLogistiqueUnit);
+			piLU_Item = helper.createHU_PI_Item_IncludedHU(piLU, piTU, BigDecimal.valueOf(tusPerLU));
+
+			qtyCUsTotal = BigDecimal.valueOf(lus * tusPerLU * cusPerTU);
+		}
+
+		List<I_M_HU> createLUs()
+		{
+			return helper.createLUs(helper.getHUContext(), piLU_Item, piTU_Item_Product, qtyCUsTotal);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class UnloadState extends LoadState
+	{
+		List<I_M_HU> lusToUnload;
+
+		@Setup(Level.Invocation)
+		public void setupInvocation()
+		{
+			lusToUnload = createLUs();
+		}
+	}
+
+	@Benchmark
+	public List<I_M_HU> loadLUs(final LoadState state)
+	{
+		return state.createLUs();
+	}
+
+	@Benchmark
+	public IAllocationResult unloadLUs(final UnloadState state)
+	{
+		final HUTestHelper helper = state.helper;
+		final I_M_Product product = helper.pTomato;
+		final I_C_UOM uom = helper.uomKg;
+
+		final IAllocationSource source = HUListAllocationSourceDestination.of(state.lusToUnload);
+		final IAllocationDestination destination = helper.createDummySourceDestination(product, Quantity.QTY_INFINITE, uom, false);
+
+		final IHUContext huContext = helper.getHUContext();
+		final IAllocationRequest request = AllocationUtils.createQtyRequest(huContext, product, state.qtyCUsTotal, uom, helper.getTodayDate());
+
+		return HULoader.of(source, destination).load(request);
+	}
+}
@@ -0,0 +1,131 @@
+package de.metas.handlingunits.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.test.AdempiereTestHelper;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.metas.handlingunits.model.I_M_HU;
+import de.metas.handlingunits.model.I_M_HU_Item;
+import de.metas.handlingunits.model.X_M_HU_Item;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+public class CachedHUAndItemsDAOTest
+{
+	private I_M_HU lu;
+	private I_M_HU_Item luItem;
+	private I_M_HU_Item luInactiveItem;
+	private I_M_HU tu;
+	private I_M_HU_Item tuItem;
+	private I_M_HU vhu;
+
+	@Before
+	public void init()
+	{
+		AdempiereTestHelper.get().init();
+
+		lu = createHU(null);
+		luItem = createItem(lu, X_M_HU_Item.ITEMTYPE_HandlingUnit);
+		luInactiveItem = createItem(lu, X_M_HU_Item.ITEMTYPE_PackingMaterial);
+		luInactiveItem.setIsActive(false);
+		InterfaceWrapperHelper.save(luInactiveItem);
+
+		tu = createHU(luItem);
+		tuItem = createItem(tu, X_M_HU_Item.ITEMTYPE_Material);
+		vhu = createHU(tuItem);
+		createItem(vhu, X_M_HU_Item.ITEMTYPE_Material);
+	}
+
+	private static I_M_HU createHU(final I_M_HU_Item parentItem)
+	{
+		final I_M_HU hu = InterfaceWrapperHelper.newInstance(I_M_HU.class);
+		hu.setM_HU_Item_Parent(parentItem);
+		InterfaceWrapperHelper.save(hu);
+		return hu;
+	}
+
+	private static I_M_HU_Item createItem(final I_M_HU hu, final String itemType)
+	{
+		final I_M_HU_Item item = InterfaceWrapperHelper.newInstance(I_M_HU_Item.class);
+		item.setItemType(itemType);
+		item.setM_HU(hu);
+		InterfaceWrapperHelper.save(item);
+		return item;
+	}
+
+	@Test
+	public void prefetchTree_returnsSameAsDatabase()
+	{
+		final CachedHUAndItemsDAO cachedDAO = new CachedHUAndItemsDAO();
+		cachedDAO.prefetchTree(lu);
+
+		assertThat(extractIds(cachedDAO.retrieveItems(lu))).isEqualTo(extractIds(HUAndItemsDAO.instance.retrieveItems(lu)));
+		assertThat(extractIds(cachedDAO.retrieveItems(lu))).doesNotContain(luInactiveItem.getM_HU_Item_ID());
+
+		final List<I_M_HU> includedHUs = cachedDAO.retrieveIncludedHUs(luItem);
+		assertThat(extractIds(includedHUs)).containsExactly(tu.getM_HU_ID());
+
+		final I_M_HU cachedTU = includedHUs.get(0);
+		final List<I_M_HU_Item> tuItems = cachedDAO.retrieveItems(cachedTU);
+		assertThat(extractIds(tuItems)).containsExactly(tuItem.getM_HU_Item_ID());
+		assertThat(tuItems.get(0).getM_HU()).isSameAs(cachedTU);
+
+		assertThat(extractIds(cachedDAO.retrieveIncludedHUs(tuItems.get(0)))).containsExactly(vhu.getM_HU_ID());
+	}
+
+	@Test
+	public void prefetchTree_keepsAlreadyCachedItems()
+	{
+		final CachedHUAndItemsDAO cachedDAO = new CachedHUAndItemsDAO();
+		final List<I_M_HU> includedHUsBefore = cachedDAO.retrieveIncludedHUs(luItem);
+		final I_M_HU_Item tuItemBefore = cachedDAO.retrieveItems(includedHUsBefore.get(0)).get(0);
+
+		cachedDAO.prefetchTree(lu);
+
+		final I_M_HU_Item tuItemAfter = cachedDAO.retrieveItems(includedHUsBefore.get(0)).get(0);
+		assertThat(tuItemAfter).isSameAs(tuItemBefore);
+	}
+
+	@Test
+	public void prefetchTree_notTopLevel()
+	{
+		final CachedHUAndItemsDAO cachedDAO = new CachedHUAndItemsDAO();
+		cachedDAO.prefetchTree(tu);
+
+		// nothing was prefetched, so the items are loaded on demand
+		assertThat(extractIds(cachedDAO.retrieveItems(tu))).containsExactly(tuItem.getM_HU_Item_ID());
+	}
+
+	private static List<Integer> extractIds(final List<?> models)
+	{
+		return models.stream()
+				.map(InterfaceWrapperHelper::getId)
+				.collect(Collectors.toList());
+	}
+}
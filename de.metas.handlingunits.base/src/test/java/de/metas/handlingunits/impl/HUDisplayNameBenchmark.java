@@ -0,0 +1,167 @@
+package de.metas.handlingunits.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.adempiere.service.ISysConfigBL;
+import org.adempiere.util.Services;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.metas.handlingunits.HUTestHelper;
+import de.metas.handlingunits.IHandlingUnitsBL;
+import de.metas.handlingunits.IHandlingUnitsDAO;
+import de.metas.handlingunits.impl.HUDisplayNameCache.HitRate;
+import de.metas.handlingunits.model.I_M_HU;
+import de.metas.handlingunits.model.I_M_HU_PI;
+import de.metas.handlingunits.model.I_M_HU_PI_Item;
+import de.metas.handlingunits.model.I_M_HU_PI_Item_Product;
+import de.metas.handlingunits.model.X_M_HU_PI_Version;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Measures rendering the display names of an HU list (LUs and their TUs, with the included HUs count), as an HU editor or picking terminal does it.
+ * Run it once with {@code cacheEnabled=true} and once with {@code false} to see what {@link HUDisplayNameCache} saves.
+ * One benchmark operation renders the whole list; after the first operation of an iteration, all names are memoized.
+ * <p>
+ * It's not a unit test, so surefire doesn't run it. Run it from the module directory with e.g.
+ *
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test -Dexec.args="-classpath %classpath org.openjdk.jmh.Main HUDisplayNameBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HUDisplayNameBenchmark
+{
+	@State(Scope.Thread)
+	public static class HUListState
+	{
+		@Param({ "true", "false" })
+		public boolean cacheEnabled;
+
+		@Param({ "50" })
+		public int lus;
+
+		@Param({ "20" })
+		public int tusPerLU;
+
+		List<I_M_HU> hus;
+
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			final HUTestHelper helper = new HUTestHelper();
+
+			final I_M_HU_PI piTU = helper.createHUDefinition(HUTestHelper.NAME_IFCO_Product, X_M_HU_PI_Version.HU_UNITTYPE_TransportUnit);
+			final I_M_HU_PI_Item piTU_Item = helper.createHU_PI_Item_Material(piTU);
+			final I_M_HU_PI_Item_Product piTU_Item_Product = helper.assignProduct(piTU_Item, helper.pTomato, BigDecimal.TEN, helper.uomKg);
+
+			final I_M_HU_PI piLU = helper.createHUDefinition(HUTestHelper.NAME_Palet_Product, X_M_HU_PI_Version.HU_UNITTYPE_LoadLogistiqueUnit);
+			final I_M_HU_PI_Item piLU_Item = helper.createHU_PI_Item_IncludedHU(piLU, piTU, BigDecimal.valueOf(tusPerLU));
+
+			final BigDecimal qtyCUsTotal = BigDecimal.valueOf(lus * tusPerLU * 10);
+			final List<I_M_HU> lus = helper.createLUs(helper.getHUContext(), piLU_Item, piTU_Item_Product, qtyCUsTotal);
+
+			final IHandlingUnitsDAO handlingUnitsDAO = Services.get(IHandlingUnitsDAO.class);
+			hus = new ArrayList<>();
+			for (final I_M_HU lu : lus)
+			{
+				hus.add(lu);
+				hus.addAll(handlingUnitsDAO.retrieveIncludedHUs(lu));
+			}
+
+			Services.get(ISysConfigBL.class).setValue(HUDisplayNameCache.SYSCONFIG_Enabled, cacheEnabled, 0);
+		}
+	}
+
+	/**
+	 * Reports the hits and misses of all {@link HUDisplayNameCache} caches per iteration.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class CacheCounters
+	{
+		public long cacheHits;
+		public long cacheMisses;
+
+		private long hitsAtIterationStart;
+		private long missesAtIterationStart;
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			cacheHits = 0;
+			cacheMisses = 0;
+			hitsAtIterationStart = sumHits();
+			missesAtIterationStart = sumMisses();
+		}
+
+		private void update()
+		{
+			cacheHits = sumHits() - hitsAtIterationStart;
+			cacheMisses = sumMisses() - missesAtIterationStart;
+		}
+
+		private static long sumHits()
+		{
+			return HUDisplayNameCache.instance.getHitRates().stream().mapToLong(HitRate::getHits).sum();
+		}
+
+		private static long sumMisses()
+		{
+			return HUDisplayNameCache.instance.getHitRates().stream().mapToLong(HitRate::getMisses).sum();
+		}
+	}
+
+	@Benchmark
+	public void renderDisplayNames(final HUListState state, final CacheCounters counters, final Blackhole blackhole)
+	{
+		final IHandlingUnitsBL handlingUnitsBL = Services.get(IHandlingUnitsBL.class);
+		for (final I_M_HU hu : state.hus)
+		{
+			blackhole.consume(handlingUnitsBL.buildDisplayName(hu)
+					.setShowIncludedHUCount(true)
+					.build());
+		}
+		counters.update();
+	}
+}
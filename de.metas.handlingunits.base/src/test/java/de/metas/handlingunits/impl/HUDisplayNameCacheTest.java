@@ -0,0 +1,143 @@
+package de.metas.handlingunits.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+
+import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.test.AdempiereTestHelper;
+import org.compiere.model.I_C_UOM;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.metas.handlingunits.impl.HUDisplayNameCache.HitRate;
+import de.metas.handlingunits.model.I_M_HU;
+import de.metas.handlingunits.model.I_M_HU_PI;
+import de.metas.handlingunits.model.I_M_HU_PI_Item;
+import de.metas.handlingunits.model.I_M_HU_PI_Item_Product;
+import de.metas.handlingunits.model.I_M_HU_PI_Version;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+public class HUDisplayNameCacheTest
+{
+	private I_M_HU_PI pi;
+	private I_M_HU_PI_Version piVersion;
+	private I_M_HU_PI_Item_Product piItemProduct;
+
+	@Before
+	public void init()
+	{
+		AdempiereTestHelper.get().init();
+
+		final I_C_UOM uom = InterfaceWrapperHelper.newInstance(I_C_UOM.class);
+		uom.setUOMSymbol("Kg");
+		InterfaceWrapperHelper.save(uom);
+
+		pi = InterfaceWrapperHelper.newInstance(I_M_HU_PI.class);
+		pi.setName("IFCO");
+		InterfaceWrapperHelper.save(pi);
+
+		piVersion = InterfaceWrapperHelper.newInstance(I_M_HU_PI_Version.class);
+		piVersion.setM_HU_PI(pi);
+		InterfaceWrapperHelper.save(piVersion);
+
+		final I_M_HU_PI_Item piItem = InterfaceWrapperHelper.newInstance(I_M_HU_PI_Item.class);
+		piItem.setM_HU_PI_Version(piVersion);
+		InterfaceWrapperHelper.save(piItem);
+
+		piItemProduct = InterfaceWrapperHelper.newInstance(I_M_HU_PI_Item_Product.class);
+		piItemProduct.setM_HU_PI_Item(piItem);
+		piItemProduct.setQty(BigDecimal.TEN);
+		piItemProduct.setC_UOM(uom);
+		InterfaceWrapperHelper.save(piItemProduct);
+	}
+
+	@Test
+	public void itemProductDisplayName_memoizedUntilPIChanges()
+	{
+		final long hitsBefore = getHits(I_M_HU_PI_Item_Product.Table_Name);
+
+		assertThat(buildItemProductDisplayName()).isEqualTo("IFCO x 10 Kg");
+		assertThat(buildItemProductDisplayName()).isEqualTo("IFCO x 10 Kg");
+		assertThat(getHits(I_M_HU_PI_Item_Product.Table_Name)).isEqualTo(hitsBefore + 1);
+
+		pi.setName("Palette");
+		InterfaceWrapperHelper.save(pi);
+
+		assertThat(buildItemProductDisplayName()).isEqualTo("Palette x 10 Kg");
+	}
+
+	@Test
+	public void itemProductDisplayName_customCapacityNotMemoized()
+	{
+		assertThat(buildItemProductDisplayName()).isEqualTo("IFCO x 10 Kg");
+
+		final String displayName = new HUPIItemProductDisplayNameBuilder()
+				.setM_HU_PI_Item_Product(piItemProduct)
+				.setQtyCapacity(new BigDecimal("5"))
+				.buildItemProductDisplayName();
+		assertThat(displayName).isEqualTo("IFCO x 5 Kg");
+	}
+
+	@Test
+	public void huDisplayName_memoizedUntilHUChanges()
+	{
+		final I_M_HU hu = InterfaceWrapperHelper.newInstance(I_M_HU.class);
+		hu.setValue("1000");
+		hu.setM_HU_PI_Version(piVersion);
+		InterfaceWrapperHelper.save(hu);
+
+		final long hitsBefore = getHits(I_M_HU.Table_Name);
+
+		assertThat(new HUDisplayNameBuilder(hu).build()).isEqualTo("1000 (IFCO)");
+		assertThat(new HUDisplayNameBuilder(hu).build()).isEqualTo("1000 (IFCO)");
+		assertThat(getHits(I_M_HU.Table_Name)).isEqualTo(hitsBefore + 1);
+
+		// not cached while the change is not saved
+		hu.setValue("1001");
+		assertThat(new HUDisplayNameBuilder(hu).build()).isEqualTo("1001 (IFCO)");
+
+		InterfaceWrapperHelper.save(hu);
+		assertThat(new HUDisplayNameBuilder(hu).build()).isEqualTo("1001 (IFCO)");
+
+		// other options, other name
+		assertThat(new HUDisplayNameBuilder(hu).setShowHUPINameNextLine(true).build()).isEqualTo("1001<br>(IFCO)");
+	}
+
+	private String buildItemProductDisplayName()
+	{
+		return new HUPIItemProductDisplayNameBuilder()
+				.setM_HU_PI_Item_Product(piItemProduct)
+				.buildItemProductDisplayName();
+	}
+
+	private static long getHits(final String tableName)
+	{
+		return HUDisplayNameCache.instance.getHitRates()
+				.stream()
+				.filter(hitRate -> hitRate.getCacheName().equals(tableName + "#DisplayName"))
+				.mapToLong(HitRate::getHits)
+				.sum();
+	}
+}
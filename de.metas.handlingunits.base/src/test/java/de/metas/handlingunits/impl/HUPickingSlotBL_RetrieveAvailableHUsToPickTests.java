@@ -4,9 +4,9 @@ import static org.adempiere.model.InterfaceWrapperHelper.newInstance;
 import static org.adempiere.model.InterfaceWrapperHelper.save;
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
 import org.adempiere.ad.wrapper.POJOWrapper;
 import org.adempiere.test.AdempiereTestHelper;
@@ -19,7 +19,7 @@ import org.junit.experimental.theories.Theory;
 import org.junit.runner.RunWith;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableMap;
 
 import de.metas.handlingunits.model.I_M_HU;
 import de.metas.handlingunits.model.I_M_HU_Item;
@@ -67,6 +67,9 @@ public class HUPickingSlotBL_RetrieveAvailableHUsToPickTests
 	@Injectable
 	private IStorageEngine storageEngine;
 
+	@Injectable
+	private IStorageQuery storageQuery;
+
 	@Mocked
 	private HUStorageRecord storageRecord;
 
@@ -378,9 +381,10 @@ public class HUPickingSlotBL_RetrieveAvailableHUsToPickTests
 		// @formatter:off
 		new Expectations()
 		{{
-				storageEngine.retrieveStorageRecords((IContextAware)any, (Set<IStorageQuery>)any);
-				result = ImmutableSet.of(storageRecord);
+				storageEngine.retrieveStorageRecordsByQuery((IContextAware)any, (Collection<IStorageQuery>)any);
+				result = ImmutableMap.of(storageQuery, ImmutableList.of(storageRecord));
 
+				storageRecord.getId(); result = "storageRecord";
 				storageRecord.getVHU();	result = vhu;
 				storageRecord.getLocator().getM_Locator_ID(); result = LOCATOR_ID;
 		}};
@@ -22,14 +22,27 @@ package de.metas.handlingunits.impl;
  * #L%
  */
 
+import static org.assertj.core.api.Assertions.assertThat;
 
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.adempiere.model.InterfaceWrapperHelper;
 import org.adempiere.test.AdempiereTestHelper;
 import org.adempiere.util.text.ExtendedReflectionToStringBuilder;
 import org.adempiere.util.text.RecursiveIndentedMultilineToStringStyle;
+import org.compiere.model.I_M_Attribute;
+import org.compiere.model.X_M_Attribute;
+import org.compiere.util.TimeUtil;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import de.metas.handlingunits.IHUQueryBuilder;
+import de.metas.handlingunits.model.I_M_HU;
+import de.metas.handlingunits.model.I_M_HU_Attribute;
+
 public class HUQueryBuilderTest
 {
 	@Before
@@ -51,6 +64,67 @@ public class HUQueryBuilderTest
 		assertSameStringRepresentation(husQuery, husQueryCopy);
 	}
 
+	@Test
+	public void test_addOnlyWithAttributeInRange_Date()
+	{
+		final I_M_Attribute bestBeforeDate = createAttribute("BestBeforeDate", X_M_Attribute.ATTRIBUTEVALUETYPE_Date);
+		final I_M_HU hu1 = createHUWithAttribute(bestBeforeDate, TimeUtil.getDay(2018, 1, 1));
+		final I_M_HU hu2 = createHUWithAttribute(bestBeforeDate, TimeUtil.getDay(2018, 2, 1));
+		final I_M_HU hu3 = createHUWithAttribute(bestBeforeDate, TimeUtil.getDay(2018, 3, 1));
+
+		assertThat(queryHUIds(new HUQueryBuilder().addOnlyWithAttributeInRange(bestBeforeDate, TimeUtil.getDay(2018, 2, 1), TimeUtil.getDay(2018, 3, 1))))
+				.containsOnly(hu2.getM_HU_ID(), hu3.getM_HU_ID());
+		assertThat(queryHUIds(new HUQueryBuilder().addOnlyWithAttributeInRange(bestBeforeDate, null, TimeUtil.getDay(2018, 1, 15))))
+				.containsOnly(hu1.getM_HU_ID());
+	}
+
+	@Test
+	public void test_addOnlyWithAttributeInRange_Number()
+	{
+		final I_M_Attribute weight = createAttribute("Weight", X_M_Attribute.ATTRIBUTEVALUETYPE_Number);
+		createHUWithAttribute(weight, new BigDecimal("10"));
+		final I_M_HU hu2 = createHUWithAttribute(weight, new BigDecimal("20"));
+		final I_M_HU hu3 = createHUWithAttribute(weight, new BigDecimal("30"));
+
+		assertThat(queryHUIds(new HUQueryBuilder().addOnlyWithAttributeInRange(weight, new BigDecimal("15"), null)))
+				.containsOnly(hu2.getM_HU_ID(), hu3.getM_HU_ID());
+	}
+
+	private static I_M_Attribute createAttribute(final String value, final String attributeValueType)
+	{
+		final I_M_Attribute attribute = InterfaceWrapperHelper.newInstance(I_M_Attribute.class);
+		attribute.setValue(value);
+		attribute.setName(value);
+		attribute.setAttributeValueType(attributeValueType);
+		InterfaceWrapperHelper.save(attribute);
+		return attribute;
+	}
+
+	private static I_M_HU createHUWithAttribute(final I_M_Attribute attribute, final Object value)
+	{
+		final I_M_HU hu = InterfaceWrapperHelper.newInstance(I_M_HU.class);
+		InterfaceWrapperHelper.save(hu);
+
+		final I_M_HU_Attribute huAttribute = InterfaceWrapperHelper.newInstance(I_M_HU_Attribute.class);
+		huAttribute.setM_HU(hu);
+		huAttribute.setM_Attribute_ID(attribute.getM_Attribute_ID());
+		if (value instanceof BigDecimal)
+		{
+			huAttribute.setValueNumber((BigDecimal)value);
+		}
+		else
+		{
+			huAttribute.setValueDate((Timestamp)value);
+		}
+		InterfaceWrapperHelper.save(huAttribute);
+		return hu;
+	}
+
+	private static List<Integer> queryHUIds(final IHUQueryBuilder huQuery)
+	{
+		return huQuery.createQuery().listIds();
+	}
+
 	private final void assertSameStringRepresentation(final Object expected, final Object actual)
 	{
 		final String expectedStr = toString(expected);
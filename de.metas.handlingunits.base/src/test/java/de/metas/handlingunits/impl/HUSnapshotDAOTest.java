@@ -26,18 +26,22 @@ import static de.metas.business.BusinessTestHelper.createWarehouse;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.adempiere.ad.trx.api.ITrx;
 import org.adempiere.ad.trx.api.ITrxManager;
 import org.adempiere.ad.wrapper.POJOLookupMap;
 import org.adempiere.model.InterfaceWrapperHelper;
 import org.adempiere.model.PlainContextAware;
+import org.adempiere.service.ISysConfigBL;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
 import org.adempiere.util.lang.IMutable;
 import org.adempiere.util.lang.Mutable;
 import org.adempiere.util.time.SystemTime;
 import org.compiere.model.I_M_Locator;
+import org.compiere.model.I_M_Product;
 import org.compiere.model.I_M_Warehouse;
 import org.compiere.util.Env;
 import org.compiere.util.TrxRunnableAdapter;
@@ -47,16 +51,22 @@ import org.junit.Test;
 
 import de.metas.handlingunits.AbstractHUTest;
 import de.metas.handlingunits.HUTestHelper;
+import de.metas.handlingunits.IHandlingUnitsDAO;
+import de.metas.handlingunits.exceptions.HUException;
 import de.metas.handlingunits.expectations.HUExpectation;
 import de.metas.handlingunits.model.I_M_HU;
+import de.metas.handlingunits.model.I_M_HU_Attribute;
 import de.metas.handlingunits.model.I_M_HU_Item_Storage;
 import de.metas.handlingunits.model.I_M_HU_PI;
 import de.metas.handlingunits.model.I_M_HU_PI_Item;
+import de.metas.handlingunits.model.I_M_HU_Storage;
 import de.metas.handlingunits.model.I_M_HU_Trx_Line;
 import de.metas.handlingunits.model.X_M_HU;
 import de.metas.handlingunits.model.X_M_HU_PI_Version;
 import de.metas.handlingunits.snapshot.IHUSnapshotDAO;
+import de.metas.handlingunits.snapshot.ISnapshotRestorer;
 import de.metas.handlingunits.snapshot.impl.HUSnapshotDAO;
+import de.metas.handlingunits.snapshot.impl.M_HU_Snapshot_ProducerAndRestorer;
 import de.metas.handlingunits.util.TraceUtils;
 
 public class HUSnapshotDAOTest extends AbstractHUTest
@@ -245,4 +255,180 @@ public class HUSnapshotDAOTest extends AbstractHUTest
 		luExpectation.assertExpected("LU was correctly restored", luRef.getValue());
 
 	}
+
+	/**
+	 * Makes sure that restoring the HU storages and attributes set based gives the same result as restoring them record by record.
+	 */
+	@Test
+	public void test_SetBasedRestore_SameAsPerRecordRestore()
+	{
+		final PlainContextAware context = PlainContextAware.newOutOfTrxAllowThreadInherited(Env.getCtx());
+
+		final I_M_HU lu = createLUWithTUStorageAndAttribute();
+		final I_M_HU tu = Services.get(IHandlingUnitsDAO.class).retrieveIncludedHUs(lu).get(0);
+		final I_M_HU_Storage tuStorage = POJOLookupMap.get().getFirstOnly(I_M_HU_Storage.class, storage -> storage.getM_HU_ID() == tu.getM_HU_ID());
+		final I_M_HU_Attribute tuAttribute = POJOLookupMap.get().getFirstOnly(I_M_HU_Attribute.class, attribute -> attribute.getM_HU_ID() == tu.getM_HU_ID());
+
+		final String snapshotId = createSnapshot(context, lu);
+
+		final Map<Integer, BigDecimal> perRecordResult = changeAndRestore(newRestorer(context, snapshotId), lu, false);
+		final Map<Integer, BigDecimal> setBasedResult = changeAndRestore(newRestorer(context, snapshotId), lu, true);
+
+		Assert.assertEquals(perRecordResult, setBasedResult);
+		Assert.assertThat(setBasedResult.get(tuStorage.getM_HU_Storage_ID()), Matchers.comparesEqualTo(new BigDecimal("10")));
+		Assert.assertThat(setBasedResult.get(-tuAttribute.getM_HU_Attribute_ID()), Matchers.comparesEqualTo(BigDecimal.ONE));
+	}
+
+	/**
+	 * Makes sure that a restorer which did a set based restore still restores the storages and attributes when it's used again with the set based restore disabled.
+	 */
+	@Test
+	public void test_SetBasedRestore_RestorerReusedWithPerRecordRestore()
+	{
+		final PlainContextAware context = PlainContextAware.newOutOfTrxAllowThreadInherited(Env.getCtx());
+
+		final I_M_HU lu = createLUWithTUStorageAndAttribute();
+		final String snapshotId = createSnapshot(context, lu);
+		final ISnapshotRestorer<I_M_HU> restorer = newRestorer(context, snapshotId);
+
+		final Map<Integer, BigDecimal> setBasedResult = changeAndRestore(restorer, lu, true);
+		final Map<Integer, BigDecimal> perRecordResult = changeAndRestore(restorer, lu, false);
+
+		Assert.assertEquals(setBasedResult, perRecordResult);
+	}
+
+	/**
+	 * Makes sure that the set based restore fails, like the per record restore does, if a storage was deleted after the snapshot was taken.
+	 */
+	@Test
+	public void test_SetBasedRestore_DeletedStorage()
+	{
+		final PlainContextAware context = PlainContextAware.newOutOfTrxAllowThreadInherited(Env.getCtx());
+
+		final I_M_HU lu = createLUWithTUStorageAndAttribute();
+		final String snapshotId = createSnapshot(context, lu);
+
+		for (final I_M_HU_Storage storage : POJOLookupMap.get().getRecords(I_M_HU_Storage.class))
+		{
+			InterfaceWrapperHelper.delete(storage);
+		}
+
+		for (final boolean setBasedRestore : new boolean[] { false, true })
+		{
+			Services.get(ISysConfigBL.class).setValue(M_HU_Snapshot_ProducerAndRestorer.SYSCONFIG_SetBasedRestore, setBasedRestore, 0);
+			try
+			{
+				newRestorer(context, snapshotId).addModel(lu).restoreFromSnapshot();
+				Assert.fail("HUException expected when setBasedRestore=" + setBasedRestore);
+			}
+			catch (final HUException expected)
+			{
+				// OK
+			}
+		}
+	}
+
+	/**
+	 * @return LU with one TU which has a storage with qty=10 and an attribute with ValueNumber=1
+	 */
+	private I_M_HU createLUWithTUStorageAndAttribute()
+	{
+		final IMutable<I_M_HU> luRef = new Mutable<>();
+		final IMutable<I_M_HU> tuRef = new Mutable<>();
+		//@formatter:off
+		HUExpectation.newExpectation()
+				.capture(luRef)
+				.huPI(piLU)
+				.huStatus(X_M_HU.HUSTATUS_Active)
+				.locator(warehouse1_locator1)
+				.newHUItemExpectation(piLU_item)
+					.newIncludedHUExpectation()
+						.capture(tuRef)
+						.huPI(piTU)
+						.huStatus(X_M_HU.HUSTATUS_Active)
+						.endExpectation()
+					.endExpectation()
+				.createHU();
+		//@formatter:on
+
+		final I_M_HU tu = tuRef.getValue();
+		createHUStorage(tu, pTomato, "10");
+		final I_M_HU_Attribute tuAttribute = InterfaceWrapperHelper.newInstance(I_M_HU_Attribute.class);
+		tuAttribute.setM_HU(tu);
+		tuAttribute.setValueNumber(BigDecimal.ONE);
+		InterfaceWrapperHelper.save(tuAttribute);
+
+		return luRef.getValue();
+	}
+
+	private String createSnapshot(final PlainContextAware context, final I_M_HU lu)
+	{
+		return huSnapshotDAO.createSnapshot()
+				.setContext(context)
+				.addModel(lu)
+				.createSnapshots()
+				.getSnapshotId();
+	}
+
+	private ISnapshotRestorer<I_M_HU> newRestorer(final PlainContextAware context, final String snapshotId)
+	{
+		return huSnapshotDAO.restoreHUs()
+				.setContext(context)
+				.setDateTrx(SystemTime.asDate())
+				.setSnapshotId(snapshotId);
+	}
+
+	/**
+	 * Changes the TU's storage and attribute, adds a new storage and restores the LU using the given restorer.
+	 *
+	 * @return the TU's storage quantities by M_HU_Storage_ID and its attributes' ValueNumbers by negated M_HU_Attribute_ID
+	 */
+	private Map<Integer, BigDecimal> changeAndRestore(final ISnapshotRestorer<I_M_HU> restorer, final I_M_HU lu, final boolean setBasedRestore)
+	{
+		Services.get(ISysConfigBL.class).setValue(M_HU_Snapshot_ProducerAndRestorer.SYSCONFIG_SetBasedRestore, setBasedRestore, 0);
+
+		trxManager.run(new TrxRunnableAdapter()
+		{
+			@Override
+			public void run(final String localTrxName) throws Exception
+			{
+				for (final I_M_HU_Storage storage : POJOLookupMap.get().getRecords(I_M_HU_Storage.class))
+				{
+					storage.setQty(new BigDecimal("3"));
+					InterfaceWrapperHelper.save(storage, localTrxName);
+				}
+				for (final I_M_HU_Attribute attribute : POJOLookupMap.get().getRecords(I_M_HU_Attribute.class))
+				{
+					attribute.setValueNumber(new BigDecimal("7"));
+					InterfaceWrapperHelper.save(attribute, localTrxName);
+				}
+			}
+		});
+		final I_M_HU tu = Services.get(IHandlingUnitsDAO.class).retrieveIncludedHUs(lu).get(0);
+		createHUStorage(tu, pSalad, "5"); // created after the snapshot
+
+		restorer.addModel(lu).restoreFromSnapshot();
+
+		final Map<Integer, BigDecimal> result = new TreeMap<>();
+		for (final I_M_HU_Storage storage : POJOLookupMap.get().getRecords(I_M_HU_Storage.class))
+		{
+			result.put(storage.getM_HU_Storage_ID(), storage.getQty());
+		}
+		for (final I_M_HU_Attribute attribute : POJOLookupMap.get().getRecords(I_M_HU_Attribute.class))
+		{
+			result.put(-attribute.getM_HU_Attribute_ID(), attribute.getValueNumber());
+		}
+		return result;
+	}
+
+	private I_M_HU_Storage createHUStorage(final I_M_HU hu, final I_M_Product product, final String qty)
+	{
+		final I_M_HU_Storage storage = InterfaceWrapperHelper.newInstance(I_M_HU_Storage.class);
+		storage.setM_HU(hu);
+		storage.setM_Product_ID(product.getM_Product_ID());
+		storage.setC_UOM_ID(uomKg.getC_UOM_ID());
+		storage.setQty(new BigDecimal(qty));
+		InterfaceWrapperHelper.save(storage);
+		return storage;
+	}
 }
@@ -0,0 +1,124 @@
+package de.metas.handlingunits.picking;
+
+import static org.adempiere.model.InterfaceWrapperHelper.load;
+import static org.adempiere.model.InterfaceWrapperHelper.newInstance;
+import static org.adempiere.model.InterfaceWrapperHelper.save;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.adempiere.test.AdempiereTestHelper;
+import org.compiere.util.Env;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import de.metas.handlingunits.model.I_M_Picking_Candidate;
+import de.metas.handlingunits.model.X_M_Picking_Candidate;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+public class PickingCandidateRepositoryTest
+{
+	private PickingCandidateRepository pickingCandidateRepository;
+
+	@Before
+	public void init()
+	{
+		AdempiereTestHelper.get().init();
+		pickingCandidateRepository = new PickingCandidateRepository();
+	}
+
+	@Test
+	public void updateStatus()
+	{
+		final I_M_Picking_Candidate candidate1 = createPickingCandidate(10, X_M_Picking_Candidate.STATUS_IP);
+		final I_M_Picking_Candidate candidate2 = createPickingCandidate(10, X_M_Picking_Candidate.STATUS_IP);
+		final I_M_Picking_Candidate candidate3 = createPickingCandidate(10, X_M_Picking_Candidate.STATUS_IP);
+
+		final int updated = pickingCandidateRepository.updateStatus(
+				ImmutableSet.of(candidate1.getM_Picking_Candidate_ID(), candidate2.getM_Picking_Candidate_ID()),
+				X_M_Picking_Candidate.STATUS_PR);
+
+		assertThat(updated).isEqualTo(2);
+		assertThat(reloadStatus(candidate1)).isEqualTo(X_M_Picking_Candidate.STATUS_PR);
+		assertThat(reloadStatus(candidate2)).isEqualTo(X_M_Picking_Candidate.STATUS_PR);
+		assertThat(reloadStatus(candidate3)).isEqualTo(X_M_Picking_Candidate.STATUS_IP);
+	}
+
+	@Test
+	public void updateStatus_sets_UpdatedBy()
+	{
+		final I_M_Picking_Candidate candidate = createPickingCandidate(10, X_M_Picking_Candidate.STATUS_IP);
+		Env.setContext(Env.getCtx(), Env.CTXNAME_AD_User_ID, 1234);
+
+		pickingCandidateRepository.updateStatus(ImmutableSet.of(candidate.getM_Picking_Candidate_ID()), X_M_Picking_Candidate.STATUS_PR);
+
+		final I_M_Picking_Candidate reloadedCandidate = load(candidate.getM_Picking_Candidate_ID(), I_M_Picking_Candidate.class);
+		assertThat(reloadedCandidate.getUpdatedBy()).isEqualTo(1234);
+		assertThat(reloadedCandidate.getUpdated()).isNotNull();
+	}
+
+	@Test
+	public void updateStatus_NoIds()
+	{
+		final I_M_Picking_Candidate candidate = createPickingCandidate(10, X_M_Picking_Candidate.STATUS_IP);
+
+		assertThat(pickingCandidateRepository.updateStatus(ImmutableSet.of(), X_M_Picking_Candidate.STATUS_PR)).isEqualTo(0);
+		assertThat(reloadStatus(candidate)).isEqualTo(X_M_Picking_Candidate.STATUS_IP);
+	}
+
+	@Test
+	public void retrievePickingCandidatesByPickingSlotIdsAndStatus()
+	{
+		final I_M_Picking_Candidate candidate1 = createPickingCandidate(10, X_M_Picking_Candidate.STATUS_IP);
+		createPickingCandidate(10, X_M_Picking_Candidate.STATUS_PR);
+		createPickingCandidate(20, X_M_Picking_Candidate.STATUS_IP);
+		final I_M_Picking_Candidate candidate4 = createPickingCandidate(30, X_M_Picking_Candidate.STATUS_IP);
+
+		final List<I_M_Picking_Candidate> result = pickingCandidateRepository.retrievePickingCandidatesByPickingSlotIdsAndStatus(
+				ImmutableList.of(10, 30),
+				X_M_Picking_Candidate.STATUS_IP);
+
+		assertThat(result)
+				.extracting(I_M_Picking_Candidate::getM_Picking_Candidate_ID)
+				.containsExactly(candidate1.getM_Picking_Candidate_ID(), candidate4.getM_Picking_Candidate_ID());
+		assertThat(pickingCandidateRepository.retrievePickingCandidatesByPickingSlotIdsAndStatus(ImmutableList.of(), X_M_Picking_Candidate.STATUS_IP)).isEmpty();
+	}
+
+	private static I_M_Picking_Candidate createPickingCandidate(final int pickingSlotId, final String status)
+	{
+		final I_M_Picking_Candidate pickingCandidate = newInstance(I_M_Picking_Candidate.class);
+		pickingCandidate.setM_PickingSlot_ID(pickingSlotId);
+		pickingCandidate.setStatus(status);
+		save(pickingCandidate);
+		return pickingCandidate;
+	}
+
+	private static String reloadStatus(final I_M_Picking_Candidate pickingCandidate)
+	{
+		return load(pickingCandidate.getM_Picking_Candidate_ID(), I_M_Picking_Candidate.class).getStatus();
+	}
+}
@@ -0,0 +1,153 @@
+package de.metas.handlingunits.picking.pickingCandidateCommands;
+
+import static org.adempiere.model.InterfaceWrapperHelper.load;
+import static org.adempiere.model.InterfaceWrapperHelper.newInstance;
+import static org.adempiere.model.InterfaceWrapperHelper.save;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+
+import org.adempiere.test.AdempiereTestHelper;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.metas.handlingunits.model.I_M_HU;
+import de.metas.handlingunits.model.I_M_PickingSlot;
+import de.metas.handlingunits.model.I_M_Picking_Candidate;
+import de.metas.handlingunits.model.X_M_Picking_Candidate;
+import de.metas.handlingunits.picking.PickingCandidateRepository;
+import de.metas.handlingunits.picking.pickingCandidateCommands.ProcessPickingSlotsCommand.ProcessPickingSlotsResult;
+import de.metas.handlingunits.sourcehu.HuId2SourceHUsService;
+import de.metas.handlingunits.trace.HUTraceRepository;
+import de.metas.picking.api.PickingConfigRepository;
+import de.metas.picking.model.I_M_Picking_Config;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Tests {@link ProcessPickingSlotsCommand}, which is what {@link de.metas.handlingunits.picking.PickingCandidateService#processForPickingSlotIds(java.util.Collection)} runs.
+ */
+public class ProcessPickingSlotsCommandTest
+{
+	private PickingCandidateRepository pickingCandidateRepository;
+
+	private I_M_PickingSlot pickingSlot;
+	private I_M_PickingSlot otherPickingSlot;
+
+	@Before
+	public void init()
+	{
+		AdempiereTestHelper.get().init();
+		pickingCandidateRepository = new PickingCandidateRepository();
+
+		final I_M_Picking_Config pickingConfig = newInstance(I_M_Picking_Config.class);
+		pickingConfig.setWEBUI_PickingTerminal_ViewProfile("default");
+		pickingConfig.setIsAllowOverdelivery(false);
+		save(pickingConfig);
+
+		pickingSlot = createPickingSlot();
+		otherPickingSlot = createPickingSlot();
+	}
+
+	private ProcessPickingSlotsResult processPickingSlot(final I_M_PickingSlot pickingSlot)
+	{
+		return ProcessPickingSlotsCommand.builder()
+				.sourceHUsRepository(new HuId2SourceHUsService(new HUTraceRepository()))
+				.pickingCandidateRepository(pickingCandidateRepository)
+				.pickingConfigRepository(new PickingConfigRepository())
+				.pickingSlotId(pickingSlot.getM_PickingSlot_ID())
+				.build()
+				.perform();
+	}
+
+	@Test
+	public void noCandidates()
+	{
+		createPickingCandidate(otherPickingSlot, createHU().getM_HU_ID(), X_M_Picking_Candidate.STATUS_IP);
+
+		final ProcessPickingSlotsResult result = processPickingSlot(pickingSlot);
+
+		assertThat(result).isSameAs(ProcessPickingSlotsResult.EMPTY);
+	}
+
+	/**
+	 * Verifies that failing HUs are reported per candidate, and that the candidates of other picking slots or with another status are not touched.
+	 */
+	@Test
+	public void failingCandidatesAreReportedAndStayInProgress()
+	{
+		final I_M_Picking_Candidate candidateWithoutHU = createPickingCandidate(pickingSlot, 999999, X_M_Picking_Candidate.STATUS_IP);
+		final I_M_Picking_Candidate candidateWithoutShipmentSchedule = createPickingCandidate(pickingSlot, createHU().getM_HU_ID(), X_M_Picking_Candidate.STATUS_IP);
+		final I_M_Picking_Candidate processedCandidate = createPickingCandidate(pickingSlot, createHU().getM_HU_ID(), X_M_Picking_Candidate.STATUS_PR);
+		final I_M_Picking_Candidate candidateOfOtherSlot = createPickingCandidate(otherPickingSlot, createHU().getM_HU_ID(), X_M_Picking_Candidate.STATUS_IP);
+
+		final ProcessPickingSlotsResult result = processPickingSlot(pickingSlot);
+
+		assertThat(result.hasErrors()).isTrue();
+		assertThat(result.getErrorsByPickingCandidateId()).containsOnlyKeys(
+				candidateWithoutHU.getM_Picking_Candidate_ID(),
+				candidateWithoutShipmentSchedule.getM_Picking_Candidate_ID());
+		assertThat(result.getErrorsByPickingCandidateId().get(candidateWithoutShipmentSchedule.getM_Picking_Candidate_ID()))
+				.hasMessageContaining("No shipment schedule found");
+		assertThat(result.getProcessedCandidates()).isEmpty();
+		assertThat(result.getClosedCandidates()).isEmpty();
+
+		assertThat(reloadStatus(candidateWithoutHU)).isEqualTo(X_M_Picking_Candidate.STATUS_IP);
+		assertThat(reloadStatus(candidateWithoutShipmentSchedule)).isEqualTo(X_M_Picking_Candidate.STATUS_IP);
+		assertThat(reloadStatus(processedCandidate)).isEqualTo(X_M_Picking_Candidate.STATUS_PR);
+		assertThat(reloadStatus(candidateOfOtherSlot)).isEqualTo(X_M_Picking_Candidate.STATUS_IP);
+	}
+
+	private static I_M_PickingSlot createPickingSlot()
+	{
+		final I_M_PickingSlot pickingSlot = newInstance(I_M_PickingSlot.class);
+		pickingSlot.setIsDynamic(false);
+		pickingSlot.setIsPickingRackSystem(false);
+		save(pickingSlot);
+		return pickingSlot;
+	}
+
+	private static I_M_HU createHU()
+	{
+		final I_M_HU hu = newInstance(I_M_HU.class);
+		save(hu);
+		return hu;
+	}
+
+	private static I_M_Picking_Candidate createPickingCandidate(final I_M_PickingSlot pickingSlot, final int huId, final String status)
+	{
+		final I_M_Picking_Candidate pickingCandidate = newInstance(I_M_Picking_Candidate.class);
+		pickingCandidate.setM_PickingSlot_ID(pickingSlot.getM_PickingSlot_ID());
+		pickingCandidate.setM_HU_ID(huId);
+		pickingCandidate.setM_ShipmentSchedule_ID(888888);
+		pickingCandidate.setQtyPicked(BigDecimal.TEN);
+		pickingCandidate.setStatus(status);
+		save(pickingCandidate);
+		return pickingCandidate;
+	}
+
+	private static String reloadStatus(final I_M_Picking_Candidate pickingCandidate)
+	{
+		return load(pickingCandidate.getM_Picking_Candidate_ID(), I_M_Picking_Candidate.class).getStatus();
+	}
+}
@@ -0,0 +1,143 @@
+package de.metas.handlingunits.receiptschedule.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.adempiere.ad.trx.api.ITrx;
+import org.adempiere.ad.wrapper.POJOLookupMap;
+import org.adempiere.exceptions.AdempiereException;
+import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.service.ISysConfigBL;
+import org.adempiere.util.Services;
+import org.junit.Test;
+
+import de.metas.handlingunits.model.I_M_HU;
+import de.metas.handlingunits.model.I_M_ReceiptSchedule;
+import de.metas.handlingunits.model.I_M_ReceiptSchedule_Alloc;
+import de.metas.handlingunits.model.X_M_HU;
+import de.metas.quantity.Quantity;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Tests the parallel generation of {@link ReceiptScheduleHUGenerator}.
+ * <p>
+ * Note: in unit test mode, the chunks are generated one after the other in the caller's thread; see {@code ReceiptScheduleHUGenerator#createExecutor(int)}.
+ */
+public class ReceiptScheduleHUGeneratorTest extends AbstractRSAllocationWithWeightAttributeTest
+{
+	/** 200 IFCOs with 10kg each, i.e. 3 LUs with 88, 88 and 24 IFCOs */
+	private static final BigDecimal QTY_2000 = BigDecimal.valueOf(2000);
+
+	@Override
+	protected void afterInitialize()
+	{
+		super.afterInitialize();
+
+		pTomato.setC_UOM(uomKg);
+		pTomato.setWeight(BigDecimal.ONE);
+		InterfaceWrapperHelper.save(pTomato);
+
+		// make sure that our 3 LUs are split into more than one chunk
+		Services.get(ISysConfigBL.class).setValue(ReceiptScheduleHUGenerator.SYSCONFIG_MinLUsPerWorker, 1, 0);
+	}
+
+	private ReceiptScheduleHUGenerator newGenerator(final I_M_ReceiptSchedule receiptSchedule, final int parallelism)
+	{
+		final ReceiptScheduleHUGenerator huGenerator = ReceiptScheduleHUGenerator.newInstance(huContext)
+				.setQtyToAllocateTarget(new Quantity(receiptSchedule.getQtyOrdered(), receiptSchedule.getC_UOM()))
+				.addM_ReceiptSchedule(receiptSchedule)
+				.setParallelism(parallelism);
+		huGenerator.getLUTUConfigurationManager()
+				.setCurrentLUTUConfigurationAndSave(createM_HU_LUTU_Configuration_ForTU(materialItemProductTomato_10));
+		return huGenerator;
+	}
+
+	@Test
+	public void generateInParallel_SameResultAsSequential()
+	{
+		final I_M_ReceiptSchedule receiptScheduleSequential = createReceiptSchedule(QTY_2000);
+		final List<I_M_HU> lusSequential = newGenerator(receiptScheduleSequential, 1).generateWithinOwnTransaction();
+
+		final I_M_ReceiptSchedule receiptScheduleParallel = createReceiptSchedule(QTY_2000);
+		final List<Integer> progress = new ArrayList<>();
+		final List<I_M_HU> lusParallel = newGenerator(receiptScheduleParallel, 2)
+				.setProgressListener((countLUsGenerated, countLUsPlanned) -> {
+					assertThat(countLUsPlanned).isEqualTo(3);
+					progress.add(countLUsGenerated);
+				})
+				.generateWithinOwnTransaction();
+
+		// 2 chunks: [88, 88] and [24]
+		assertThat(progress).containsExactly(2, 3);
+
+		assertThat(lusParallel).hasSize(3);
+		assertThat(retrieveQtys(lusParallel)).isEqualTo(retrieveQtys(lusSequential));
+		assertThat(lusParallel).allMatch(lu -> X_M_HU.HUSTATUS_Planning.equals(lu.getHUStatus()));
+
+		final List<I_M_ReceiptSchedule_Alloc> allocsSequential = huReceiptScheduleDAO.retrieveHandlingUnitAllocations(receiptScheduleSequential, ITrx.TRXNAME_None);
+		final List<I_M_ReceiptSchedule_Alloc> allocsParallel = huReceiptScheduleDAO.retrieveHandlingUnitAllocations(receiptScheduleParallel, ITrx.TRXNAME_None);
+		assertThat(allocsParallel).hasSameSizeAs(allocsSequential);
+		assertThat(sumQtyAllocated(allocsParallel)).isEqualByComparingTo(sumQtyAllocated(allocsSequential));
+		assertThat(allocsParallel).allMatch(alloc -> lusParallel.stream().anyMatch(lu -> lu.getM_HU_ID() == alloc.getM_LU_HU_ID()));
+	}
+
+	@Test
+	public void generateInParallel_FailingChunk_DestroysGeneratedLUs()
+	{
+		final I_M_ReceiptSchedule receiptSchedule = createReceiptSchedule(QTY_2000);
+		final ReceiptScheduleHUGenerator huGenerator = newGenerator(receiptSchedule, 2)
+				.setProgressListener((countLUsGenerated, countLUsPlanned) -> {
+					throw new AdempiereException("failing after the first chunk");
+				});
+
+		assertThatThrownBy(huGenerator::generateWithinOwnTransaction)
+				.hasMessageContaining("failing after the first chunk");
+
+		final List<I_M_HU> lus = POJOLookupMap.get().getRecords(I_M_HU.class, hu -> hu.getM_HU_Item_Parent_ID() <= 0);
+		assertThat(lus).isNotEmpty();
+		assertThat(lus).allMatch(lu -> X_M_HU.HUSTATUS_Destroyed.equals(lu.getHUStatus()));
+
+		assertThat(huReceiptScheduleDAO.retrieveHandlingUnitAllocations(receiptSchedule, ITrx.TRXNAME_None)).isEmpty();
+	}
+
+	private List<BigDecimal> retrieveQtys(final List<I_M_HU> lus)
+	{
+		return lus.stream()
+				.map(lu -> huStorageFactory.getStorage(lu).getQty(getCUProduct(), uomKg).stripTrailingZeros())
+				.sorted()
+				.collect(Collectors.toList());
+	}
+
+	private static BigDecimal sumQtyAllocated(final List<I_M_ReceiptSchedule_Alloc> allocs)
+	{
+		return allocs.stream()
+				.map(I_M_ReceiptSchedule_Alloc::getQtyAllocated)
+				.reduce(BigDecimal.ZERO, BigDecimal::add);
+	}
+}
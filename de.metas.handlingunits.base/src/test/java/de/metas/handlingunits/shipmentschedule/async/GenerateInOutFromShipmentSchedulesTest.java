@@ -0,0 +1,159 @@
+package de.metas.handlingunits.shipmentschedule.async;
+
+import static org.adempiere.model.InterfaceWrapperHelper.newInstance;
+import static org.adempiere.model.InterfaceWrapperHelper.save;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Function;
+
+import org.adempiere.exceptions.AdempiereException;
+import org.adempiere.service.ISysConfigBL;
+import org.adempiere.test.AdempiereTestHelper;
+import org.adempiere.util.Services;
+import org.compiere.util.Env;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import de.metas.inoutcandidate.api.IInOutCandidateBL;
+import de.metas.inoutcandidate.api.InOutGenerateResult;
+import de.metas.inoutcandidate.model.I_M_ShipmentSchedule;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Tests the parallel shipment generation of {@link GenerateInOutFromShipmentSchedules}.
+ * <p>
+ * Note: in unit test mode, the groups are shipped one after the other in the caller's thread.
+ */
+public class GenerateInOutFromShipmentSchedulesTest
+{
+	private static final String CTXNAME_Caller = "#GenerateInOutFromShipmentSchedulesTest_Caller";
+	private static final String CTXNAME_Worker = "#GenerateInOutFromShipmentSchedulesTest_Worker";
+
+	private GenerateInOutFromShipmentSchedules processor;
+
+	@Before
+	public void init()
+	{
+		AdempiereTestHelper.get().init();
+
+		processor = new GenerateInOutFromShipmentSchedules();
+	}
+
+	@Test
+	public void getParallelism_OnlyIfShipmentsAreCompleted()
+	{
+		Services.get(ISysConfigBL.class).setValue(GenerateInOutFromShipmentSchedules.SYSCONFIG_Parallelism, 4, 0);
+
+		assertThat(GenerateInOutFromShipmentSchedules.getParallelism(true)).isEqualTo(4);
+		assertThat(GenerateInOutFromShipmentSchedules.getParallelism(false)).isEqualTo(1);
+	}
+
+	@Test
+	public void groupByBPartner()
+	{
+		final I_M_ShipmentSchedule schedule1 = createShipmentSchedule(10, -1);
+		final I_M_ShipmentSchedule schedule2 = createShipmentSchedule(20, -1);
+		final I_M_ShipmentSchedule schedule3 = createShipmentSchedule(30, 10); // the override counts
+		final I_M_ShipmentSchedule schedule4 = createShipmentSchedule(20, -1);
+
+		final List<List<I_M_ShipmentSchedule>> groups = processor.groupByBPartner(ImmutableList.of(schedule1, schedule2, schedule3, schedule4));
+
+		assertThat(groups).containsExactly(
+				ImmutableList.of(schedule1, schedule3),
+				ImmutableList.of(schedule2, schedule4));
+	}
+
+	@Test
+	public void generateShipmentsInParallel_EachGroupWithItsOwnContext()
+	{
+		final List<List<I_M_ShipmentSchedule>> groups = ImmutableList.of(
+				ImmutableList.of(createShipmentSchedule(10, -1), createShipmentSchedule(10, -1)),
+				ImmutableList.of(createShipmentSchedule(20, -1)));
+
+		Env.setContext(Env.getCtx(), CTXNAME_Caller, 1);
+
+		final List<List<I_M_ShipmentSchedule>> shippedGroups = new ArrayList<>();
+		processor.generateShipmentsInParallel(groups, 2, group -> {
+			final Properties workerCtx = Env.getCtx();
+
+			// the worker sees the caller's context, but not what the previous worker put into its own one
+			assertThat(Env.getContextAsInt(workerCtx, CTXNAME_Caller)).isEqualTo(1);
+			assertThat(Env.getContextAsInt(workerCtx, CTXNAME_Worker)).isLessThanOrEqualTo(0);
+
+			Env.setContext(workerCtx, CTXNAME_Worker, group.get(0).getC_BPartner_ID());
+			shippedGroups.add(group);
+			return createEmptyResult();
+		});
+
+		assertThat(shippedGroups).containsExactlyElementsOf(groups);
+		assertThat(Env.getContextAsInt(Env.getCtx(), CTXNAME_Worker)).isLessThanOrEqualTo(0);
+	}
+
+	/**
+	 * Verifies that a failing group doesn't keep the other groups from being shipped, but fails the whole run at the end, so that the workpackage is retried.
+	 */
+	@Test
+	public void generateShipmentsInParallel_FailingGroup()
+	{
+		final List<List<I_M_ShipmentSchedule>> groups = ImmutableList.of(
+				ImmutableList.of(createShipmentSchedule(10, -1)),
+				ImmutableList.of(createShipmentSchedule(20, -1)),
+				ImmutableList.of(createShipmentSchedule(30, -1)));
+
+		final List<List<I_M_ShipmentSchedule>> shippedGroups = new ArrayList<>();
+		final Function<List<I_M_ShipmentSchedule>, InOutGenerateResult> shipmentsGenerator = group -> {
+			if (group.get(0).getC_BPartner_ID() == 20)
+			{
+				throw new AdempiereException("failing for C_BPartner_ID=20");
+			}
+			shippedGroups.add(group);
+			return createEmptyResult();
+		};
+
+		assertThatThrownBy(() -> processor.generateShipmentsInParallel(groups, 2, shipmentsGenerator))
+				.hasMessageContaining("1 of 3 bpartners could not be shipped");
+
+		assertThat(shippedGroups).containsExactly(groups.get(0), groups.get(2));
+	}
+
+	private static InOutGenerateResult createEmptyResult()
+	{
+		return Services.get(IInOutCandidateBL.class).createEmptyInOutGenerateResult(false); // storeReceipts=false
+	}
+
+	private static I_M_ShipmentSchedule createShipmentSchedule(final int bpartnerId, final int bpartnerOverrideId)
+	{
+		final I_M_ShipmentSchedule shipmentSchedule = newInstance(I_M_ShipmentSchedule.class);
+		shipmentSchedule.setC_BPartner_ID(bpartnerId);
+		shipmentSchedule.setC_BPartner_Override_ID(bpartnerOverrideId);
+		save(shipmentSchedule);
+		return shipmentSchedule;
+	}
+}
@@ -0,0 +1,92 @@
+package de.metas.handlingunits.snapshot.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.adempiere.test.AdempiereTestHelper;
+import org.adempiere.test.AdempiereTestWatcher;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import de.metas.handlingunits.model.I_M_HU_Storage;
+import de.metas.handlingunits.model.I_M_HU_Storage_Snapshot;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Tests the SQL of the set based restore, which is not executed in unit test mode.
+ */
+public class AbstractSnapshotHandlerTest
+{
+	@Rule
+	public AdempiereTestWatcher adempiereTestWatcher = new AdempiereTestWatcher();
+
+	@Before
+	public void init()
+	{
+		AdempiereTestHelper.get().init();
+	}
+
+	@Test
+	public void buildSqlUpdateFromSnapshot()
+	{
+		final String sql = AbstractSnapshotHandler.buildSqlUpdateFromSnapshot(I_M_HU_Storage.class, I_M_HU_Storage_Snapshot.class, I_M_HU_Storage.COLUMNNAME_M_HU_ID);
+
+		// only the columns which both tables have are copied; the key and the Created/Updated columns are not
+		assertThat(sql).isEqualTo("UPDATE M_HU_Storage t SET"
+				+ " AD_Client_ID=s.AD_Client_ID, AD_Org_ID=s.AD_Org_ID, C_UOM_ID=s.C_UOM_ID, IsActive=s.IsActive, M_HU_ID=s.M_HU_ID, M_Product_ID=s.M_Product_ID, Qty=s.Qty,"
+				+ " Updated=now(), UpdatedBy=?"
+				+ " FROM M_HU_Storage_Snapshot s"
+				+ " WHERE s.Snapshot_UUID=? AND s.M_HU_ID = ANY(?::numeric[])"
+				+ " AND t.M_HU_Storage_ID=s.M_HU_Storage_ID");
+	}
+
+	@Test
+	public void buildSqlUpdateWhenSnapshotIsMissing()
+	{
+		final String sql = AbstractSnapshotHandler.buildSqlUpdateWhenSnapshotIsMissing(I_M_HU_Storage.class, I_M_HU_Storage_Snapshot.class, I_M_HU_Storage.COLUMNNAME_M_HU_ID, "Qty=0");
+
+		assertThat(sql).isEqualTo("UPDATE M_HU_Storage t SET Qty=0, Updated=now(), UpdatedBy=?"
+				+ " WHERE t.M_HU_ID = ANY(?::numeric[])"
+				+ " AND NOT EXISTS (SELECT 1 FROM M_HU_Storage_Snapshot s"
+				+ " WHERE s.Snapshot_UUID=? AND s.M_HU_ID = ANY(?::numeric[]) AND s.M_HU_Storage_ID=t.M_HU_Storage_ID)");
+	}
+
+	@Test
+	public void buildSqlCountModelIsMissing()
+	{
+		final String sql = AbstractSnapshotHandler.buildSqlCountModelIsMissing(I_M_HU_Storage.class, I_M_HU_Storage_Snapshot.class, I_M_HU_Storage.COLUMNNAME_M_HU_ID);
+
+		assertThat(sql).isEqualTo("SELECT COUNT(1) FROM M_HU_Storage_Snapshot s"
+				+ " WHERE s.Snapshot_UUID=? AND s.M_HU_ID = ANY(?::numeric[])"
+				+ " AND NOT EXISTS (SELECT 1 FROM M_HU_Storage t WHERE t.M_HU_Storage_ID=s.M_HU_Storage_ID)");
+	}
+
+	@Test
+	public void toSqlArray()
+	{
+		assertThat(AbstractSnapshotHandler.toSqlArray(ImmutableList.of(3, 1, 2))).isEqualTo("{3,1,2}");
+	}
+}
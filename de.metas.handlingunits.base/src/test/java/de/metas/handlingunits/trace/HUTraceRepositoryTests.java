@@ -1,5 +1,8 @@
 package de.metas.handlingunits.trace;
 
+import static org.adempiere.model.InterfaceWrapperHelper.delete;
+import static org.adempiere.model.InterfaceWrapperHelper.newInstance;
+import static org.adempiere.model.InterfaceWrapperHelper.save;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
@@ -10,16 +13,21 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 
+import org.adempiere.service.ISysConfigBL;
 import org.adempiere.test.AdempiereTestHelper;
+import org.adempiere.util.Services;
 import org.adempiere.test.AdempiereTestWatcher;
+import org.compiere.util.CacheMgt;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestWatcher;
 
+import de.metas.handlingunits.model.I_M_HU_Trace;
 import de.metas.handlingunits.model.X_M_HU;
 import de.metas.handlingunits.trace.HUTraceEvent.HUTraceEventBuilder;
 import de.metas.handlingunits.trace.HUTraceEventQuery.RecursionMode;
+import de.metas.handlingunits.trace.repository.HuTraceEventToDbRecordUtil;
 
 /*
  * #%L
@@ -340,6 +348,93 @@ public class HUTraceRepositoryTests
 		}
 	}
 
+	@Test
+	public void testRetrieveRecursiveUsingGraph()
+	{
+		final List<HUTraceEvent> events = createAndAddEvents();
+
+		for (final RecursionMode recursionMode : RecursionMode.values())
+		{
+			for (final int vhuId : new int[] { 14, 15, 16 })
+			{
+				final HUTraceEventQuery query = HUTraceEventQuery.builder()
+						.vhuId(vhuId)
+						.recursionMode(recursionMode)
+						.build();
+
+				Services.get(ISysConfigBL.class).setValue(HUTraceRepository.SYSCONFIG_UseTraceGraph, false, 0);
+				final List<HUTraceEvent> expected = huTraceRepository.query(query);
+
+				Services.get(ISysConfigBL.class).setValue(HUTraceRepository.SYSCONFIG_UseTraceGraph, true, 0);
+				final List<HUTraceEvent> result = huTraceRepository.query(query);
+
+				assertThat(result).as("recursionMode=%s, vhuId=%s", recursionMode, vhuId).containsExactlyInAnyOrder(expected.toArray(new HUTraceEvent[0]));
+			}
+		}
+
+		// add a follow-up of the last VHU; the already loaded graph shall know it
+		huTraceRepository.addEvent(createCommonEventBuilder()
+				.eventTime(events.get(16).getEventTime().plusSeconds(1))
+				.topLevelHuId(7)
+				.vhuId(17)
+				.vhuSourceId(16)
+				.build());
+
+		final List<HUTraceEvent> result = huTraceRepository.query(HUTraceEventQuery.builder()
+				.vhuId(14)
+				.recursionMode(RecursionMode.FORWARD)
+				.build());
+		assertThat(result).hasSize(18);
+		assertThat(huTraceRepository.rebuildGraph()).isEqualTo(3);
+	}
+
+	/**
+	 * Makes sure that the graph follows the cache invalidations which are fired when trace records are saved or deleted, no matter by whom.
+	 */
+	@Test
+	public void testGraphFollowsCacheInvalidations()
+	{
+		final List<HUTraceEvent> events = createAndAddEvents();
+		Services.get(ISysConfigBL.class).setValue(HUTraceRepository.SYSCONFIG_UseTraceGraph, true, 0);
+		final HUTraceEventQuery forwardFrom14 = HUTraceEventQuery.builder()
+				.vhuId(14)
+				.recursionMode(RecursionMode.FORWARD)
+				.build();
+		assertThat(huTraceRepository.query(forwardFrom14)).hasSize(17); // loads the graph
+
+		// a follow-up of VHU 16 and another active record of that follow-up VHU, not created via HUTraceRepository
+		final HUTraceEventBuilder event17 = createCommonEventBuilder()
+				.eventTime(events.get(16).getEventTime().plusSeconds(1))
+				.topLevelHuId(7)
+				.vhuId(17);
+		final I_M_HU_Trace linkRecord = createDbRecord(event17.vhuSourceId(16).build());
+		createDbRecord(event17.vhuSourceId(0).inOutId(27).build());
+		assertThat(huTraceRepository.query(forwardFrom14)).hasSize(19);
+
+		// deactivated records are removed from the graph, so VHU 17 is not reached anymore
+		linkRecord.setIsActive(false);
+		save(linkRecord);
+		assertThat(huTraceRepository.query(forwardFrom14)).hasSize(17);
+
+		// a reset of the whole table makes the graph load itself again
+		linkRecord.setIsActive(true);
+		save(linkRecord);
+		CacheMgt.get().reset(I_M_HU_Trace.Table_Name);
+		assertThat(huTraceRepository.query(forwardFrom14)).hasSize(19);
+
+		// deleted records are removed from the graph
+		delete(linkRecord);
+		assertThat(huTraceRepository.query(forwardFrom14)).hasSize(17);
+	}
+
+	private I_M_HU_Trace createDbRecord(final HUTraceEvent huTraceEvent)
+	{
+		final I_M_HU_Trace dbRecord = newInstance(I_M_HU_Trace.class);
+		HuTraceEventToDbRecordUtil.copyToDbRecord(huTraceEvent, dbRecord);
+		save(dbRecord);
+		return dbRecord;
+	}
+
 	private List<HUTraceEvent> createAndAddEvents()
 	{
 		final List<HUTraceEvent> result = new ArrayList<>();
@@ -0,0 +1,153 @@
+package de.metas.storage.spi.hu.impl;
+
+import static org.adempiere.model.InterfaceWrapperHelper.newInstance;
+import static org.adempiere.model.InterfaceWrapperHelper.save;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.model.PlainContextAware;
+import org.adempiere.service.ISysConfigBL;
+import org.adempiere.util.Services;
+import org.adempiere.util.lang.IContextAware;
+import org.compiere.model.I_M_Product;
+import org.compiere.model.I_M_Warehouse;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import de.metas.business.BusinessTestHelper;
+import de.metas.handlingunits.HUTestHelper;
+import de.metas.handlingunits.impl.HandlingUnitsDAO;
+import de.metas.handlingunits.model.I_M_HU;
+import de.metas.handlingunits.model.I_M_HU_Storage;
+import de.metas.handlingunits.model.I_M_Locator;
+import de.metas.handlingunits.model.X_M_HU;
+import de.metas.storage.IStorageQuery;
+import de.metas.storage.IStorageRecord;
+
+/*
+ * #%L
+ * de.metas.handlingunits.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+public class HUStorageEngineTest
+{
+	private HUTestHelper helper;
+	private IContextAware context;
+
+	private I_M_Warehouse warehouse1;
+	private I_M_Warehouse warehouse2;
+
+	@Before
+	public void init()
+	{
+		helper = new HUTestHelper();
+		context = PlainContextAware.newOutOfTrx(helper.getCtx());
+
+		warehouse1 = BusinessTestHelper.createWarehouse("warehouse1");
+		warehouse2 = BusinessTestHelper.createWarehouse("warehouse2");
+
+		// make sure that our queries are split into more than one chunk
+		Services.get(ISysConfigBL.class).setValue(HUStorageEngine.SYSCONFIG_QueriesPerChunk, 2, 0);
+	}
+
+	/**
+	 * Verifies that the records of the batched retrieval are split back to the queries they belong to,
+	 * and that each query gets the same records as if it was run on its own.
+	 */
+	@Test
+	public void retrieveStorageRecordsByQuery()
+	{
+		final I_M_Locator locator1 = createLocator(warehouse1, false);
+		final I_M_Locator afterPickingLocator1 = createLocator(warehouse1, true);
+		final I_M_Locator locator2 = createLocator(warehouse2, false);
+
+		createVHU(locator1, helper.pTomato, "10");
+		createVHU(locator2, helper.pTomato, "20");
+		createVHU(locator1, helper.pSalad, "30");
+		createVHU(afterPickingLocator1, helper.pTomato, "40");
+
+		final IStorageQuery tomatoInWarehouse1 = newStorageQuery().addProduct(helper.pTomato).addWarehouse(warehouse1);
+		final IStorageQuery tomato = newStorageQuery().addProduct(helper.pTomato);
+		final IStorageQuery saladInWarehouse2 = newStorageQuery().addProduct(helper.pSalad).addWarehouse(warehouse2);
+		final IStorageQuery tomatoInWarehouse1InclAfterPicking = newStorageQuery().addProduct(helper.pTomato).addWarehouse(warehouse1).setExcludeAfterPickingLocator(false);
+		final List<IStorageQuery> storageQueries = ImmutableList.of(tomatoInWarehouse1, tomato, saladInWarehouse2, tomatoInWarehouse1InclAfterPicking);
+
+		final Map<IStorageQuery, List<IStorageRecord>> storageRecordsByQuery = HUStorageEngine.instance.retrieveStorageRecordsByQuery(context, storageQueries);
+
+		assertThat(storageRecordsByQuery.keySet()).containsExactlyElementsOf(storageQueries);
+		assertThat(toQtys(storageRecordsByQuery.get(tomatoInWarehouse1))).containsExactly("10");
+		assertThat(toQtys(storageRecordsByQuery.get(tomato))).containsExactly("10", "20");
+		assertThat(toQtys(storageRecordsByQuery.get(saladInWarehouse2))).isEmpty();
+		assertThat(toQtys(storageRecordsByQuery.get(tomatoInWarehouse1InclAfterPicking))).containsExactly("10", "40");
+
+		for (final IStorageQuery storageQuery : storageQueries)
+		{
+			final List<IStorageRecord> storageRecords = HUStorageEngine.instance.retrieveStorageRecords(context, storageQuery);
+			assertThat(toQtys(storageRecordsByQuery.get(storageQuery))).isEqualTo(toQtys(storageRecords));
+		}
+	}
+
+	private static IStorageQuery newStorageQuery()
+	{
+		return HUStorageEngine.instance.newStorageQuery();
+	}
+
+	private static I_M_Locator createLocator(final I_M_Warehouse warehouse, final boolean afterPickingLocator)
+	{
+		final I_M_Locator locator = InterfaceWrapperHelper.create(BusinessTestHelper.createLocator(warehouse.getName() + "-" + afterPickingLocator, warehouse), I_M_Locator.class);
+		locator.setIsAfterPickingLocator(afterPickingLocator);
+		save(locator);
+		return locator;
+	}
+
+	private static void createVHU(final I_M_Locator locator, final I_M_Product product, final String qty)
+	{
+		final I_M_HU vhu = newInstance(I_M_HU.class);
+		vhu.setM_HU_PI_Version_ID(HandlingUnitsDAO.VIRTUAL_HU_PI_Version_ID);
+		vhu.setHUStatus(X_M_HU.HUSTATUS_Active);
+		vhu.setM_Locator_ID(locator.getM_Locator_ID());
+		save(vhu);
+
+		final I_M_HU_Storage huStorage = newInstance(I_M_HU_Storage.class);
+		huStorage.setM_HU_ID(vhu.getM_HU_ID());
+		huStorage.setM_Product_ID(product.getM_Product_ID());
+		huStorage.setC_UOM_ID(product.getC_UOM_ID());
+		huStorage.setQty(new BigDecimal(qty));
+		save(huStorage);
+	}
+
+	/**
+	 * @return the given records' quantities, sorted, because we only care about which records were returned
+	 */
+	private static List<String> toQtys(final List<IStorageRecord> storageRecords)
+	{
+		return storageRecords.stream()
+				.map(storageRecord -> storageRecord.getQtyOnHand().stripTrailingZeros().toPlainString())
+				.sorted()
+				.collect(Collectors.toList());
+	}
+}
@@ -8,11 +8,14 @@ import org.adempiere.ad.dao.ICompositeQueryUpdater;
 import org.adempiere.ad.dao.IQueryBL;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
+import de.metas.Profiles;
 import de.metas.material.cockpit.model.I_MD_Cockpit_DocumentDetail;
 import de.metas.material.cockpit.view.DetailDataRecordIdentifier;
 import de.metas.material.cockpit.view.MainDataRecordIdentifier;
+import de.metas.material.cockpit.view.mainrecord.MainDataRequestHandler;
 import lombok.NonNull;
 
 /*
@@ -38,8 +41,16 @@ import lombok.NonNull;
  */
 
 @Service
+@Profile(Profiles.PROFILE_App) // the event handlers are also just on this profile
 public class DetailDataRequestHandler
 {
+	private final MainDataRequestHandler mainDataRequestHandler;
+
+	public DetailDataRequestHandler(@NonNull final MainDataRequestHandler mainDataRequestHandler)
+	{
+		this.mainDataRequestHandler = mainDataRequestHandler;
+	}
+
 	public void handleInsertDetailRequest(@NonNull final InsertDetailRequest insertDetailRequest)
 	{
 		final I_MD_Cockpit_DocumentDetail documentDetailRecord = newInstance(I_MD_Cockpit_DocumentDetail.class);
@@ -73,6 +84,9 @@ public class DetailDataRequestHandler
 
 	private int retrieveDataId(@NonNull final MainDataRecordIdentifier identifier)
 	{
+		// the main data record might have been created in this transaction, but not yet written
+		mainDataRequestHandler.flushCollectedRequests();
+
 		final int result = identifier
 				.createQueryBuilder()
 				.create()
@@ -1,6 +1,8 @@
 package de.metas.material.cockpit.view.eventhandler;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.adempiere.util.Loggables;
 import org.springframework.context.annotation.Profile;
@@ -85,15 +87,49 @@ public class ReceiptScheduleEventHandler
 	@Override
 	public void handleEvent(@NonNull final AbstractReceiptScheduleEvent event)
 	{
-		final MaterialDescriptor materialDesciptor = event.getMaterialDescriptor();
-		final MainDataRecordIdentifier identifier = MainDataRecordIdentifier.createForMaterial(materialDesciptor);
+		final MainDataRecordIdentifier identifier = createIdentifier(event);
 
-		createAndHandleMainDataEvent(event, identifier);
+		final UpdateMainDataRequest mainDataRequest = createMainDataRequestOrNull(event, identifier);
+		if (mainDataRequest != null)
+		{
+			dataUpdateRequestHandler.handleDataUpdateRequest(mainDataRequest);
+		}
 
 		createAndHandleDetailRequest(event, identifier);
 	}
 
-	private void createAndHandleMainDataEvent(
+	/**
+	 * Sums up the events' main data changes per {@code MD_Cockpit} record, so that each record is updated once per batch.
+	 * The detail records are still handled per event, after all main records were updated.
+	 */
+	@Override
+	public List<AbstractReceiptScheduleEvent> handleEvents(@NonNull final List<AbstractReceiptScheduleEvent> events)
+	{
+		final List<UpdateMainDataRequest> mainDataRequests = new ArrayList<>();
+		for (final AbstractReceiptScheduleEvent event : events)
+		{
+			final UpdateMainDataRequest mainDataRequest = createMainDataRequestOrNull(event, createIdentifier(event));
+			if (mainDataRequest != null)
+			{
+				mainDataRequests.add(mainDataRequest);
+			}
+		}
+		dataUpdateRequestHandler.handleDataUpdateRequests(mainDataRequests);
+
+		for (final AbstractReceiptScheduleEvent event : events)
+		{
+			createAndHandleDetailRequest(event, createIdentifier(event));
+		}
+		return ImmutableList.of();
+	}
+
+	private static MainDataRecordIdentifier createIdentifier(@NonNull final AbstractReceiptScheduleEvent event)
+	{
+		final MaterialDescriptor materialDesciptor = event.getMaterialDescriptor();
+		return MainDataRecordIdentifier.createForMaterial(materialDesciptor);
+	}
+
+	private static UpdateMainDataRequest createMainDataRequestOrNull(
 			@NonNull final AbstractReceiptScheduleEvent event,
 			@NonNull final MainDataRecordIdentifier identifier)
 	{
@@ -102,15 +138,13 @@ public class ReceiptScheduleEventHandler
 		{
 			Loggables.get().addLog(
 					"Skipping this event because is has both orderedQuantityDelta and reservedQuantityDelta = zero");
-			return;
+			return null;
 		}
-		final UpdateMainDataRequest request = UpdateMainDataRequest.builder()
+		return UpdateMainDataRequest.builder()
 				.identifier(identifier)
 				.orderedPurchaseQty(event.getOrderedQuantityDelta())
 				.reservedPurchaseQty(event.getReservedQuantityDelta())
 				.build();
-
-		dataUpdateRequestHandler.handleDataUpdateRequest(request);
 	}
 
 	private void createAndHandleDetailRequest(
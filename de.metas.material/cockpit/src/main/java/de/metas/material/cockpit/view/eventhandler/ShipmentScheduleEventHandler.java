@@ -1,6 +1,8 @@
 package de.metas.material.cockpit.view.eventhandler;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.adempiere.util.Check;
 import org.adempiere.util.Loggables;
@@ -86,14 +88,48 @@ public class ShipmentScheduleEventHandler
 	@Override
 	public void handleEvent(@NonNull final AbstractShipmentScheduleEvent event)
 	{
-		final MaterialDescriptor materialDescriptor = event.getMaterialDescriptor();
-		final MainDataRecordIdentifier identifier = MainDataRecordIdentifier.createForMaterial(materialDescriptor);
+		final MainDataRecordIdentifier identifier = createIdentifier(event);
 
-		createAndHandleMainDataRequest(event, identifier);
+		final UpdateMainDataRequest mainDataRequest = createMainDataRequestOrNull(event, identifier);
+		if (mainDataRequest != null)
+		{
+			dataUpdateRequestHandler.handleDataUpdateRequest(mainDataRequest);
+		}
 		createAndHandleDetailRequest(event, identifier);
 	}
 
-	private void createAndHandleMainDataRequest(
+	/**
+	 * Sums up the events' main data changes per {@code MD_Cockpit} record, so that each record is updated once per batch.
+	 * The detail records are still handled per event, after all main records were updated.
+	 */
+	@Override
+	public List<AbstractShipmentScheduleEvent> handleEvents(@NonNull final List<AbstractShipmentScheduleEvent> events)
+	{
+		final List<UpdateMainDataRequest> mainDataRequests = new ArrayList<>();
+		for (final AbstractShipmentScheduleEvent event : events)
+		{
+			final UpdateMainDataRequest mainDataRequest = createMainDataRequestOrNull(event, createIdentifier(event));
+			if (mainDataRequest != null)
+			{
+				mainDataRequests.add(mainDataRequest);
+			}
+		}
+		dataUpdateRequestHandler.handleDataUpdateRequests(mainDataRequests);
+
+		for (final AbstractShipmentScheduleEvent event : events)
+		{
+			createAndHandleDetailRequest(event, createIdentifier(event));
+		}
+		return ImmutableList.of();
+	}
+
+	private static MainDataRecordIdentifier createIdentifier(@NonNull final AbstractShipmentScheduleEvent event)
+	{
+		final MaterialDescriptor materialDescriptor = event.getMaterialDescriptor();
+		return MainDataRecordIdentifier.createForMaterial(materialDescriptor);
+	}
+
+	private static UpdateMainDataRequest createMainDataRequestOrNull(
 			@NonNull final AbstractShipmentScheduleEvent shipmentScheduleEvent,
 			@NonNull final MainDataRecordIdentifier identifier)
 	{
@@ -101,15 +137,14 @@ public class ShipmentScheduleEventHandler
 				&& shipmentScheduleEvent.getReservedQuantityDelta().signum() == 0)
 		{
 			Loggables.get().addLog("Skipping this event because is has both orderedQuantityDelta and reservedQuantityDelta = zero");
-			return;
+			return null;
 		}
 
-		final UpdateMainDataRequest request = UpdateMainDataRequest.builder()
+		return UpdateMainDataRequest.builder()
 				.identifier(identifier)
 				.orderedSalesQty(shipmentScheduleEvent.getOrderedQuantityDelta())
 				.reservedSalesQty(shipmentScheduleEvent.getReservedQuantityDelta())
 				.build();
-		dataUpdateRequestHandler.handleDataUpdateRequest(request);
 	}
 
 	private void createAndHandleDetailRequest(
@@ -0,0 +1,250 @@
+package de.metas.material.cockpit.view.mainrecord;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.adempiere.util.NumberUtils;
+import org.compiere.Adempiere;
+import org.compiere.util.CacheMgt;
+import org.compiere.util.DB;
+import org.compiere.util.Env;
+import org.compiere.util.TimeUtil;
+import org.compiere.util.Util.ArrayKey;
+import org.slf4j.Logger;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+import de.metas.logging.LogManager;
+import de.metas.material.cockpit.model.I_MD_Cockpit;
+import de.metas.material.cockpit.view.MainDataRecordIdentifier;
+import de.metas.material.event.commons.ProductDescriptor;
+import lombok.NonNull;
+
+/*
+ * #%L
+ * metasfresh-material-cockpit
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Sums up the {@link UpdateMainDataRequest}s of one transaction per {@code MD_Cockpit} record
+ * and writes them with {@code INSERT .. ON CONFLICT DO UPDATE} statements when {@link #flush(String)} is called.
+ * <p>
+ * The conflict target is the unique index {@code md_cockpit_uc}. Note that the {@code MD_Cockpit} records are not saved via PO, so there are no model interceptors invoked.
+ * In unit test mode, the summed up requests are saved via PO, because the upsert is plain postgresql.
+ */
+final class MainDataRequestCollector
+{
+	private static final Logger logger = LogManager.getLogger(MainDataRequestCollector.class);
+
+	private static final int MAX_ROWS_PER_STATEMENT = 500;
+
+	private static final String SQL_INSERT = "INSERT INTO " + I_MD_Cockpit.Table_Name + " ("
+			+ I_MD_Cockpit.COLUMNNAME_MD_Cockpit_ID
+			+ ", " + I_MD_Cockpit.COLUMNNAME_AD_Client_ID
+			+ ", " + I_MD_Cockpit.COLUMNNAME_AD_Org_ID
+			+ ", " + I_MD_Cockpit.COLUMNNAME_IsActive
+			+ ", " + I_MD_Cockpit.COLUMNNAME_Created
+			+ ", " + I_MD_Cockpit.COLUMNNAME_CreatedBy
+			+ ", " + I_MD_Cockpit.COLUMNNAME_Updated
+			+ ", " + I_MD_Cockpit.COLUMNNAME_UpdatedBy
+			+ ", " + I_MD_Cockpit.COLUMNNAME_M_Product_ID
+			+ ", " + I_MD_Cockpit.COLUMNNAME_AttributesKey
+			+ ", " + I_MD_Cockpit.COLUMNNAME_DateGeneral
+			+ ", " + I_MD_Cockpit.COLUMNNAME_PP_Plant_ID
+			+ ", " + I_MD_Cockpit.COLUMNNAME_QtyMaterialentnahme
+			+ ", " + I_MD_Cockpit.COLUMNNAME_QtyOnHandCount
+			+ ", " + I_MD_Cockpit.COLUMNNAME_PMM_QtyPromised_OnDate
+			+ ", " + I_MD_Cockpit.COLUMNNAME_QtyStockChange
+			+ ", " + I_MD_Cockpit.COLUMNNAME_QtyReserved_Purchase
+			+ ", " + I_MD_Cockpit.COLUMNNAME_QtyReserved_Sale
+			+ ", " + I_MD_Cockpit.COLUMNNAME_QtyRequiredForProduction
+			+ ", " + I_MD_Cockpit.COLUMNNAME_QtyOnHandEstimate
+			+ ", " + I_MD_Cockpit.COLUMNNAME_QtyAvailableToPromise
+			+ ") VALUES ";
+
+	private static final String SQL_VALUES_ROW = "(nextval('md_cockpit_seq'), ?, ?, 'Y', now(), ?, now(), ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	/** Note: keep in sync with the index md_cockpit_uc and with {@code MainDataRequestHandler.updateDataRecordWithRequestQtys(..)}. */
+	private static final String SQL_ON_CONFLICT = " ON CONFLICT (DateGeneral, M_Product_ID, AttributesKey, COALESCE(PP_Plant_ID, 0)) DO UPDATE SET "
+			+ sumUp(I_MD_Cockpit.COLUMNNAME_QtyMaterialentnahme)
+			+ ", " + sumUp(I_MD_Cockpit.COLUMNNAME_QtyOnHandCount)
+			+ ", " + sumUp(I_MD_Cockpit.COLUMNNAME_PMM_QtyPromised_OnDate)
+			+ ", " + sumUp(I_MD_Cockpit.COLUMNNAME_QtyStockChange)
+			+ ", " + sumUp(I_MD_Cockpit.COLUMNNAME_QtyReserved_Purchase)
+			+ ", " + sumUp(I_MD_Cockpit.COLUMNNAME_QtyReserved_Sale)
+			+ ", " + sumUp(I_MD_Cockpit.COLUMNNAME_QtyRequiredForProduction)
+			+ ", " + I_MD_Cockpit.COLUMNNAME_QtyOnHandEstimate + "=" + stripTrailingDecimalZeros(sqlQtyOnHandEstimate())
+			+ ", " + I_MD_Cockpit.COLUMNNAME_QtyAvailableToPromise + "=" + stripTrailingDecimalZeros(sqlQtyOnHandEstimate() + " + " + sum(I_MD_Cockpit.COLUMNNAME_QtyReserved_Purchase) + " - " + sum(I_MD_Cockpit.COLUMNNAME_QtyReserved_Sale))
+			+ ", " + I_MD_Cockpit.COLUMNNAME_Updated + "=now()"
+			+ ", " + I_MD_Cockpit.COLUMNNAME_UpdatedBy + "=EXCLUDED." + I_MD_Cockpit.COLUMNNAME_UpdatedBy;
+
+	private static String sum(final String columnName)
+	{
+		return "(" + I_MD_Cockpit.Table_Name + "." + columnName + " + EXCLUDED." + columnName + ")";
+	}
+
+	private static String sumUp(final String columnName)
+	{
+		return columnName + "=" + stripTrailingDecimalZeros(sum(columnName));
+	}
+
+	/**
+	 * Note: keep in sync with {@link NumberUtils#stripTrailingDecimalZeros(BigDecimal)}; postgresql's {@code trim_scale()} is only available from version 13 on.
+	 */
+	private static String stripTrailingDecimalZeros(final String sqlNumber)
+	{
+		return "regexp_replace(regexp_replace((" + sqlNumber + ")::text, '(\\.[0-9]*[1-9])0+$', '\\1'), '\\.0+$', '')::numeric";
+	}
+
+	private static String sqlQtyOnHandEstimate()
+	{
+		return "(" + sum(I_MD_Cockpit.COLUMNNAME_QtyOnHandCount)
+				+ " + " + sum(I_MD_Cockpit.COLUMNNAME_QtyStockChange)
+				+ " - " + sum(I_MD_Cockpit.COLUMNNAME_QtyMaterialentnahme) + ")";
+	}
+
+	private final Properties ctx;
+	private final Map<ArrayKey, UpdateMainDataRequest> recordKey2request = new LinkedHashMap<>();
+	private int countCollectedRequests = 0;
+
+	public MainDataRequestCollector(@NonNull final Properties ctx)
+	{
+		this.ctx = ctx;
+	}
+
+	public void add(@NonNull final UpdateMainDataRequest request)
+	{
+		recordKey2request.merge(createRecordKey(request.getIdentifier()), request, UpdateMainDataRequest::add);
+		countCollectedRequests++;
+	}
+
+	/**
+	 * @return a key that is equal for all requests that are about the same {@code MD_Cockpit} record.
+	 */
+	static ArrayKey createRecordKey(@NonNull final MainDataRecordIdentifier identifier)
+	{
+		final ProductDescriptor productDescriptor = identifier.getProductDescriptor();
+		return ArrayKey.of(
+				productDescriptor.getProductId(),
+				productDescriptor.getStorageAttributesKey().getAsString(),
+				TimeUtil.asTimestamp(identifier.getDate()),
+				identifier.getPlantId() > 0 ? identifier.getPlantId() : 0);
+	}
+
+	@VisibleForTesting
+	Collection<UpdateMainDataRequest> getCollectedRequests()
+	{
+		return ImmutableList.copyOf(recordKey2request.values());
+	}
+
+	/**
+	 * Writes the requests collected so far and forgets about them, so this method can be invoked again to write the requests that are collected later.
+	 */
+	public void flush(final String trxName)
+	{
+		if (recordKey2request.isEmpty())
+		{
+			return;
+		}
+
+		int countStatements = 0;
+		if (Adempiere.isUnitTestMode())
+		{
+			recordKey2request.values().forEach(MainDataRequestHandler::updateDataRecord);
+		}
+		else
+		{
+			for (final List<UpdateMainDataRequest> chunk : Iterables.partition(recordKey2request.values(), MAX_ROWS_PER_STATEMENT))
+			{
+				executeUpsert(chunk, trxName);
+				countStatements++;
+			}
+		}
+		logger.debug("Flushed {} requests as {} MD_Cockpit rows with {} statements", countCollectedRequests, recordKey2request.size(), countStatements);
+
+		recordKey2request.clear();
+		countCollectedRequests = 0;
+
+		CacheMgt.get().reset(I_MD_Cockpit.Table_Name);
+	}
+
+	private void executeUpsert(@NonNull final List<UpdateMainDataRequest> requests, final String trxName)
+	{
+		final StringBuilder sql = new StringBuilder(SQL_INSERT);
+		final List<Object> sqlParams = new ArrayList<>();
+
+		final int adClientId = Env.getAD_Client_ID(ctx);
+		final int adOrgId = Env.getAD_Org_ID(ctx);
+		final int adUserId = Env.getAD_User_ID(ctx);
+
+		for (final UpdateMainDataRequest request : requests)
+		{
+			if (!sqlParams.isEmpty())
+			{
+				sql.append(", ");
+			}
+			sql.append(SQL_VALUES_ROW);
+
+			final MainDataRecordIdentifier identifier = request.getIdentifier();
+			final Timestamp dateGeneral = TimeUtil.asTimestamp(identifier.getDate());
+
+			sqlParams.add(adClientId);
+			sqlParams.add(adOrgId);
+			sqlParams.add(adUserId); // CreatedBy
+			sqlParams.add(adUserId); // UpdatedBy
+			sqlParams.add(identifier.getProductDescriptor().getProductId());
+			sqlParams.add(identifier.getProductDescriptor().getStorageAttributesKey().getAsString());
+			sqlParams.add(dateGeneral);
+			sqlParams.add(identifier.getPlantId() > 0 ? identifier.getPlantId() : null);
+			sqlParams.add(NumberUtils.stripTrailingDecimalZeros(request.getDirectMovementQty())); // QtyMaterialentnahme
+			sqlParams.add(NumberUtils.stripTrailingDecimalZeros(request.getCountedQty())); // QtyOnHandCount
+			sqlParams.add(NumberUtils.stripTrailingDecimalZeros(request.getOfferedQty())); // PMM_QtyPromised_OnDate
+			sqlParams.add(NumberUtils.stripTrailingDecimalZeros(request.getOnHandQtyChange())); // QtyStockChange
+			sqlParams.add(NumberUtils.stripTrailingDecimalZeros(request.getReservedPurchaseQty())); // QtyReserved_Purchase
+			sqlParams.add(NumberUtils.stripTrailingDecimalZeros(request.getReservedSalesQty())); // QtyReserved_Sale
+			sqlParams.add(NumberUtils.stripTrailingDecimalZeros(request.getRequiredForProductionQty())); // QtyRequiredForProduction
+
+			final BigDecimal qtyOnHandEstimate = request.getCountedQty()
+					.add(request.getOnHandQtyChange())
+					.subtract(request.getDirectMovementQty());
+			sqlParams.add(NumberUtils.stripTrailingDecimalZeros(qtyOnHandEstimate)); // QtyOnHandEstimate
+			sqlParams.add(NumberUtils.stripTrailingDecimalZeros(qtyOnHandEstimate
+					.add(request.getReservedPurchaseQty())
+					.subtract(request.getReservedSalesQty()))); // QtyAvailableToPromise
+		}
+		sql.append(SQL_ON_CONFLICT);
+
+		DB.executeUpdateEx(sql.toString(), sqlParams.toArray(), trxName);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "MainDataRequestCollector[records=" + recordKey2request.size() + ", requests=" + countCollectedRequests + "]";
+	}
+}
@@ -4,11 +4,25 @@ import static org.adempiere.model.InterfaceWrapperHelper.newInstance;
 import static org.adempiere.model.InterfaceWrapperHelper.save;
 import static org.adempiere.util.NumberUtils.stripTrailingDecimalZeros;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.adempiere.ad.trx.api.ITrx;
+import org.adempiere.ad.trx.api.ITrxListenerManager.TrxEventTiming;
+import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.ad.trx.api.OnTrxMissingPolicy;
+import org.adempiere.service.ISysConfigBL;
+import org.adempiere.util.Services;
 import org.compiere.model.IQuery;
+import org.compiere.util.Env;
 import org.compiere.util.TimeUtil;
+import org.compiere.util.Util.ArrayKey;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
+import com.google.common.annotations.VisibleForTesting;
+
 import de.metas.Profiles;
 import de.metas.material.cockpit.model.I_MD_Cockpit;
 import de.metas.material.cockpit.view.MainDataRecordIdentifier;
@@ -40,7 +54,49 @@ import lombok.NonNull;
 @Profile(Profiles.PROFILE_App) // the event handler is also just on this profile
 public class MainDataRequestHandler
 {
+	/**
+	 * If enabled, then the requests of a transaction are summed up and written on commit, with one upsert statement per batch. See {@link MainDataRequestCollector}.
+	 */
+	@VisibleForTesting
+	static final String SYSCONFIG_CollectUntilCommit = "de.metas.material.cockpit.view.mainrecord.MainDataRequestHandler.CollectUntilCommit";
+
+	private static final String TRX_PROPERTY_MainDataRequestCollector = MainDataRequestCollector.class.getName();
+
 	public void handleDataUpdateRequest(@NonNull final UpdateMainDataRequest dataUpdateRequest)
+	{
+		final ITrx trx = Services.get(ITrxManager.class).getThreadInheritedTrx(OnTrxMissingPolicy.ReturnTrxNone);
+		if (isCollectUntilCommit() && Services.get(ITrxManager.class).isActive(trx))
+		{
+			getCollector(trx).add(dataUpdateRequest);
+			return;
+		}
+
+		updateDataRecord(dataUpdateRequest);
+	}
+
+	/**
+	 * Writes the requests which were collected in the current transaction so far.
+	 * Invoke this method before querying {@code MD_Cockpit} records in the same transaction, e.g. to link detail records to them.
+	 */
+	public void flushCollectedRequests()
+	{
+		final ITrx trx = Services.get(ITrxManager.class).getThreadInheritedTrx(OnTrxMissingPolicy.ReturnTrxNone);
+		if (!Services.get(ITrxManager.class).isActive(trx))
+		{
+			return;
+		}
+
+		final MainDataRequestCollector collector = trx.getProperty(TRX_PROPERTY_MainDataRequestCollector);
+		if (collector != null)
+		{
+			collector.flush(trx.getTrxName());
+		}
+	}
+
+	/**
+	 * Loads or creates the given request's record, adds the request's quantities and saves the record.
+	 */
+	static void updateDataRecord(@NonNull final UpdateMainDataRequest dataUpdateRequest)
 	{
 		synchronized (MainDataRequestHandler.class)
 		{
@@ -50,6 +106,46 @@ public class MainDataRequestHandler
 		}
 	}
 
+	/**
+	 * Sums up the given requests per {@code MD_Cockpit} record and handles one request per record.
+	 */
+	public void handleDataUpdateRequests(@NonNull final Collection<UpdateMainDataRequest> dataUpdateRequests)
+	{
+		final Map<ArrayKey, UpdateMainDataRequest> recordKey2request = new LinkedHashMap<>();
+		for (final UpdateMainDataRequest dataUpdateRequest : dataUpdateRequests)
+		{
+			recordKey2request.merge(MainDataRequestCollector.createRecordKey(dataUpdateRequest.getIdentifier()), dataUpdateRequest, UpdateMainDataRequest::add);
+		}
+		recordKey2request.values().forEach(this::handleDataUpdateRequest);
+	}
+
+	private static boolean isCollectUntilCommit()
+	{
+		return Services.get(ISysConfigBL.class).getBooleanValue(SYSCONFIG_CollectUntilCommit, false);
+	}
+
+	private static MainDataRequestCollector getCollector(@NonNull final ITrx trx)
+	{
+		return trx.getProperty(TRX_PROPERTY_MainDataRequestCollector, () -> {
+
+			final MainDataRequestCollector collector = new MainDataRequestCollector(Env.copyCtx(Env.getCtx()));
+
+			trx.getTrxListenerManager()
+					.newEventListener(TrxEventTiming.BEFORE_COMMIT)
+					.invokeMethodJustOnce(false) // we need this to happen on every last single commit
+					.registerHandlingMethod(innerTrx -> {
+						final MainDataRequestCollector innerCollector = innerTrx.setProperty(TRX_PROPERTY_MainDataRequestCollector, null);
+						if (innerCollector == null)
+						{
+							return;
+						}
+						innerCollector.flush(innerTrx.getTrxName());
+					});
+
+			return collector;
+		});
+	}
+
 	private static I_MD_Cockpit retrieveOrCreateDataRecord(@NonNull final MainDataRecordIdentifier identifier)
 	{
 		final IQuery<I_MD_Cockpit> query = identifier.createQueryBuilder().create();
@@ -2,6 +2,8 @@ package de.metas.material.cockpit.view.mainrecord;
 
 import java.math.BigDecimal;
 
+import org.adempiere.util.Check;
+
 import de.metas.material.cockpit.view.MainDataRecordIdentifier;
 import lombok.Builder;
 import lombok.Builder.Default;
@@ -69,4 +71,27 @@ public class UpdateMainDataRequest
 
 	@Default
 	BigDecimal requiredForProductionQty = BigDecimal.ZERO;
+
+	/**
+	 * @param other request for the same {@code MD_Cockpit} record. Note that its identifier's product descriptor might still differ, e.g. in the ASI.
+	 * @return a request with this request's identifier and the sums of this request's and the given {@code other} request's quantities.
+	 */
+	public UpdateMainDataRequest add(@NonNull final UpdateMainDataRequest other)
+	{
+		Check.errorUnless(identifier.getProductDescriptor().getProductId() == other.getIdentifier().getProductDescriptor().getProductId(),
+				"The given other request needs to have the same product; this={}; other={}", this, other);
+
+		return UpdateMainDataRequest.builder()
+				.identifier(identifier)
+				.countedQty(countedQty.add(other.getCountedQty()))
+				.onHandQtyChange(onHandQtyChange.add(other.getOnHandQtyChange()))
+				.directMovementQty(directMovementQty.add(other.getDirectMovementQty()))
+				.orderedSalesQty(orderedSalesQty.add(other.getOrderedSalesQty()))
+				.reservedSalesQty(reservedSalesQty.add(other.getReservedSalesQty()))
+				.orderedPurchaseQty(orderedPurchaseQty.add(other.getOrderedPurchaseQty()))
+				.reservedPurchaseQty(reservedPurchaseQty.add(other.getReservedPurchaseQty()))
+				.offeredQty(offeredQty.add(other.getOfferedQty()))
+				.requiredForProductionQty(requiredForProductionQty.add(other.getRequiredForProductionQty()))
+				.build();
+	}
 }
@@ -0,0 +1,170 @@
+package de.metas.material.cockpit.view.mainrecord;
+
+import static de.metas.material.event.EventTestHelper.NOW;
+import static de.metas.material.event.EventTestHelper.createProductDescriptor;
+import static org.adempiere.model.InterfaceWrapperHelper.newInstance;
+import static org.adempiere.model.InterfaceWrapperHelper.save;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.adempiere.ad.dao.IQueryBL;
+import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.service.ISysConfigBL;
+import org.adempiere.test.AdempiereTestHelper;
+import org.adempiere.util.Services;
+import org.compiere.util.Env;
+import org.compiere.util.TimeUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import de.metas.material.cockpit.model.I_MD_Cockpit;
+import de.metas.material.cockpit.model.I_MD_Cockpit_DocumentDetail;
+import de.metas.material.cockpit.view.DetailDataRecordIdentifier;
+import de.metas.material.cockpit.view.MainDataRecordIdentifier;
+import de.metas.material.cockpit.view.detailrecord.DetailDataRequestHandler;
+import de.metas.material.cockpit.view.detailrecord.InsertDetailRequest;
+import de.metas.material.event.commons.ProductDescriptor;
+
+/*
+ * #%L
+ * metasfresh-material-cockpit
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+public class MainDataRequestHandlerTest
+{
+	private ProductDescriptor productDescriptor;
+	private MainDataRecordIdentifier identifier;
+
+	private MainDataRequestHandler mainDataRequestHandler;
+	private DetailDataRequestHandler detailDataRequestHandler;
+
+	@Before
+	public void init()
+	{
+		AdempiereTestHelper.get().init();
+
+		productDescriptor = createProductDescriptor();
+		identifier = MainDataRecordIdentifier.builder()
+				.productDescriptor(productDescriptor)
+				.date(NOW)
+				.build();
+
+		mainDataRequestHandler = new MainDataRequestHandler();
+		detailDataRequestHandler = new DetailDataRequestHandler(mainDataRequestHandler);
+
+		Services.get(ISysConfigBL.class).setValue(MainDataRequestHandler.SYSCONFIG_CollectUntilCommit, true, 0);
+	}
+
+	@Test
+	public void collector_sums_up_the_requests_of_the_same_record()
+	{
+		final MainDataRecordIdentifier sameRecordIdentifier = MainDataRecordIdentifier.builder()
+				.productDescriptor(productDescriptor)
+				.date(NOW)
+				.plantId(-1) // also means "no plant"
+				.build();
+		final MainDataRecordIdentifier otherRecordIdentifier = MainDataRecordIdentifier.builder()
+				.productDescriptor(productDescriptor)
+				.date(TimeUtil.addDays(NOW, 1))
+				.build();
+
+		final MainDataRequestCollector collector = new MainDataRequestCollector(Env.getCtx());
+		collector.add(reservedSalesQtyRequest(identifier, "10"));
+		collector.add(reservedSalesQtyRequest(otherRecordIdentifier, "5"));
+		collector.add(reservedSalesQtyRequest(sameRecordIdentifier, "20"));
+
+		final List<UpdateMainDataRequest> collectedRequests = ImmutableList.copyOf(collector.getCollectedRequests());
+		assertThat(collectedRequests).hasSize(2);
+
+		assertThat(collectedRequests.get(0).getIdentifier()).isEqualTo(identifier);
+		assertThat(collectedRequests.get(0).getReservedSalesQty()).isEqualByComparingTo("30");
+		assertThat(collectedRequests.get(0).getOrderedSalesQty()).isEqualByComparingTo("30");
+
+		assertThat(collectedRequests.get(1).getIdentifier()).isEqualTo(otherRecordIdentifier);
+		assertThat(collectedRequests.get(1).getReservedSalesQty()).isEqualByComparingTo("5");
+	}
+
+	/**
+	 * Verifies that a detail record can be linked to a main record that was created within the same transaction, while the main data requests are still collected.
+	 */
+	@Test
+	public void main_request_followed_by_detail_request_in_one_trx()
+	{
+		Services.get(ITrxManager.class).run(() -> {
+			mainDataRequestHandler.handleDataUpdateRequest(reservedSalesQtyRequest(identifier, "10"));
+			mainDataRequestHandler.handleDataUpdateRequest(reservedSalesQtyRequest(identifier, "20.50"));
+
+			detailDataRequestHandler.handleInsertDetailRequest(InsertDetailRequest.builder()
+					.detailDataRecordIdentifier(DetailDataRecordIdentifier.createForShipmentSchedule(identifier, 10))
+					.qtyOrdered(BigDecimal.TEN)
+					.qtyReserved(BigDecimal.TEN)
+					.build());
+
+			mainDataRequestHandler.handleDataUpdateRequest(reservedSalesQtyRequest(identifier, "5"));
+		});
+
+		final List<I_MD_Cockpit> cockpitRecords = identifier.createQueryBuilder().create().list();
+		assertThat(cockpitRecords).hasSize(1);
+		final I_MD_Cockpit cockpitRecord = cockpitRecords.get(0);
+		assertThat(cockpitRecord.getQtyReserved_Sale()).isEqualTo(new BigDecimal("35.5"));
+
+		final List<I_MD_Cockpit_DocumentDetail> detailRecords = Services.get(IQueryBL.class)
+				.createQueryBuilder(I_MD_Cockpit_DocumentDetail.class)
+				.create()
+				.list();
+		assertThat(detailRecords).hasSize(1);
+		assertThat(detailRecords.get(0).getMD_Cockpit_ID()).isEqualTo(cockpitRecord.getMD_Cockpit_ID());
+	}
+
+	@Test
+	public void detail_request_for_existing_main_record()
+	{
+		final I_MD_Cockpit cockpitRecord = newInstance(I_MD_Cockpit.class);
+		cockpitRecord.setM_Product_ID(productDescriptor.getProductId());
+		cockpitRecord.setAttributesKey(productDescriptor.getStorageAttributesKey().getAsString());
+		cockpitRecord.setDateGeneral(TimeUtil.asTimestamp(NOW));
+		save(cockpitRecord);
+
+		Services.get(ITrxManager.class).run(() -> detailDataRequestHandler.handleInsertDetailRequest(InsertDetailRequest.builder()
+				.detailDataRecordIdentifier(DetailDataRecordIdentifier.createForShipmentSchedule(identifier, 10))
+				.qtyOrdered(BigDecimal.TEN)
+				.qtyReserved(BigDecimal.TEN)
+				.build()));
+
+		final I_MD_Cockpit_DocumentDetail detailRecord = Services.get(IQueryBL.class)
+				.createQueryBuilder(I_MD_Cockpit_DocumentDetail.class)
+				.create()
+				.firstOnly(I_MD_Cockpit_DocumentDetail.class);
+		assertThat(detailRecord.getMD_Cockpit_ID()).isEqualTo(cockpitRecord.getMD_Cockpit_ID());
+	}
+
+	private static UpdateMainDataRequest reservedSalesQtyRequest(final MainDataRecordIdentifier identifier, final String qty)
+	{
+		return UpdateMainDataRequest.builder()
+				.identifier(identifier)
+				.orderedSalesQty(new BigDecimal(qty))
+				.reservedSalesQty(new BigDecimal(qty))
+				.build();
+	}
+}
@@ -0,0 +1,275 @@
+package de.metas.material.dispo.benchmark;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.adempiere.ad.trx.api.ITrx;
+import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.test.AdempiereTestHelper;
+import org.adempiere.tools.AdempiereToolsHelper;
+import org.adempiere.util.Services;
+import org.compiere.util.Env;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+import de.metas.event.log.EventLogUserService;
+import de.metas.material.dispo.commons.repository.AvailableToPromiseRepository;
+import de.metas.material.dispo.commons.repository.CandidateRepositoryRetrieval;
+import de.metas.material.dispo.commons.repository.CandidateRepositoryWriteService;
+import de.metas.material.dispo.service.candidatechange.CandidateChangeService;
+import de.metas.material.dispo.service.candidatechange.StockCandidateService;
+import de.metas.material.dispo.service.candidatechange.handler.DemandCandiateHandler;
+import de.metas.material.dispo.service.candidatechange.handler.StockUpCandiateHandler;
+import de.metas.material.dispo.service.candidatechange.handler.SupplyCandiateHandler;
+import de.metas.material.dispo.service.event.handler.ShipmentScheduleCreatedHandler;
+import de.metas.material.dispo.service.event.handler.TransactionEventHandler;
+import de.metas.material.event.MaterialEvent;
+import de.metas.material.event.MaterialEventHandler;
+import de.metas.material.event.PostMaterialEventService;
+import de.metas.material.event.commons.EventDescriptor;
+import de.metas.material.event.eventbus.MaterialEventConverter;
+import de.metas.material.event.eventbus.MetasfreshEventBusService;
+
+/*
+ * #%L
+ * metasfresh-material-dispo-benchmark
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Measures how many material events per second the dispo handlers can process.
+ * One benchmark operation is one event of the {@link DispoEventStream}, so
+ * <ul>
+ * <li>the primary score is <b>events per second</b></li>
+ * <li>{@code gc.alloc.rate.norm} of JMH's GC profiler ({@code -prof gc}) is the number of <b>bytes allocated per event</b></li>
+ * <li>the {@code dbStatements} counter divided by the primary score is the number of <b>DB statements per event</b></li>
+ * </ul>
+ * The handlers are wired like in the dispo service, but the events are dispatched to them directly, i.e. without event bus and event log.
+ * <p>
+ * Backends:
+ * <ul>
+ * <li>{@link Backend#POJO}: the in-memory {@code POJOLookupMap}; it's reset before each iteration</li>
+ * <li>{@link Backend#POSTGRESQL}: the database that is configured in the local {@code metasfresh.properties}.
+ * All records are written within one transaction per iteration which is rolled back afterwards, so nothing is committed to the database.</li>
+ * </ul>
+ * Run it from the module directory with e.g.
+ *
+ * <pre>
+ * mvn exec:exec -Djmh.args="-p backend=POJO,POSTGRESQL -p products=10,100 -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CandidateProcessingBenchmark
+{
+	public enum Backend
+	{
+		POJO, POSTGRESQL
+	}
+
+	@Param({ "POJO" })
+	public Backend backend;
+
+	@Param({ "10" })
+	public int products;
+
+	@Param({ "2" })
+	public int warehouses;
+
+	@Param({ "30" })
+	public int days;
+
+	/** Only relevant for {@link Backend#POSTGRESQL}; the client and org that the generated events and candidates belong to. */
+	@Param({ "1" })
+	public int clientId;
+
+	@Param({ "1000000" })
+	public int orgId;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters
+	{
+		public long dbStatements;
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			dbStatements = 0;
+		}
+	}
+
+	private final StatementCounter statementCounter = new StatementCounter();
+
+	@SuppressWarnings("rawtypes")
+	private Map<Class<?>, MaterialEventHandler> eventType2handler;
+
+	private EventDescriptor eventDescriptor;
+	private List<MaterialEvent> events;
+	private int round;
+	private int cursor;
+
+	private String trxName;
+
+	@Setup(Level.Trial)
+	public void setupTrial()
+	{
+		if (backend == Backend.POSTGRESQL)
+		{
+			AdempiereToolsHelper.getInstance().startupMinimal();
+			statementCounter.enable();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDownTrial()
+	{
+		statementCounter.disable();
+	}
+
+	@Setup(Level.Iteration)
+	public void setupIteration()
+	{
+		if (backend == Backend.POJO)
+		{
+			AdempiereTestHelper.get().init();
+		}
+
+		final Properties ctx = Env.getCtx();
+		Env.setContext(ctx, Env.CTXNAME_AD_Client_ID, clientId);
+		Env.setContext(ctx, Env.CTXNAME_AD_Org_ID, orgId);
+		eventDescriptor = EventDescriptor.ofClientAndOrg(clientId, orgId);
+
+		if (backend == Backend.POSTGRESQL)
+		{
+			final ITrxManager trxManager = Services.get(ITrxManager.class);
+			trxName = trxManager.createTrxName(CandidateProcessingBenchmark.class.getSimpleName(), true);
+			trxManager.setThreadInheritedTrxName(trxName);
+		}
+
+		eventType2handler = createHandlers();
+
+		round = 0;
+		cursor = 0;
+		events = DispoEventStream.create(products, warehouses, days, round, eventDescriptor);
+
+		statementCounter.getCountAndReset();
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDownIteration()
+	{
+		if (trxName != null)
+		{
+			final ITrxManager trxManager = Services.get(ITrxManager.class);
+			trxManager.setThreadInheritedTrxName(null);
+
+			final ITrx trx = trxManager.get(trxName, false);
+			trx.rollback();
+			trx.close();
+			trxName = null;
+		}
+	}
+
+	@Benchmark
+	@SuppressWarnings("unchecked")
+	public void processEvent(final Counters counters)
+	{
+		if (cursor >= events.size())
+		{
+			// continue the timeline with a new round of events; this happens once per products x warehouses x days x 2 events
+			round++;
+			cursor = 0;
+			events = DispoEventStream.create(products, warehouses, days, round, eventDescriptor);
+		}
+
+		final MaterialEvent event = events.get(cursor++);
+		eventType2handler.get(event.getClass()).handleEvent(event);
+
+		counters.dbStatements += statementCounter.getCountAndReset();
+	}
+
+	/**
+	 * Wires the handlers like spring does it in the dispo service.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static Map<Class<?>, MaterialEventHandler> createHandlers()
+	{
+		final CandidateRepositoryRetrieval candidateRepositoryRetrieval = new CandidateRepositoryRetrieval();
+		final CandidateRepositoryWriteService candidateRepositoryWriteService = new CandidateRepositoryWriteService();
+		final AvailableToPromiseRepository availableToPromiseRepository = new AvailableToPromiseRepository();
+		final StockCandidateService stockCandidateService = new StockCandidateService(candidateRepositoryRetrieval, candidateRepositoryWriteService);
+
+		// there are no subscribers, so events like SupplyRequiredEvent are posted but not handled
+		final PostMaterialEventService postMaterialEventService = new PostMaterialEventService(
+				MetasfreshEventBusService.createLocalServiceThatIsReadyToUse(new MaterialEventConverter(new EventLogUserService())));
+
+		final CandidateChangeService candidateChangeService = new CandidateChangeService(ImmutableList.of(
+				new DemandCandiateHandler(
+						candidateRepositoryRetrieval,
+						candidateRepositoryWriteService,
+						postMaterialEventService,
+						availableToPromiseRepository,
+						stockCandidateService),
+				new SupplyCandiateHandler(
+						candidateRepositoryRetrieval,
+						candidateRepositoryWriteService,
+						stockCandidateService),
+				new StockUpCandiateHandler(
+						candidateRepositoryRetrieval,
+						candidateRepositoryWriteService,
+						postMaterialEventService,
+						availableToPromiseRepository)));
+
+		final List<MaterialEventHandler> handlers = ImmutableList.of(
+				new TransactionEventHandler(candidateChangeService, candidateRepositoryRetrieval, postMaterialEventService),
+				new ShipmentScheduleCreatedHandler(candidateChangeService));
+
+		final Map<Class<?>, MaterialEventHandler> eventType2handler = new HashMap<>();
+		for (final MaterialEventHandler handler : handlers)
+		{
+			for (final Object eventType : handler.getHandeledEventType())
+			{
+				eventType2handler.put((Class<?>)eventType, handler);
+			}
+		}
+		return eventType2handler;
+	}
+}
@@ -0,0 +1,121 @@
+package de.metas.material.dispo.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.compiere.util.TimeUtil;
+
+import de.metas.material.event.MaterialEvent;
+import de.metas.material.event.commons.EventDescriptor;
+import de.metas.material.event.commons.MaterialDescriptor;
+import de.metas.material.event.commons.OrderLineDescriptor;
+import de.metas.material.event.commons.ProductDescriptor;
+import de.metas.material.event.shipmentschedule.ShipmentScheduleCreatedEvent;
+import de.metas.material.event.transactions.TransactionCreatedEvent;
+import lombok.NonNull;
+
+/*
+ * #%L
+ * metasfresh-material-dispo-benchmark
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Creates a synthetic stream of material events for {@code countProducts x countWarehouses x countDays} product/warehouse/day combinations.
+ * <p>
+ * For each combination there is one unrelated {@link TransactionCreatedEvent} that increases the stock
+ * and one {@link ShipmentScheduleCreatedEvent} that consumes a part of it later on the same day.
+ * The events are ordered by day, so each day's events are processed on top of the stock of the days before.
+ * <p>
+ * Consecutive rounds continue the timeline, i.e. round {@code n} starts with the day after round {@code n-1}'s last day and uses new transaction and shipment schedule IDs.
+ */
+final class DispoEventStream
+{
+	private static final BigDecimal QTY_RECEIVED = new BigDecimal("100");
+	private static final BigDecimal QTY_SHIPPED = new BigDecimal("60");
+
+	/** Offset for the generated product and warehouse IDs, so they don't collide with existing master data. */
+	private static final int ID_OFFSET = 1_000_000;
+
+	public static List<MaterialEvent> create(
+			final int countProducts,
+			final int countWarehouses,
+			final int countDays,
+			final int round,
+			@NonNull final EventDescriptor eventDescriptor)
+	{
+		final Timestamp firstDay = TimeUtil.addDays(TimeUtil.getDay(2018, 1, 1), round * countDays);
+
+		final int countCombinations = countProducts * countWarehouses * countDays;
+		final List<MaterialEvent> events = new ArrayList<>(countCombinations * 2);
+		int seqNo = ID_OFFSET + round * countCombinations;
+
+		for (int day = 0; day < countDays; day++)
+		{
+			final Timestamp receiptDate = TimeUtil.addHours(TimeUtil.addDays(firstDay, day), 8);
+			final Timestamp shipmentDate = TimeUtil.addHours(receiptDate, 8);
+
+			for (int product = 1; product <= countProducts; product++)
+			{
+				final ProductDescriptor productDescriptor = ProductDescriptor.completeForProductIdAndEmptyAttribute(ID_OFFSET + product);
+
+				for (int warehouse = 1; warehouse <= countWarehouses; warehouse++)
+				{
+					seqNo++;
+
+					events.add(TransactionCreatedEvent.builder()
+							.eventDescriptor(eventDescriptor)
+							.transactionId(seqNo)
+							.materialDescriptor(MaterialDescriptor.builder()
+									.date(receiptDate)
+									.productDescriptor(productDescriptor)
+									.quantity(QTY_RECEIVED)
+									.warehouseId(ID_OFFSET + warehouse)
+									.build())
+							.build());
+
+					events.add(ShipmentScheduleCreatedEvent.builder()
+							.eventDescriptor(eventDescriptor)
+							.shipmentScheduleId(seqNo)
+							.reservedQuantity(QTY_SHIPPED)
+							.materialDescriptor(MaterialDescriptor.builder()
+									.date(shipmentDate)
+									.productDescriptor(productDescriptor)
+									.quantity(QTY_SHIPPED)
+									.warehouseId(ID_OFFSET + warehouse)
+									.build())
+							.documentLineDescriptor(OrderLineDescriptor.builder()
+									.orderLineId(seqNo)
+									.orderId(seqNo)
+									.orderBPartnerId(ID_OFFSET)
+									.docTypeId(ID_OFFSET)
+									.build())
+							.build());
+				}
+			}
+		}
+		return events;
+	}
+
+	private DispoEventStream()
+	{
+	}
+}
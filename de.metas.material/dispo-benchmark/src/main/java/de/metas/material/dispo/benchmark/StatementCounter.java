@@ -0,0 +1,67 @@
+package de.metas.material.dispo.benchmark;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.adempiere.ad.dao.IQueryStatisticsCollector;
+import org.adempiere.sql.impl.StatementsFactory;
+import org.compiere.util.CStatementVO;
+
+import com.google.common.base.Stopwatch;
+
+/*
+ * #%L
+ * metasfresh-material-dispo-benchmark
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Counts the SQL statements that are executed via {@link StatementsFactory}'s tracing statements.
+ * Only meaningful when running against a real database.
+ */
+final class StatementCounter implements IQueryStatisticsCollector
+{
+	private final AtomicLong count = new AtomicLong();
+
+	public void enable()
+	{
+		StatementsFactory.instance.enableSqlQueriesTracing(this);
+	}
+
+	public void disable()
+	{
+		StatementsFactory.instance.disableSqlQueriesTracing();
+	}
+
+	@Override
+	public void collect(final String sql, final Stopwatch duration)
+	{
+		count.incrementAndGet();
+	}
+
+	@Override
+	public void collect(final CStatementVO vo, final Stopwatch duration)
+	{
+		count.incrementAndGet();
+	}
+
+	public long getCountAndReset()
+	{
+		return count.getAndSet(0);
+	}
+}
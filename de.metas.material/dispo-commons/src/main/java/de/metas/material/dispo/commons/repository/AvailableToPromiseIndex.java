@@ -0,0 +1,525 @@
+package de.metas.material.dispo.commons.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.adempiere.ad.dao.IQueryBL;
+import org.adempiere.ad.trx.api.ITrx;
+import org.adempiere.ad.trx.api.ITrxListenerManager.TrxEventTiming;
+import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.ad.trx.api.OnTrxMissingPolicy;
+import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.service.ISysConfigBL;
+import org.adempiere.util.Services;
+import org.adempiere.util.time.SystemTime;
+import org.compiere.util.TimeUtil;
+import org.slf4j.Logger;
+import org.springframework.stereotype.Service;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import de.metas.logging.LogManager;
+import de.metas.material.dispo.commons.repository.AvailableToPromiseResult.AddToResultGroupRequest;
+import de.metas.material.dispo.model.I_MD_Candidate;
+import de.metas.material.dispo.model.X_MD_Candidate;
+import de.metas.material.event.commons.AttributesKey;
+import lombok.NonNull;
+import lombok.Value;
+
+/*
+ * #%L
+ * metasfresh-material-dispo-commons
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Optional in-memory index of the {@code MD_Candidate} stock records, used by {@link AvailableToPromiseRepository} instead of {@code de_metas_material.retrieve_atp_at_date(..)}.
+ * <p>
+ * The index is loaded per product and holds, for each product, warehouse, customer and storage attributes key,
+ * the date-ordered stock records (which already are running sums). A query is answered by looking up the latest record at or before the query's date.
+ * <p>
+ * Entries are kept up to date as follows:
+ * <li>{@link AvailableToPromiseIndexInvalidationHandler} invalidates a product when a material event arrives that is going to change its stock records.
+ * From then on the product is <i>pending</i> and every query for it is answered from the DB, because the dispo service might not yet have committed the updated stock records.
+ * <li>{@link CandidateRepositoryWriteService} notifies the index via {@link #onStockRecordSaved(I_MD_Candidate)}. When the saving transaction is committed, the product is no longer pending and is reloaded on the next query.
+ * Note that in a JVM which does not write stock records itself, an invalidated product therefore stays pending (i.e. is answered from the DB) until {@link #invalidateAll()} is called.
+ * <li>as a backstop, entries are reloaded after a configurable max age. On reload, the old entry is compared with the fresh DB data and inconsistencies are logged and counted.
+ */
+@Service
+public class AvailableToPromiseIndex
+{
+	private static final Logger logger = LogManager.getLogger(AvailableToPromiseIndex.class);
+
+	@VisibleForTesting
+	static final String SYSCONFIG_Enabled = "de.metas.material.dispo.commons.repository.AvailableToPromiseIndex.Enabled";
+	private static final String SYSCONFIG_MaxAgeSeconds = "de.metas.material.dispo.commons.repository.AvailableToPromiseIndex.MaxAgeSeconds";
+
+	private static final int DEFAULT_MaxAgeSeconds = 300;
+
+	private static final String TRX_PROPERTY_SavedStockProductIds = AvailableToPromiseIndex.class.getName() + ".SavedStockProductIds";
+
+	private final Map<Integer, ProductEntry> productId2entry = new ConcurrentHashMap<>();
+
+	/** products whose stock records are about to change; the index is not used for them until the change was committed */
+	private final Set<Integer> pendingProductIds = ConcurrentHashMap.newKeySet();
+
+	/** incremented on each invalidation, so that a concurrent load can find out that what it loaded might already be outdated */
+	private final Map<Integer, AtomicLong> productId2version = new ConcurrentHashMap<>();
+
+	private final AtomicLong countHits = new AtomicLong();
+	private final AtomicLong countLoads = new AtomicLong();
+	private final AtomicLong countBypasses = new AtomicLong();
+	private final AtomicLong countInconsistencies = new AtomicLong();
+
+	public boolean isEnabled()
+	{
+		return Services.get(ISysConfigBL.class).getBooleanValue(SYSCONFIG_Enabled, false);
+	}
+
+	/**
+	 * @return the stock records matching the given {@code multiQuery}, ordered "chronologically", latest first; or {@code null} if the query can't be answered from the index right now.
+	 */
+	public List<AddToResultGroupRequest> retrieveRequestsOrNull(@NonNull final AvailableToPromiseMultiQuery multiQuery)
+	{
+		final long now = SystemTime.millis();
+		for (final AvailableToPromiseQuery query : multiQuery.getQueries())
+		{
+			if (query.getProductIds().stream().anyMatch(pendingProductIds::contains))
+			{
+				countBypasses.incrementAndGet();
+				return null;
+			}
+		}
+
+		// note: one record might match several queries; like the union-distinct DB query, we want it only once
+		final Set<StockRecord> records = new LinkedHashSet<>();
+		for (final AvailableToPromiseQuery query : multiQuery.getQueries())
+		{
+			for (final int productId : query.getProductIds())
+			{
+				final ProductEntry entry = getOrLoadEntryOrNull(productId, now);
+				if (entry == null)
+				{
+					countBypasses.incrementAndGet();
+					return null;
+				}
+				entry.collectMatchingRecords(query, records);
+			}
+		}
+		countHits.incrementAndGet();
+
+		return records.stream()
+				.sorted(Comparator.comparing(StockRecord::getDateAndSeqNo).reversed())
+				.map(StockRecord::toAddToResultGroupRequest)
+				.collect(ImmutableList.toImmutableList());
+	}
+
+	/**
+	 * Drops the given product's entry and marks the product as pending, i.e. the index is not used for it until {@link #stockRecordsCommitted(Collection)} is called for it.
+	 */
+	public void invalidateProduct(final int productId)
+	{
+		if (productId <= 0)
+		{
+			return;
+		}
+
+		pendingProductIds.add(productId);
+		incrementVersion(productId);
+		productId2entry.remove(productId);
+	}
+
+	/**
+	 * Shall be called for each {@code MD_Candidate} record that was saved.
+	 * If it is a stock record, then the index is notified via {@link #stockRecordsCommitted(Collection)} after the record's transaction was committed.
+	 */
+	public void onStockRecordSaved(@NonNull final I_MD_Candidate candidateRecord)
+	{
+		if (!X_MD_Candidate.MD_CANDIDATE_TYPE_STOCK.equals(candidateRecord.getMD_Candidate_Type()))
+		{
+			return;
+		}
+		final int productId = candidateRecord.getM_Product_ID();
+
+		final ITrxManager trxManager = Services.get(ITrxManager.class);
+		final ITrx trx = trxManager.get(InterfaceWrapperHelper.getTrxName(candidateRecord), OnTrxMissingPolicy.ReturnTrxNone);
+		if (trxManager.isNull(trx))
+		{
+			stockRecordsCommitted(ImmutableSet.of(productId));
+			return;
+		}
+		getCreateSavedStockProductIds(trx).add(productId);
+	}
+
+	private Set<Integer> getCreateSavedStockProductIds(@NonNull final ITrx trx)
+	{
+		return trx.getProperty(TRX_PROPERTY_SavedStockProductIds, () -> {
+
+			final Set<Integer> productIds = ConcurrentHashMap.newKeySet();
+			trx.getTrxListenerManager()
+					.newEventListener(TrxEventTiming.AFTER_COMMIT)
+					.invokeMethodJustOnce(false) // the same trx might be committed more than once
+					.registerHandlingMethod(innerTrx -> {
+						final ImmutableSet<Integer> committedProductIds = ImmutableSet.copyOf(productIds);
+						productIds.removeAll(committedProductIds);
+						stockRecordsCommitted(committedProductIds);
+					});
+			return productIds;
+		});
+	}
+
+	/**
+	 * Drops the given products' entries and unmarks them as pending, so that they are reloaded from the DB on the next query.
+	 */
+	public void stockRecordsCommitted(@NonNull final Collection<Integer> productIds)
+	{
+		for (final int productId : productIds)
+		{
+			// increment the version first, so that a load which began before the commit won't be published
+			incrementVersion(productId);
+			productId2entry.remove(productId);
+			pendingProductIds.remove(productId);
+		}
+	}
+
+	public void invalidateAll()
+	{
+		productId2version.values().forEach(AtomicLong::incrementAndGet);
+		productId2entry.clear();
+		pendingProductIds.clear();
+	}
+
+	public Map<String, Long> getStatistics()
+	{
+		return ImmutableMap.<String, Long> builder()
+				.put("products", (long)productId2entry.size())
+				.put("hits", countHits.get())
+				.put("loads", countLoads.get())
+				.put("bypasses", countBypasses.get())
+				.put("inconsistencies", countInconsistencies.get())
+				.build();
+	}
+
+	private AtomicLong getVersion(final int productId)
+	{
+		return productId2version.computeIfAbsent(productId, k -> new AtomicLong());
+	}
+
+	private void incrementVersion(final int productId)
+	{
+		getVersion(productId).incrementAndGet();
+	}
+
+	/**
+	 * @return the product's entry, or {@code null} if the product was invalidated while the entry was loaded.
+	 */
+	private ProductEntry getOrLoadEntryOrNull(final int productId, final long now)
+	{
+		final ProductEntry existingEntry = productId2entry.get(productId);
+		if (existingEntry != null && !isExpired(existingEntry, now))
+		{
+			return existingEntry;
+		}
+
+		final AtomicLong version = getVersion(productId);
+		final long versionBeforeLoad = version.get();
+
+		final ProductEntry loadedEntry = loadEntry(productId, now);
+		if (existingEntry != null)
+		{
+			checkConsistency(existingEntry, loadedEntry);
+		}
+
+		// if the product was invalidated while we were loading, then what we loaded might already be outdated
+		if (pendingProductIds.contains(productId) || version.get() != versionBeforeLoad)
+		{
+			return null;
+		}
+		productId2entry.put(productId, loadedEntry);
+		if (version.get() != versionBeforeLoad)
+		{
+			// invalidated between our check and the put; don't leave the outdated entry behind
+			productId2entry.remove(productId, loadedEntry);
+			return null;
+		}
+		return loadedEntry;
+	}
+
+	private boolean isExpired(@NonNull final ProductEntry entry, final long now)
+	{
+		final int maxAgeSeconds = Services.get(ISysConfigBL.class).getIntValue(SYSCONFIG_MaxAgeSeconds, DEFAULT_MaxAgeSeconds);
+		return now - entry.getLoadedMillis() > maxAgeSeconds * 1000L;
+	}
+
+	private ProductEntry loadEntry(final int productId, final long now)
+	{
+		final List<I_MD_Candidate> stockRecords = Services.get(IQueryBL.class)
+				.createQueryBuilder(I_MD_Candidate.class)
+				.addOnlyActiveRecordsFilter()
+				.addEqualsFilter(I_MD_Candidate.COLUMN_M_Product_ID, productId)
+				.addEqualsFilter(I_MD_Candidate.COLUMN_MD_Candidate_Type, X_MD_Candidate.MD_CANDIDATE_TYPE_STOCK)
+				.create()
+				.list();
+
+		final ProductEntry entry = new ProductEntry(productId, now);
+		stockRecords.forEach(stockRecord -> entry.add(StockRecord.of(stockRecord)));
+
+		countLoads.incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * Compares the latest records of an expired entry with those of its freshly loaded successor.
+	 * Differences mean that an invalidation was missed; we log them so that they can be investigated.
+	 */
+	private void checkConsistency(@NonNull final ProductEntry expiredEntry, @NonNull final ProductEntry loadedEntry)
+	{
+		final Map<StockKey, StockRecord> expiredLatestRecords = expiredEntry.getLatestRecords();
+		final Map<StockKey, StockRecord> loadedLatestRecords = loadedEntry.getLatestRecords();
+		if (Objects.equals(expiredLatestRecords, loadedLatestRecords))
+		{
+			return;
+		}
+
+		countInconsistencies.incrementAndGet();
+		logger.warn("AvailableToPromiseIndex entry for M_Product_ID={} was not consistent with the DB; expiredLatestRecords={}; loadedLatestRecords={}",
+				loadedEntry.getProductId(), expiredLatestRecords, loadedLatestRecords);
+	}
+
+	/**
+	 * Mirrors the storage attributes key filtering of {@link AvailableToPromiseSqlHelper}, including its {@code LIKE} semantics.
+	 */
+	@VisibleForTesting
+	static boolean isStorageAttributesKeyMatching(
+			@NonNull final AvailableToPromiseQuery query,
+			@NonNull final AttributesKey storageAttributesKey)
+	{
+		final List<AttributesKey> queryAttributesKeys = query.getStorageAttributesKeys();
+		if (queryAttributesKeys.isEmpty())
+		{
+			return true;
+		}
+
+		final String storageAttributesKeyString = storageAttributesKey.getAsString();
+		for (final AttributesKey queryAttributesKey : queryAttributesKeys)
+		{
+			if (AttributesKey.ALL.equals(queryAttributesKey))
+			{
+				return true;
+			}
+			else if (AttributesKey.OTHER.equals(queryAttributesKey))
+			{
+				final boolean likeNoneOfTheOthers = queryAttributesKeys.stream()
+						.filter(otherKey -> !AttributesKey.OTHER.equals(otherKey))
+						.noneMatch(otherKey -> isLike(storageAttributesKeyString, otherKey));
+				if (likeNoneOfTheOthers)
+				{
+					return true;
+				}
+			}
+			else if (isLike(storageAttributesKeyString, queryAttributesKey))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return {@code true} if the given {@code string} is {@code LIKE '%' || queryAttributesKey.getSqlLikeString() || '%'},
+	 *         i.e. if the like-string's {@code %}-separated parts occur in the given string in that order.
+	 */
+	private static boolean isLike(@NonNull final String string, @NonNull final AttributesKey queryAttributesKey)
+	{
+		int fromIndex = 0;
+		for (final String part : queryAttributesKey.getSqlLikeString().split("%"))
+		{
+			if (part.isEmpty())
+			{
+				continue;
+			}
+			final int index = string.indexOf(part, fromIndex);
+			if (index < 0)
+			{
+				return false;
+			}
+			fromIndex = index + part.length();
+		}
+		return true;
+	}
+
+	@Value
+	private static class StockKey
+	{
+		int warehouseId;
+		int bpartnerId;
+		AttributesKey storageAttributesKey;
+	}
+
+	@Value
+	private static class DateAndSeqNo implements Comparable<DateAndSeqNo>
+	{
+		private static final Comparator<DateAndSeqNo> COMPARATOR = Comparator
+				.comparing(DateAndSeqNo::getDate)
+				.thenComparing(DateAndSeqNo::getSeqNo);
+
+		LocalDateTime date;
+		int seqNo;
+
+		@Override
+		public int compareTo(@NonNull final DateAndSeqNo other)
+		{
+			return COMPARATOR.compare(this, other);
+		}
+	}
+
+	@Value
+	private static class StockRecord
+	{
+		static StockRecord of(@NonNull final I_MD_Candidate stockRecord)
+		{
+			return new StockRecord(
+					stockRecord.getMD_Candidate_ID(),
+					stockRecord.getM_Product_ID(),
+					new StockKey(
+							stockRecord.getM_Warehouse_ID(),
+							stockRecord.getC_BPartner_Customer_ID() > 0 ? stockRecord.getC_BPartner_Customer_ID() : AvailableToPromiseQuery.BPARTNER_ID_ANY,
+							AttributesKey.ofString(stockRecord.getStorageAttributesKey())),
+					new DateAndSeqNo(TimeUtil.asLocalDateTime(stockRecord.getDateProjected()), stockRecord.getSeqNo()),
+					stockRecord.getQty());
+		}
+
+		int candidateId;
+		int productId;
+		StockKey stockKey;
+		DateAndSeqNo dateAndSeqNo;
+		BigDecimal qty;
+
+		AddToResultGroupRequest toAddToResultGroupRequest()
+		{
+			return AddToResultGroupRequest.builder()
+					.productId(productId)
+					.warehouseId(stockKey.getWarehouseId())
+					.bpartnerId(stockKey.getBpartnerId())
+					.storageAttributesKey(stockKey.getStorageAttributesKey())
+					.qty(qty)
+					.build();
+		}
+	}
+
+	private static class ProductEntry
+	{
+		private final int productId;
+		private final long loadedMillis;
+		private final Map<StockKey, NavigableMap<DateAndSeqNo, StockRecord>> key2records = new HashMap<>();
+
+		private ProductEntry(final int productId, final long loadedMillis)
+		{
+			this.productId = productId;
+			this.loadedMillis = loadedMillis;
+		}
+
+		public int getProductId()
+		{
+			return productId;
+		}
+
+		public long getLoadedMillis()
+		{
+			return loadedMillis;
+		}
+
+		/** only invoked while loading, i.e. before the entry is published to other threads */
+		private void add(@NonNull final StockRecord record)
+		{
+			key2records
+					.computeIfAbsent(record.getStockKey(), key -> new TreeMap<>())
+					.put(record.getDateAndSeqNo(), record);
+		}
+
+		private void collectMatchingRecords(
+				@NonNull final AvailableToPromiseQuery query,
+				@NonNull final Collection<StockRecord> result)
+		{
+			final DateAndSeqNo latestAllowed = new DateAndSeqNo(query.getDate(), Integer.MAX_VALUE);
+
+			for (final Map.Entry<StockKey, NavigableMap<DateAndSeqNo, StockRecord>> entry : key2records.entrySet())
+			{
+				final StockKey key = entry.getKey();
+				if (!query.getWarehouseIds().isEmpty() && !query.getWarehouseIds().contains(key.getWarehouseId()))
+				{
+					continue;
+				}
+				if (!isBPartnerMatching(query.getBpartnerId(), key.getBpartnerId()))
+				{
+					continue;
+				}
+				if (!isStorageAttributesKeyMatching(query, key.getStorageAttributesKey()))
+				{
+					continue;
+				}
+
+				final Map.Entry<DateAndSeqNo, StockRecord> latestEntry = entry.getValue().floorEntry(latestAllowed);
+				if (latestEntry != null)
+				{
+					result.add(latestEntry.getValue());
+				}
+			}
+		}
+
+		/** mirrors the bpartner-filtering of {@link AvailableToPromiseSqlHelper} */
+		private static boolean isBPartnerMatching(final int queryBPartnerId, final int recordBPartnerId)
+		{
+			if (queryBPartnerId == AvailableToPromiseQuery.BPARTNER_ID_ANY)
+			{
+				return true;
+			}
+			else if (queryBPartnerId == AvailableToPromiseQuery.BPARTNER_ID_NONE)
+			{
+				return recordBPartnerId <= 0;
+			}
+			else
+			{
+				return recordBPartnerId <= 0 || recordBPartnerId == queryBPartnerId;
+			}
+		}
+
+		private Map<StockKey, StockRecord> getLatestRecords()
+		{
+			final ImmutableMap.Builder<StockKey, StockRecord> result = ImmutableMap.builder();
+			key2records.forEach((key, records) -> result.put(key, records.lastEntry().getValue()));
+			return result.build();
+		}
+	}
+}
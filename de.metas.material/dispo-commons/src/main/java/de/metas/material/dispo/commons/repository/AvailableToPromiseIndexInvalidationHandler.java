@@ -0,0 +1,111 @@
+package de.metas.material.dispo.commons.repository;
+
+import java.util.Collection;
+
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.ImmutableList;
+
+import de.metas.material.event.MaterialEvent;
+import de.metas.material.event.MaterialEventHandler;
+import de.metas.material.event.receiptschedule.AbstractReceiptScheduleEvent;
+import de.metas.material.event.receiptschedule.ReceiptScheduleCreatedEvent;
+import de.metas.material.event.receiptschedule.ReceiptScheduleDeletedEvent;
+import de.metas.material.event.receiptschedule.ReceiptScheduleUpdatedEvent;
+import de.metas.material.event.shipmentschedule.AbstractShipmentScheduleEvent;
+import de.metas.material.event.shipmentschedule.ShipmentScheduleCreatedEvent;
+import de.metas.material.event.shipmentschedule.ShipmentScheduleDeletedEvent;
+import de.metas.material.event.shipmentschedule.ShipmentScheduleUpdatedEvent;
+import de.metas.material.event.stock.StockChangedEvent;
+import de.metas.material.event.stockestimate.AbstractStockEstimateEvent;
+import de.metas.material.event.stockestimate.StockEstimateCreatedEvent;
+import de.metas.material.event.stockestimate.StockEstimateDeletedEvent;
+import de.metas.material.event.transactions.AbstractTransactionEvent;
+import de.metas.material.event.transactions.TransactionCreatedEvent;
+import de.metas.material.event.transactions.TransactionDeletedEvent;
+import lombok.NonNull;
+
+/*
+ * #%L
+ * metasfresh-material-dispo-commons
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Invalidates the {@link AvailableToPromiseIndex} entries of the products whose stock candidates are going to be changed by the dispo service as a consequence of the given event.
+ * Note that this handler is not restricted to the material-dispo profile, because the index is used also outside of the dispo service.
+ */
+@Service
+public class AvailableToPromiseIndexInvalidationHandler implements MaterialEventHandler<MaterialEvent>
+{
+	private final AvailableToPromiseIndex availableToPromiseIndex;
+
+	public AvailableToPromiseIndexInvalidationHandler(@NonNull final AvailableToPromiseIndex availableToPromiseIndex)
+	{
+		this.availableToPromiseIndex = availableToPromiseIndex;
+	}
+
+	@Override
+	public Collection<Class<? extends MaterialEvent>> getHandeledEventType()
+	{
+		return ImmutableList.of(
+				TransactionCreatedEvent.class,
+				TransactionDeletedEvent.class,
+				ShipmentScheduleCreatedEvent.class,
+				ShipmentScheduleUpdatedEvent.class,
+				ShipmentScheduleDeletedEvent.class,
+				ReceiptScheduleCreatedEvent.class,
+				ReceiptScheduleUpdatedEvent.class,
+				ReceiptScheduleDeletedEvent.class,
+				StockEstimateCreatedEvent.class,
+				StockEstimateDeletedEvent.class,
+				StockChangedEvent.class);
+	}
+
+	@Override
+	public void handleEvent(@NonNull final MaterialEvent event)
+	{
+		availableToPromiseIndex.invalidateProduct(extractProductId(event));
+	}
+
+	private static int extractProductId(@NonNull final MaterialEvent event)
+	{
+		if (event instanceof AbstractTransactionEvent)
+		{
+			return ((AbstractTransactionEvent)event).getMaterialDescriptor().getProductId();
+		}
+		else if (event instanceof AbstractShipmentScheduleEvent)
+		{
+			return ((AbstractShipmentScheduleEvent)event).getMaterialDescriptor().getProductId();
+		}
+		else if (event instanceof AbstractReceiptScheduleEvent)
+		{
+			return ((AbstractReceiptScheduleEvent)event).getMaterialDescriptor().getProductId();
+		}
+		else if (event instanceof AbstractStockEstimateEvent)
+		{
+			return ((AbstractStockEstimateEvent)event).getProductDescriptor().getProductId();
+		}
+		else if (event instanceof StockChangedEvent)
+		{
+			return ((StockChangedEvent)event).getProductId();
+		}
+		return -1;
+	}
+}
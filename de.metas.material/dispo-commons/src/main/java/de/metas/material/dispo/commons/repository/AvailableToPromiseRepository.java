@@ -12,6 +12,7 @@ import org.adempiere.util.Services;
 import org.compiere.model.IQuery;
 import org.compiere.util.Env;
 import org.compiere.util.Util.ArrayKey;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -54,6 +55,20 @@ public class AvailableToPromiseRepository
 {
 	private static final String SYSCONFIG_ATP_ATTRIBUTES_KEYS = "de.metas.ui.web.window.descriptor.sql.ProductLookupDescriptor.ATP.AttributesKeys";
 
+	private final AvailableToPromiseIndex availableToPromiseIndex;
+
+	@VisibleForTesting
+	public AvailableToPromiseRepository()
+	{
+		this(new AvailableToPromiseIndex());
+	}
+
+	@Autowired
+	public AvailableToPromiseRepository(@NonNull final AvailableToPromiseIndex availableToPromiseIndex)
+	{
+		this.availableToPromiseIndex = availableToPromiseIndex;
+	}
+
 	@NonNull
 	public BigDecimal retrieveAvailableStockQtySum(@NonNull final AvailableToPromiseMultiQuery multiQuery)
 	{
@@ -75,10 +90,42 @@ public class AvailableToPromiseRepository
 				? AvailableToPromiseResult.createEmptyWithPredefinedBuckets(multiQuery)
 				: AvailableToPromiseResult.createEmpty();
 
+		final List<AddToResultGroupRequest> requests = retrieveRequests(multiQuery);
+
+		final List<AddToResultGroupRequest> filteredRequests = filterOutRedundantQuantities(requests);
+
+		for (final AddToResultGroupRequest request : filteredRequests)
+		{
+			if (multiQuery.isAddToPredefinedBuckets())
+			{
+				result.addQtyToAllMatchingGroups(request);
+			}
+			else
+			{
+				result.addToNewGroupGroup(request);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the requests for the stock records that match the given {@code multiQuery}, ordered "chronologically", latest first.
+	 */
+	private List<AddToResultGroupRequest> retrieveRequests(@NonNull final AvailableToPromiseMultiQuery multiQuery)
+	{
+		if (availableToPromiseIndex.isEnabled())
+		{
+			final List<AddToResultGroupRequest> requestsFromIndex = availableToPromiseIndex.retrieveRequestsOrNull(multiQuery);
+			if (requestsFromIndex != null)
+			{
+				return requestsFromIndex;
+			}
+		}
+
 		final IQuery<I_MD_Candidate_ATP_QueryResult> dbQuery = createDBQueryForMaterialQueryOrNull(multiQuery);
 		if (dbQuery == null)
 		{
-			return result;
+			return ImmutableList.of();
 		}
 
 		final List<I_MD_Candidate_ATP_QueryResult> atpRecords = dbQuery
@@ -90,25 +137,10 @@ public class AvailableToPromiseRepository
 				.collect(ImmutableList.toImmutableList());
 
 		// note: this is a dedicated step in order to ease debugging (i.e. have a chance to take a look at the atpRecords)
-		final ImmutableList<AddToResultGroupRequest> requests = atpRecords
+		return atpRecords
 				.stream()
 				.map(AvailableToPromiseRepository::createAddToResultGroupRequest)
 				.collect(ImmutableList.toImmutableList());
-
-		final List<AddToResultGroupRequest> filteredRequests = filterOutRedundantQuantities(requests);
-
-		for (final AddToResultGroupRequest request : filteredRequests)
-		{
-			if (multiQuery.isAddToPredefinedBuckets())
-			{
-				result.addQtyToAllMatchingGroups(request);
-			}
-			else
-			{
-				result.addToNewGroupGroup(request);
-			}
-		}
-		return result;
 	}
 
 	/**
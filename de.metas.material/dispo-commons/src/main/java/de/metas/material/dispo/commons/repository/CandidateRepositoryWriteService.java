@@ -1,6 +1,7 @@
 package de.metas.material.dispo.commons.repository;
 
 import static org.adempiere.model.InterfaceWrapperHelper.isNew;
+import static org.adempiere.model.InterfaceWrapperHelper.load;
 import static org.adempiere.model.InterfaceWrapperHelper.newInstance;
 import static org.adempiere.model.InterfaceWrapperHelper.save;
 
@@ -15,6 +16,7 @@ import org.adempiere.ad.dao.IQueryBL;
 import org.adempiere.util.Check;
 import org.adempiere.util.Loggables;
 import org.adempiere.util.Services;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -64,6 +66,20 @@ import lombok.NonNull;
 @Service
 public class CandidateRepositoryWriteService
 {
+	private final AvailableToPromiseIndex availableToPromiseIndex;
+
+	@VisibleForTesting
+	public CandidateRepositoryWriteService()
+	{
+		this(new AvailableToPromiseIndex());
+	}
+
+	@Autowired
+	public CandidateRepositoryWriteService(@NonNull final AvailableToPromiseIndex availableToPromiseIndex)
+	{
+		this.availableToPromiseIndex = availableToPromiseIndex;
+	}
+
 	/**
 	 * Stores the given {@code candidate}.
 	 * If there is already an existing candidate in the store, it is loaded, its fields are updated and the result is saved.<br>
@@ -103,6 +119,34 @@ public class CandidateRepositoryWriteService
 		return addOrUpdate(query, candidate, false);
 	}
 
+	/**
+	 * Updates the qty of the given candidate.
+	 * Differs from {@link #addOrUpdateOverwriteStoredSeqNo(Candidate)} in that
+	 * only the ID of the given {@code candidateToUpdate} is used, and if there is no existing persisted record, then an exception is thrown.
+	 * Also it just updates the underlying persisted record of the given {@code candidateToUpdate} and nothing else.
+	 *
+	 * @param candidateToUpdate the candidate to update. Needs to have {@link Candidate#getId()} > 0.
+	 *
+	 * @return a copy of the given {@code candidateToUpdate} with the quantity being a delta, similar to the return value of {@link #addOrUpdate(Candidate, boolean)}.
+	 */
+	public Candidate updateQty(@NonNull final Candidate candidateToUpdate)
+	{
+		Check.errorIf(candidateToUpdate.getId().isNull(),
+				"Parameter 'candidateToUpdate' needs to have a not-null Id; candidateToUpdate=%s",
+				candidateToUpdate);
+
+		final I_MD_Candidate candidateRecord = load(candidateToUpdate.getId().getRepoId(), I_MD_Candidate.class);
+		final BigDecimal oldQty = candidateRecord.getQty();
+
+		candidateRecord.setQty(candidateToUpdate.getQuantity());
+		save(candidateRecord);
+		availableToPromiseIndex.onStockRecordSaved(candidateRecord);
+
+		final BigDecimal qtyDelta = candidateToUpdate.getQuantity().subtract(oldQty);
+
+		return candidateToUpdate.withQuantity(qtyDelta);
+	}
+
 	private Candidate addOrUpdate(@NonNull final Candidate candidate, final boolean preserveExistingSeqNoAndParentId)
 	{
 		final CandidatesQuery query = CandidatesQuery.fromCandidate(candidate, preserveExistingSeqNoAndParentId);
@@ -129,6 +173,7 @@ public class CandidateRepositoryWriteService
 		save(synchedRecord); // save now, because we need to have MD_Candidate_ID > 0
 
 		setFallBackSeqNoAndGroupIdIfNeeded(synchedRecord);
+		availableToPromiseIndex.onStockRecordSaved(synchedRecord);
 
 		addOrReplaceProductionDetail(candidate, synchedRecord);
 
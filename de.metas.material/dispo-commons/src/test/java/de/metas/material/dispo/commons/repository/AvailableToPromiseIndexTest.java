@@ -0,0 +1,266 @@
+package de.metas.material.dispo.commons.repository;
+
+import static de.metas.material.event.EventTestHelper.AFTER_NOW;
+import static de.metas.material.event.EventTestHelper.BEFORE_NOW;
+import static de.metas.material.event.EventTestHelper.BPARTNER_ID;
+import static de.metas.material.event.EventTestHelper.NOW;
+import static de.metas.material.event.EventTestHelper.PRODUCT_ID;
+import static de.metas.material.event.EventTestHelper.WAREHOUSE_ID;
+import static org.adempiere.model.InterfaceWrapperHelper.newInstance;
+import static org.adempiere.model.InterfaceWrapperHelper.save;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import org.adempiere.service.ISysConfigBL;
+import org.adempiere.test.AdempiereTestHelper;
+import org.adempiere.test.AdempiereTestWatcher;
+import org.adempiere.util.Services;
+import org.compiere.util.TimeUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import de.metas.material.dispo.model.I_MD_Candidate;
+import de.metas.material.dispo.model.I_MD_Candidate_ATP_QueryResult;
+import de.metas.material.dispo.model.X_MD_Candidate;
+import de.metas.material.event.commons.AttributesKey;
+
+/*
+ * #%L
+ * metasfresh-material-dispo-commons
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+public class AvailableToPromiseIndexTest
+{
+	private static final AttributesKey STORAGE_ATTRIBUTES_KEY = AttributesKey.ofAttributeValueIds(1, 2);
+
+	@Rule
+	public AdempiereTestWatcher adempiereTestWatcher = new AdempiereTestWatcher();
+
+	private AvailableToPromiseIndex availableToPromiseIndex;
+	private AvailableToPromiseRepository availableToPromiseRepository;
+
+	private int seqNoCounter;
+
+	@Before
+	public void init()
+	{
+		AdempiereTestHelper.get().init();
+		Services.get(ISysConfigBL.class).setValue(AvailableToPromiseIndex.SYSCONFIG_Enabled, true, 0);
+
+		availableToPromiseIndex = new AvailableToPromiseIndex();
+		availableToPromiseRepository = new AvailableToPromiseRepository(availableToPromiseIndex);
+	}
+
+	@Test
+	public void retrieveAvailableStockQtySum_latest_record_before_date()
+	{
+		createStockRecord(0, BEFORE_NOW, "10");
+		createStockRecord(0, NOW, "15");
+		createStockRecord(0, AFTER_NOW, "30");
+
+		assertThat(availableToPromiseRepository.retrieveAvailableStockQtySum(createQuery(NOW))).isEqualByComparingTo("15");
+		assertThat(availableToPromiseRepository.retrieveAvailableStockQtySum(createQuery(TimeUtil.addMinutes(BEFORE_NOW, -1)))).isEqualByComparingTo("0");
+		assertThat(availableToPromiseRepository.retrieveAvailableStockQtySum(createQuery(TimeUtil.addMinutes(AFTER_NOW, 1)))).isEqualByComparingTo("30");
+	}
+
+	/**
+	 * The bpartner-unspecific record is older than the one with bpartner, so its qty is already included there.
+	 */
+	@Test
+	public void retrieveAvailableStockQtySum_filters_redundant_quantities()
+	{
+		createStockRecord(0, BEFORE_NOW, "10");
+		createStockRecord(BPARTNER_ID, BEFORE_NOW, "12");
+		createStockRecord(BPARTNER_ID + 10, BEFORE_NOW, "100"); // belongs to an unrelated bPartner
+
+		final AvailableToPromiseQuery query = createQuery(NOW).toBuilder().bpartnerId(BPARTNER_ID).build();
+		assertThat(availableToPromiseRepository.retrieveAvailableStockQtySum(query)).isEqualByComparingTo("12");
+	}
+
+	@Test
+	public void invalidateAll()
+	{
+		createStockRecord(0, BEFORE_NOW, "10");
+		assertThat(availableToPromiseRepository.retrieveAvailableStockQtySum(createQuery(NOW))).isEqualByComparingTo("10");
+
+		createStockRecord(0, BEFORE_NOW, "20");
+		assertThat(availableToPromiseRepository.retrieveAvailableStockQtySum(createQuery(NOW)))
+				.as("new record is not yet known to the index")
+				.isEqualByComparingTo("10");
+
+		availableToPromiseIndex.invalidateAll();
+		assertThat(availableToPromiseRepository.retrieveAvailableStockQtySum(createQuery(NOW))).isEqualByComparingTo("20");
+	}
+
+	@Test
+	public void invalidateProduct_bypasses_index()
+	{
+		createStockRecord(0, BEFORE_NOW, "10");
+		final AvailableToPromiseMultiQuery multiQuery = AvailableToPromiseMultiQuery.of(createQuery(NOW));
+		assertThat(availableToPromiseIndex.retrieveRequestsOrNull(multiQuery)).hasSize(1);
+
+		availableToPromiseIndex.invalidateProduct(PRODUCT_ID);
+		assertThat(availableToPromiseIndex.retrieveRequestsOrNull(multiQuery)).isNull();
+
+		createStockRecord(0, NOW, "20");
+		assertThat(availableToPromiseIndex.retrieveRequestsOrNull(multiQuery))
+				.as("the product stays pending until the stock records were committed")
+				.isNull();
+
+		availableToPromiseIndex.stockRecordsCommitted(ImmutableSet.of(PRODUCT_ID));
+		assertThat(availableToPromiseIndex.retrieveRequestsOrNull(multiQuery)).hasSize(1);
+		assertThat(availableToPromiseRepository.retrieveAvailableStockQtySum(createQuery(NOW))).isEqualByComparingTo("20");
+	}
+
+	@Test
+	public void onStockRecordSaved_ends_pending_invalidation()
+	{
+		createStockRecord(0, BEFORE_NOW, "10");
+		final AvailableToPromiseMultiQuery multiQuery = AvailableToPromiseMultiQuery.of(createQuery(NOW));
+
+		availableToPromiseIndex.invalidateProduct(PRODUCT_ID);
+		final I_MD_Candidate stockRecord = createStockRecord(0, NOW, "20");
+		assertThat(availableToPromiseIndex.retrieveRequestsOrNull(multiQuery)).isNull();
+
+		// there is no transaction in this test, so the index is notified right away
+		availableToPromiseIndex.onStockRecordSaved(stockRecord);
+		assertThat(availableToPromiseRepository.retrieveAvailableStockQtySum(createQuery(NOW))).isEqualByComparingTo("20");
+		assertThat(availableToPromiseIndex.getStatistics()).containsEntry("bypasses", 1L);
+	}
+
+	/**
+	 * Verifies that for different storage attributes key patterns, the index returns the same as the SQL-path with its {@code LIKE} filters.
+	 * Each stored key has a distinct power-of-two quantity, so the quantity sum tells exactly which records were matched.
+	 */
+	@Test
+	public void retrieveAvailableStockQtySum_index_matches_sql_for_attributesKey_patterns()
+	{
+		createStockAndATPRecord(AttributesKey.ofAttributeValueIds(1, 2), "1");
+		createStockAndATPRecord(AttributesKey.ofAttributeValueIds(11, 2), "2"); // LIKE '%1%2%' matches, even if it doesn't "contain" attribute value 1
+		createStockAndATPRecord(AttributesKey.ofAttributeValueIds(2), "4");
+		createStockAndATPRecord(AttributesKey.ofAttributeValueIds(3), "8");
+		createStockAndATPRecord(AttributesKey.ofAttributeValueIds(1, 3), "16");
+		createStockAndATPRecord(AttributesKey.ofAttributeValueIds(21), "32");
+
+		final List<List<AttributesKey>> patterns = ImmutableList.of(
+				ImmutableList.of(AttributesKey.ofAttributeValueIds(1)),
+				ImmutableList.of(AttributesKey.ofAttributeValueIds(1, 2)),
+				ImmutableList.of(AttributesKey.ofAttributeValueIds(2)),
+				ImmutableList.of(AttributesKey.ofAttributeValueIds(1), AttributesKey.OTHER),
+				ImmutableList.of(AttributesKey.ofAttributeValueIds(3), AttributesKey.OTHER),
+				ImmutableList.of(AttributesKey.ofAttributeValueIds(1), AttributesKey.ofAttributeValueIds(3)),
+				ImmutableList.of(AttributesKey.OTHER),
+				ImmutableList.of(AttributesKey.ALL));
+
+		for (final List<AttributesKey> pattern : patterns)
+		{
+			final AvailableToPromiseQuery query = createQuery(NOW).toBuilder()
+					.clearStorageAttributesKeys()
+					.storageAttributesKeys(pattern)
+					.build();
+
+			Services.get(ISysConfigBL.class).setValue(AvailableToPromiseIndex.SYSCONFIG_Enabled, false, 0);
+			final BigDecimal qtyFromSql = availableToPromiseRepository.retrieveAvailableStockQtySum(query);
+
+			Services.get(ISysConfigBL.class).setValue(AvailableToPromiseIndex.SYSCONFIG_Enabled, true, 0);
+			final BigDecimal qtyFromIndex = availableToPromiseRepository.retrieveAvailableStockQtySum(query);
+
+			assertThat(qtyFromIndex).as("pattern=%s", pattern).isEqualByComparingTo(qtyFromSql);
+		}
+	}
+
+	@Test
+	public void isStorageAttributesKeyMatching()
+	{
+		final AvailableToPromiseQuery query = createQuery(NOW).toBuilder()
+				.clearStorageAttributesKeys()
+				.storageAttributesKey(AttributesKey.ofAttributeValueIds(1))
+				.storageAttributesKey(AttributesKey.OTHER)
+				.build();
+
+		assertThat(AvailableToPromiseIndex.isStorageAttributesKeyMatching(query, AttributesKey.ofAttributeValueIds(1, 2))).isTrue();
+		assertThat(AvailableToPromiseIndex.isStorageAttributesKeyMatching(query, AttributesKey.ofAttributeValueIds(3))).isTrue();
+
+		final AvailableToPromiseQuery queryWithoutOther = query.toBuilder()
+				.clearStorageAttributesKeys()
+				.storageAttributesKey(AttributesKey.ofAttributeValueIds(1))
+				.build();
+		assertThat(AvailableToPromiseIndex.isStorageAttributesKeyMatching(queryWithoutOther, AttributesKey.ofAttributeValueIds(3))).isFalse();
+		assertThat(AvailableToPromiseIndex.isStorageAttributesKeyMatching(queryWithoutOther, AttributesKey.ofAttributeValueIds(11)))
+				.as("like the SQL query's LIKE filter")
+				.isTrue();
+	}
+
+	private AvailableToPromiseQuery createQuery(final Date date)
+	{
+		return AvailableToPromiseQuery.builder()
+				.productId(PRODUCT_ID)
+				.warehouseId(WAREHOUSE_ID)
+				.storageAttributesKey(STORAGE_ATTRIBUTES_KEY)
+				.bpartnerId(AvailableToPromiseQuery.BPARTNER_ID_NONE)
+				.date(TimeUtil.asLocalDateTime(date))
+				.build();
+	}
+
+	private I_MD_Candidate createStockRecord(final int bPartnerId, final Date dateProjected, final String qty)
+	{
+		return createStockRecord(bPartnerId, STORAGE_ATTRIBUTES_KEY, dateProjected, qty);
+	}
+
+	private I_MD_Candidate createStockRecord(final int bPartnerId, final AttributesKey storageAttributesKey, final Date dateProjected, final String qty)
+	{
+		final I_MD_Candidate candidateRecord = newInstance(I_MD_Candidate.class);
+		candidateRecord.setM_Product_ID(PRODUCT_ID);
+		candidateRecord.setM_Warehouse_ID(WAREHOUSE_ID);
+		candidateRecord.setC_BPartner_Customer_ID(bPartnerId);
+		candidateRecord.setStorageAttributesKey(storageAttributesKey.getAsString());
+		candidateRecord.setDateProjected(new Timestamp(dateProjected.getTime()));
+		candidateRecord.setIsActive(true);
+		candidateRecord.setMD_Candidate_Type(X_MD_Candidate.MD_CANDIDATE_TYPE_STOCK);
+		candidateRecord.setQty(new BigDecimal(qty));
+		candidateRecord.setSeqNo(seqNoCounter++);
+		save(candidateRecord);
+		return candidateRecord;
+	}
+
+	/**
+	 * Creates the stock record for the index and the {@link I_MD_Candidate_ATP_QueryResult} which the SQL-path returns in unit test mode.
+	 */
+	private void createStockAndATPRecord(final AttributesKey storageAttributesKey, final String qty)
+	{
+		createStockRecord(0, storageAttributesKey, BEFORE_NOW, qty);
+
+		final I_MD_Candidate_ATP_QueryResult atpRecord = newInstance(I_MD_Candidate_ATP_QueryResult.class);
+		atpRecord.setM_Product_ID(PRODUCT_ID);
+		atpRecord.setM_Warehouse_ID(WAREHOUSE_ID);
+		atpRecord.setStorageAttributesKey(storageAttributesKey.getAsString());
+		atpRecord.setDateProjected(new Timestamp(BEFORE_NOW.getTime()));
+		atpRecord.setQty(new BigDecimal(qty));
+		save(atpRecord);
+	}
+}
@@ -1,12 +1,8 @@
 package de.metas.material.dispo.service.candidatechange;
 
-import static org.adempiere.model.InterfaceWrapperHelper.load;
-import static org.adempiere.model.InterfaceWrapperHelper.save;
-
 import java.math.BigDecimal;
 import java.util.List;
 
-import org.adempiere.util.Check;
 import org.springframework.stereotype.Service;
 
 import de.metas.material.dispo.commons.candidate.Candidate;
@@ -19,7 +15,6 @@ import de.metas.material.dispo.commons.repository.query.MaterialDescriptorQuery;
 import de.metas.material.dispo.commons.repository.query.MaterialDescriptorQuery.CustomerIdOperator;
 import de.metas.material.dispo.commons.repository.query.MaterialDescriptorQuery.DateOperator;
 import de.metas.material.dispo.commons.repository.query.MaterialDescriptorQuery.MaterialDescriptorQueryBuilder;
-import de.metas.material.dispo.model.I_MD_Candidate;
 import de.metas.material.event.commons.MaterialDescriptor;
 import lombok.NonNull;
 
@@ -124,31 +119,11 @@ public class StockCandidateService
 	}
 
 	/**
-	 * Updates the qty of the given candidate.
-	 * Differs from {@link #addOrUpdateOverwriteStoredSeqNo(Candidate)} in that
-	 * only the ID of the given {@code candidateToUpdate} is used, and if there is no existing persisted record, then an exception is thrown.
-	 * Also it just updates the underlying persisted record of the given {@code candidateToUpdate} and nothing else.
-	 *
-	 *
-	 * @param candidateToUpdate the candidate to update. Needs to have {@link Candidate#getId()} > 0.
-	 *
-	 * @return a copy of the given {@code candidateToUpdate} with the quantity being a delta, similar to the return value of {@link #addOrUpdate(Candidate, boolean)}.
+	 * See {@link CandidateRepositoryWriteService#updateQty(Candidate)}.
 	 */
 	public Candidate updateQty(@NonNull final Candidate candidateToUpdate)
 	{
-		Check.errorIf(candidateToUpdate.getId().isNull(),
-				"Parameter 'candidateToUpdate' needs to have a not-null Id; candidateToUpdate=%s",
-				candidateToUpdate);
-
-		final I_MD_Candidate candidateRecord = load(candidateToUpdate.getId().getRepoId(), I_MD_Candidate.class);
-		final BigDecimal oldQty = candidateRecord.getQty();
-
-		candidateRecord.setQty(candidateToUpdate.getQuantity());
-		save(candidateRecord);
-
-		final BigDecimal qtyDelta = candidateToUpdate.getQuantity().subtract(oldQty);
-
-		return candidateToUpdate.withQuantity(qtyDelta);
+		return candidateRepositoryWriteService.updateQty(candidateToUpdate);
 	}
 
 	/**
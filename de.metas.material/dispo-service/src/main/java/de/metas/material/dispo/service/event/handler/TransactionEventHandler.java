@@ -89,6 +89,11 @@ public class TransactionEventHandler implements MaterialEventHandler<AbstractTra
 		return ImmutableList.of(TransactionCreatedEvent.class, TransactionDeletedEvent.class);
 	}
 
+	/**
+	 * Note: we don't override {@link #handleEvents(List)}.
+	 * Each candidate is looked up by its own shipment schedule, receipt schedule, PP_Order or DD_OrderLine, so there is no shared query;
+	 * and {@link CandidateChangeService} applies each candidate's stock delta to the later stock candidates, so one event's result is the input for the next one.
+	 */
 	@Override
 	public void handleEvent(@NonNull final AbstractTransactionEvent event)
 	{
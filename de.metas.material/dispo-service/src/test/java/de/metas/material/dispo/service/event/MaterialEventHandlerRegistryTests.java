@@ -171,7 +171,7 @@ public class MaterialEventHandlerRegistryTests
 
 		setupEventLogUserServiceOnlyInvokesHandler();
 
-		materialEventListener = new MaterialEventHandlerRegistry(handlers, eventLogUserService);
+		materialEventListener = new MaterialEventHandlerRegistry(handlers, eventLogUserService, postMaterialEventService);
 	}
 
 	/**
@@ -1,10 +1,13 @@
 package de.metas.material.event;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.adempiere.util.ILoggable;
 import org.adempiere.util.Loggables;
 
+import com.google.common.collect.ImmutableList;
+
 /*
  * #%L
  * metasfresh-material-dispo-service
@@ -55,6 +58,28 @@ public interface MaterialEventHandler<T extends MaterialEvent>
 	 */
 	void handleEvent(T event);
 
+	/**
+	 * Invoked by {@link MaterialEventHandlerRegistry#onEvents(List, MaterialEventHandlerRegistry.BatchEventLog)} if the events were received in batch mode.
+	 * The given events all have the same class and are ordered as they were received.
+	 * <p>
+	 * Implementors can override this method to process the events with shared queries.
+	 * Don't catch exceptions of single events: if this method fails, {@link MaterialEventHandlerRegistry} rolls back its changes
+	 * and invokes {@link #handleEvent(MaterialEvent)} for one event after the other, so that the failure is isolated and logged for the respective event.
+	 * Events which are posted via {@link PostMaterialEventService#postEventAfterNextCommit(MaterialEvent)} in the meantime are dropped together with the rolled back changes.
+	 * <p>
+	 * Implementors which commit parts of their work on their own (so it can't be rolled back anymore) shall not throw, but return the events whose handling failed.
+	 * Only those are then invoked once more via {@link #handleEvent(MaterialEvent)}.
+	 * <p>
+	 * The default implementation invokes {@link #handleEvent(MaterialEvent)} for each event.
+	 *
+	 * @return the events that were not handled and shall be retried one by one; empty if all events were handled.
+	 */
+	default List<T> handleEvents(final List<T> events)
+	{
+		events.forEach(this::handleEvent);
+		return ImmutableList.of();
+	}
+
 	/**
 	 * Implementors may validate the event before handling it. This allows for "dump" events that can be successfully posted even if the posting code is buggy etc.<br>
 	 * Errors can be logged to the event log.
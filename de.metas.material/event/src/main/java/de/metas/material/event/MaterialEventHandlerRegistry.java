@@ -1,8 +1,21 @@
 package de.metas.material.event;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
+import org.adempiere.ad.trx.api.ITrx;
+import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.util.Check;
+import org.adempiere.util.Loggables;
+import org.adempiere.util.Services;
+import org.adempiere.util.lang.IAutoCloseable;
+import org.slf4j.Logger;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.ImmutableCollection;
@@ -10,8 +23,10 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableMultimap.Builder;
 
+import ch.qos.logback.classic.Level;
 import de.metas.event.log.EventLogUserService;
 import de.metas.event.log.EventLogUserService.InvokeHandlerandLogRequest;
+import de.metas.logging.LogManager;
 import lombok.NonNull;
 
 /*
@@ -40,14 +55,19 @@ import lombok.NonNull;
 @SuppressWarnings(value = { "unchecked", "rawtypes" })
 public class MaterialEventHandlerRegistry
 {
+	private static final Logger logger = LogManager.getLogger(MaterialEventHandlerRegistry.class);
+
 	private final ImmutableMultimap<Class, MaterialEventHandler> eventType2Handler;
 	private final EventLogUserService eventLogUserService;
+	private final PostMaterialEventService postMaterialEventService;
 
 	public MaterialEventHandlerRegistry(
 			@NonNull final Optional<Collection<MaterialEventHandler>> handlers,
-			@NonNull final EventLogUserService eventLogUserService)
+			@NonNull final EventLogUserService eventLogUserService,
+			@NonNull final PostMaterialEventService postMaterialEventService)
 	{
 		this.eventLogUserService = eventLogUserService;
+		this.postMaterialEventService = postMaterialEventService;
 
 		final Builder<Class, MaterialEventHandler> builder = createEventHandlerMapping(handlers);
 		eventType2Handler = builder.build();
@@ -82,4 +102,133 @@ public class MaterialEventHandlerRegistry
 			eventLogUserService.invokeHandlerAndLog(request);
 		});
 	}
+
+	/**
+	 * Callback for {@link MaterialEventHandlerRegistry#onEvents(List, BatchEventLog)}.
+	 * In batch mode, the events are handled together, so their event log entries can't be collected with the usual thread-local collector.
+	 */
+	public interface BatchEventLog
+	{
+		/** @return {@code true} if the given event was reposted and the given handler already processed it before. */
+		boolean wasProcessedByHandler(MaterialEvent event, Class<?> handlerClass);
+
+		void processedByHandler(MaterialEvent event, Class<?> handlerClass);
+
+		void failedInHandler(MaterialEvent event, Class<?> handlerClass, RuntimeException exception);
+	}
+
+	/**
+	 * Invokes the registered handlers' {@link MaterialEventHandler#handleEvents(List)} method.
+	 * Each handler only gets the events which it didn't yet process.
+	 *
+	 * @param events events of the same class, ordered as they were received
+	 * @param eventLog is told about each event's outcome per handler. It's up to the caller to store that only after the current transaction was committed.
+	 */
+	public final void onEvents(
+			@NonNull final List<MaterialEvent> events,
+			@NonNull final BatchEventLog eventLog)
+	{
+		if (events.isEmpty())
+		{
+			return;
+		}
+
+		final Class eventClass = events.get(0).getClass();
+		Check.errorIf(events.stream().anyMatch(event -> !eventClass.equals(event.getClass())),
+				"All given events need to have the same class; eventClass={}; events={}", eventClass, events);
+
+		final ImmutableCollection<MaterialEventHandler> handlersForEventClass = //
+				eventType2Handler.get(eventClass);
+
+		for (final MaterialEventHandler handler : handlersForEventClass)
+		{
+			final List<MaterialEvent> unprocessedEvents = events.stream()
+					.filter(event -> !eventLog.wasProcessedByHandler(event, handler.getClass()))
+					.collect(ImmutableList.toImmutableList());
+			if (unprocessedEvents.isEmpty())
+			{
+				continue;
+			}
+
+			try (final IAutoCloseable loggable = Loggables.temporarySetLoggable(Loggables.getLoggableOrLogger(logger, Level.INFO)))
+			{
+				invokeHandleEvents(handler, unprocessedEvents, eventLog);
+			}
+		}
+	}
+
+	/**
+	 * Invokes the given handler's {@link MaterialEventHandler#handleEvents(List)} in a nested transaction.
+	 * If that fails as a whole, its changes are rolled back and the events are handled one by one, each in its own nested transaction,
+	 * so that one failed event doesn't prevent the others from being handled.
+	 * If it returns some failed events instead, only those are handled once more, one by one.
+	 * <p>
+	 * The events which the handler posts via {@link PostMaterialEventService#postEventAfterNextCommit(MaterialEvent)}
+	 * are only registered with the current transaction if the respective nested transaction succeeded; otherwise they are dropped together with its changes.
+	 */
+	private void invokeHandleEvents(
+			@NonNull final MaterialEventHandler handler,
+			@NonNull final List<MaterialEvent> events,
+			@NonNull final BatchEventLog eventLog)
+	{
+		final Class<?> handlerClass = handler.getClass();
+
+		List<MaterialEvent> eventsToRetry;
+		try
+		{
+			final List<MaterialEvent> failedEvents = invokeInNestedTrx(() -> handler.handleEvents(events));
+
+			final Set<MaterialEvent> failedEventsSet = Collections.newSetFromMap(new IdentityHashMap<>());
+			failedEventsSet.addAll(failedEvents);
+
+			events.stream()
+					.filter(event -> !failedEventsSet.contains(event))
+					.forEach(event -> eventLog.processedByHandler(event, handlerClass));
+			if (failedEvents.isEmpty())
+			{
+				return;
+			}
+
+			logger.warn("Handler={} failed to handle {} of {} events; handling them one by one", handler, failedEvents.size(), events.size());
+			eventsToRetry = events.stream()
+					.filter(failedEventsSet::contains)
+					.collect(ImmutableList.toImmutableList());
+		}
+		catch (final RuntimeException e)
+		{
+			logger.warn("Handler={} failed to handle {} events at once; handling them one by one", handler, events.size(), e);
+			eventsToRetry = events;
+		}
+
+		for (final MaterialEvent event : eventsToRetry)
+		{
+			try
+			{
+				invokeInNestedTrx(() -> {
+					handler.handleEvent(event);
+					return ImmutableList.of();
+				});
+				eventLog.processedByHandler(event, handlerClass);
+			}
+			catch (final RuntimeException e)
+			{
+				logger.error("Handler={} failed handling event={}", handler, event, e);
+				eventLog.failedInHandler(event, handlerClass, e);
+			}
+		}
+	}
+
+	/**
+	 * @return the failed events which the given callable returned
+	 */
+	private List<MaterialEvent> invokeInNestedTrx(@NonNull final Supplier<List<MaterialEvent>> callable)
+	{
+		final List<MaterialEvent> failedEvents = new ArrayList<>();
+		final List<MaterialEvent> eventsToPost = Services.get(ITrxManager.class).call(
+				ITrx.TRXNAME_ThreadInherited,
+				() -> postMaterialEventService.collectEventsToPostAfterNextCommit(() -> failedEvents.addAll(callable.get())));
+
+		eventsToPost.forEach(postMaterialEventService::postEventAfterNextCommit);
+		return failedEvents;
+	}
 }
@@ -1,11 +1,16 @@
 package de.metas.material.event;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.adempiere.ad.trx.api.ITrxListenerManager.TrxEventTiming;
 import org.adempiere.ad.trx.api.ITrxManager;
 import org.adempiere.util.Services;
 import org.slf4j.Logger;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.ImmutableList;
+
 import de.metas.logging.LogManager;
 import de.metas.material.event.eventbus.MetasfreshEventBusService;
 import lombok.NonNull;
@@ -38,6 +43,9 @@ public class PostMaterialEventService
 
 	private static final Logger logger = LogManager.getLogger(PostMaterialEventService.class);
 
+	/** Not {@code null} while {@link #collectEventsToPostAfterNextCommit(Runnable)} is running. */
+	private static final ThreadLocal<List<MaterialEvent>> threadLocalCollectedEvents = new ThreadLocal<>();
+
 	private final MetasfreshEventBusService materialEventService;
 
 	public PostMaterialEventService(@NonNull final MetasfreshEventBusService materialEventService)
@@ -53,6 +61,13 @@ public class PostMaterialEventService
 	 */
 	public void postEventAfterNextCommit(@NonNull final MaterialEvent event)
 	{
+		final List<MaterialEvent> collectedEvents = threadLocalCollectedEvents.get();
+		if (collectedEvents != null)
+		{
+			collectedEvents.add(event);
+			return;
+		}
+
 		final ITrxManager trxManager = Services.get(ITrxManager.class);
 
 		trxManager.getCurrentTrxListenerManagerOrAutoCommit()
@@ -60,6 +75,36 @@ public class PostMaterialEventService
 				.registerHandlingMethod(innerTrx -> postEventNow(event));
 	}
 
+	/**
+	 * Invokes the given {@code runnable}, but doesn't register the events it passes to {@link #postEventAfterNextCommit(MaterialEvent)} with the current transaction.
+	 * Instead they are returned, so that the caller can e.g. run the runnable within a savepoint and post the events only if its changes are not rolled back.
+	 *
+	 * @return the events that the runnable wanted to post, in the order they were given
+	 */
+	public List<MaterialEvent> collectEventsToPostAfterNextCommit(@NonNull final Runnable runnable)
+	{
+		final List<MaterialEvent> previouslyCollectedEvents = threadLocalCollectedEvents.get();
+
+		final List<MaterialEvent> collectedEvents = new ArrayList<>();
+		threadLocalCollectedEvents.set(collectedEvents);
+		try
+		{
+			runnable.run();
+		}
+		finally
+		{
+			if (previouslyCollectedEvents == null)
+			{
+				threadLocalCollectedEvents.remove();
+			}
+			else
+			{
+				threadLocalCollectedEvents.set(previouslyCollectedEvents);
+			}
+		}
+		return ImmutableList.copyOf(collectedEvents);
+	}
+
 	/**
 	 * Fires the given event using our (distributed) event framework. If {@link #subscribeToEventBus()} was not yet invoked, an exception is thrown.
 	 *
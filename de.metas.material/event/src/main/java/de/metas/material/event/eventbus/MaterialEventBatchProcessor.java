@@ -0,0 +1,341 @@
+package de.metas.material.event.eventbus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.service.ISysConfigBL;
+import org.adempiere.util.Check;
+import org.adempiere.util.Services;
+import org.adempiere.util.concurrent.CustomizableThreadFactory;
+import org.adempiere.util.lang.IAutoCloseable;
+import org.compiere.util.Env;
+import org.compiere.util.Util.ArrayKey;
+import org.slf4j.Logger;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+
+import de.metas.event.Event;
+import de.metas.event.log.EventLogUserService;
+import de.metas.event.log.impl.EventLogEntryCollector;
+import de.metas.logging.LogManager;
+import de.metas.material.event.MaterialEvent;
+import de.metas.material.event.MaterialEventHandlerRegistry;
+import de.metas.material.event.MaterialEventHandlerRegistry.BatchEventLog;
+import de.metas.material.event.commons.EventDescriptor;
+import de.metas.material.event.commons.MaterialDescriptor;
+import de.metas.material.event.receiptschedule.AbstractReceiptScheduleEvent;
+import de.metas.material.event.shipmentschedule.AbstractShipmentScheduleEvent;
+import de.metas.material.event.transactions.AbstractTransactionEvent;
+import lombok.NonNull;
+import lombok.Value;
+
+/*
+ * #%L
+ * metasfresh-material-event
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Queues received material events and hands them to {@link MaterialEventHandlerRegistry#onEvents(List, BatchEventLog)} in groups.
+ * <p>
+ * A group consists of queued events with the same class, client and org and - if the events are about one material - the same product and warehouse.
+ * The events of one material keep their order, while bursts (e.g. the {@code TransactionCreatedEvent}s of a mass shipment run) are handled in one transaction
+ * and can be processed by the handlers with shared queries.
+ * <p>
+ * The queue itself is not persistent. But material events are stored in {@code AD_EventLog} before they are received,
+ * and the {@code processed} entries per event and handler are only stored after the respective group's transaction was committed.
+ * So if the queued events are lost (e.g. because the server is stopped), they are still recognizable as not yet processed
+ * and can be reposted; on reposting, each handler skips the events it already processed.
+ */
+final class MaterialEventBatchProcessor
+{
+	private static final Logger logger = LogManager.getLogger(MaterialEventBatchProcessor.class);
+
+	private static final String SYSCONFIG_MaxBatchSize = "de.metas.material.event.eventbus.MaterialEventBatchProcessor.MaxBatchSize";
+	private static final int DEFAULT_MaxBatchSize = 100;
+
+	private final MaterialEventHandlerRegistry materialEventHandlerRegistry;
+	private final EventLogUserService eventLogUserService;
+
+	private final BlockingQueue<QueuedEvent> queue = new LinkedBlockingQueue<>();
+	private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(CustomizableThreadFactory.builder()
+			.setThreadNamePrefix(MaterialEventBatchProcessor.class.getName())
+			.setDaemon(true)
+			.build());
+
+	public MaterialEventBatchProcessor(
+			@NonNull final MaterialEventHandlerRegistry materialEventHandlerRegistry,
+			@NonNull final EventLogUserService eventLogUserService)
+	{
+		this.materialEventHandlerRegistry = materialEventHandlerRegistry;
+		this.eventLogUserService = eventLogUserService;
+	}
+
+	public void enqueue(@NonNull final Event event, @NonNull final MaterialEvent materialEvent)
+	{
+		queue.add(new QueuedEvent(event, materialEvent));
+		scheduleDrainIfNeeded();
+	}
+
+	private void scheduleDrainIfNeeded()
+	{
+		if (drainScheduled.compareAndSet(false, true))
+		{
+			executor.submit(this::drain);
+		}
+	}
+
+	private void drain()
+	{
+		try
+		{
+			final int maxBatchSize = Services.get(ISysConfigBL.class).getIntValue(SYSCONFIG_MaxBatchSize, DEFAULT_MaxBatchSize);
+
+			final List<QueuedEvent> batch = new ArrayList<>();
+			while (queue.drainTo(batch, maxBatchSize) > 0)
+			{
+				groupEvents(batch).forEach(this::processGroup);
+				batch.clear();
+			}
+		}
+		finally
+		{
+			drainScheduled.set(false);
+		}
+
+		// an event might have been enqueued after our last drainTo, but before we reset the flag
+		if (!queue.isEmpty())
+		{
+			scheduleDrainIfNeeded();
+		}
+	}
+
+	/**
+	 * Groups the given events such that for each material (product and warehouse), the events' order is preserved:
+	 * <li>an event is added to its material's latest group if that group's events have the same class and event descriptor; otherwise it starts a new group
+	 * <li>an event without a material (e.g. about a production order with several products) is only added to the directly preceding group.
+	 * Events that follow it don't go to groups created before it, because we don't know which materials it affected.
+	 */
+	@VisibleForTesting
+	static List<List<QueuedEvent>> groupEvents(@NonNull final List<QueuedEvent> batch)
+	{
+		final List<List<QueuedEvent>> groups = new ArrayList<>();
+		final Map<ArrayKey, List<QueuedEvent>> materialKey2latestGroup = new HashMap<>();
+
+		List<QueuedEvent> previousGroup = null;
+		for (final QueuedEvent queuedEvent : batch)
+		{
+			final ArrayKey materialKey = queuedEvent.getMaterialKeyOrNull();
+
+			final List<QueuedEvent> candidateGroup;
+			if (materialKey == null)
+			{
+				materialKey2latestGroup.clear();
+				candidateGroup = previousGroup;
+			}
+			else
+			{
+				candidateGroup = materialKey2latestGroup.get(materialKey);
+			}
+
+			final List<QueuedEvent> group;
+			if (candidateGroup != null && candidateGroup.get(0).isGroupableWith(queuedEvent))
+			{
+				group = candidateGroup;
+			}
+			else
+			{
+				group = new ArrayList<>();
+				groups.add(group);
+			}
+			group.add(queuedEvent);
+
+			if (materialKey != null)
+			{
+				materialKey2latestGroup.put(materialKey, group);
+			}
+			previousGroup = group;
+		}
+		return groups;
+	}
+
+	private void processGroup(@NonNull final List<QueuedEvent> group)
+	{
+		final QueuedEvent firstEvent = group.get(0);
+		final EventDescriptor eventDescriptor = firstEvent.getMaterialEvent().getEventDescriptor();
+
+		final List<MaterialEvent> materialEvents = group.stream()
+				.map(QueuedEvent::getMaterialEvent)
+				.collect(ImmutableList.toImmutableList());
+		logger.info("Processing {} material events of type {}", materialEvents.size(), firstEvent.getMaterialEvent().getClass().getSimpleName());
+
+		// make sure that every record we create has the correct AD_Client_ID and AD_Org_ID
+		final Properties temporaryCtx = Env.copyCtx(Env.getCtx());
+		Env.setContext(temporaryCtx, Env.CTXNAME_AD_Client_ID, eventDescriptor.getClientId());
+		Env.setContext(temporaryCtx, Env.CTXNAME_AD_Org_ID, eventDescriptor.getOrgId());
+
+		try (final IAutoCloseable c = Env.switchContext(temporaryCtx))
+		{
+			final QueuedEventsLog eventLog = new QueuedEventsLog(group);
+			try
+			{
+				Services.get(ITrxManager.class).run(() -> materialEventHandlerRegistry.onEvents(materialEvents, eventLog));
+			}
+			catch (final RuntimeException e)
+			{
+				// don't let one failed group prevent the processing of the remaining queued events
+				logger.error("Failed processing material events={}", materialEvents, e);
+				eventLog.failedToCommit(e);
+			}
+			eventLog.store();
+		}
+	}
+
+	/**
+	 * Collects the event log entries of one group's events, so that they can be stored per event after the group's transaction is done.
+	 */
+	private final class QueuedEventsLog implements BatchEventLog
+	{
+		private final List<QueuedEvent> group;
+		private final Map<MaterialEvent, QueuedEvent> materialEvent2queuedEvent = new IdentityHashMap<>();
+		private final ListMultimap<QueuedEvent, Runnable> queuedEvent2logEntryCreators = ArrayListMultimap.create();
+
+		private QueuedEventsLog(@NonNull final List<QueuedEvent> group)
+		{
+			this.group = group;
+			group.forEach(queuedEvent -> materialEvent2queuedEvent.put(queuedEvent.getMaterialEvent(), queuedEvent));
+		}
+
+		@Override
+		public boolean wasProcessedByHandler(@NonNull final MaterialEvent event, @NonNull final Class<?> handlerClass)
+		{
+			return eventLogUserService.wasEventProcessedByHandler(getQueuedEvent(event).getEvent(), handlerClass);
+		}
+
+		@Override
+		public void processedByHandler(@NonNull final MaterialEvent event, @NonNull final Class<?> handlerClass)
+		{
+			queuedEvent2logEntryCreators.put(
+					getQueuedEvent(event),
+					() -> eventLogUserService.newLogEntry(handlerClass).processed(true).createAndStore());
+		}
+
+		@Override
+		public void failedInHandler(@NonNull final MaterialEvent event, @NonNull final Class<?> handlerClass, @NonNull final RuntimeException exception)
+		{
+			queuedEvent2logEntryCreators.put(
+					getQueuedEvent(event),
+					() -> eventLogUserService.newErrorLogEntry(handlerClass, exception).createAndStore());
+		}
+
+		private QueuedEvent getQueuedEvent(@NonNull final MaterialEvent event)
+		{
+			final QueuedEvent queuedEvent = materialEvent2queuedEvent.get(event);
+			Check.assumeNotNull(queuedEvent, "The given event belongs to the current group; event={}; group={}", event, group);
+			return queuedEvent;
+		}
+
+		/**
+		 * Replaces the collected entries, because the group's transaction was rolled back and none of its events counts as processed.
+		 */
+		private void failedToCommit(@NonNull final RuntimeException exception)
+		{
+			queuedEvent2logEntryCreators.clear();
+			group.forEach(queuedEvent -> queuedEvent2logEntryCreators.put(
+					queuedEvent,
+					() -> eventLogUserService.newErrorLogEntry(MaterialEventBatchProcessor.class, exception).createAndStore()));
+		}
+
+		private void store()
+		{
+			for (final QueuedEvent queuedEvent : group)
+			{
+				final List<Runnable> logEntryCreators = queuedEvent2logEntryCreators.get(queuedEvent);
+				if (logEntryCreators.isEmpty())
+				{
+					continue;
+				}
+				try (final EventLogEntryCollector eventLogCollector = EventLogEntryCollector.createThreadLocalForEvent(queuedEvent.getEvent()))
+				{
+					logEntryCreators.forEach(Runnable::run);
+				}
+			}
+		}
+	}
+
+	@Value
+	@VisibleForTesting
+	static class QueuedEvent
+	{
+		Event event;
+		MaterialEvent materialEvent;
+
+		boolean isGroupableWith(@NonNull final QueuedEvent other)
+		{
+			return materialEvent.getClass().equals(other.getMaterialEvent().getClass())
+					&& Objects.equals(materialEvent.getEventDescriptor(), other.getMaterialEvent().getEventDescriptor())
+					&& Objects.equals(getMaterialKeyOrNull(), other.getMaterialKeyOrNull());
+		}
+
+		/** @return product and warehouse if the event is about exactly one material */
+		ArrayKey getMaterialKeyOrNull()
+		{
+			final MaterialDescriptor materialDescriptor = extractMaterialDescriptorOrNull(materialEvent);
+			if (materialDescriptor == null)
+			{
+				return null;
+			}
+			return ArrayKey.of(materialDescriptor.getProductId(), materialDescriptor.getWarehouseId());
+		}
+
+		private static MaterialDescriptor extractMaterialDescriptorOrNull(@NonNull final MaterialEvent materialEvent)
+		{
+			if (materialEvent instanceof AbstractTransactionEvent)
+			{
+				return ((AbstractTransactionEvent)materialEvent).getMaterialDescriptor();
+			}
+			else if (materialEvent instanceof AbstractShipmentScheduleEvent)
+			{
+				return ((AbstractShipmentScheduleEvent)materialEvent).getMaterialDescriptor();
+			}
+			else if (materialEvent instanceof AbstractReceiptScheduleEvent)
+			{
+				return ((AbstractReceiptScheduleEvent)materialEvent).getMaterialDescriptor();
+			}
+			// note: SupplyRequiredEvents are deliberately not split per material, because their handler partitions them by product itself
+			return null;
+		}
+	}
+}
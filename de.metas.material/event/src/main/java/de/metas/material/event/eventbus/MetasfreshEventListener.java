@@ -3,6 +3,7 @@ package de.metas.material.event.eventbus;
 import java.util.Properties;
 
 import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.service.ISysConfigBL;
 import org.adempiere.util.Services;
 import org.adempiere.util.lang.IAutoCloseable;
 import org.compiere.Adempiere;
@@ -14,6 +15,7 @@ import org.springframework.stereotype.Service;
 import de.metas.event.Event;
 import de.metas.event.IEventBus;
 import de.metas.event.IEventListener;
+import de.metas.event.log.EventLogUserService;
 import de.metas.logging.LogManager;
 import de.metas.material.event.MaterialEvent;
 import de.metas.material.event.MaterialEventHandlerRegistry;
@@ -47,12 +49,19 @@ public class MetasfreshEventListener
 {
 	private static final Logger logger = LogManager.getLogger(MetasfreshEventListener.class);
 
+	/**
+	 * If enabled, received events are queued and handed to the handlers in groups; see {@link MaterialEventBatchProcessor}.
+	 */
+	private static final String SYSCONFIG_BatchMode = "de.metas.material.event.eventbus.MetasfreshEventListener.BatchMode";
+
 	private final MaterialEventHandlerRegistry materialEventHandlerRegistry;
 
 	private final MetasfreshEventBusService metasfreshEventBusService;
 
 	private final MaterialEventConverter materialEventConverter;
 
+	private final MaterialEventBatchProcessor materialEventBatchProcessor;
+
 	private final IEventListener internalListener = new IEventListener()
 	{
 		@Override
@@ -61,6 +70,12 @@ public class MetasfreshEventListener
 			final MaterialEvent lightWeightEvent = materialEventConverter.toMaterialEvent(event);
 			logger.info("Received MaterialEvent={}", lightWeightEvent);
 
+			if (Services.get(ISysConfigBL.class).getBooleanValue(SYSCONFIG_BatchMode, false))
+			{
+				materialEventBatchProcessor.enqueue(event, lightWeightEvent);
+				return;
+			}
+
 			//
 			// make sure that every record we create has the correct AD_Client_ID and AD_Org_ID
 			final Properties temporaryCtx = Env.copyCtx(Env.getCtx());
@@ -91,11 +106,13 @@ public class MetasfreshEventListener
 	public MetasfreshEventListener(
 			@NonNull final MaterialEventHandlerRegistry materialEventHandlerRegistry,
 			@NonNull final MetasfreshEventBusService metasfreshEventBusService,
-			@NonNull final MaterialEventConverter materialEventConverter)
+			@NonNull final MaterialEventConverter materialEventConverter,
+			@NonNull final EventLogUserService eventLogUserService)
 	{
 		this.materialEventConverter = materialEventConverter;
 		this.materialEventHandlerRegistry = materialEventHandlerRegistry;
 		this.metasfreshEventBusService = metasfreshEventBusService;
+		this.materialEventBatchProcessor = new MaterialEventBatchProcessor(materialEventHandlerRegistry, eventLogUserService);
 
 		this.metasfreshEventBusService.subscribe(internalListener);
 	}
@@ -0,0 +1,236 @@
+package de.metas.material.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.exceptions.AdempiereException;
+import org.adempiere.test.AdempiereTestHelper;
+import org.adempiere.util.Services;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import de.metas.event.log.EventLogUserService;
+import de.metas.material.event.MaterialEventHandlerRegistry.BatchEventLog;
+import de.metas.material.event.commons.EventDescriptor;
+import de.metas.material.event.eventbus.MaterialEventConverter;
+import de.metas.material.event.eventbus.MetasfreshEventBusService;
+import de.metas.material.event.picking.PickingRequestedEvent;
+
+/*
+ * #%L
+ * metasfresh-material-event
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+public class MaterialEventHandlerRegistryTest
+{
+	private static final EventDescriptor EVENT_DESCRIPTOR = EventDescriptor.ofClientAndOrg(1, 2);
+
+	private PostMaterialEventService postMaterialEventService;
+
+	private PickingRequestedEvent event1;
+	private PickingRequestedEvent failingEvent;
+	private PickingRequestedEvent event3;
+
+	private List<PickingRequestedEvent> handledEvents;
+	private MaterialEventHandlerRegistry registry;
+
+	/** if {@code true}, the handler's {@code handleEvents} doesn't throw, but returns the failed events, like a handler that commits its work in partitions */
+	private boolean returnFailedEvents;
+
+	@Before
+	public void init()
+	{
+		AdempiereTestHelper.get().init();
+
+		final EventLogUserService eventLogUserService = new EventLogUserService();
+		postMaterialEventService = new PostMaterialEventService(
+				MetasfreshEventBusService.createLocalServiceThatIsReadyToUse(new MaterialEventConverter(eventLogUserService)));
+
+		event1 = pickingRequestedEvent(10);
+		failingEvent = pickingRequestedEvent(20);
+		event3 = pickingRequestedEvent(30);
+
+		handledEvents = new ArrayList<>();
+		final MaterialEventHandler<PickingRequestedEvent> handler = new MaterialEventHandler<PickingRequestedEvent>()
+		{
+			@Override
+			public Collection<Class<? extends PickingRequestedEvent>> getHandeledEventType()
+			{
+				return ImmutableList.of(PickingRequestedEvent.class);
+			}
+
+			@Override
+			public void handleEvent(final PickingRequestedEvent event)
+			{
+				// post the follow-up event first, to verify that it's dropped if the event fails
+				postMaterialEventService.postEventAfterNextCommit(followUpEvent(event));
+				if (event == failingEvent)
+				{
+					throw new AdempiereException("failing on purpose");
+				}
+				handledEvents.add(event);
+			}
+
+			@Override
+			public List<PickingRequestedEvent> handleEvents(final List<PickingRequestedEvent> events)
+			{
+				if (!returnFailedEvents)
+				{
+					return MaterialEventHandler.super.handleEvents(events);
+				}
+
+				final List<PickingRequestedEvent> failedEvents = new ArrayList<>();
+				for (final PickingRequestedEvent event : events)
+				{
+					try
+					{
+						handleEvent(event);
+					}
+					catch (final AdempiereException e)
+					{
+						failedEvents.add(event);
+					}
+				}
+				return failedEvents;
+			}
+		};
+
+		@SuppressWarnings("rawtypes")
+		final Optional<Collection<MaterialEventHandler>> handlers = Optional.of(ImmutableList.of(handler));
+		registry = new MaterialEventHandlerRegistry(handlers, eventLogUserService, postMaterialEventService);
+	}
+
+	@Test
+	public void onEvents()
+	{
+		final TestBatchEventLog eventLog = new TestBatchEventLog(ImmutableSet.of());
+
+		final List<MaterialEvent> postedEvents = onEvents(eventLog, event1, event3);
+
+		assertThat(handledEvents).containsExactly(event1, event3);
+		assertThat(eventLog.processedEvents).containsExactly(event1, event3);
+		assertThat(eventLog.failedEvents).isEmpty();
+		assertThat(postedEvents).containsExactly(followUpEvent(event1), followUpEvent(event3));
+	}
+
+	/**
+	 * Verifies that a failed event doesn't prevent the others from being handled, and that the follow-up event which it posted before failing is dropped.
+	 */
+	@Test
+	public void onEvents_failed_event_does_not_prevent_the_others()
+	{
+		final TestBatchEventLog eventLog = new TestBatchEventLog(ImmutableSet.of());
+
+		final List<MaterialEvent> postedEvents = onEvents(eventLog, event1, failingEvent, event3);
+
+		// the failing batch invocation was rolled back; when handling the events one by one, event1 and event3 succeeded
+		assertThat(handledEvents).containsExactly(event1, event1, event3);
+		assertThat(eventLog.processedEvents).containsExactly(event1, event3);
+		assertThat(eventLog.failedEvents).containsExactly(failingEvent);
+		assertThat(postedEvents).containsExactly(followUpEvent(event1), followUpEvent(event3));
+	}
+
+	/**
+	 * Verifies that if the handler returns its failed events instead of throwing, only those are handled once more.
+	 */
+	@Test
+	public void onEvents_only_retries_the_returned_failed_events()
+	{
+		returnFailedEvents = true;
+		final TestBatchEventLog eventLog = new TestBatchEventLog(ImmutableSet.of());
+
+		onEvents(eventLog, event1, failingEvent, event3);
+
+		assertThat(handledEvents).containsExactly(event1, event3);
+		assertThat(eventLog.processedEvents).containsExactly(event1, event3);
+		assertThat(eventLog.failedEvents).containsExactly(failingEvent);
+	}
+
+	@Test
+	public void onEvents_skips_already_processed_events()
+	{
+		final TestBatchEventLog eventLog = new TestBatchEventLog(ImmutableSet.of(event1));
+
+		final List<MaterialEvent> postedEvents = onEvents(eventLog, event1, event3);
+
+		assertThat(handledEvents).containsExactly(event3);
+		assertThat(eventLog.processedEvents).containsExactly(event3);
+		assertThat(postedEvents).containsExactly(followUpEvent(event3));
+	}
+
+	/**
+	 * @return the events that were posted after the transaction in which the registry handled the given events
+	 */
+	private List<MaterialEvent> onEvents(final BatchEventLog eventLog, final MaterialEvent... events)
+	{
+		final List<MaterialEvent> eventsList = ImmutableList.copyOf(events);
+		return postMaterialEventService.collectEventsToPostAfterNextCommit(
+				() -> Services.get(ITrxManager.class).run(() -> registry.onEvents(eventsList, eventLog)));
+	}
+
+	private static PickingRequestedEvent pickingRequestedEvent(final int shipmentScheduleId)
+	{
+		return new PickingRequestedEvent(EVENT_DESCRIPTOR, shipmentScheduleId, 0, ImmutableList.of());
+	}
+
+	private static PickingRequestedEvent followUpEvent(final PickingRequestedEvent event)
+	{
+		return new PickingRequestedEvent(EVENT_DESCRIPTOR, event.getShipmentScheduleId(), 1, ImmutableList.of());
+	}
+
+	private static class TestBatchEventLog implements BatchEventLog
+	{
+		private final Set<? extends MaterialEvent> alreadyProcessedEvents;
+		private final List<MaterialEvent> processedEvents = new ArrayList<>();
+		private final List<MaterialEvent> failedEvents = new ArrayList<>();
+
+		private TestBatchEventLog(final Set<? extends MaterialEvent> alreadyProcessedEvents)
+		{
+			this.alreadyProcessedEvents = alreadyProcessedEvents;
+		}
+
+		@Override
+		public boolean wasProcessedByHandler(final MaterialEvent event, final Class<?> handlerClass)
+		{
+			return alreadyProcessedEvents.contains(event);
+		}
+
+		@Override
+		public void processedByHandler(final MaterialEvent event, final Class<?> handlerClass)
+		{
+			processedEvents.add(event);
+		}
+
+		@Override
+		public void failedInHandler(final MaterialEvent event, final Class<?> handlerClass, final RuntimeException exception)
+		{
+			failedEvents.add(event);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package de.metas.material.event.eventbus;
+
+import static de.metas.material.event.EventTestHelper.createMaterialDescriptorWithProductId;
+import static java.math.BigDecimal.ONE;
+import static java.math.BigDecimal.ZERO;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import de.metas.event.Event;
+import de.metas.material.event.MaterialEvent;
+import de.metas.material.event.commons.EventDescriptor;
+import de.metas.material.event.eventbus.MaterialEventBatchProcessor.QueuedEvent;
+import de.metas.material.event.picking.PickingRequestedEvent;
+import de.metas.material.event.shipmentschedule.ShipmentScheduleDeletedEvent;
+import de.metas.material.event.shipmentschedule.ShipmentScheduleUpdatedEvent;
+
+/*
+ * #%L
+ * metasfresh-material-event
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+public class MaterialEventBatchProcessorTest
+{
+	private static final EventDescriptor EVENT_DESCRIPTOR = EventDescriptor.ofClientAndOrg(1, 2);
+
+	private static final int PRODUCT_ID_1 = 10;
+	private static final int PRODUCT_ID_2 = 20;
+
+	@Test
+	public void groupEvents_keeps_the_order_per_material()
+	{
+		final QueuedEvent updated1Product1 = queued(updatedEvent(PRODUCT_ID_1));
+		final QueuedEvent updated1Product2 = queued(updatedEvent(PRODUCT_ID_2));
+		final QueuedEvent updated2Product1 = queued(updatedEvent(PRODUCT_ID_1));
+		final QueuedEvent deletedProduct1 = queued(deletedEvent(PRODUCT_ID_1));
+		final QueuedEvent updated3Product1 = queued(updatedEvent(PRODUCT_ID_1));
+		final QueuedEvent updated2Product2 = queued(updatedEvent(PRODUCT_ID_2));
+		final QueuedEvent pickingRequested = queued(new PickingRequestedEvent(EVENT_DESCRIPTOR, 30, 0, ImmutableList.of()));
+		final QueuedEvent updated3Product2 = queued(updatedEvent(PRODUCT_ID_2));
+
+		final List<List<QueuedEvent>> groups = MaterialEventBatchProcessor.groupEvents(ImmutableList.of(
+				updated1Product1,
+				updated1Product2,
+				updated2Product1,
+				deletedProduct1,
+				updated3Product1,
+				updated2Product2,
+				pickingRequested,
+				updated3Product2));
+
+		assertThat(groups).containsExactly(
+				ImmutableList.of(updated1Product1, updated2Product1),
+				ImmutableList.of(updated1Product2, updated2Product2),
+				ImmutableList.of(deletedProduct1),
+				ImmutableList.of(updated3Product1), // may not be merged into the first group, because the deleted event came in between
+				ImmutableList.of(pickingRequested),
+				ImmutableList.of(updated3Product2)); // may not be merged into an earlier group, because we don't know the picking event's materials
+	}
+
+	private static QueuedEvent queued(final MaterialEvent materialEvent)
+	{
+		return new QueuedEvent(Event.builder().build(), materialEvent);
+	}
+
+	private static ShipmentScheduleUpdatedEvent updatedEvent(final int productId)
+	{
+		return ShipmentScheduleUpdatedEvent.builder()
+				.eventDescriptor(EVENT_DESCRIPTOR)
+				.materialDescriptor(createMaterialDescriptorWithProductId(productId))
+				.orderedQuantityDelta(ONE)
+				.reservedQuantityDelta(ZERO)
+				.shipmentScheduleId(productId + 1)
+				.build();
+	}
+
+	private static ShipmentScheduleDeletedEvent deletedEvent(final int productId)
+	{
+		return ShipmentScheduleDeletedEvent.builder()
+				.eventDescriptor(EVENT_DESCRIPTOR)
+				.materialDescriptor(createMaterialDescriptorWithProductId(productId))
+				.reservedQuantity(ZERO)
+				.shipmentScheduleId(productId + 1)
+				.build();
+	}
+}
@@ -0,0 +1,274 @@
+package de.metas.material.planning.event;
+
+import static org.adempiere.model.InterfaceWrapperHelper.loadOutOfTrx;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.adempiere.ad.trx.api.ITrx;
+import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.exceptions.AdempiereException;
+import org.adempiere.service.ISysConfigBL;
+import org.adempiere.util.Loggables;
+import org.adempiere.util.Services;
+import org.adempiere.util.concurrent.CustomizableThreadFactory;
+import org.adempiere.util.lang.IAutoCloseable;
+import org.compiere.Adempiere;
+import org.compiere.model.I_M_Product;
+import org.compiere.util.Env;
+import org.slf4j.Logger;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import de.metas.logging.LogManager;
+import de.metas.material.event.commons.SupplyRequiredDescriptor;
+import lombok.NonNull;
+import lombok.Value;
+
+/*
+ * #%L
+ * metasfresh-material-planning
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Plans a batch of {@link SupplyRequiredDescriptor}s, partitioned by product.
+ * <p>
+ * The descriptors of one product are planned in their original order, within one transaction.
+ * Partitions of different products are independent of each other and run on a worker pool.
+ * The partitions are processed level by level according to the products' BOM low level code ({@code M_Product.LowLevel}),
+ * so that components are planned after the products they are used in.
+ * <p>
+ * The degree of parallelism is configured via {@value #SYSCONFIG_Parallelism}; with the default of one, all partitions are planned in the caller's thread and transaction.
+ */
+@Service
+public class MaterialPlanningExecutor
+{
+	private static final Logger logger = LogManager.getLogger(MaterialPlanningExecutor.class);
+
+	public static final String SYSCONFIG_Parallelism = "de.metas.material.planning.event.MaterialPlanningExecutor.Parallelism";
+	private static final int DEFAULT_Parallelism = 1;
+
+	/** shared by all invocations; its size is adjusted to the configured parallelism and idle threads time out */
+	private final ThreadPoolExecutor executor = createExecutor();
+
+	@Value
+	public static class PartitionResult
+	{
+		int productId;
+		int lowLevel;
+		List<SupplyRequiredDescriptor> descriptors;
+		long durationMillis;
+		Throwable error;
+
+		public boolean isFailed()
+		{
+			return error != null;
+		}
+	}
+
+	/**
+	 * Plans the given descriptors, partitioned by product.
+	 * If parallelism is configured, the partitions of products with the same low level are planned in parallel, each in its own transaction.
+	 * Otherwise, they are planned one after the other in the caller's transaction, each with its own savepoint.
+	 * <p>
+	 * A failed partition is rolled back and reported in the result, but doesn't prevent the other partitions from being planned.
+	 * Note that in parallel mode, the caller can't roll back the successful partitions, so it shall only retry the failed ones.
+	 *
+	 * @param planner invoked for each descriptor; in parallel mode from a worker thread which has a copy of the caller's context and its own transaction.
+	 * @return one result per partition
+	 */
+	public List<PartitionResult> plan(
+			@NonNull final List<SupplyRequiredDescriptor> descriptors,
+			@NonNull final Consumer<SupplyRequiredDescriptor> planner)
+	{
+		final int parallelism = Services.get(ISysConfigBL.class).getIntValue(SYSCONFIG_Parallelism, DEFAULT_Parallelism);
+
+		final Map<Integer, List<SupplyRequiredDescriptor>> productId2descriptors = new LinkedHashMap<>();
+		for (final SupplyRequiredDescriptor descriptor : descriptors)
+		{
+			productId2descriptors
+					.computeIfAbsent(descriptor.getMaterialDescriptor().getProductId(), productId -> new ArrayList<>())
+					.add(descriptor);
+		}
+
+		final TreeMap<Integer, List<Integer>> lowLevel2productIds = new TreeMap<>();
+		for (final int productId : productId2descriptors.keySet())
+		{
+			final int lowLevel = loadOutOfTrx(productId, I_M_Product.class).getLowLevel();
+			lowLevel2productIds.computeIfAbsent(lowLevel, level -> new ArrayList<>()).add(productId);
+		}
+
+		final List<PartitionResult> results = new ArrayList<>();
+		if (parallelism <= 1 || productId2descriptors.size() <= 1)
+		{
+			lowLevel2productIds.forEach((lowLevel, productIds) -> productIds.forEach(productId -> {
+				final PartitionResult result = planPartition(productId, lowLevel, productId2descriptors.get(productId), planner, false);
+				logResult(result);
+				results.add(result);
+			}));
+			return results;
+		}
+
+		final Properties ctx = Env.copyCtx(Env.getCtx());
+		final ExecutorService executor = getExecutor(parallelism);
+
+		final List<Future<PartitionResult>> futures = new ArrayList<>();
+		try
+		{
+			for (final Map.Entry<Integer, List<Integer>> lowLevelAndProductIds : lowLevel2productIds.entrySet())
+			{
+				final int lowLevel = lowLevelAndProductIds.getKey();
+
+				futures.clear();
+				for (final int productId : lowLevelAndProductIds.getValue())
+				{
+					final List<SupplyRequiredDescriptor> partition = productId2descriptors.get(productId);
+					futures.add(executor.submit(() -> planPartitionInWorker(ctx, productId, lowLevel, partition, planner)));
+				}
+
+				for (final Future<PartitionResult> future : futures)
+				{
+					final PartitionResult result = future.get();
+					logResult(result);
+					results.add(result);
+				}
+			}
+		}
+		catch (final InterruptedException | ExecutionException e)
+		{
+			// the executor is shared, so we only cancel our own remaining tasks
+			futures.forEach(future -> future.cancel(true));
+			throw AdempiereException.wrapIfNeeded(e);
+		}
+		return results;
+	}
+
+	private static void logResult(@NonNull final PartitionResult result)
+	{
+		Loggables.get().addLog("Planned M_Product_ID={} (LowLevel={}): {} descriptors in {}ms{}",
+				result.getProductId(), result.getLowLevel(), result.getDescriptors().size(), result.getDurationMillis(),
+				result.isFailed() ? "; error=" + result.getError().getMessage() : "");
+	}
+
+	private ExecutorService getExecutor(final int parallelism)
+	{
+		if (Adempiere.isUnitTestMode())
+		{
+			return MoreExecutors.newDirectExecutorService(); // POJOLookupMap is not thread-safe
+		}
+		updatePoolSize(parallelism);
+		return executor;
+	}
+
+	private static ThreadPoolExecutor createExecutor()
+	{
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+				DEFAULT_Parallelism,
+				DEFAULT_Parallelism,
+				60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(),
+				CustomizableThreadFactory.builder()
+						.setThreadNamePrefix(MaterialPlanningExecutor.class.getName())
+						.setDaemon(true)
+						.build());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private synchronized void updatePoolSize(final int parallelism)
+	{
+		if (parallelism > executor.getMaximumPoolSize())
+		{
+			executor.setMaximumPoolSize(parallelism);
+			executor.setCorePoolSize(parallelism);
+		}
+		else if (parallelism < executor.getMaximumPoolSize())
+		{
+			executor.setCorePoolSize(parallelism);
+			executor.setMaximumPoolSize(parallelism);
+		}
+	}
+
+	private static PartitionResult planPartitionInWorker(
+			@NonNull final Properties callerCtx,
+			final int productId,
+			final int lowLevel,
+			@NonNull final List<SupplyRequiredDescriptor> partition,
+			@NonNull final Consumer<SupplyRequiredDescriptor> planner)
+	{
+		// each worker gets its own copy, so that what one partition sets in its context does not leak into the others
+		final Properties ctx = Env.copyCtx(callerCtx);
+		try (final IAutoCloseable c = Env.switchContext(ctx))
+		{
+			return planPartition(productId, lowLevel, partition, planner, true);
+		}
+	}
+
+	/**
+	 * @param newTrx if {@code true}, the partition is planned and committed in a new transaction; otherwise, it's planned within a savepoint of the current thread's transaction.
+	 */
+	private static PartitionResult planPartition(
+			final int productId,
+			final int lowLevel,
+			@NonNull final List<SupplyRequiredDescriptor> partition,
+			@NonNull final Consumer<SupplyRequiredDescriptor> planner,
+			final boolean newTrx)
+	{
+		final Stopwatch stopwatch = Stopwatch.createStarted();
+		Throwable error = null;
+
+		try
+		{
+			final ITrxManager trxManager = Services.get(ITrxManager.class);
+			if (newTrx)
+			{
+				trxManager.run(() -> partition.forEach(planner));
+			}
+			else
+			{
+				trxManager.run(ITrx.TRXNAME_ThreadInherited, localTrxName -> partition.forEach(planner));
+			}
+		}
+		catch (final RuntimeException e)
+		{
+			logger.error("Failed planning M_Product_ID={}", productId, e);
+			error = e;
+		}
+
+		final long durationMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+		logger.info("Planned M_Product_ID={} (LowLevel={}): {} descriptors in {}ms", productId, lowLevel, partition.size(), durationMillis);
+
+		return new PartitionResult(productId, lowLevel, ImmutableList.copyOf(partition), durationMillis, error);
+	}
+}
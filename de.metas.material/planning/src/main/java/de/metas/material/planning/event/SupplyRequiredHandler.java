@@ -4,7 +4,10 @@ import static org.adempiere.model.InterfaceWrapperHelper.loadOutOfTrx;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.adempiere.ad.trx.api.ITrx;
 import org.adempiere.mm.attributes.AttributeSetInstanceId;
@@ -37,6 +40,7 @@ import de.metas.material.planning.IProductPlanningDAO;
 import de.metas.material.planning.IProductPlanningDAO.ProductPlanningQuery;
 import de.metas.material.planning.ddorder.DDOrderAdvisedEventCreator;
 import de.metas.material.planning.ddorder.DDOrderPojoSupplier;
+import de.metas.material.planning.event.MaterialPlanningExecutor.PartitionResult;
 import de.metas.material.planning.pporder.PPOrderAdvisedEventCreator;
 import de.metas.product.ProductId;
 import lombok.NonNull;
@@ -72,14 +76,18 @@ public class SupplyRequiredHandler implements MaterialEventHandler<SupplyRequire
 
 	private final PostMaterialEventService postMaterialEventService;
 
+	private final MaterialPlanningExecutor materialPlanningExecutor;
+
 	public SupplyRequiredHandler(
 			@NonNull final DDOrderAdvisedEventCreator dDOrderAdvisedEventCreator,
 			@NonNull final PPOrderAdvisedEventCreator ppOrderAdvisedEventCreator,
-			@NonNull final PostMaterialEventService fireMaterialEventService)
+			@NonNull final PostMaterialEventService fireMaterialEventService,
+			@NonNull final MaterialPlanningExecutor materialPlanningExecutor)
 	{
 		this.dDOrderAdvisedEventCreator = dDOrderAdvisedEventCreator;
 		this.ppOrderAdvisedEventCreator = ppOrderAdvisedEventCreator;
 		this.postMaterialEventService = fireMaterialEventService;
+		this.materialPlanningExecutor = materialPlanningExecutor;
 	}
 
 	@Override
@@ -94,17 +102,62 @@ public class SupplyRequiredHandler implements MaterialEventHandler<SupplyRequire
 		handleSupplyRequiredEvent(event.getSupplyRequiredDescriptor());
 	}
 
+	/**
+	 * Plans the given events' descriptors via {@link MaterialPlanningExecutor}, i.e. partitioned by product and possibly in parallel.
+	 * <p>
+	 * The resulting events are only posted for the partitions that were planned successfully.
+	 * The successful partitions might already be committed, so we don't throw if some partitions failed, but return their events to be retried one by one.
+	 */
+	@Override
+	public List<SupplyRequiredEvent> handleEvents(@NonNull final List<SupplyRequiredEvent> events)
+	{
+		final Map<SupplyRequiredDescriptor, SupplyRequiredEvent> descriptor2event = new IdentityHashMap<>();
+		events.forEach(event -> descriptor2event.put(event.getSupplyRequiredDescriptor(), event));
+
+		final List<SupplyRequiredDescriptor> descriptors = events.stream()
+				.map(SupplyRequiredEvent::getSupplyRequiredDescriptor)
+				.collect(ImmutableList.toImmutableList());
+
+		// the planner is invoked from the executor's worker threads
+		final Map<SupplyRequiredDescriptor, List<MaterialEvent>> descriptor2resultingEvents = Collections.synchronizedMap(new IdentityHashMap<>());
+		final List<PartitionResult> results = materialPlanningExecutor.plan(
+				descriptors,
+				descriptor -> descriptor2resultingEvents.put(descriptor, createResultingEvents(descriptor)));
+
+		final List<SupplyRequiredEvent> failedEvents = new ArrayList<>();
+		for (final PartitionResult result : results)
+		{
+			for (final SupplyRequiredDescriptor descriptor : result.getDescriptors())
+			{
+				if (result.isFailed())
+				{
+					failedEvents.add(descriptor2event.get(descriptor));
+				}
+				else
+				{
+					descriptor2resultingEvents.getOrDefault(descriptor, ImmutableList.of()).forEach(postMaterialEventService::postEventNow);
+				}
+			}
+		}
+		return failedEvents;
+	}
+
 	/**
 	 * Invokes our {@link DDOrderPojoSupplier} and returns the resulting {@link DDOrder} pojo as {@link DistributionAdvisedOrCreatedEvent}
 	 *
 	 * @param materialDemandEvent
 	 */
 	public void handleSupplyRequiredEvent(@NonNull final SupplyRequiredDescriptor descriptor)
+	{
+		createResultingEvents(descriptor).forEach(postMaterialEventService::postEventNow);
+	}
+
+	private List<MaterialEvent> createResultingEvents(@NonNull final SupplyRequiredDescriptor descriptor)
 	{
 		final IMutableMRPContext mrpContext = createMRPContextOrNull(descriptor);
 		if (mrpContext == null)
 		{
-			return; // nothing to do
+			return ImmutableList.of(); // nothing to do
 		}
 
 		final List<MaterialEvent> events = new ArrayList<>();
@@ -112,7 +165,7 @@ public class SupplyRequiredHandler implements MaterialEventHandler<SupplyRequire
 		events.addAll(dDOrderAdvisedEventCreator.createDDOrderAdvisedEvents(descriptor, mrpContext));
 		events.addAll(ppOrderAdvisedEventCreator.createPPOrderAdvisedEvents(descriptor, mrpContext));
 
-		events.forEach(postMaterialEventService::postEventNow);
+		return events;
 	}
 
 	private IMutableMRPContext createMRPContextOrNull(@NonNull final SupplyRequiredDescriptor materialDemandEvent)
@@ -0,0 +1,144 @@
+package de.metas.material.planning.event;
+
+import static de.metas.material.event.EventTestHelper.createSupplyRequiredDescriptorWithProductId;
+import static org.adempiere.model.InterfaceWrapperHelper.newInstance;
+import static org.adempiere.model.InterfaceWrapperHelper.save;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.adempiere.exceptions.AdempiereException;
+import org.adempiere.service.ISysConfigBL;
+import org.adempiere.test.AdempiereTestHelper;
+import org.adempiere.util.Services;
+import org.compiere.model.I_M_Product;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import de.metas.material.event.commons.SupplyRequiredDescriptor;
+import de.metas.material.planning.event.MaterialPlanningExecutor.PartitionResult;
+
+/*
+ * #%L
+ * metasfresh-material-planning
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+public class MaterialPlanningExecutorTest
+{
+	private SupplyRequiredDescriptor componentDescriptor1;
+	private SupplyRequiredDescriptor finishedGoodDescriptor;
+	private SupplyRequiredDescriptor componentDescriptor2;
+
+	private List<SupplyRequiredDescriptor> plannedDescriptors;
+
+	private MaterialPlanningExecutor materialPlanningExecutor;
+
+	@Before
+	public void init()
+	{
+		AdempiereTestHelper.get().init();
+
+		final int componentId = createProduct(1);
+		final int finishedGoodId = createProduct(0);
+
+		componentDescriptor1 = createSupplyRequiredDescriptorWithProductId(componentId);
+		finishedGoodDescriptor = createSupplyRequiredDescriptorWithProductId(finishedGoodId);
+		componentDescriptor2 = createSupplyRequiredDescriptorWithProductId(componentId);
+
+		plannedDescriptors = new ArrayList<>();
+		materialPlanningExecutor = new MaterialPlanningExecutor();
+	}
+
+	@Test
+	public void plan_sequential()
+	{
+		plan_partitions_by_product_and_low_level();
+	}
+
+	@Test
+	public void plan_parallel()
+	{
+		Services.get(ISysConfigBL.class).setValue(MaterialPlanningExecutor.SYSCONFIG_Parallelism, 4, 0);
+		plan_partitions_by_product_and_low_level();
+	}
+
+	private void plan_partitions_by_product_and_low_level()
+	{
+		final List<PartitionResult> results = materialPlanningExecutor.plan(
+				ImmutableList.of(componentDescriptor1, finishedGoodDescriptor, componentDescriptor2),
+				plannedDescriptors::add);
+
+		// the finished good is planned before its component, and each product's descriptors are planned in their original order
+		assertThat(plannedDescriptors).containsExactly(finishedGoodDescriptor, componentDescriptor1, componentDescriptor2);
+
+		assertThat(results).hasSize(2);
+		assertThat(results.get(0).getDescriptors()).containsExactly(finishedGoodDescriptor);
+		assertThat(results.get(1).getDescriptors()).containsExactly(componentDescriptor1, componentDescriptor2);
+		assertThat(results).noneMatch(PartitionResult::isFailed);
+	}
+
+	@Test
+	public void plan_sequential_failed_partition()
+	{
+		plan_failed_partition_does_not_prevent_the_others();
+	}
+
+	@Test
+	public void plan_parallel_failed_partition()
+	{
+		Services.get(ISysConfigBL.class).setValue(MaterialPlanningExecutor.SYSCONFIG_Parallelism, 4, 0);
+		plan_failed_partition_does_not_prevent_the_others();
+	}
+
+	/**
+	 * Verifies that a failed partition is reported in the result instead of being thrown,
+	 * so that the caller can retry just the failed partition's descriptors.
+	 */
+	private void plan_failed_partition_does_not_prevent_the_others()
+	{
+		final List<PartitionResult> results = materialPlanningExecutor.plan(
+				ImmutableList.of(componentDescriptor1, finishedGoodDescriptor, componentDescriptor2),
+				descriptor -> {
+					if (descriptor == finishedGoodDescriptor)
+					{
+						throw new AdempiereException("failing on purpose");
+					}
+					plannedDescriptors.add(descriptor);
+				});
+
+		assertThat(plannedDescriptors).containsExactly(componentDescriptor1, componentDescriptor2);
+
+		assertThat(results).hasSize(2);
+		assertThat(results.get(0).isFailed()).isTrue();
+		assertThat(results.get(0).getDescriptors()).containsExactly(finishedGoodDescriptor);
+		assertThat(results.get(1).isFailed()).isFalse();
+	}
+
+	private static int createProduct(final int lowLevel)
+	{
+		final I_M_Product product = newInstance(I_M_Product.class);
+		product.setLowLevel(lowLevel);
+		save(product);
+		return product.getM_Product_ID();
+	}
+}
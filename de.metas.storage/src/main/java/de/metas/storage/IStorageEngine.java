@@ -22,7 +22,9 @@ package de.metas.storage;
  * #L%
  */
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.adempiere.mm.attributes.api.IAttributeSet;
@@ -48,6 +50,13 @@ public interface IStorageEngine
 	 */
 	Set<IStorageRecord> retrieveStorageRecords(IContextAware context, Set<IStorageQuery> storageQueries);
 
+	/**
+	 * Retrieves the storage records of each of the given {@code storageQueries}, using one database query per chunk of storage queries instead of one per storage query.
+	 *
+	 * @return the storage records of each query, in the iteration order of the given queries; a record which matches more than one query is contained in each of their lists
+	 */
+	Map<IStorageQuery, List<IStorageRecord>> retrieveStorageRecordsByQuery(IContextAware context, Collection<IStorageQuery> storageQueries);
+
 	IStorageQuery newStorageQuery();
 
 	/**
@@ -23,7 +23,9 @@ package de.metas.inoutcandidate.api;
  */
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.adempiere.ad.dao.IQueryBuilder;
 import org.adempiere.util.ISingletonService;
@@ -113,6 +115,14 @@ public interface IShipmentScheduleAllocDAO extends ISingletonService
 	 */
 	BigDecimal retrieveQtyDelivered(I_M_ShipmentSchedule shipmentSchedule);
 
+	/**
+	 * Same as {@link #retrieveQtyDelivered(I_M_ShipmentSchedule)}, but for many shipment schedules with two queries.
+	 *
+	 * @param shipmentSchedules the query's ctx and trxName are taken from the first one
+	 * @return <code>M_ShipmentSchedule_ID</code> to qty delivered; contains all the given schedules' IDs
+	 */
+	Map<Integer, BigDecimal> retrieveQtyDelivered(Collection<? extends I_M_ShipmentSchedule> shipmentSchedules);
+
 	/**
 	 * Updates {@link I_M_ShipmentSchedule_QtyPicked#COLUMN_Processed} according to the given {@code inOut}.
 	 */
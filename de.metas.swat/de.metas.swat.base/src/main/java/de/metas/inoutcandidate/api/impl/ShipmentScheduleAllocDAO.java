@@ -25,7 +25,10 @@ import static java.math.BigDecimal.ZERO;
  */
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.adempiere.ad.dao.ICompositeQueryFilter;
@@ -40,6 +43,10 @@ import org.compiere.model.I_M_InOutLine;
 import org.compiere.util.Util;
 import org.slf4j.Logger;
 
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.SetMultimap;
+
 import de.metas.inout.model.I_M_InOut;
 import de.metas.inoutcandidate.api.IShipmentScheduleAllocDAO;
 import de.metas.inoutcandidate.model.I_M_ShipmentSchedule;
@@ -180,6 +187,57 @@ public class ShipmentScheduleAllocDAO implements IShipmentScheduleAllocDAO
 		return Util.coalesce(qty, ZERO);
 	}
 
+	@Override
+	public Map<Integer, BigDecimal> retrieveQtyDelivered(@NonNull final Collection<? extends I_M_ShipmentSchedule> shipmentSchedules)
+	{
+		final Map<Integer, BigDecimal> qtyDeliveredByShipmentScheduleId = new HashMap<>(shipmentSchedules.size());
+		shipmentSchedules.forEach(shipmentSchedule -> qtyDeliveredByShipmentScheduleId.put(shipmentSchedule.getM_ShipmentSchedule_ID(), ZERO));
+		if (shipmentSchedules.isEmpty())
+		{
+			return qtyDeliveredByShipmentScheduleId;
+		}
+
+		final IQueryBL queryBL = Services.get(IQueryBL.class);
+		final Object contextProvider = shipmentSchedules.iterator().next();
+
+		// a shipment schedule can have many QtyPicked records for the same inout line; like retrieveQtyDelivered(I_M_ShipmentSchedule) we count each line only once
+		final SetMultimap<Integer, Integer> inOutLineIdsByShipmentScheduleId = HashMultimap.create();
+		queryBL.createQueryBuilder(I_M_ShipmentSchedule_QtyPicked.class, contextProvider)
+				.addOnlyActiveRecordsFilter()
+				.addInArrayFilter(I_M_ShipmentSchedule_QtyPicked.COLUMN_M_ShipmentSchedule_ID, qtyDeliveredByShipmentScheduleId.keySet())
+				.addNotNull(I_M_ShipmentSchedule_QtyPicked.COLUMN_M_InOutLine_ID)
+				.create()
+				.listColumns(I_M_ShipmentSchedule_QtyPicked.COLUMNNAME_M_ShipmentSchedule_ID, I_M_ShipmentSchedule_QtyPicked.COLUMNNAME_M_InOutLine_ID)
+				.forEach(row -> inOutLineIdsByShipmentScheduleId.put(
+						((Number)row.get(I_M_ShipmentSchedule_QtyPicked.COLUMNNAME_M_ShipmentSchedule_ID)).intValue(),
+						((Number)row.get(I_M_ShipmentSchedule_QtyPicked.COLUMNNAME_M_InOutLine_ID)).intValue()));
+		if (inOutLineIdsByShipmentScheduleId.isEmpty())
+		{
+			return qtyDeliveredByShipmentScheduleId;
+		}
+
+		final Map<Integer, BigDecimal> movementQtyByInOutLineId = new HashMap<>();
+		queryBL.createQueryBuilder(I_M_InOutLine.class, contextProvider)
+				.addOnlyActiveRecordsFilter()
+				.addInArrayFilter(I_M_InOutLine.COLUMN_M_InOutLine_ID, ImmutableSet.copyOf(inOutLineIdsByShipmentScheduleId.values()))
+				.addEqualsFilter(I_M_InOutLine.COLUMNNAME_Processed, true)
+				.create()
+				.listColumns(I_M_InOutLine.COLUMNNAME_M_InOutLine_ID, I_M_InOutLine.COLUMNNAME_MovementQty)
+				.forEach(row -> movementQtyByInOutLineId.put(
+						((Number)row.get(I_M_InOutLine.COLUMNNAME_M_InOutLine_ID)).intValue(),
+						Util.coalesce((BigDecimal)row.get(I_M_InOutLine.COLUMNNAME_MovementQty), ZERO)));
+
+		for (final Map.Entry<Integer, Integer> shipmentScheduleIdAndInOutLineId : inOutLineIdsByShipmentScheduleId.entries())
+		{
+			final BigDecimal movementQty = movementQtyByInOutLineId.get(shipmentScheduleIdAndInOutLineId.getValue());
+			if (movementQty != null)
+			{
+				qtyDeliveredByShipmentScheduleId.merge(shipmentScheduleIdAndInOutLineId.getKey(), movementQty, BigDecimal::add);
+			}
+		}
+		return qtyDeliveredByShipmentScheduleId;
+	}
+
 	@Override
 	public BigDecimal retrieveQtyPickedAndUnconfirmed(@NonNull final I_M_ShipmentSchedule shipmentSchedule)
 	{
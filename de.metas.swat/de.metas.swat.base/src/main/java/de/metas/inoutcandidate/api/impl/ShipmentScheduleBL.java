@@ -94,7 +94,6 @@ import de.metas.inoutcandidate.spi.ShipmentScheduleReferencedLineFactory;
 import de.metas.inoutcandidate.spi.impl.CompositeCandidateProcessor;
 import de.metas.logging.LogManager;
 import de.metas.product.IProductBL;
-import de.metas.purchasing.api.IBPartnerProductDAO;
 import de.metas.storage.IStorageEngine;
 import de.metas.storage.IStorageEngineService;
 import de.metas.storage.IStorageQuery;
@@ -179,7 +178,13 @@ public class ShipmentScheduleBL implements IShipmentScheduleBL
 			updateShipmentConstraints(sched);
 		}
 
-		final ShipmentSchedulesDuringUpdate firstRun = generate(ctx, olsAndScheds, null, trxName);
+		// load the bpartners, qtys delivered and bpartner-products of all our schedules at once, instead of one by one in the loops below
+		final ShipmentSchedulesPrefetch prefetch = ShipmentSchedulesPrefetch.prefetch(
+				ctx,
+				olsAndScheds.stream().map(OlAndSched::getSched).collect(ImmutableList.toImmutableList()),
+				trxName);
+
+		final ShipmentSchedulesDuringUpdate firstRun = generate(ctx, olsAndScheds, null, prefetch, trxName);
 		firstRun.updateCompleteStatusAndSetQtyToZeroWhereNeeded();
 
 		final int removeCnt = applyCandidateProcessors(ctx, firstRun, trxName);
@@ -203,14 +208,14 @@ public class ShipmentScheduleBL implements IShipmentScheduleBL
 		}
 
 		// make the second run
-		final IShipmentSchedulesDuringUpdate secondRun = generate(ctx, olsAndScheds, firstRun, trxName);
+		final IShipmentSchedulesDuringUpdate secondRun = generate(ctx, olsAndScheds, firstRun, prefetch, trxName);
 
 		// finally update the shipment schedule entries
 		for (final OlAndSched olAndSched : olsAndScheds)
 		{
 			final I_M_ShipmentSchedule sched = olAndSched.getSched();
 			final IDeliverRequest deliverRequest = olAndSched.getDeliverRequest();
-			final I_C_BPartner bPartner = shipmentScheduleEffectiveBL.getBPartner(sched); // task 08756: we don't really care for the ol's partner, but for the partner who will actually receive the shipment.
+			final I_C_BPartner bPartner = prefetch.getBPartner(sched); // task 08756: we don't really care for the ol's partner, but for the partner who will actually receive the shipment.
 
 			final boolean isBPAllowConsolidateInOut = bpartnerBL.isAllowConsolidateInOutEffective(bPartner, true);
 			sched.setAllowConsolidateInOut(isBPAllowConsolidateInOut);
@@ -224,7 +229,7 @@ public class ShipmentScheduleBL implements IShipmentScheduleBL
 
 			// task 09358: ol.qtyReserved should be as correct as QtyOrdered and QtyDelivered, but in some cases isn't. this here is a workaround to the problem
 			// task 09869: don't rely on ol anyways
-			final BigDecimal qtyDelivered = Services.get(IShipmentScheduleAllocDAO.class).retrieveQtyDelivered(sched);
+			final BigDecimal qtyDelivered = prefetch.getQtyDelivered(sched);
 			sched.setQtyDelivered(qtyDelivered);
 			sched.setQtyReserved(BigDecimal.ZERO.max(deliverRequest.getQtyOrdered().subtract(sched.getQtyDelivered())));
 
@@ -283,13 +288,8 @@ public class ShipmentScheduleBL implements IShipmentScheduleBL
 			// I talked with Mark and he observed that in the wiki-page of 08459 it is specified differently.
 			// I will let it here nevertheless, so we can keep track of it's way to work
 
-			final org.compiere.model.I_C_BPartner partner = sched.getC_BPartner();
-
 			// FRESH-334 retrieve the bp product for org or for org 0
-			final org.compiere.model.I_M_Product product = olAndSched.getSched().getM_Product();
-			final int orgId = product.getAD_Org_ID();
-
-			final I_C_BPartner_Product bpp = Services.get(IBPartnerProductDAO.class).retrieveBPartnerProductAssociation(partner, product, orgId);
+			final I_C_BPartner_Product bpp = prefetch.getBPartnerProductAssociation(sched);
 			if (bpp == null)
 			{
 				// in case no dropship bpp entry was found, the schedule shall not be dropship
@@ -405,6 +405,7 @@ public class ShipmentScheduleBL implements IShipmentScheduleBL
 			final Properties ctx,
 			final List<OlAndSched> lines,
 			final ShipmentSchedulesDuringUpdate firstRun,
+			final ShipmentSchedulesPrefetch prefetch,
 			final String trxName)
 	{
 		// services
@@ -445,7 +446,7 @@ public class ShipmentScheduleBL implements IShipmentScheduleBL
 			}
 			else
 			{
-				final BigDecimal qtyDelivered = Services.get(IShipmentScheduleAllocDAO.class).retrieveQtyDelivered(sched);
+				final BigDecimal qtyDelivered = prefetch.getQtyDelivered(sched);
 				qtyRequired = deliverRequest.getQtyOrdered().subtract(qtyDelivered);
 			}
 
@@ -0,0 +1,94 @@
+package de.metas.inoutcandidate.api.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * #%L
+ * de.metas.swat.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Counts, since the JVM was started, how many storage segment invalidations were merged away by {@link StorageSegmentsCoalescer}, how many shipment schedules were invalidated for storage segments and how many were recomputed by {@link ShipmentScheduleUpdater}.
+ * <p>
+ * {@link ShipmentScheduleUpdater} logs these numbers after each run.
+ */
+public final class ShipmentScheduleInvalidationCounters
+{
+	public static final ShipmentScheduleInvalidationCounters instance = new ShipmentScheduleInvalidationCounters();
+
+	private final AtomicLong segmentsRequested = new AtomicLong();
+	private final AtomicLong segmentsMerged = new AtomicLong();
+	private final AtomicLong schedulesInvalidated = new AtomicLong();
+	private final AtomicLong schedulesRecomputed = new AtomicLong();
+
+	private ShipmentScheduleInvalidationCounters()
+	{
+	}
+
+	/* package */ void segmentsCoalesced(final int countRequested, final int countCoalesced)
+	{
+		segmentsRequested.addAndGet(countRequested);
+		segmentsMerged.addAndGet(countRequested - countCoalesced);
+	}
+
+	/* package */ void schedulesInvalidated(final int count)
+	{
+		schedulesInvalidated.addAndGet(count);
+	}
+
+	/* package */ void schedulesRecomputed(final int count)
+	{
+		schedulesRecomputed.addAndGet(count);
+	}
+
+	public long getSegmentsRequested()
+	{
+		return segmentsRequested.get();
+	}
+
+	/**
+	 * @return how many of the {@link #getSegmentsRequested()} were merged into others or dropped because they could not match any shipment schedule
+	 */
+	public long getSegmentsMerged()
+	{
+		return segmentsMerged.get();
+	}
+
+	public long getSchedulesInvalidated()
+	{
+		return schedulesInvalidated.get();
+	}
+
+	public long getSchedulesRecomputed()
+	{
+		return schedulesRecomputed.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ShipmentScheduleInvalidationCounters["
+				+ "segmentsRequested=" + getSegmentsRequested()
+				+ ", segmentsMerged=" + getSegmentsMerged()
+				+ ", schedulesInvalidated=" + getSchedulesInvalidated()
+				+ ", schedulesRecomputed=" + getSchedulesRecomputed()
+				+ "]";
+	}
+}
@@ -668,9 +668,17 @@ public class ShipmentSchedulePA implements IShipmentSchedulePA
 	}
 
 	@Override
-	public void invalidate(final Collection<IStorageSegment> storageSegments)
+	public void invalidate(final Collection<IStorageSegment> storageSegmentsRequested)
 	{
-		if (storageSegments == null || storageSegments.isEmpty())
+		if (storageSegmentsRequested == null || storageSegmentsRequested.isEmpty())
+		{
+			return;
+		}
+
+		// merge the segments first, because the same stock is often changed many times within one transaction
+		final List<IStorageSegment> storageSegments = StorageSegmentsCoalescer.coalesce(storageSegmentsRequested);
+		ShipmentScheduleInvalidationCounters.instance.segmentsCoalesced(storageSegmentsRequested.size(), storageSegments.size());
+		if (storageSegments.isEmpty())
 		{
 			return;
 		}
@@ -727,7 +735,8 @@ public class ShipmentSchedulePA implements IShipmentSchedulePA
 		// Execute
 		final String trxName = ITrx.TRXNAME_None;
 		final int count = DB.executeUpdateEx(sql, sqlParams.toArray(), trxName);
-		logger.debug("Invalidated {} shipment schedules for segments={}", count, storageSegments);
+		logger.debug("Invalidated {} shipment schedules for segments={} (coalesced from {} segments)", count, storageSegments, storageSegmentsRequested.size());
+		ShipmentScheduleInvalidationCounters.instance.schedulesInvalidated(count);
 
 		//
 		if (count > 0)
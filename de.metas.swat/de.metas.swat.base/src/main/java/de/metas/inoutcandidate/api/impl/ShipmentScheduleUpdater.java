@@ -25,23 +25,60 @@ package de.metas.inoutcandidate.api.impl;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.exceptions.AdempiereException;
+import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.service.ISysConfigBL;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
+import org.adempiere.util.concurrent.CustomizableThreadFactory;
+import org.adempiere.util.lang.IAutoCloseable;
+import org.compiere.util.Env;
+import org.compiere.util.Util.ArrayKey;
 import org.slf4j.Logger;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+
 import de.metas.inoutcandidate.api.IShipmentScheduleBL;
+import de.metas.inoutcandidate.api.IShipmentScheduleEffectiveBL;
 import de.metas.inoutcandidate.api.IShipmentScheduleHandlerBL;
 import de.metas.inoutcandidate.api.IShipmentSchedulePA;
 import de.metas.inoutcandidate.api.IShipmentScheduleUpdater;
 import de.metas.inoutcandidate.api.OlAndSched;
 import de.metas.inoutcandidate.model.I_M_ShipmentSchedule;
 import de.metas.logging.LogManager;
+import lombok.NonNull;
+import lombok.Value;
 
+/**
+ * Updates the invalid shipment schedules.
+ * <p>
+ * If {@value #SYSCONFIG_Parallelism} is greater than one, the schedules that were locked by the caller (see {@link #updateShipmentSchedule(Properties, int, int, boolean, String)}) are split into independent batches which are updated in parallel, each in its own transaction.
+ * Two schedules are put into the same batch if they have the same product (i.e. they compete for the same stock), the same order (i.e. delivery rule "complete order") or the same effective bpartner (i.e. they might end up in the same shipment).
+ * If any batch fails, the error is rethrown after all batches are done, so the recompute markers are released and all the schedules are updated again next time.
+ */
 public class ShipmentScheduleUpdater implements IShipmentScheduleUpdater
 {
+	public static final String SYSCONFIG_Parallelism = "de.metas.inoutcandidate.api.impl.ShipmentScheduleUpdater.Parallelism";
+	private static final int DEFAULT_Parallelism = 1;
+
 	/**
 	 * Flag which is set to true when shipment schedule updater is running.
 	 *
@@ -51,6 +88,9 @@ public class ShipmentScheduleUpdater implements IShipmentScheduleUpdater
 
 	private static final Logger logger = LogManager.getLogger(ShipmentScheduleUpdater.class);
 
+	/** shared by all invocations; its size is adjusted to the number of batches and idle threads time out */
+	private static final ThreadPoolExecutor executor = createExecutor();
+
 	@Override
 	public int updateShipmentSchedule(final Properties ctx, final int adUserId, final int adPInstanceId, final String trxName)
 	{
@@ -87,9 +127,29 @@ public class ShipmentScheduleUpdater implements IShipmentScheduleUpdater
 			}
 
 			final List<OlAndSched> collectResult = retrieveOlsAndSchedsToProcess(ctx, adPInstanceId, trxName);
+			final Stopwatch stopwatch = Stopwatch.createStarted();
+
+			// only the locked schedules may be updated outside of the caller's transaction, because nothing was created or invalidated in there
+			final List<List<OlAndSched>> batches = updateOnlyLocked ? partitionIntoBatches(collectResult, getParallelism()) : ImmutableList.of();
+			if (batches.size() > 1)
+			{
+				logger.debug("Invoking shipmentScheduleBL to update {} shipment schedule entries in {} parallel batches.", collectResult.size(), batches.size());
+				updateSchedulesInParallel(ctx, batches);
+			}
+			else
+			{
+				logger.debug("Invoking shipmentScheduleBL to update {} shipment schedule entries.", collectResult.size());
+				shipmentScheduleBL.updateSchedules(ctx, collectResult, trxName);
+			}
 
-			logger.debug("Invoking shipmentScheduleBL to update {} shipment schedule entries.", collectResult.size());
-			shipmentScheduleBL.updateSchedules(ctx, collectResult, trxName);
+			if (!collectResult.isEmpty())
+			{
+				final ShipmentScheduleInvalidationCounters counters = ShipmentScheduleInvalidationCounters.instance;
+				counters.schedulesRecomputed(collectResult.size());
+
+				final long durationMillis = Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+				logger.info("Updated {} shipment schedules in {} ({} schedules/sec); {}", collectResult.size(), stopwatch, collectResult.size() * 1000L / durationMillis, counters);
+			}
 
 			// cleanup the marker/pointer tables
 			shipmentSchedulePA.deleteRecomputeMarkers(adPInstanceId, trxName); // if updateOnlyLocked, then there is nothing to delete..but still making this call, it should finish rather quickly
@@ -140,4 +200,195 @@ public class ShipmentScheduleUpdater implements IShipmentScheduleUpdater
 		logger.debug("Found additional {} schedule entries to update", (collectResult.size() - olsAndScheds.size()));
 		return collectResult;
 	}
+
+	private static int getParallelism()
+	{
+		return Services.get(ISysConfigBL.class).getIntValue(SYSCONFIG_Parallelism, DEFAULT_Parallelism);
+	}
+
+	/**
+	 * Splits the given schedules into groups which can be updated independently of each other and distributes those groups over at most {@code maxBatches} batches of similar size.
+	 *
+	 * @return the batches, each in the order of the given list; just one batch if {@code maxBatches} is one or all schedules depend on each other
+	 */
+	@VisibleForTesting
+	static List<List<OlAndSched>> partitionIntoBatches(@NonNull final List<OlAndSched> olsAndScheds, final int maxBatches)
+	{
+		if (maxBatches <= 1 || olsAndScheds.size() <= 1)
+		{
+			return ImmutableList.of(olsAndScheds);
+		}
+
+		final IShipmentScheduleEffectiveBL shipmentScheduleEffectiveBL = Services.get(IShipmentScheduleEffectiveBL.class);
+
+		// union-find over the schedules' indices; two schedules which share any key end up with the same root
+		final int[] parents = IntStream.range(0, olsAndScheds.size()).toArray();
+		final Map<ArrayKey, Integer> firstIndexByKey = new HashMap<>();
+		for (int i = 0; i < olsAndScheds.size(); i++)
+		{
+			final I_M_ShipmentSchedule sched = olsAndScheds.get(i).getSched();
+
+			final List<ArrayKey> keys = new ArrayList<>(3);
+			keys.add(ArrayKey.of(I_M_ShipmentSchedule.COLUMNNAME_M_Product_ID, sched.getM_Product_ID()));
+			keys.add(ArrayKey.of(I_M_ShipmentSchedule.COLUMNNAME_C_BPartner_ID, shipmentScheduleEffectiveBL.getC_BPartner_ID(sched)));
+			if (sched.getC_Order_ID() > 0)
+			{
+				keys.add(ArrayKey.of(I_M_ShipmentSchedule.COLUMNNAME_C_Order_ID, sched.getC_Order_ID()));
+			}
+
+			for (final ArrayKey key : keys)
+			{
+				final Integer firstIndex = firstIndexByKey.putIfAbsent(key, i);
+				if (firstIndex != null)
+				{
+					parents[findRoot(parents, i)] = findRoot(parents, firstIndex);
+				}
+			}
+		}
+
+		final Map<Integer, List<OlAndSched>> groupsByRoot = new LinkedHashMap<>();
+		for (int i = 0; i < olsAndScheds.size(); i++)
+		{
+			groupsByRoot.computeIfAbsent(findRoot(parents, i), root -> new ArrayList<>()).add(olsAndScheds.get(i));
+		}
+		if (groupsByRoot.size() <= 1)
+		{
+			return ImmutableList.of(olsAndScheds);
+		}
+
+		// put the biggest groups first, each into the currently smallest batch
+		final List<List<OlAndSched>> batches = IntStream.range(0, Math.min(maxBatches, groupsByRoot.size()))
+				.<List<OlAndSched>> mapToObj(batchNo -> new ArrayList<>())
+				.collect(Collectors.toList());
+		groupsByRoot.values()
+				.stream()
+				.sorted(Comparator.comparingInt(List<OlAndSched>::size).reversed())
+				.forEach(group -> batches.stream()
+						.min(Comparator.comparingInt(List::size))
+						.get()
+						.addAll(group));
+		return ImmutableList.copyOf(batches);
+	}
+
+	private static int findRoot(final int[] parents, final int index)
+	{
+		int root = index;
+		while (parents[root] != root)
+		{
+			parents[root] = parents[parents[root]];
+			root = parents[root];
+		}
+		return root;
+	}
+
+	private void updateSchedulesInParallel(@NonNull final Properties ctx, @NonNull final List<List<OlAndSched>> batches)
+	{
+		final ExecutorService executor = getExecutor(batches.size());
+
+		final List<BatchResult> results = new ArrayList<>();
+		final List<Future<BatchResult>> futures = new ArrayList<>();
+		try
+		{
+			for (final List<OlAndSched> batch : batches)
+			{
+				futures.add(executor.submit(() -> updateBatch(ctx, batch)));
+			}
+			for (final Future<BatchResult> future : futures)
+			{
+				results.add(future.get());
+			}
+		}
+		catch (final InterruptedException | ExecutionException e)
+		{
+			// the executor is shared, so we only cancel our own remaining tasks
+			futures.forEach(future -> future.cancel(true));
+			throw AdempiereException.wrapIfNeeded(e);
+		}
+
+		final long countFailed = results.stream().filter(result -> result.getError() != null).count();
+		if (countFailed > 0)
+		{
+			throw new AdempiereException(countFailed + " of " + results.size() + " shipment schedule batches failed; see the log for details")
+					.appendParametersToMessage()
+					.setParameter("results", results);
+		}
+	}
+
+	private static ExecutorService getExecutor(final int parallelism)
+	{
+		synchronized (executor)
+		{
+			if (parallelism > executor.getMaximumPoolSize())
+			{
+				executor.setMaximumPoolSize(parallelism);
+				executor.setCorePoolSize(parallelism);
+			}
+			else if (parallelism < executor.getMaximumPoolSize())
+			{
+				executor.setCorePoolSize(parallelism);
+				executor.setMaximumPoolSize(parallelism);
+			}
+		}
+		return executor;
+	}
+
+	private static ThreadPoolExecutor createExecutor()
+	{
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+				DEFAULT_Parallelism,
+				DEFAULT_Parallelism,
+				60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(),
+				CustomizableThreadFactory.builder()
+						.setThreadNamePrefix(ShipmentScheduleUpdater.class.getName())
+						.setDaemon(true)
+						.build());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private BatchResult updateBatch(@NonNull final Properties callerCtx, @NonNull final List<OlAndSched> batch)
+	{
+		final Stopwatch stopwatch = Stopwatch.createStarted();
+		Throwable error = null;
+
+		// the worker threads are shared, so we can't rely on them having inherited our "running" flag
+		this.running.set(true);
+
+		// each batch gets its own copy, so that what one batch sets in its context does not leak into the others
+		final Properties ctx = Env.copyCtx(callerCtx);
+		try (final IAutoCloseable c = Env.switchContext(ctx))
+		{
+			Services.get(ITrxManager.class).run(localTrxName -> {
+				for (final OlAndSched olAndSched : batch)
+				{
+					InterfaceWrapperHelper.setTrxName(olAndSched.getSched(), localTrxName);
+					olAndSched.getOl().ifPresent(ol -> InterfaceWrapperHelper.setTrxName(ol, localTrxName));
+				}
+				Services.get(IShipmentScheduleBL.class).updateSchedules(ctx, batch, localTrxName);
+			});
+		}
+		catch (final RuntimeException e)
+		{
+			logger.error("Failed updating a batch of {} shipment schedules", batch.size(), e);
+			error = e;
+		}
+		finally
+		{
+			this.running.remove();
+		}
+
+		final long durationMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+		logger.debug("Updated a batch of {} shipment schedules in {}ms", batch.size(), durationMillis);
+
+		return new BatchResult(batch.size(), durationMillis, error);
+	}
+
+	@Value
+	private static class BatchResult
+	{
+		int countSchedules;
+		long durationMillis;
+		Throwable error;
+	}
 }
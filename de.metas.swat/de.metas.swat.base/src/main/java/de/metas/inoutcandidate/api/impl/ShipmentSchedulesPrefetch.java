@@ -0,0 +1,218 @@
+package de.metas.inoutcandidate.api.impl;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.adempiere.ad.dao.IQueryBL;
+import org.adempiere.model.PlainContextAware;
+import org.adempiere.util.Services;
+import org.adempiere.util.lang.IContextAware;
+import org.compiere.model.I_C_BPartner;
+import org.compiere.model.I_C_BPartner_Product;
+import org.compiere.model.I_M_Product;
+import org.compiere.util.Util.ArrayKey;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+
+import de.metas.inoutcandidate.api.IShipmentScheduleAllocDAO;
+import de.metas.inoutcandidate.api.IShipmentScheduleEffectiveBL;
+import de.metas.inoutcandidate.model.I_M_ShipmentSchedule;
+import de.metas.purchasing.api.IBPartnerProductDAO;
+import lombok.NonNull;
+
+/*
+ * #%L
+ * de.metas.swat.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Loads what {@link ShipmentScheduleBL#updateSchedules(Properties, List, String)} needs for its final pass, with one query per chunk of {@value #CHUNK_SIZE} shipment schedules, instead of a couple of queries per schedule:
+ * <ul>
+ * <li>the effective bpartners</li>
+ * <li>the qtys delivered</li>
+ * <li>the products' orgs and the {@code C_BPartner_Product} records which tell if a schedule is dropship</li>
+ * </ul>
+ * For anything that was not prefetched (e.g. because the schedule's bpartner was changed in the meantime), the getters fall back to the respective one-by-one services.
+ */
+final class ShipmentSchedulesPrefetch
+{
+	public static ShipmentSchedulesPrefetch prefetch(
+			@NonNull final Properties ctx,
+			@NonNull final List<I_M_ShipmentSchedule> shipmentSchedules,
+			final String trxName)
+	{
+		return new ShipmentSchedulesPrefetch(PlainContextAware.newWithTrxName(ctx, trxName), shipmentSchedules);
+	}
+
+	private static final int CHUNK_SIZE = 500;
+
+	private final IShipmentScheduleEffectiveBL shipmentScheduleEffectiveBL = Services.get(IShipmentScheduleEffectiveBL.class);
+	private final IShipmentScheduleAllocDAO shipmentScheduleAllocDAO = Services.get(IShipmentScheduleAllocDAO.class);
+	private final IBPartnerProductDAO bpartnerProductDAO = Services.get(IBPartnerProductDAO.class);
+
+	private final IContextAware context;
+
+	private final Map<Integer, I_C_BPartner> bpartnersById = new HashMap<>();
+	private final Map<Integer, BigDecimal> qtyDeliveredByShipmentScheduleId = new HashMap<>();
+	private final Map<Integer, Integer> orgIdsByProductId = new HashMap<>();
+
+	/** the C_BPartner_ID/M_Product_ID combinations whose {@code C_BPartner_Product} records were prefetched */
+	private final Set<ArrayKey> bpartnerProductKeys;
+	/** ordered by {@code C_BPartner_Product_ID} */
+	private final ListMultimap<ArrayKey, I_C_BPartner_Product> bpartnerProductsByBPartnerAndProductId = ArrayListMultimap.create();
+
+	private ShipmentSchedulesPrefetch(
+			@NonNull final IContextAware context,
+			@NonNull final List<I_M_ShipmentSchedule> shipmentSchedules)
+	{
+		this.context = context;
+
+		final IQueryBL queryBL = Services.get(IQueryBL.class);
+
+		for (final List<I_M_ShipmentSchedule> chunk : Iterables.partition(shipmentSchedules, CHUNK_SIZE))
+		{
+			qtyDeliveredByShipmentScheduleId.putAll(shipmentScheduleAllocDAO.retrieveQtyDelivered(chunk));
+		}
+
+		final Set<Integer> effectiveBPartnerIds = shipmentSchedules.stream()
+				.map(shipmentScheduleEffectiveBL::getC_BPartner_ID)
+				.collect(ImmutableSet.toImmutableSet());
+		for (final List<Integer> bpartnerIdsChunk : Iterables.partition(effectiveBPartnerIds, CHUNK_SIZE))
+		{
+			queryBL.createQueryBuilder(I_C_BPartner.class, context)
+					.addInArrayFilter(I_C_BPartner.COLUMNNAME_C_BPartner_ID, bpartnerIdsChunk)
+					.create()
+					.list(I_C_BPartner.class)
+					.forEach(bpartner -> bpartnersById.put(bpartner.getC_BPartner_ID(), bpartner));
+		}
+
+		final Set<Integer> productIds = shipmentSchedules.stream()
+				.map(I_M_ShipmentSchedule::getM_Product_ID)
+				.collect(ImmutableSet.toImmutableSet());
+		for (final List<Integer> productIdsChunk : Iterables.partition(productIds, CHUNK_SIZE))
+		{
+			queryBL.createQueryBuilder(I_M_Product.class, context)
+					.addInArrayFilter(I_M_Product.COLUMNNAME_M_Product_ID, productIdsChunk)
+					.create()
+					.listColumns(I_M_Product.COLUMNNAME_M_Product_ID, I_M_Product.COLUMNNAME_AD_Org_ID)
+					.forEach(row -> orgIdsByProductId.put(
+							((Number)row.get(I_M_Product.COLUMNNAME_M_Product_ID)).intValue(),
+							((Number)row.get(I_M_Product.COLUMNNAME_AD_Org_ID)).intValue()));
+		}
+
+		// the dropship flag is taken from the associations of the schedule's own bpartner, not of the effective one
+		final Map<ArrayKey, I_M_ShipmentSchedule> shipmentSchedulesByBPartnerProductKey = new LinkedHashMap<>();
+		shipmentSchedules.forEach(sched -> shipmentSchedulesByBPartnerProductKey.putIfAbsent(createBPartnerProductKey(sched), sched));
+		bpartnerProductKeys = ImmutableSet.copyOf(shipmentSchedulesByBPartnerProductKey.keySet());
+
+		// chunk by bpartner/product combination, so that neither of the two IN lists exceeds the chunk size
+		for (final List<I_M_ShipmentSchedule> chunk : Iterables.partition(shipmentSchedulesByBPartnerProductKey.values(), CHUNK_SIZE))
+		{
+			final Set<ArrayKey> chunkKeys = chunk.stream()
+					.map(ShipmentSchedulesPrefetch::createBPartnerProductKey)
+					.collect(ImmutableSet.toImmutableSet());
+
+			queryBL.createQueryBuilder(I_C_BPartner_Product.class, context)
+					.addOnlyActiveRecordsFilter()
+					.addInArrayFilter(I_C_BPartner_Product.COLUMNNAME_C_BPartner_ID, chunk.stream().map(I_M_ShipmentSchedule::getC_BPartner_ID).collect(ImmutableSet.toImmutableSet()))
+					.addInArrayFilter(I_C_BPartner_Product.COLUMNNAME_M_Product_ID, chunk.stream().map(I_M_ShipmentSchedule::getM_Product_ID).collect(ImmutableSet.toImmutableSet()))
+					.orderBy()
+					.addColumn(I_C_BPartner_Product.COLUMNNAME_C_BPartner_Product_ID)
+					.endOrderBy()
+					.create()
+					.list(I_C_BPartner_Product.class)
+					.forEach(bpartnerProduct -> {
+						final ArrayKey key = ArrayKey.of(bpartnerProduct.getC_BPartner_ID(), bpartnerProduct.getM_Product_ID());
+						if (chunkKeys.contains(key)) // the record might match a bpartner and a product of two different combinations of this chunk
+						{
+							bpartnerProductsByBPartnerAndProductId.put(key, bpartnerProduct);
+						}
+					});
+		}
+	}
+
+	private static ArrayKey createBPartnerProductKey(@NonNull final I_M_ShipmentSchedule sched)
+	{
+		return ArrayKey.of(sched.getC_BPartner_ID(), sched.getM_Product_ID());
+	}
+
+	/** @see IShipmentScheduleEffectiveBL#getBPartner(I_M_ShipmentSchedule) */
+	public I_C_BPartner getBPartner(@NonNull final I_M_ShipmentSchedule sched)
+	{
+		final I_C_BPartner bpartner = bpartnersById.get(shipmentScheduleEffectiveBL.getC_BPartner_ID(sched));
+		if (bpartner != null)
+		{
+			return bpartner;
+		}
+		return shipmentScheduleEffectiveBL.getBPartner(sched);
+	}
+
+	/** @see IShipmentScheduleAllocDAO#retrieveQtyDelivered(I_M_ShipmentSchedule) */
+	public BigDecimal getQtyDelivered(@NonNull final I_M_ShipmentSchedule sched)
+	{
+		final BigDecimal qtyDelivered = qtyDeliveredByShipmentScheduleId.get(sched.getM_ShipmentSchedule_ID());
+		if (qtyDelivered != null)
+		{
+			return qtyDelivered;
+		}
+		return shipmentScheduleAllocDAO.retrieveQtyDelivered(sched);
+	}
+
+	/**
+	 * Returns the association of the schedule's {@code C_BPartner_ID} and {@code M_Product_ID} for the product's org, or else for org {@code 0}.
+	 *
+	 * @see IBPartnerProductDAO#retrieveBPartnerProductAssociation(Properties, int, int, int)
+	 */
+	public I_C_BPartner_Product getBPartnerProductAssociation(@NonNull final I_M_ShipmentSchedule sched)
+	{
+		final int bpartnerId = sched.getC_BPartner_ID();
+		final int productId = sched.getM_Product_ID();
+		final Integer productOrgId = orgIdsByProductId.get(productId);
+
+		if (productOrgId == null
+				|| !bpartnerProductKeys.contains(ArrayKey.of(bpartnerId, productId)))
+		{
+			final int orgId = productOrgId != null ? productOrgId : sched.getM_Product().getAD_Org_ID();
+			return bpartnerProductDAO.retrieveBPartnerProductAssociation(context.getCtx(), bpartnerId, productId, orgId);
+		}
+
+		I_C_BPartner_Product bpartnerProductForAnyOrg = null;
+		for (final I_C_BPartner_Product bpartnerProduct : bpartnerProductsByBPartnerAndProductId.get(ArrayKey.of(bpartnerId, productId)))
+		{
+			if (bpartnerProduct.getAD_Org_ID() == productOrgId)
+			{
+				return bpartnerProduct;
+			}
+			else if (bpartnerProduct.getAD_Org_ID() == 0 && bpartnerProductForAnyOrg == null)
+			{
+				bpartnerProductForAnyOrg = bpartnerProduct;
+			}
+		}
+		return bpartnerProductForAnyOrg;
+	}
+}
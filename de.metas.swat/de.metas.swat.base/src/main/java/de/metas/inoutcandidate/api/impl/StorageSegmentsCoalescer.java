@@ -0,0 +1,191 @@
+package de.metas.inoutcandidate.api.impl;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.compiere.util.Util.ArrayKey;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import de.metas.storage.IStorageAttributeSegment;
+import de.metas.storage.IStorageSegment;
+import lombok.NonNull;
+import lombok.Value;
+
+/*
+ * #%L
+ * de.metas.swat.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Merges the storage segments which one transaction (or one storage listener notification) collected, before {@link ShipmentSchedulePA#invalidate(Collection)} turns them into SQL.
+ * <p>
+ * A popular product's stock changes many times within the same transaction, and each change comes with its own segment.
+ * Segments which only differ in their products are merged into one segment with all their products, so duplicates vanish and the SQL gets one {@code OR} branch per bpartner/locator/attribute combination.
+ * <p>
+ * The segments are interpreted like {@link ShipmentSchedulePA} does it, e.g. {@code 0}, {@code -1} and {@link IStorageSegment#ANY} mean "all".
+ * Segments without any product, bpartner or locator are dropped, because they don't match any shipment schedule.
+ * A segment with "all" products only subsumes the other products if it restricts something else, because {@link ShipmentSchedulePA} ignores a segment which is "all" in every dimension.
+ */
+final class StorageSegmentsCoalescer
+{
+	private static final ImmutableSet<Integer> ALL = ImmutableSet.of(0);
+
+	public static List<IStorageSegment> coalesce(@NonNull final Collection<IStorageSegment> storageSegments)
+	{
+		final Map<MergeKey, CoalescedStorageSegment> segmentsByKey = new LinkedHashMap<>();
+		for (final IStorageSegment storageSegment : storageSegments)
+		{
+			final Set<Integer> productIds = normalize(storageSegment.getM_Product_IDs());
+			final Set<Integer> bpartnerIds = normalize(storageSegment.getC_BPartner_IDs());
+			final Set<Integer> locatorIds = normalize(storageSegment.getM_Locator_IDs());
+			if (productIds.isEmpty() || bpartnerIds.isEmpty() || locatorIds.isEmpty())
+			{
+				continue;
+			}
+
+			// an empty bill bpartner set means "all", unlike the other dimensions
+			final Set<Integer> billBPartnerIds = normalize(storageSegment.getBill_BPartner_IDs());
+			final ImmutableSet<Integer> billBPartnerIdsToUse = ALL.equals(billBPartnerIds) ? ImmutableSet.of() : ImmutableSet.copyOf(billBPartnerIds);
+
+			final ImmutableSet<IStorageAttributeSegment> attributes = storageSegment.getAttributes() == null ? ImmutableSet.of() : ImmutableSet.copyOf(storageSegment.getAttributes());
+
+			final MergeKey key = new MergeKey(
+					ImmutableSet.copyOf(bpartnerIds),
+					billBPartnerIdsToUse,
+					ImmutableSet.copyOf(locatorIds),
+					attributes.stream()
+							.map(attribute -> ArrayKey.of(attribute.getM_AttributeSetInstance_ID(), attribute.getM_Attribute_ID()))
+							.collect(ImmutableSet.toImmutableSet()));
+
+			segmentsByKey.merge(
+					key,
+					new CoalescedStorageSegment(ImmutableSet.copyOf(productIds), key.getBpartnerIds(), key.getBillBPartnerIds(), key.getLocatorIds(), attributes),
+					CoalescedStorageSegment::mergeProducts);
+		}
+
+		return ImmutableList.copyOf(segmentsByKey.values());
+	}
+
+	/**
+	 * @return {@link #ALL} if the given IDs contain "all"; an empty set if there are no IDs; the positive IDs otherwise
+	 */
+	private static Set<Integer> normalize(final Set<Integer> ids)
+	{
+		if (ids == null || ids.isEmpty())
+		{
+			return ImmutableSet.of();
+		}
+		if (ids.contains(0) || ids.contains(-1) || ids.contains(IStorageSegment.ANY))
+		{
+			return ALL;
+		}
+		return ids;
+	}
+
+	private StorageSegmentsCoalescer()
+	{
+	}
+
+	@Value
+	private static class MergeKey
+	{
+		ImmutableSet<Integer> bpartnerIds;
+		ImmutableSet<Integer> billBPartnerIds;
+		ImmutableSet<Integer> locatorIds;
+		/** the attribute segments don't implement {@code equals()}, so we compare their values */
+		ImmutableSet<ArrayKey> attributeKeys;
+	}
+
+	@Value
+	private static class CoalescedStorageSegment implements IStorageSegment
+	{
+		ImmutableSet<Integer> productIds;
+		ImmutableSet<Integer> bpartnerIds;
+		ImmutableSet<Integer> billBPartnerIds;
+		ImmutableSet<Integer> locatorIds;
+		ImmutableSet<IStorageAttributeSegment> attributes;
+
+		private CoalescedStorageSegment mergeProducts(final CoalescedStorageSegment other)
+		{
+			final ImmutableSet<Integer> mergedProductIds;
+			if (isAllButProducts() && (ALL.equals(productIds) || ALL.equals(other.productIds)))
+			{
+				// ShipmentSchedulePA ignores a segment which is "all" in every dimension,
+				// so here the "all products" segment must not swallow the specific ones; keep the specific products instead
+				mergedProductIds = ALL.equals(productIds) ? other.productIds : productIds;
+			}
+			else if (ALL.equals(productIds) || ALL.equals(other.productIds))
+			{
+				mergedProductIds = ALL;
+			}
+			else
+			{
+				mergedProductIds = ImmutableSet.<Integer> builder().addAll(productIds).addAll(other.productIds).build();
+			}
+			return new CoalescedStorageSegment(mergedProductIds, bpartnerIds, billBPartnerIds, locatorIds, attributes);
+		}
+
+		/**
+		 * @return {@code true} if this segment doesn't restrict anything but its products
+		 */
+		private boolean isAllButProducts()
+		{
+			return ALL.equals(bpartnerIds)
+					&& billBPartnerIds.isEmpty()
+					&& ALL.equals(locatorIds)
+					&& attributes.isEmpty();
+		}
+
+		@Override
+		public Set<Integer> getM_Product_IDs()
+		{
+			return productIds;
+		}
+
+		@Override
+		public Set<Integer> getC_BPartner_IDs()
+		{
+			return bpartnerIds;
+		}
+
+		@Override
+		public Set<Integer> getBill_BPartner_IDs()
+		{
+			return billBPartnerIds;
+		}
+
+		@Override
+		public Set<Integer> getM_Locator_IDs()
+		{
+			return locatorIds;
+		}
+
+		@Override
+		public Set<IStorageAttributeSegment> getAttributes()
+		{
+			return attributes;
+		}
+	}
+}
@@ -44,13 +44,24 @@ public interface IAggregationEngine extends IMultitonService
 {
 	/**
 	 * Returns the aggregation result containing all invoice candidates that were added by preceding addIC calls.
+	 * <p>
+	 * The aggregated candidates are removed from this engine, so a subsequent call only returns candidates that were added in the meantime.
 	 *
-	 * @param loggable may be <code>null</code>. If set, log important stuff to it
-	 * 
 	 * @return created invoice headers VOs
 	 */
 	List<IInvoiceHeader> aggregate();
 
+	/**
+	 * Streaming mode: call this method right before {@link #addInvoiceCandidate(I_C_Invoice_Candidate)}, with invoice candidates ordered by their <code>HeaderAggregationKey</code>
+	 * (like {@link IInvoiceCandDAO#retrieveInvoiceCandidates(org.adempiere.ad.dao.IQueryBuilder)} returns them).
+	 * If the given candidate's <code>HeaderAggregationKey</code> differs from the one of the candidates added so far, those candidates can't end up in the same invoice as any of the following ones.
+	 * So they are aggregated and removed right away, and only the candidates of one header aggregation key are kept in memory at any time.
+	 *
+	 * @return the aggregation result of the candidates added so far, if the given candidate's <code>HeaderAggregationKey</code> changed; an empty list otherwise
+	 * @throws org.adempiere.exceptions.AdempiereException if the candidates of the given candidate's <code>HeaderAggregationKey</code> were already aggregated, i.e. if the candidates are not ordered
+	 */
+	List<IInvoiceHeader> aggregateIfHeaderAggregationKeyChanged(I_C_Invoice_Candidate ic);
+
 	/**
 	 * Adds an {@link I_C_Invoice_Candidate} to be aggregated.
 	 * 
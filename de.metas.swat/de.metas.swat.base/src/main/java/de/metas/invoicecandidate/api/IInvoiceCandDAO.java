@@ -65,6 +65,15 @@ public interface IInvoiceCandDAO extends ISingletonService
 	 */
 	Iterator<I_C_Invoice_Candidate> retrieveIcForSelection(Properties ctx, int AD_PInstance_ID, String trxName);
 
+	/**
+	 * Like {@link #retrieveIcForSelection(Properties, int, String)}, but with a guaranteed iterator, i.e. the candidates are selected and ordered once, before the first one is returned.
+	 * <p>
+	 * Use it if the candidates are changed while iterating and must not be skipped or returned out of order, e.g. for {@link IInvoiceGenerator#setStreamingAggregation(boolean)}.
+	 *
+	 * @return invoice candidate iterator ordered by {@link I_C_Invoice_Candidate#COLUMNNAME_HeaderAggregationKey}
+	 */
+	Iterator<I_C_Invoice_Candidate> retrieveIcForSelectionGuaranteed(Properties ctx, int AD_PInstance_ID, String trxName);
+
 	/**
 	 *
 	 * @param queryBuilder
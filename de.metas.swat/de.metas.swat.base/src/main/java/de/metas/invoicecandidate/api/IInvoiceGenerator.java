@@ -65,4 +65,15 @@ public interface IInvoiceGenerator
 
 	IInvoiceGenerator setInvoicingParams(IInvoicingParams invoicingParams);
 
+	/**
+	 * If set, the candidates given to {@link #generateInvoices(Iterator)} need to be ordered by their <code>HeaderAggregationKey</code>.
+	 * Because the candidates are updated while invoicing, the iterator needs to be a guaranteed one (e.g. {@link IInvoiceCandDAO#retrieveIcForSelectionGuaranteed(Properties, int, String)}).
+	 * Each invoice is then created as soon as all its candidates were aggregated, so only the candidates of one invoice are kept in memory, no matter how many are invoiced.
+	 * <p>
+	 * Ignored if the {@link IInvoicingParams} require all candidates to be aggregated first (i.e. if they are consolidated, assumed to end up in one invoice or checked against an expected net amount).
+	 *
+	 * @see IAggregationEngine#aggregateIfHeaderAggregationKeyChanged(I_C_Invoice_Candidate)
+	 */
+	IInvoiceGenerator setStreamingAggregation(boolean streamingAggregation);
+
 }
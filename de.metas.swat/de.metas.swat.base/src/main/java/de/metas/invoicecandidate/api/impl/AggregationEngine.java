@@ -24,9 +24,11 @@ package de.metas.invoicecandidate.api.impl;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
 
@@ -52,6 +54,8 @@ import org.compiere.util.Env;
 import org.compiere.util.Evaluatee2;
 import org.slf4j.Logger;
 
+import com.google.common.collect.ImmutableList;
+
 import de.metas.aggregation.api.IAggregationFactory;
 import de.metas.aggregation.api.IAggregationKey;
 import de.metas.aggregation.api.IAggregationKeyBuilder;
@@ -99,6 +103,14 @@ public class AggregationEngine implements IAggregationEngine
 	private final Map<IAggregationKey, InvoiceHeaderAndLineAggregators> key2headerAndAggregators = new LinkedHashMap<>();
 	private boolean alwaysUseDefaultHeaderAggregationKeyBuilder = false;
 
+	/**
+	 * Streaming mode: the (unparsed) HeaderAggregationKey of the candidates which were added since the last aggregation, and all keys which were already streamed so far.
+	 *
+	 * @see #aggregateIfHeaderAggregationKeyChanged(I_C_Invoice_Candidate)
+	 */
+	private String streamingHeaderAggregationKey = null;
+	private final Set<String> streamedHeaderAggregationKeys = new HashSet<>();
+
 	@Override
 	public String toString()
 	{
@@ -373,6 +385,32 @@ public class AggregationEngine implements IAggregationEngine
 		invoiceHeader.setM_InOut_ID(inoutId);
 	}
 
+	@Override
+	public List<IInvoiceHeader> aggregateIfHeaderAggregationKeyChanged(@NonNull final I_C_Invoice_Candidate ic)
+	{
+		// note: we compare the unparsed key, because one candidate can end up in several headers (one per inout) which are all complete once the next key starts
+		final String headerAggregationKey = getHeaderAggregationKey(ic).getAggregationKeyString();
+		if (!streamedHeaderAggregationKeys.isEmpty() && Objects.equals(headerAggregationKey, streamingHeaderAggregationKey))
+		{
+			return ImmutableList.of();
+		}
+
+		if (!streamedHeaderAggregationKeys.add(headerAggregationKey))
+		{
+			throw new AdempiereException("The invoice candidates are not ordered by their header aggregation key; the candidates of that key were already aggregated")
+					.appendParametersToMessage()
+					.setParameter("HeaderAggregationKey", headerAggregationKey)
+					.setParameter("C_Invoice_Candidate", ic);
+		}
+		streamingHeaderAggregationKey = headerAggregationKey;
+
+		if (key2headerAndAggregators.isEmpty())
+		{
+			return ImmutableList.of();
+		}
+		return aggregate();
+	}
+
 	@Override
 	public List<IInvoiceHeader> aggregate()
 	{
@@ -396,6 +434,9 @@ public class AggregationEngine implements IAggregationEngine
 			invoiceHeaders.add(invoiceHeader);
 		}
 
+		// release the aggregated candidates; in streaming mode, they would pile up otherwise
+		key2headerAndAggregators.clear();
+
 		return invoiceHeaders;
 	}
 
@@ -503,12 +503,14 @@ public class InvoiceCandBL implements IInvoiceCandBL
 			final String trxName)
 	{
 		final IInvoiceCandDAO invoiceCandDAO = Services.get(IInvoiceCandDAO.class);
-		final Iterator<I_C_Invoice_Candidate> candidates = invoiceCandDAO.retrieveIcForSelection(ctx, AD_PInstance_ID, trxName);
+		// streaming aggregation needs the candidates in a stable HeaderAggregationKey order, even though we update them while iterating
+		final Iterator<I_C_Invoice_Candidate> candidates = invoiceCandDAO.retrieveIcForSelectionGuaranteed(ctx, AD_PInstance_ID, trxName);
 
 		return generateInvoices()
 				.setContext(ctx, trxName)
 				.setIgnoreInvoiceSchedule(ignoreInvoiceSchedule)
 				.setLoggable(loggable)
+				.setStreamingAggregation(true) // the candidates are ordered by HeaderAggregationKey
 				.generateInvoices(candidates);
 	}
 
@@ -34,12 +34,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
+import org.adempiere.ad.dao.IQueryBL;
 import org.adempiere.ad.trx.api.ITrx;
 import org.adempiere.ad.trx.api.ITrxListenerManager.TrxEventTiming;
 import org.adempiere.ad.trx.api.ITrxManager;
@@ -59,19 +61,21 @@ import org.compiere.model.I_C_Tax;
 import org.compiere.model.I_M_AttributeInstance;
 import org.compiere.model.I_M_AttributeSetInstance;
 import org.compiere.model.I_M_InOutLine;
+import org.compiere.model.MInvoiceLine;
 import org.compiere.util.DB;
 import org.compiere.util.Env;
 import org.compiere.util.TrxRunnable;
 import org.compiere.util.TrxRunnable2;
 import org.slf4j.Logger;
 
+import com.google.common.collect.ImmutableMap;
+
 import de.metas.adempiere.model.I_C_InvoiceLine;
 import de.metas.adempiere.model.I_C_Order;
 import de.metas.document.engine.IDocument;
 import de.metas.document.engine.IDocumentBL;
 import de.metas.i18n.IADMessageDAO;
 import de.metas.i18n.IMsgBL;
-import de.metas.interfaces.I_C_OrderLine;
 import de.metas.invoice.IMatchInvBL;
 import de.metas.invoicecandidate.api.IAggregationEngine;
 import de.metas.invoicecandidate.api.IInvoiceCandAggregate;
@@ -119,6 +123,7 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 	private ILoggable loggable = NullLoggable.instance; // default, so avoid an NPE
 	private IInvoicingParams _invoicingParams;
 	private IInvoiceGenerateResult _collector;
+	private boolean streamingAggregation = false;
 
 	/**
 	 * Implementations of this interface are responsible for converting a given {@link IInvoiceHeader} to an {@link I_C_Invoice} with lines and process it.
@@ -207,6 +212,12 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 			// We are preventing lines renumbering if there is at least one invoice with a fixed LineNo set (which actually comes from invoice candidate).
 			invoiceBL.renumberLines(lines, 10);
 
+			//
+			// The lines were saved without updating the invoice's taxes and totals each time.
+			// We don't need to do it here either, because completing the invoice does it for all lines at once (MInvoice.prepareIt() => calculateTaxTotal()),
+			// and nothing in between reads them.
+			lines.forEach(line -> MInvoiceLine.DYNATTR_SkipUpdateHeaderTax.setValue(line, null));
+
 			// task 08926: on invoice creation
 			final List<I_C_Invoice_Candidate> allCands = new ArrayList<>();
 
@@ -371,6 +382,8 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 			// NOTE: we are not relying on IInvoiceLineRW's equals() method because it could be that they "look" the same but they are not.
 			final Set<IInvoiceLineRW> processedLines = new IdentityHashSet<>();
 
+			final Map<Integer, Integer> iciolId2inOutLineId = retrieveInOutLineIdsForSingleIciols(aggregates, trxName);
+
 			for (final IInvoiceCandAggregate aggregate : aggregates)
 			{
 				// In case of a problem, this two variables are used to hand the problematic candidates and the
@@ -382,7 +395,7 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 				// The invoice lines from 'aggregate' are generated in a common trx runner.
 				// That way we can undo all invoice lines if the creation of one of them fails.
 				final DefaultInvoiceLineGeneratorRunnable genLines = new DefaultInvoiceLineGeneratorRunnable(invoice,
-						aggregate, processedLines,
+						aggregate, processedLines, iciolId2inOutLineId,
 						errorCandidates, errorException,
 						trxName);
 
@@ -395,6 +408,39 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 
 			return createdLines;
 		}
+
+		/**
+		 * Loads the <code>M_InOutLine_ID</code>s of all invoice lines with exactly one IC-IOL association in one query, instead of loading them line by line.
+		 *
+		 * @return <code>C_InvoiceCandidate_InOutLine_ID</code> to <code>M_InOutLine_ID</code>
+		 */
+		private Map<Integer, Integer> retrieveInOutLineIdsForSingleIciols(final List<IInvoiceCandAggregate> aggregates, final String trxName)
+		{
+			final Set<Integer> iciolIds = new HashSet<>();
+			for (final IInvoiceCandAggregate aggregate : aggregates)
+			{
+				for (final IInvoiceLineRW ilVO : aggregate.getAllLines())
+				{
+					final Collection<Integer> iciolIdsOfLine = ilVO.getC_InvoiceCandidate_InOutLine_IDs();
+					if (iciolIdsOfLine.size() == 1)
+					{
+						iciolIds.addAll(iciolIdsOfLine);
+					}
+				}
+			}
+			if (iciolIds.isEmpty())
+			{
+				return ImmutableMap.of();
+			}
+
+			return Services.get(IQueryBL.class)
+					.createQueryBuilder(I_C_InvoiceCandidate_InOutLine.class, ctx, trxName)
+					.addInArrayFilter(I_C_InvoiceCandidate_InOutLine.COLUMNNAME_C_InvoiceCandidate_InOutLine_ID, iciolIds)
+					.create()
+					.list(I_C_InvoiceCandidate_InOutLine.class)
+					.stream()
+					.collect(ImmutableMap.toImmutableMap(I_C_InvoiceCandidate_InOutLine::getC_InvoiceCandidate_InOutLine_ID, I_C_InvoiceCandidate_InOutLine::getM_InOutLine_ID));
+		}
 	}
 
 	private void setInvoiceLineNo(final I_C_InvoiceLine invoiceLine, final int lineNo)
@@ -458,10 +504,11 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 		private final AdempiereException[] errorException;
 		private final IInvoiceCandAggregate aggregate;
 		private final Set<IInvoiceLineRW> processedLines;
+		private final Map<Integer, Integer> iciolId2inOutLineId;
 		private final String trxName;
 
 		private DefaultInvoiceLineGeneratorRunnable(final I_C_Invoice invoice,
-				final IInvoiceCandAggregate aggregate, final Set<IInvoiceLineRW> processedLines,
+				final IInvoiceCandAggregate aggregate, final Set<IInvoiceLineRW> processedLines, final Map<Integer, Integer> iciolId2inOutLineId,
 				final List<I_C_Invoice_Candidate> errorCandidates, final AdempiereException[] errorException,
 				final String trxName)
 		{
@@ -472,6 +519,7 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 			this.errorException = errorException;
 			this.aggregate = aggregate;
 			this.processedLines = processedLines;
+			this.iciolId2inOutLineId = iciolId2inOutLineId;
 			this.trxName = trxName;
 		}
 
@@ -516,7 +564,6 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 				}
 
 				final I_C_InvoiceLine invoiceLine = invoiceBL.createLine(invoice);
-				final Properties ilCtx = InterfaceWrapperHelper.getCtx(invoiceLine);
 				final String ilTrxName = InterfaceWrapperHelper.getTrxName(invoiceLine);
 				Check.assume(
 						trxName.equals(ilTrxName),
@@ -534,11 +581,7 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 				{
 					//
 					// Special case: we can retain the 1:n relation between C_OrderLine and C_InvoiceLine
-					final I_C_OrderLine orderLine = create(ilCtx, orderLineId, I_C_OrderLine.class, ilTrxName);
-
-					//
-					// Note that this also sets the order line's C_Tax_ID
-					invoiceLine.setC_OrderLine_ID(orderLine.getC_OrderLine_ID());
+					invoiceLine.setC_OrderLine_ID(orderLineId);
 
 					// // 07242
 					// // Also set the tax from the orderLine
@@ -562,8 +605,16 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 				{
 					// Note: further down, we also deal with the case of iciolIds.size()>1
 					final int iciolId = iciolIds.iterator().next();
-					final I_C_InvoiceCandidate_InOutLine iciol = create(ilCtx, iciolId, I_C_InvoiceCandidate_InOutLine.class, ilTrxName);
-					invoiceLine.setM_InOutLine_ID(iciol.getM_InOutLine_ID());
+					final Integer inOutLineId = iciolId2inOutLineId.get(iciolId);
+					if (inOutLineId != null)
+					{
+						invoiceLine.setM_InOutLine_ID(inOutLineId);
+					}
+					else
+					{
+						final I_C_InvoiceCandidate_InOutLine iciol = create(InterfaceWrapperHelper.getCtx(invoiceLine), iciolId, I_C_InvoiceCandidate_InOutLine.class, ilTrxName);
+						invoiceLine.setM_InOutLine_ID(iciol.getM_InOutLine_ID());
+					}
 
 					// we rely on MInvoice.complete() to create the M_MatchInv record for PO and SO-Invoices, so don't create them again here.
 					matchInvCreatedElsewhere = true;
@@ -625,7 +676,9 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 				try
 				{
 					//
-					// Actually save the invoice line
+					// Actually save the invoice line.
+					// Don't recalculate the invoice's taxes and totals for each line; completing the invoice does it once for all lines (MInvoice.prepareIt()).
+					MInvoiceLine.DYNATTR_SkipUpdateHeaderTax.setValue(invoiceLine, true);
 					save(invoiceLine);
 
 					//
@@ -783,15 +836,13 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 
 		// get our service instance to aggregate the invoice candidates
 		final IAggregationEngine aggregationEngine = newAggregationEngine();
-
-		final List<I_C_Invoice_Candidate> icToUnlock = new ArrayList<>();
+		final boolean streamingAggregation = isStreamingAggregation();
 
 		//
 		// Iterate invoice candidates and add them to aggregation engine
 		while (invoiceCandidates.hasNext())
 		{
 			final I_C_Invoice_Candidate ic = invoiceCandidates.next();
-			icToUnlock.add(ic);
 
 			// Skip invoice candidate if we are adviced to do so
 			// TODO: i think this checking is no longer needed because we are doing it when enqueueing
@@ -800,6 +851,12 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 				continue;
 			}
 
+			// if 'ic' starts a new header aggregation key, then invoice the candidates of the previous key right away
+			if (streamingAggregation)
+			{
+				invoice(aggregationEngine.aggregateIfHeaderAggregationKeyChanged(ic));
+			}
+
 			// add 'ic' to our aggregation
 			try
 			{
@@ -855,6 +912,11 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 					aggregationResult.size(), aggregationResult);
 		}
 
+		invoice(aggregationResult);
+	}
+
+	private void invoice(final List<IInvoiceHeader> aggregationResult)
+	{
 		//
 		// generate an invoice for each aggregate (i.e. 'header')
 		for (final IInvoiceHeader header : aggregationResult)
@@ -1149,4 +1211,30 @@ public class InvoiceCandBLCreateInvoices implements IInvoiceGenerator
 	{
 		return _invoicingParams;
 	}
+
+	@Override
+	public InvoiceCandBLCreateInvoices setStreamingAggregation(final boolean streamingAggregation)
+	{
+		this.streamingAggregation = streamingAggregation;
+		return this;
+	}
+
+	private final boolean isStreamingAggregation()
+	{
+		if (!streamingAggregation)
+		{
+			return false;
+		}
+
+		// all of these need the whole aggregation result before the first invoice may be created
+		final IInvoicingParams invoicingParams = getInvoicingParams();
+		if (invoicingParams == null)
+		{
+			return true;
+		}
+		final BigDecimal expectedNetAmtToInvoice = invoicingParams.getCheck_NetAmtToInvoice();
+		return !invoicingParams.isConsolidateApprovedICs()
+				&& !invoicingParams.isAssumeOneInvoice()
+				&& (expectedNetAmtToInvoice == null || expectedNetAmtToInvoice.signum() == 0);
+	}
 }
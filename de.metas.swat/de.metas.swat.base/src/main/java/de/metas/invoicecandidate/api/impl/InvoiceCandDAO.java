@@ -36,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
@@ -48,6 +49,7 @@ import org.adempiere.ad.dao.IQueryBuilder;
 import org.adempiere.ad.dao.IQueryOrderBy.Direction;
 import org.adempiere.ad.dao.IQueryOrderBy.Nulls;
 import org.adempiere.ad.dao.IQueryOrderByBuilder;
+import org.adempiere.ad.dao.impl.ModelColumnNameValue;
 import org.adempiere.ad.persistence.ModelDynAttributeAccessor;
 import org.adempiere.ad.security.IUserRolePermissions;
 import org.adempiere.ad.table.api.IADTableDAO;
@@ -73,6 +75,7 @@ import org.compiere.util.Env;
 import org.compiere.util.TimeUtil;
 import org.slf4j.Logger;
 
+import com.google.common.base.MoreObjects;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -109,11 +112,26 @@ public class InvoiceCandDAO implements IInvoiceCandDAO
 {
 	private final transient Logger logger = InvoiceCandidate_Constants.getLogger(InvoiceCandDAO.class);
 
+	private static final InvalidationStatistics invalidationStatistics = new InvalidationStatistics();
+
 	private static final ModelDynAttributeAccessor<I_C_Invoice_Candidate, Boolean> DYNATTR_IC_Avoid_Recreate //
 			= new ModelDynAttributeAccessor<>(IInvoiceCandDAO.class.getName() + "Avoid_Recreate", Boolean.class);
 
 	@Override
 	public final Iterator<I_C_Invoice_Candidate> retrieveIcForSelection(final Properties ctx, final int AD_PInstance_ID, final String trxName)
+	{
+		final boolean guaranteedIteratorRequired = false;
+		return retrieveIcForSelection(ctx, AD_PInstance_ID, guaranteedIteratorRequired, trxName);
+	}
+
+	@Override
+	public final Iterator<I_C_Invoice_Candidate> retrieveIcForSelectionGuaranteed(final Properties ctx, final int AD_PInstance_ID, final String trxName)
+	{
+		final boolean guaranteedIteratorRequired = true;
+		return retrieveIcForSelection(ctx, AD_PInstance_ID, guaranteedIteratorRequired, trxName);
+	}
+
+	private final Iterator<I_C_Invoice_Candidate> retrieveIcForSelection(final Properties ctx, final int AD_PInstance_ID, final boolean guaranteedIteratorRequired, final String trxName)
 	{
 		// Note that we can't filter by IsError in the where clause, because it wouldn't work with pagination.
 		// Background is that the number of candidates with "IsError=Y" might increase during the run.
@@ -122,7 +140,7 @@ public class InvoiceCandDAO implements IInvoiceCandDAO
 				.createQueryBuilder(I_C_Invoice_Candidate.class, ctx, trxName)
 				.setOnlySelection(AD_PInstance_ID);
 
-		return retrieveInvoiceCandidates(queryBuilder);
+		return retrieveInvoiceCandidates(queryBuilder, guaranteedIteratorRequired);
 	}
 
 	@Override
@@ -145,6 +163,14 @@ public class InvoiceCandDAO implements IInvoiceCandDAO
 	@Override
 	public <T extends I_C_Invoice_Candidate> Iterator<T> retrieveInvoiceCandidates(
 			@NonNull final IQueryBuilder<T> queryBuilder)
+	{
+		final boolean guaranteedIteratorRequired = false;
+		return retrieveInvoiceCandidates(queryBuilder, guaranteedIteratorRequired);
+	}
+
+	private <T extends I_C_Invoice_Candidate> Iterator<T> retrieveInvoiceCandidates(
+			@NonNull final IQueryBuilder<T> queryBuilder,
+			final boolean guaranteedIteratorRequired)
 	{
 		//
 		// Make sure we are retrieving in a order which is friendly for processing
@@ -160,8 +186,10 @@ public class InvoiceCandDAO implements IInvoiceCandDAO
 				.addColumn(I_C_Invoice_Candidate.COLUMNNAME_C_Invoice_Candidate_ID);
 		//
 		// Retrieve invoice candidates
+		// NOTE: a not guaranteed iterator is faster, but it pages through the current query result.
+		// So if the candidates are changed while iterating, some of them could be skipped or returned out of order.
 		return queryBuilder.create()
-				.setOption(IQuery.OPTION_GuaranteedIteratorRequired, false)
+				.setOption(IQuery.OPTION_GuaranteedIteratorRequired, guaranteedIteratorRequired)
 				.setOption(IQuery.OPTION_IteratorBufferSize, 500)
 				.iterate(queryBuilder.getModelClass());
 	}
@@ -569,8 +597,8 @@ public class InvoiceCandDAO implements IInvoiceCandDAO
 	}
 
 	/**
-	 * Adds a record to {@link I_C_Invoice_Candidate_Recompute} to mark the given invoice candidate as invalid. This insertion doesn't interfere with other transactions. It's no problem if two of more
-	 * concurrent transactions insert a record for the same invoice candidate.
+	 * Adds a record to {@link I_C_Invoice_Candidate_Recompute} to mark the given invoice candidate as invalid, unless it already has a not yet tagged one (see {@link #invalidateCandsFor(IQuery)}).
+	 * It's no problem if two of more concurrent transactions insert a record for the same invoice candidate.
 	 *
 	 * @param ic
 	 */
@@ -606,10 +634,29 @@ public class InvoiceCandDAO implements IInvoiceCandDAO
 		invalidateCandsFor(icQuery);
 	}
 
+	/**
+	 * Inserts one {@link I_C_Invoice_Candidate_Recompute} record for each matching invoice candidate that does not yet have a not yet tagged one.
+	 * <p>
+	 * An invoice candidate with a not yet tagged record doesn't need another one, because it is going to be updated anyways.
+	 * However, an updater might tag that record and load the candidate before our transaction is committed, and would then miss our change.
+	 * That's why we first lock those records (see {@link #lockNotYetTaggedRecomputeRecords(IQuery)}), so the updater has to wait for our commit before it can tag them.
+	 * An invoice candidate with only tagged records gets a new one, because the updater might have loaded it before our change.
+	 */
 	@Override
 	public final void invalidateCandsFor(@NonNull final IQuery<I_C_Invoice_Candidate> icQuery)
 	{
-		final int count = icQuery.insertDirectlyInto(I_C_Invoice_Candidate_Recompute.class)
+		final Properties ctx = icQuery.getCtx();
+		final String trxName = icQuery.getTrxName();
+
+		final int countLocked = lockNotYetTaggedRecomputeRecords(icQuery);
+
+		final IQuery<I_C_Invoice_Candidate> notYetInvalidatedICsQuery = Services.get(IQueryBL.class)
+				.createQueryBuilder(I_C_Invoice_Candidate.class, ctx, trxName)
+				.addInSubQueryFilter(I_C_Invoice_Candidate.COLUMN_C_Invoice_Candidate_ID, I_C_Invoice_Candidate.COLUMN_C_Invoice_Candidate_ID, icQuery)
+				.addNotInSubQueryFilter(I_C_Invoice_Candidate.COLUMN_C_Invoice_Candidate_ID, I_C_Invoice_Candidate_Recompute.COLUMN_C_Invoice_Candidate_ID, createNotYetTaggedRecomputeQuery(ctx, trxName))
+				.create();
+
+		final int count = notYetInvalidatedICsQuery.insertDirectlyInto(I_C_Invoice_Candidate_Recompute.class)
 				.mapColumn(I_C_Invoice_Candidate_Recompute.COLUMNNAME_C_Invoice_Candidate_ID, I_C_Invoice_Candidate.COLUMNNAME_C_Invoice_Candidate_ID)
 				// NOTE: not setting the AD_PInstance_ID to null, because:
 				// 1. that's the default
@@ -618,17 +665,58 @@ public class InvoiceCandDAO implements IInvoiceCandDAO
 				.execute()
 				.getRowsInserted();
 
-		logger.debug("Invalidated {} invoice candidates for {}", new Object[] { count, icQuery });
+		logger.debug("Invalidated {} invoice candidates for {}; {} were already invalid", count, icQuery, countLocked);
+		invalidationStatistics.recordInvalidation(count, countLocked);
 
 		//
 		// Schedule an update for invalidated invoice candidates
+		// NOTE: the scheduler collects all requests of a transaction and enqueues one workpackage on commit
 		if (count > 0)
 		{
-			final IInvoiceCandUpdateSchedulerRequest request = InvoiceCandUpdateSchedulerRequest.of(icQuery.getCtx(), icQuery.getTrxName());
+			final IInvoiceCandUpdateSchedulerRequest request = InvoiceCandUpdateSchedulerRequest.of(ctx, trxName);
 			Services.get(IInvoiceCandUpdateSchedulerService.class).scheduleForUpdate(request);
 		}
 	}
 
+	/**
+	 * Updates the not yet tagged recompute records of the given invoice candidates without changing them, only to lock them until our transaction is committed.
+	 * <p>
+	 * If an updater wants to tag one of them in the meantime, its update has to wait for our commit, so it will load the invoice candidate including our change.
+	 * If an updater already tagged one of them, our update skips it, so the subsequent insert creates a new record for the respective invoice candidate.
+	 *
+	 * @return the number of records which are locked, i.e. of invalidations which were coalesced with a pending one
+	 */
+	private static int lockNotYetTaggedRecomputeRecords(@NonNull final IQuery<I_C_Invoice_Candidate> icQuery)
+	{
+		return Services.get(IQueryBL.class)
+				.createQueryBuilder(I_C_Invoice_Candidate_Recompute.class, icQuery.getCtx(), icQuery.getTrxName())
+				.addEqualsFilter(I_C_Invoice_Candidate_Recompute.COLUMN_AD_PInstance_ID, null)
+				.addInSubQueryFilter(I_C_Invoice_Candidate_Recompute.COLUMN_C_Invoice_Candidate_ID, I_C_Invoice_Candidate.COLUMN_C_Invoice_Candidate_ID, icQuery)
+				.create()
+				.updateDirectly()
+				.addSetColumnValue(I_C_Invoice_Candidate_Recompute.COLUMNNAME_C_Invoice_Candidate_ID, ModelColumnNameValue.forColumn(I_C_Invoice_Candidate_Recompute.COLUMN_C_Invoice_Candidate_ID))
+				.execute();
+	}
+
+	/**
+	 * @return the recompute records which were not yet picked up by an {@link InvoiceCandInvalidUpdater}.
+	 */
+	private static IQuery<I_C_Invoice_Candidate_Recompute> createNotYetTaggedRecomputeQuery(final Properties ctx, final String trxName)
+	{
+		return Services.get(IQueryBL.class)
+				.createQueryBuilder(I_C_Invoice_Candidate_Recompute.class, ctx, trxName)
+				.addEqualsFilter(I_C_Invoice_Candidate_Recompute.COLUMN_AD_PInstance_ID, null)
+				.create();
+	}
+
+	/**
+	 * @return counters about the invalidations since the JVM was started, e.g. to see how many duplicate invalidations were coalesced
+	 */
+	public InvalidationStatistics getInvalidationStatistics()
+	{
+		return invalidationStatistics;
+	}
+
 	@Override
 	public final void invalidateCandsForHeaderAggregationKey(final Properties ctx, final String headerAggregationKey, final String trxName)
 	{
@@ -737,16 +825,10 @@ public class InvoiceCandDAO implements IInvoiceCandDAO
 	{
 		final IQueryBL queryBL = Services.get(IQueryBL.class);
 
-		final IQuery<I_C_Invoice_Candidate_Recompute> alreadyInvalidatedICsQuery = queryBL
-				.createQueryBuilder(I_C_Invoice_Candidate_Recompute.class, ctx, trxName)
-				.create();
-
 		final IQueryBuilder<I_C_Invoice_Candidate> icQueryBuilder = queryBL
 				.createQueryBuilder(I_C_Invoice_Candidate.class, ctx, trxName)
 				// Not already processed
-				.addEqualsFilter(I_C_Invoice_Candidate.COLUMN_Processed, false)
-				// Not already invalidated
-				.addNotInSubQueryFilter(I_C_Invoice_Candidate.COLUMN_C_Invoice_Candidate_ID, I_C_Invoice_Candidate_Recompute.COLUMN_C_Invoice_Candidate_ID, alreadyInvalidatedICsQuery);
+				.addEqualsFilter(I_C_Invoice_Candidate.COLUMN_Processed, false);
 
 		invalidateCandsFor(icQueryBuilder);
 		// logger.info("Invalidated {} records", count);
@@ -844,6 +926,21 @@ public class InvoiceCandDAO implements IInvoiceCandDAO
 
 	private final IQueryBuilder<I_C_Invoice_Candidate_Recompute> retrieveInvoiceCandidatesRecomputeFor(
 			@NonNull final InvoiceCandRecomputeTagger tagRequest)
+	{
+		final IQueryBuilder<I_C_Invoice_Candidate_Recompute> queryBuilder = retrieveInvoiceCandidatesRecomputeWithoutLimitFor(tagRequest);
+
+		//
+		// Limit maximum number of invalid invoice candidates to tag for updating
+		if (tagRequest.getLimit() > 0)
+		{
+			queryBuilder.setLimit(tagRequest.getLimit());
+		}
+
+		return queryBuilder;
+	}
+
+	private final IQueryBuilder<I_C_Invoice_Candidate_Recompute> retrieveInvoiceCandidatesRecomputeWithoutLimitFor(
+			@NonNull final InvoiceCandRecomputeTagger tagRequest)
 	{
 		final Properties ctx = tagRequest.getCtx();
 		final String trxName = tagRequest.getTrxName();
@@ -880,13 +977,6 @@ public class InvoiceCandDAO implements IInvoiceCandDAO
 			}
 		}
 
-		//
-		// Limit maximum number of invalid invoice candidates to tag for updating
-		if (tagRequest.getLimit() > 0)
-		{
-			queryBuilder.setLimit(tagRequest.getLimit());
-		}
-
 		return queryBuilder;
 	}
 
@@ -904,6 +994,26 @@ public class InvoiceCandDAO implements IInvoiceCandDAO
 		logger.debug("Query: {}", query);
 		logger.debug("Tagger: {}", tagRequest);
 
+		//
+		// Coalesce duplicate invalidations: if we hit the limit, also tag the remaining records of the invoice candidates we just tagged,
+		// because they are going to be updated anyways. Without a limit, we already tagged all of them.
+		if (tagRequest.getLimit() > 0 && count > 0)
+		{
+			final IQuery<I_C_Invoice_Candidate_Recompute> taggedQuery = Services.get(IQueryBL.class)
+					.createQueryBuilder(I_C_Invoice_Candidate_Recompute.class, tagRequest.getCtx(), tagRequest.getTrxName())
+					.addEqualsFilter(I_C_Invoice_Candidate_Recompute.COLUMN_AD_PInstance_ID, recomputeTag.getAD_PInstance_ID())
+					.create();
+			final int countIncludingDuplicates = retrieveInvoiceCandidatesRecomputeWithoutLimitFor(tagRequest)
+					.addInSubQueryFilter(I_C_Invoice_Candidate_Recompute.COLUMN_C_Invoice_Candidate_ID, I_C_Invoice_Candidate_Recompute.COLUMN_C_Invoice_Candidate_ID, taggedQuery)
+					.create()
+					.updateDirectly()
+					.addSetColumnValue(I_C_Invoice_Candidate_Recompute.COLUMNNAME_AD_PInstance_ID, recomputeTag.getAD_PInstance_ID())
+					.execute();
+			logger.debug("Marked {} {} records of the same invoice candidates with recompute tag={}", countIncludingDuplicates, I_C_Invoice_Candidate_Recompute.Table_Name, recomputeTag);
+
+			return countIncludingDuplicates;
+		}
+
 		return count;
 	}
 
@@ -948,6 +1058,12 @@ public class InvoiceCandDAO implements IInvoiceCandDAO
 		final int count = query.deleteDirectly();
 		logger.debug("Deleted {} {} entries for tag={}, onlyInvoiceCandidateIds={}", count, I_C_Invoice_Candidate_Recompute.Table_Name, recomputeTag, onlyInvoiceCandidateIds);
 		logger.debug("Query: {}", query);
+
+		// here we know how many invoice candidates were updated, so every additional record was a duplicate invalidation
+		if (!Check.isEmpty(onlyInvoiceCandidateIds))
+		{
+			invalidationStatistics.recordCoalesced(count - ImmutableSet.copyOf(onlyInvoiceCandidateIds).size());
+		}
 	}
 
 	protected final int untag(@NonNull final InvoiceCandRecomputeTagger tagger)
@@ -1393,6 +1509,74 @@ public class InvoiceCandDAO implements IInvoiceCandDAO
 		invalidateCandsFor(icQueryBuilder);
 	}
 
+	/**
+	 * Counters about {@link InvoiceCandDAO}'s invalidations.
+	 */
+	public static final class InvalidationStatistics
+	{
+		private final AtomicLong invalidationsCount = new AtomicLong();
+		private final AtomicLong invalidatedCandidatesCount = new AtomicLong();
+		private final AtomicLong alreadyInvalidatedCandidatesCount = new AtomicLong();
+		private final AtomicLong coalescedRecomputeRecordsCount = new AtomicLong();
+
+		private InvalidationStatistics()
+		{
+		}
+
+		private void recordInvalidation(final int invalidatedCandidates, final int alreadyInvalidatedCandidates)
+		{
+			invalidationsCount.incrementAndGet();
+			invalidatedCandidatesCount.addAndGet(invalidatedCandidates);
+			alreadyInvalidatedCandidatesCount.addAndGet(alreadyInvalidatedCandidates);
+		}
+
+		private void recordCoalesced(final int coalescedRecomputeRecords)
+		{
+			if (coalescedRecomputeRecords > 0)
+			{
+				coalescedRecomputeRecordsCount.addAndGet(coalescedRecomputeRecords);
+			}
+		}
+
+		/** @return how many times invoice candidates were invalidated */
+		public long getInvalidationsCount()
+		{
+			return invalidationsCount.get();
+		}
+
+		/** @return how many {@link I_C_Invoice_Candidate_Recompute} records were inserted */
+		public long getInvalidatedCandidatesCount()
+		{
+			return invalidatedCandidatesCount.get();
+		}
+
+		/** @return how many invoice candidates did not get another {@link I_C_Invoice_Candidate_Recompute} record, because they already had a not yet tagged one */
+		public long getAlreadyInvalidatedCandidatesCount()
+		{
+			return alreadyInvalidatedCandidatesCount.get();
+		}
+
+		/**
+		 * @return how many {@link I_C_Invoice_Candidate_Recompute} records were deleted after an update in addition to the one record per updated invoice candidate,
+		 *         i.e. how many duplicate invalidations did not cause an additional update
+		 */
+		public long getCoalescedRecomputeRecordsCount()
+		{
+			return coalescedRecomputeRecordsCount.get();
+		}
+
+		@Override
+		public String toString()
+		{
+			return MoreObjects.toStringHelper(this)
+					.add("invalidations", invalidationsCount)
+					.add("invalidatedCandidates", invalidatedCandidatesCount)
+					.add("alreadyInvalidatedCandidates", alreadyInvalidatedCandidatesCount)
+					.add("coalescedRecomputeRecords", coalescedRecomputeRecordsCount)
+					.toString();
+		}
+	}
+
 	@Override
 	public final boolean isToRecompute(final I_C_Invoice_Candidate ic)
 	{
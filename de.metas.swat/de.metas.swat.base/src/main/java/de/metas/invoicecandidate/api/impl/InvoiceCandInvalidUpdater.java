@@ -26,7 +26,16 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.adempiere.ad.trx.api.ITrx;
 import org.adempiere.ad.trx.api.ITrxManager;
@@ -38,10 +47,20 @@ import org.adempiere.exceptions.AdempiereException;
 import org.adempiere.model.InterfaceWrapperHelper;
 import org.adempiere.service.ISysConfigBL;
 import org.adempiere.util.Check;
+import org.adempiere.util.ILoggable;
 import org.adempiere.util.Loggables;
 import org.adempiere.util.Services;
+import org.adempiere.util.concurrent.CustomizableThreadFactory;
 import org.adempiere.util.lang.IAutoCloseable;
 import org.adempiere.util.lang.IContextAware;
+import org.compiere.Adempiere;
+import org.compiere.util.Env;
+import org.slf4j.Logger;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import de.metas.inout.IInOutDAO;
 import de.metas.invoicecandidate.api.IInvoiceCandDAO;
@@ -49,6 +68,7 @@ import de.metas.invoicecandidate.api.IInvoiceCandInvalidUpdater;
 import de.metas.invoicecandidate.api.IInvoiceCandRecomputeTagger;
 import de.metas.invoicecandidate.api.IInvoiceCandidateHandlerBL;
 import de.metas.invoicecandidate.api.InvoiceCandRecomputeTag;
+import de.metas.invoicecandidate.api.InvoiceCandidate_Constants;
 import de.metas.invoicecandidate.model.I_C_InvoiceCandidate_InOutLine;
 import de.metas.invoicecandidate.model.I_C_Invoice_Candidate;
 import de.metas.invoicecandidate.model.I_M_InOutLine;
@@ -59,7 +79,7 @@ import lombok.NonNull;
 /* package */class InvoiceCandInvalidUpdater implements IInvoiceCandInvalidUpdater
 {
 	// services
-	// private final transient Logger logger = InvoiceCandidate_Constants.getLogger();
+	private static final transient Logger logger = InvoiceCandidate_Constants.getLogger(InvoiceCandInvalidUpdater.class);
 	private final transient InvoiceCandBL invoiceCandBL;
 	private final transient IInvoiceCandDAO invoiceCandDAO = Services.get(IInvoiceCandDAO.class);
 	private final transient IInvoiceCandidateHandlerBL invoiceCandidateHandlerBL = Services.get(IInvoiceCandidateHandlerBL.class);
@@ -68,9 +88,18 @@ import lombok.NonNull;
 	private final transient ITrxManager trxManager = Services.get(ITrxManager.class);
 	private final transient ITrxItemProcessorExecutorService trxItemProcessorExecutorService = Services.get(ITrxItemProcessorExecutorService.class);
 
-	private static final String SYSCONFIG_ItemsPerBatch = "de.metas.invoicecandidate.api.impl.InvoiceCandInvalidUpdater.ItemsPerBatch";
+	@VisibleForTesting
+	static final String SYSCONFIG_ItemsPerBatch = "de.metas.invoicecandidate.api.impl.InvoiceCandInvalidUpdater.ItemsPerBatch";
 	private static final int DEFAULT_ItemsPerBatch = 100;
 
+	/** How many worker threads update the invoice candidates; with the default of one, they are updated in the caller's thread. */
+	@VisibleForTesting
+	static final String SYSCONFIG_Parallelism = "de.metas.invoicecandidate.api.impl.InvoiceCandInvalidUpdater.Parallelism";
+	private static final int DEFAULT_Parallelism = 1;
+
+	/** In parallel mode, each partition logs its progress to the caller's {@link ILoggable} after this many chunks */
+	private static final int PROGRESS_LOG_EVERY_CHUNKS = 10;
+
 	//
 	// Parameters
 	private Properties _ctx;
@@ -125,6 +154,23 @@ import lombok.NonNull;
 			// Propagate the exception
 			throw AdempiereException.wrapIfNeeded(updateException);
 		}
+
+		//
+		// Add the changes of the candidates we just updated (and of all others) to the open candidates' totals
+		compactInvoiceCandidatesSummary();
+	}
+
+	private static void compactInvoiceCandidatesSummary()
+	{
+		try
+		{
+			InvoiceCandidatesSummary.instance.compact();
+		}
+		catch (final Exception e)
+		{
+			// the deltas are not lost; the next run will compact them
+			logger.warn("Failed compacting the invoice candidates summary; ignored", e);
+		}
 	}
 
 	/**
@@ -147,83 +193,296 @@ import lombok.NonNull;
 			return;
 		}
 
+		//
+		// Update the invoice candidates in parallel partitions, if configured and if we are the ones who manage the transactions
+		final int parallelism = getParallelism();
+		if (processInBatches && parallelism > 1 && trxManager.isNull(trxManager.getTrx(getTrxName())))
+		{
+			updateInParallel(candidatesToUpdate, itemsPerBatch, parallelism);
+			return;
+		}
+
 		//
 		// Update invoice candidates in chunks
 		final ICUpdateResult result = new ICUpdateResult();
 		try (final IAutoCloseable updateInProgressCloseable = invoiceCandBL.setUpdateProcessInProgress())
 		{
-			trxItemProcessorExecutorService.<I_C_Invoice_Candidate, ICUpdateResult> createExecutor()
-					.setContext(getCtx(), getTrxName()) // if called from process or wp-processor then getTrxName() is null because *we* want to manage the trx => commit after each chunk
-					.setItemsPerBatch(itemsPerBatch)
+			// if called from process or wp-processor then getTrxName() is null because *we* want to manage the trx => commit after each chunk
+			updateInChunks(candidatesToUpdate, getCtx(), getTrxName(), itemsPerBatch, result, NullChunkListener.instance);
+		}
+
+		//
+		// Log the result
+		Loggables.get().addLog("Update invalid result: {}", result.getSummary());
+	}
+
+	private void updateInChunks(
+			final Iterator<I_C_Invoice_Candidate> candidatesToUpdate,
+			final Properties ctx,
+			final String trxName,
+			final int itemsPerBatch,
+			final ICUpdateResult result,
+			final ChunkListener chunkListener)
+	{
+		trxItemProcessorExecutorService.<I_C_Invoice_Candidate, ICUpdateResult> createExecutor()
+				.setContext(ctx, trxName)
+				.setItemsPerBatch(itemsPerBatch)
 
-					// Don't use trx savepoints because they are expensive and we are not going to rollback anyways (OnItemErrorPolicy.ContinueChunkAndCommit)
-					// Note that if our trx is null, then this doesn't matter anyways.
-					.setUseTrxSavepoints(false)
+				// Don't use trx savepoints because they are expensive and we are not going to rollback anyways (OnItemErrorPolicy.ContinueChunkAndCommit)
+				// Note that if our trx is null, then this doesn't matter anyways.
+				.setUseTrxSavepoints(false)
 
-					.setExceptionHandler(new ICTrxItemExceptionHandler(result))
+				.setExceptionHandler(new ICTrxItemExceptionHandler(result))
 
-					// issue #302: ICTrxItemExceptionHandler will deal with problems, so we just continue if they happen.
-					.setOnItemErrorPolicy(OnItemErrorPolicy.ContinueChunkAndCommit)
+				// issue #302: ICTrxItemExceptionHandler will deal with problems, so we just continue if they happen.
+				.setOnItemErrorPolicy(OnItemErrorPolicy.ContinueChunkAndCommit)
 
-					.setProcessor(new TrxItemChunkProcessorAdapter<I_C_Invoice_Candidate, ICUpdateResult>()
+				.setProcessor(new TrxItemChunkProcessorAdapter<I_C_Invoice_Candidate, ICUpdateResult>()
+				{
+					/** the invoice candidates which were updated in current batch/chunk */
+					final List<Integer> chunkInvoiceCandidateIds = new ArrayList<>();
+
+					@Override
+					public void process(final I_C_Invoice_Candidate ic) throws Exception
 					{
-						/** the invoice candidates which were updated in current batch/chunk */
-						final List<Integer> chunkInvoiceCandidateIds = new ArrayList<>();
+						chunkInvoiceCandidateIds.add(ic.getC_Invoice_Candidate_ID());
 
-						@Override
-						public void process(final I_C_Invoice_Candidate ic) throws Exception
+						updateInvalid(ic);
+						if (!ic.isError())
 						{
-							chunkInvoiceCandidateIds.add(ic.getC_Invoice_Candidate_ID());
-
-							updateInvalid(ic);
-							if (!ic.isError())
-							{
-								result.addInvoiceCandidate(ic);
-							}
-							else
-							{
-								result.incrementErrorsCount();
-							}
+							result.addInvoiceCandidate(ic);
 						}
-
-						@Override
-						public ICUpdateResult getResult()
+						else
 						{
-							return result;
+							result.incrementErrorsCount();
 						}
+					}
 
-						/**
-						 * Always return <code>true</code> and let the caller decide when to close the chunk (based on ItemsPerBatch setting).
-						 * We do this because in fact, each IC is independent from each other.
-						 * On the other hand, we don't want the overhead of dealing with each IC independently (trx-commit etc).
-						 */
-						@Override
-						public boolean isSameChunk(final I_C_Invoice_Candidate item)
-						{
-							return true;
-						}
+					@Override
+					public ICUpdateResult getResult()
+					{
+						return result;
+					}
+
+					/**
+					 * Always return <code>true</code> and let the caller decide when to close the chunk (based on ItemsPerBatch setting).
+					 * We do this because in fact, each IC is independent from each other.
+					 * On the other hand, we don't want the overhead of dealing with each IC independently (trx-commit etc).
+					 */
+					@Override
+					public boolean isSameChunk(final I_C_Invoice_Candidate item)
+					{
+						return true;
+					}
 
-						@Override
-						public void newChunk(final I_C_Invoice_Candidate item)
-						{
-							chunkInvoiceCandidateIds.clear(); // better safe than sorry
-						}
+					@Override
+					public void newChunk(final I_C_Invoice_Candidate item)
+					{
+						chunkInvoiceCandidateIds.clear(); // better safe than sorry
+					}
 
-						/** Delete the items which we just updated from <code>C_Invoice_Candidate_Recompute</code>. */
-						@Override
-						public void completeChunk()
-						{
-							icTagger.deleteTagged(chunkInvoiceCandidateIds);
-							chunkInvoiceCandidateIds.clear();
-						}
-					})
-					//
-					.process(candidatesToUpdate);
+					/** Delete the items which we just updated from <code>C_Invoice_Candidate_Recompute</code>. */
+					@Override
+					public void completeChunk()
+					{
+						icTagger.deleteTagged(chunkInvoiceCandidateIds);
+						chunkInvoiceCandidateIds.clear();
+						chunkListener.onChunkCompleted(result);
+					}
+				})
+				//
+				.process(candidatesToUpdate);
+	}
+
+	/**
+	 * Distributes the given invoice candidates by their {@code Bill_BPartner_ID} over {@code parallelism} partitions and updates each partition in its own worker thread, in chunks of {@code itemsPerBatch}, each chunk in its own transaction.
+	 * <p>
+	 * All invoice candidates of a bill partner end up in the same partition and in the order of the given iterator,
+	 * because some of them depend on each other (e.g. the manual candidates' NetAmtToInvoice depends on the bpartner's other candidates, the invoice schedule amounts are per bpartner).
+	 * The candidates are handed over to the workers through bounded queues, so we never hold more than a few chunks per partition in memory.
+	 * <p>
+	 * In unit test mode, the partitions are updated one after the other in the caller's thread, because the in-memory database is not thread-safe.
+	 * Therefore all candidates are distributed before the first partition is updated.
+	 */
+	private void updateInParallel(
+			final Iterator<I_C_Invoice_Candidate> candidatesToUpdate,
+			final int itemsPerBatch,
+			final int parallelism)
+	{
+		final Stopwatch stopwatch = Stopwatch.createStarted();
+		// a snapshot which is only read by the workers; each of them makes its own copy from it
+		final Properties callerCtx = Env.copyCtx(getCtx());
+		final ILoggable loggable = new SynchronizedLoggable(Loggables.get());
+
+		final List<BlockingQueue<Optional<I_C_Invoice_Candidate>>> queues = new ArrayList<>(parallelism);
+		final List<ICUpdateResult> results = new ArrayList<>(parallelism);
+		final List<Future<?>> futures = new ArrayList<>(parallelism);
+
+		final boolean runInCallerThread = Adempiere.isUnitTestMode();
+		final ExecutorService executor = runInCallerThread
+				? MoreExecutors.newDirectExecutorService()
+				: Executors.newFixedThreadPool(
+						parallelism,
+						CustomizableThreadFactory.builder()
+								.setThreadNamePrefix(InvoiceCandInvalidUpdater.class.getName())
+								.setDaemon(true)
+								.build());
+		try
+		{
+			for (int i = 0; i < parallelism; i++)
+			{
+				final BlockingQueue<Optional<I_C_Invoice_Candidate>> queue = runInCallerThread ? new LinkedBlockingQueue<>() : new ArrayBlockingQueue<>(itemsPerBatch * 2);
+				queues.add(queue);
+				results.add(new ICUpdateResult());
+			}
+			if (!runInCallerThread)
+			{
+				startPartitions(executor, queues, callerCtx, itemsPerBatch, results, loggable, futures);
+			}
+
+			//
+			// Feed the workers; an empty Optional tells them that there is nothing more to come
+			while (candidatesToUpdate.hasNext())
+			{
+				final I_C_Invoice_Candidate ic = candidatesToUpdate.next();
+				final int partitionIndex = getPartitionIndex(ic, parallelism);
+				enqueue(queues.get(partitionIndex), Optional.of(ic), futures.isEmpty() ? null : futures.get(partitionIndex));
+			}
+			for (int i = 0; i < parallelism; i++)
+			{
+				enqueue(queues.get(i), Optional.empty(), futures.isEmpty() ? null : futures.get(i));
+			}
+
+			if (runInCallerThread)
+			{
+				startPartitions(executor, queues, callerCtx, itemsPerBatch, results, loggable, futures);
+			}
+
+			//
+			// Wait for the workers and fail if any of them failed; update() will then untag the candidates which were not updated
+			final List<Throwable> errors = new ArrayList<>();
+			for (final Future<?> future : futures)
+			{
+				try
+				{
+					future.get();
+				}
+				catch (final ExecutionException e)
+				{
+					errors.add(e.getCause());
+				}
+			}
+			if (!errors.isEmpty())
+			{
+				final AdempiereException exception = new AdempiereException(errors.size() + " of " + parallelism + " invoice candidate update partitions failed; see the log for details");
+				errors.forEach(exception::addSuppressed);
+				throw exception;
+			}
+		}
+		catch (final InterruptedException e)
+		{
+			throw AdempiereException.wrapIfNeeded(e);
+		}
+		finally
+		{
+			executor.shutdownNow();
 		}
 
-		//
-		// Log the result
-		Loggables.get().addLog("Update invalid result: {}", result.getSummary());
+		final ICUpdateResult result = new ICUpdateResult();
+		results.forEach(result::add);
+		loggable.addLog("Update invalid result: {} in {} partitions, {}", result.getSummary(), parallelism, stopwatch);
+	}
+
+	private void startPartitions(
+			final ExecutorService executor,
+			final List<BlockingQueue<Optional<I_C_Invoice_Candidate>>> queues,
+			final Properties callerCtx,
+			final int itemsPerBatch,
+			final List<ICUpdateResult> results,
+			final ILoggable loggable,
+			final List<Future<?>> futures)
+	{
+		final int parallelism = queues.size();
+		for (int i = 0; i < parallelism; i++)
+		{
+			final String partitionName = (i + 1) + "/" + parallelism;
+			final BlockingQueue<Optional<I_C_Invoice_Candidate>> queue = queues.get(i);
+			final ICUpdateResult result = results.get(i);
+			futures.add(executor.submit(() -> updatePartition(partitionName, queue, callerCtx, itemsPerBatch, result, loggable)));
+		}
+	}
+
+	/**
+	 * @return the index of the partition which updates the given invoice candidate; the same for all candidates of a bill partner
+	 */
+	@VisibleForTesting
+	static int getPartitionIndex(final I_C_Invoice_Candidate ic, final int parallelism)
+	{
+		return Math.floorMod(ic.getBill_BPartner_ID(), parallelism);
+	}
+
+	/**
+	 * Puts the given item into the given partition's queue, unless the partition's worker already stopped.
+	 *
+	 * @param worker the partition's worker, or {@code null} if it was not started yet
+	 */
+	private static void enqueue(
+			final BlockingQueue<Optional<I_C_Invoice_Candidate>> queue,
+			final Optional<I_C_Invoice_Candidate> item,
+			final Future<?> worker) throws InterruptedException
+	{
+		while (!queue.offer(item, 1, TimeUnit.SECONDS))
+		{
+			if (worker != null && worker.isDone())
+			{
+				return; // the worker failed; its error is collected when waiting for the workers
+			}
+		}
+	}
+
+	private void updatePartition(
+			final String partitionName,
+			final BlockingQueue<Optional<I_C_Invoice_Candidate>> queue,
+			final Properties callerCtx,
+			final int itemsPerBatch,
+			final ICUpdateResult result,
+			final ILoggable loggable)
+	{
+		final Stopwatch stopwatch = Stopwatch.createStarted();
+
+		// each partition gets its own copy, so that what one partition sets in its context does not leak into the others
+		final Properties ctx = Env.copyCtx(callerCtx);
+		final Iterator<I_C_Invoice_Candidate> candidatesToUpdate = new AbstractIterator<I_C_Invoice_Candidate>()
+		{
+			@Override
+			protected I_C_Invoice_Candidate computeNext()
+			{
+				try
+				{
+					final Optional<I_C_Invoice_Candidate> item = queue.take();
+					return item.isPresent() ? item.get() : endOfData();
+				}
+				catch (final InterruptedException e)
+				{
+					throw AdempiereException.wrapIfNeeded(e);
+				}
+			}
+		};
+
+		final ChunkListener progressLogger = chunkResult -> {
+			if (chunkResult.incrementChunksCount() % PROGRESS_LOG_EVERY_CHUNKS == 0)
+			{
+				loggable.addLog("Partition {}: {} so far ({})", partitionName, chunkResult.getSummary(), stopwatch);
+			}
+		};
+
+		try (final IAutoCloseable ctxCloseable = Env.switchContext(ctx);
+				final IAutoCloseable loggableCloseable = Loggables.temporarySetLoggable(loggable);
+				final IAutoCloseable updateInProgressCloseable = invoiceCandBL.setUpdateProcessInProgress())
+		{
+			updateInChunks(candidatesToUpdate, ctx, ITrx.TRXNAME_ThreadInherited, itemsPerBatch, result, progressLogger);
+		}
+		loggable.addLog("Partition {}: {} in {}", partitionName, result.getSummary(), stopwatch);
 	}
 
 	private final void updateInvalid(final I_C_Invoice_Candidate ic)
@@ -476,6 +735,11 @@ import lombok.NonNull;
 		return sysConfigBL.getIntValue(SYSCONFIG_ItemsPerBatch, DEFAULT_ItemsPerBatch);
 	}
 
+	private final int getParallelism()
+	{
+		return sysConfigBL.getIntValue(SYSCONFIG_Parallelism, DEFAULT_Parallelism);
+	}
+
 	/**
 	 * IC update result.
 	 *
@@ -486,6 +750,7 @@ import lombok.NonNull;
 	{
 		private int countOk = 0;
 		private int countErrors = 0;
+		private int countChunks = 0;
 
 		public final void addInvoiceCandidate(final I_C_Invoice_Candidate ic)
 		{
@@ -497,6 +762,18 @@ import lombok.NonNull;
 			countErrors++;
 		}
 
+		public int incrementChunksCount()
+		{
+			return ++countChunks;
+		}
+
+		public void add(final ICUpdateResult other)
+		{
+			countOk += other.countOk;
+			countErrors += other.countErrors;
+			countChunks += other.countChunks;
+		}
+
 		@Override
 		public final String toString()
 		{
@@ -509,6 +786,42 @@ import lombok.NonNull;
 		}
 	}
 
+	@FunctionalInterface
+	private interface ChunkListener
+	{
+		void onChunkCompleted(ICUpdateResult resultSoFar);
+	}
+
+	private static final class NullChunkListener implements ChunkListener
+	{
+		public static final NullChunkListener instance = new NullChunkListener();
+
+		@Override
+		public void onChunkCompleted(final ICUpdateResult resultSoFar)
+		{
+			// nothing
+		}
+	}
+
+	/**
+	 * Lets the partition workers share the caller's {@link ILoggable} (e.g. the one of the workpackage), which is not necessarily thread-safe.
+	 */
+	private static final class SynchronizedLoggable implements ILoggable
+	{
+		private final ILoggable delegate;
+
+		private SynchronizedLoggable(@NonNull final ILoggable delegate)
+		{
+			this.delegate = delegate;
+		}
+
+		@Override
+		public synchronized void addLog(final String msg, final Object... msgParameters)
+		{
+			delegate.addLog(msg, msgParameters);
+		}
+	}
+
 	/**
 	 * IC update exception handler
 	 *
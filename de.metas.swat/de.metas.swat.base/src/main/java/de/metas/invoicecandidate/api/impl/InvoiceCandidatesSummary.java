@@ -0,0 +1,265 @@
+package de.metas.invoicecandidate.api.impl;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.adempiere.ad.trx.api.ITrx;
+import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.exceptions.DBException;
+import org.adempiere.util.Services;
+import org.compiere.Adempiere;
+import org.compiere.util.DB;
+import org.slf4j.Logger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import de.metas.logging.LogManager;
+import lombok.NonNull;
+import lombok.Value;
+
+/*
+ * #%L
+ * de.metas.swat.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Count and sum of {@code NetAmtToInvoice} of the open ({@code IsActive='Y'} and {@code Processed='N'}) invoice candidates, per {@link SummaryKey}.
+ * Lets dashboards get these numbers by key instead of aggregating {@code C_Invoice_Candidate} on every refresh.
+ * <ul>
+ * <li>The totals are kept in the table {@code de_metas_invoicecandidate.C_Invoice_Candidate_Summary}.</li>
+ * <li>Database triggers on {@code C_Invoice_Candidate} record every change as delta rows, no matter if a candidate is created, deleted, updated by {@link InvoiceCandInvalidUpdater} or edited by a user.
+ * The totals of a key are its summary row plus its delta rows.</li>
+ * <li>{@link InvoiceCandInvalidUpdater} adds the delta rows to the summary rows after each run (see {@link #compact()}), so that there are only a few of them at any time.</li>
+ * <li>{@link de.metas.invoicecandidate.process.C_Invoice_Candidate_ReconcileSummary} verifies the totals against {@code C_Invoice_Candidate} and rebuilds them.</li>
+ * </ul>
+ */
+public final class InvoiceCandidatesSummary
+{
+	public static final InvoiceCandidatesSummary instance = new InvoiceCandidatesSummary();
+
+	private static final Logger logger = LogManager.getLogger(InvoiceCandidatesSummary.class);
+
+	private static final String TABLENAME_Summary = "de_metas_invoicecandidate.C_Invoice_Candidate_Summary";
+	private static final String TABLENAME_SummaryDelta = "de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Delta";
+	private static final String KEY_COLUMNS = "Bill_BPartner_ID, AD_Org_ID, C_Currency_ID, InvoiceRule, IsToClear";
+
+	private static final String SQL_SelectSummaryAndDeltas = "SELECT " + KEY_COLUMNS + ", CandidateCount, NetAmtToInvoice FROM " + TABLENAME_Summary
+			+ " UNION ALL "
+			+ "SELECT " + KEY_COLUMNS + ", CandidateCount, NetAmtToInvoice FROM " + TABLENAME_SummaryDelta;
+
+	private static final String SQL_SelectTotalsByKey = "SELECT COALESCE(SUM(CandidateCount), 0), COALESCE(SUM(NetAmtToInvoice), 0)"
+			+ " FROM (" + SQL_SelectSummaryAndDeltas + ") t"
+			+ " WHERE Bill_BPartner_ID=? AND AD_Org_ID=? AND C_Currency_ID=? AND InvoiceRule=? AND IsToClear=?";
+
+	private static final String SQL_SelectAllTotals = "SELECT " + KEY_COLUMNS + ", SUM(CandidateCount), SUM(NetAmtToInvoice)"
+			+ " FROM (" + SQL_SelectSummaryAndDeltas + ") t"
+			+ " GROUP BY " + KEY_COLUMNS
+			+ " HAVING SUM(CandidateCount) <> 0 OR SUM(NetAmtToInvoice) <> 0";
+
+	/** Aggregates the open candidates the same way as the function {@code C_Invoice_Candidate_Summary_AddDelta}. */
+	private static final String SQL_SelectTotalsFromCandidates = "SELECT "
+			+ "COALESCE(Bill_BPartner_ID, 0) AS Bill_BPartner_ID"
+			+ ", AD_Org_ID"
+			+ ", COALESCE(C_Currency_ID, 0) AS C_Currency_ID"
+			+ ", COALESCE(NULLIF(TRIM(InvoiceRule_Override), ''), InvoiceRule, '') AS InvoiceRule"
+			+ ", IsToClear"
+			+ ", COUNT(1) AS CandidateCount"
+			+ ", COALESCE(SUM(NetAmtToInvoice), 0) AS NetAmtToInvoice"
+			+ " FROM C_Invoice_Candidate"
+			+ " WHERE IsActive='Y' AND Processed='N'"
+			+ " GROUP BY 1, 2, 3, 4, 5";
+
+	private InvoiceCandidatesSummary()
+	{
+	}
+
+	/**
+	 * @return the totals of the given key; {@link Totals#ZERO} if there are no open candidates for it
+	 */
+	public Totals getTotals(@NonNull final SummaryKey key)
+	{
+		final Object[] sqlParams = new Object[] { key.getBillBPartnerId(), key.getOrgId(), key.getCurrencyId(), key.getInvoiceRule(), DB.TO_BOOLEAN(key.isToClear()) };
+
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try
+		{
+			pstmt = DB.prepareStatement(SQL_SelectTotalsByKey, ITrx.TRXNAME_None);
+			DB.setParameters(pstmt, sqlParams);
+			rs = pstmt.executeQuery();
+			rs.next();
+			return new Totals(rs.getInt(1), rs.getBigDecimal(2));
+		}
+		catch (final SQLException e)
+		{
+			throw new DBException(e, SQL_SelectTotalsByKey, sqlParams);
+		}
+		finally
+		{
+			DB.close(rs, pstmt);
+		}
+	}
+
+	/**
+	 * @return the totals of all keys which have open candidates
+	 */
+	public ImmutableMap<SummaryKey, Totals> getAllTotals()
+	{
+		return retrieveTotals(SQL_SelectAllTotals, ITrx.TRXNAME_None);
+	}
+
+	/**
+	 * Adds the delta rows which the triggers recorded so far to the summary rows.
+	 * Does nothing if another compaction is running at the same time.
+	 */
+	public void compact()
+	{
+		if (Adempiere.isUnitTestMode())
+		{
+			return; // the summary is maintained by database triggers
+		}
+
+		final int count = DB.getSQLValueEx(ITrx.TRXNAME_None, "SELECT de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Compact()");
+		logger.debug("Compacted the deltas into {} summary rows", count);
+	}
+
+	/**
+	 * Aggregates the totals from {@code C_Invoice_Candidate} again, compares them with the maintained ones and replaces the latter.
+	 * While doing so, {@code C_Invoice_Candidate} is locked against changes.
+	 *
+	 * @return the keys whose totals did not match
+	 */
+	public ImmutableList<Mismatch> reconcile()
+	{
+		return Services.get(ITrxManager.class).call(ITrx.TRXNAME_None, trxName -> {
+			// wait for the transactions which are changing candidates right now and keep others from doing so, so that we see all their deltas
+			DB.executeUpdateEx("LOCK TABLE C_Invoice_Candidate IN SHARE MODE", trxName);
+			// wait for a running compaction, and keep others from starting
+			DB.getSQLValueEx(trxName, "SELECT 1 FROM pg_advisory_xact_lock(hashtext('" + TABLENAME_Summary + "'))");
+
+			final ImmutableMap<SummaryKey, Totals> expectedTotalsByKey = retrieveTotals(SQL_SelectTotalsFromCandidates, trxName);
+			final ImmutableMap<SummaryKey, Totals> actualTotalsByKey = retrieveTotals(SQL_SelectAllTotals, trxName);
+			final ImmutableList<Mismatch> mismatches = compare(expectedTotalsByKey, actualTotalsByKey);
+
+			DB.executeUpdateEx("DELETE FROM " + TABLENAME_SummaryDelta, trxName);
+			DB.executeUpdateEx("DELETE FROM " + TABLENAME_Summary, trxName);
+			DB.executeUpdateEx("INSERT INTO " + TABLENAME_Summary + " (" + KEY_COLUMNS + ", CandidateCount, NetAmtToInvoice) " + SQL_SelectTotalsFromCandidates, trxName);
+
+			return mismatches;
+		});
+	}
+
+	/* package */ static ImmutableList<Mismatch> compare(
+			@NonNull final Map<SummaryKey, Totals> expectedTotalsByKey,
+			@NonNull final Map<SummaryKey, Totals> actualTotalsByKey)
+	{
+		final Set<SummaryKey> keys = new HashSet<>(expectedTotalsByKey.keySet());
+		keys.addAll(actualTotalsByKey.keySet());
+
+		final ImmutableList.Builder<Mismatch> mismatches = ImmutableList.builder();
+		for (final SummaryKey key : keys)
+		{
+			final Totals expected = expectedTotalsByKey.getOrDefault(key, Totals.ZERO);
+			final Totals actual = actualTotalsByKey.getOrDefault(key, Totals.ZERO);
+			if (!expected.isSameAs(actual))
+			{
+				mismatches.add(new Mismatch(key, expected, actual));
+			}
+		}
+		return mismatches.build();
+	}
+
+	private static ImmutableMap<SummaryKey, Totals> retrieveTotals(final String sql, final String trxName)
+	{
+		final ImmutableMap.Builder<SummaryKey, Totals> totalsByKey = ImmutableMap.builder();
+
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try
+		{
+			pstmt = DB.prepareStatement(sql, trxName);
+			rs = pstmt.executeQuery();
+			while (rs.next())
+			{
+				final SummaryKey key = new SummaryKey(
+						rs.getInt(1),
+						rs.getInt(2),
+						rs.getInt(3),
+						rs.getString(4),
+						"Y".equals(rs.getString(5)));
+				totalsByKey.put(key, new Totals(rs.getInt(6), rs.getBigDecimal(7)));
+			}
+		}
+		catch (final SQLException e)
+		{
+			throw new DBException(e, sql);
+		}
+		finally
+		{
+			DB.close(rs, pstmt);
+		}
+
+		return totalsByKey.build();
+	}
+
+	@Value
+	public static class SummaryKey
+	{
+		/** {@code 0} if the candidates have none */
+		int billBPartnerId;
+		int orgId;
+		/** {@code 0} if the candidates have none */
+		int currencyId;
+		/** {@code InvoiceRule_Override} if set, {@code InvoiceRule} otherwise */
+		String invoiceRule;
+		boolean toClear;
+	}
+
+	@Value
+	public static class Totals
+	{
+		public static final Totals ZERO = new Totals(0, BigDecimal.ZERO);
+
+		int count;
+		BigDecimal netAmtToInvoice;
+
+		/**
+		 * Like {@link #equals(Object)}, but ignoring the amounts' scales.
+		 */
+		public boolean isSameAs(final Totals other)
+		{
+			return count == other.count && netAmtToInvoice.compareTo(other.netAmtToInvoice) == 0;
+		}
+	}
+
+	@Value
+	public static class Mismatch
+	{
+		SummaryKey key;
+		Totals expected;
+		Totals actual;
+	}
+}
@@ -0,0 +1,50 @@
+package de.metas.invoicecandidate.process;
+
+import java.util.List;
+
+import de.metas.invoicecandidate.api.impl.InvoiceCandidatesSummary;
+import de.metas.invoicecandidate.api.impl.InvoiceCandidatesSummary.Mismatch;
+import de.metas.process.JavaProcess;
+import de.metas.process.RunOutOfTrx;
+
+/*
+ * #%L
+ * de.metas.swat.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Verifies the {@link InvoiceCandidatesSummary} against {@code C_Invoice_Candidate}, logs the totals which did not match and rebuilds them.
+ * Note that {@code C_Invoice_Candidate} can't be changed while this process is running.
+ */
+public class C_Invoice_Candidate_ReconcileSummary extends JavaProcess
+{
+	@Override
+	@RunOutOfTrx
+	protected String doIt() throws Exception
+	{
+		final List<Mismatch> mismatches = InvoiceCandidatesSummary.instance.reconcile();
+		for (final Mismatch mismatch : mismatches)
+		{
+			addLog("{}: expected {} but was {}", mismatch.getKey(), mismatch.getExpected(), mismatch.getActual());
+		}
+
+		return "@Updated@ " + mismatches.size();
+	}
+}
@@ -0,0 +1,19 @@
+-- 2018-07-10T09:11:07.318
+-- I forgot to set the DICTIONARY_ID_COMMENTS System Configurator
+INSERT INTO AD_Process (AccessLevel,AD_Client_ID,AD_Org_ID,AD_Process_ID,AllowProcessReRun,Classname,CopyFromProcess,Created,CreatedBy,Description,EntityType,IsActive,IsApplySecuritySettings,IsBetaFunctionality,IsDirectPrint,IsOneInstanceOnly,IsReport,IsServerProcess,IsUseBPartnerLanguage,LockWaitTimeout,Name,RefreshAllAfterExecution,ShowHelp,Type,Updated,UpdatedBy,Value) VALUES ('3',0,0,540984,'Y','de.metas.invoicecandidate.process.C_Invoice_Candidate_ReconcileSummary','N',TO_TIMESTAMP('2018-07-10 09:11:07','YYYY-MM-DD HH24:MI:SS'),100,'Vergleicht die Summen der offenen Rechnungskandidaten mit der Tabelle, protokolliert Abweichungen und baut die Summen neu auf.','de.metas.invoicecandidate','Y','N','N','N','Y','N','N','Y',0,'Rechnungskandidaten-Summen abgleichen','N','N','Java',TO_TIMESTAMP('2018-07-10 09:11:07','YYYY-MM-DD HH24:MI:SS'),100,'C_Invoice_Candidate_ReconcileSummary')
+;
+
+-- 2018-07-10T09:11:07.325
+-- I forgot to set the DICTIONARY_ID_COMMENTS System Configurator
+INSERT INTO AD_Process_Trl (AD_Language,AD_Process_ID, Description,Help,Name, IsTranslated,AD_Client_ID,AD_Org_ID,Created,Createdby,Updated,UpdatedBy) SELECT l.AD_Language,t.AD_Process_ID, t.Description,t.Help,t.Name, 'N',t.AD_Client_ID,t.AD_Org_ID,t.Created,t.Createdby,t.Updated,t.UpdatedBy FROM AD_Language l, AD_Process t WHERE l.IsActive='Y' AND l.IsSystemLanguage='Y' AND l.IsBaseLanguage='N' AND t.AD_Process_ID=540984 AND NOT EXISTS (SELECT 1 FROM AD_Process_Trl tt WHERE tt.AD_Language=l.AD_Language AND tt.AD_Process_ID=t.AD_Process_ID)
+;
+
+-- 2018-07-10T09:11:52.104
+-- I forgot to set the DICTIONARY_ID_COMMENTS System Configurator
+UPDATE AD_Process_Trl SET IsTranslated='Y',Name='Reconcile invoice candidate totals',Description='Compares the totals of the open invoice candidates with the table, logs the differences and rebuilds the totals.',Updated=TO_TIMESTAMP('2018-07-10 09:11:52','YYYY-MM-DD HH24:MI:SS'),UpdatedBy=100 WHERE AD_Language='en_US' AND AD_Process_ID=540984
+;
+
+-- 2018-07-10T09:12:14.671
+-- I forgot to set the DICTIONARY_ID_COMMENTS System Configurator
+INSERT INTO AD_Table_Process (AD_Client_ID,AD_Org_ID,AD_Process_ID,AD_Table_ID,Created,CreatedBy,EntityType,IsActive,Updated,UpdatedBy,WEBUI_QuickAction,WEBUI_QuickAction_Default) VALUES (0,0,540984,540270,TO_TIMESTAMP('2018-07-10 09:12:14','YYYY-MM-DD HH24:MI:SS'),100,'de.metas.invoicecandidate','Y',TO_TIMESTAMP('2018-07-10 09:12:14','YYYY-MM-DD HH24:MI:SS'),100,'N','N')
+;
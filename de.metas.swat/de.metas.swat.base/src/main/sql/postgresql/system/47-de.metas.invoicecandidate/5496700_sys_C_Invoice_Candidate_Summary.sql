@@ -0,0 +1,161 @@
+--
+-- Count and sum of NetAmtToInvoice of the open (IsActive='Y' and Processed='N') invoice candidates,
+-- per bill partner, org, currency, effective invoice rule and IsToClear.
+--
+-- The triggers on C_Invoice_Candidate don't update the summary rows directly, because concurrent transactions would then wait for each other (or deadlock) on them.
+-- Instead, they insert +/- delta rows, which C_Invoice_Candidate_Summary_Compact() adds to the summary rows from time to time.
+-- The totals are the sum of a key's summary row and its delta rows.
+--
+
+DROP TRIGGER IF EXISTS C_Invoice_Candidate_Summary_Insert_Delete_Trigger ON C_Invoice_Candidate;
+DROP TRIGGER IF EXISTS C_Invoice_Candidate_Summary_Update_Trigger ON C_Invoice_Candidate;
+
+DROP TABLE IF EXISTS de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Delta;
+CREATE TABLE de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Delta
+(
+	Bill_BPartner_ID numeric(10,0) NOT NULL,
+	AD_Org_ID numeric(10,0) NOT NULL,
+	C_Currency_ID numeric(10,0) NOT NULL,
+	InvoiceRule character varying(1) NOT NULL,
+	IsToClear character(1) NOT NULL,
+	CandidateCount numeric NOT NULL,
+	NetAmtToInvoice numeric NOT NULL
+);
+CREATE INDEX C_Invoice_Candidate_Summary_Delta_Key
+	ON de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Delta (Bill_BPartner_ID, AD_Org_ID, C_Currency_ID, InvoiceRule, IsToClear);
+COMMENT ON TABLE de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Delta IS
+'Changes of the open invoice candidates'' totals which were not yet added to de_metas_invoicecandidate.C_Invoice_Candidate_Summary.
+Inserted by the triggers on C_Invoice_Candidate and deleted by de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Compact().'
+;
+
+DROP TABLE IF EXISTS de_metas_invoicecandidate.C_Invoice_Candidate_Summary;
+CREATE TABLE de_metas_invoicecandidate.C_Invoice_Candidate_Summary
+(
+	Bill_BPartner_ID numeric(10,0) NOT NULL,
+	AD_Org_ID numeric(10,0) NOT NULL,
+	C_Currency_ID numeric(10,0) NOT NULL,
+	InvoiceRule character varying(1) NOT NULL,
+	IsToClear character(1) NOT NULL,
+	CandidateCount numeric NOT NULL,
+	NetAmtToInvoice numeric NOT NULL,
+	CONSTRAINT C_Invoice_Candidate_Summary_Key PRIMARY KEY (Bill_BPartner_ID, AD_Org_ID, C_Currency_ID, InvoiceRule, IsToClear)
+);
+COMMENT ON TABLE de_metas_invoicecandidate.C_Invoice_Candidate_Summary IS
+'Count and sum of NetAmtToInvoice of the open invoice candidates, per bill partner, org, currency, effective invoice rule and IsToClear.
+Add the respective rows of de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Delta to get the current totals.
+The process C_Invoice_Candidate_ReconcileSummary verifies and rebuilds it.'
+;
+
+
+CREATE OR REPLACE FUNCTION de_metas_invoicecandidate.C_Invoice_Candidate_Summary_AddDelta(p_ic C_Invoice_Candidate, p_sign numeric)
+RETURNS void AS
+$BODY$
+	INSERT INTO de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Delta (Bill_BPartner_ID, AD_Org_ID, C_Currency_ID, InvoiceRule, IsToClear, CandidateCount, NetAmtToInvoice)
+	SELECT
+		COALESCE(p_ic.Bill_BPartner_ID, 0),
+		p_ic.AD_Org_ID,
+		COALESCE(p_ic.C_Currency_ID, 0),
+		COALESCE(NULLIF(TRIM(p_ic.InvoiceRule_Override), ''), p_ic.InvoiceRule, ''),
+		p_ic.IsToClear,
+		p_sign,
+		p_sign * COALESCE(p_ic.NetAmtToInvoice, 0)
+	WHERE p_ic.IsActive='Y' AND p_ic.Processed='N'
+$BODY$
+LANGUAGE sql VOLATILE;
+
+
+CREATE OR REPLACE FUNCTION de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Trigger()
+RETURNS trigger AS
+$BODY$
+BEGIN
+	IF TG_OP IN ('UPDATE', 'DELETE')
+	THEN
+		PERFORM de_metas_invoicecandidate.C_Invoice_Candidate_Summary_AddDelta(OLD, -1);
+	END IF;
+
+	IF TG_OP IN ('INSERT', 'UPDATE')
+	THEN
+		PERFORM de_metas_invoicecandidate.C_Invoice_Candidate_Summary_AddDelta(NEW, 1);
+	END IF;
+
+	RETURN NULL;
+END;
+$BODY$
+LANGUAGE plpgsql VOLATILE;
+
+
+CREATE OR REPLACE FUNCTION de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Compact()
+RETURNS integer AS
+$BODY$
+DECLARE
+	v_count integer;
+BEGIN
+	-- only one compaction at a time, so that they don't wait for each other on the summary rows;
+	-- the deltas we skip are taken care of by the next compaction
+	IF NOT pg_try_advisory_xact_lock(hashtext('de_metas_invoicecandidate.C_Invoice_Candidate_Summary'))
+	THEN
+		RETURN 0;
+	END IF;
+
+	WITH deleted AS (
+		DELETE FROM de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Delta
+		RETURNING *
+	)
+	INSERT INTO de_metas_invoicecandidate.C_Invoice_Candidate_Summary AS s (Bill_BPartner_ID, AD_Org_ID, C_Currency_ID, InvoiceRule, IsToClear, CandidateCount, NetAmtToInvoice)
+	SELECT Bill_BPartner_ID, AD_Org_ID, C_Currency_ID, InvoiceRule, IsToClear, SUM(CandidateCount), SUM(NetAmtToInvoice)
+	FROM deleted
+	GROUP BY Bill_BPartner_ID, AD_Org_ID, C_Currency_ID, InvoiceRule, IsToClear
+	ON CONFLICT ON CONSTRAINT C_Invoice_Candidate_Summary_Key DO UPDATE
+		SET CandidateCount = s.CandidateCount + EXCLUDED.CandidateCount,
+			NetAmtToInvoice = s.NetAmtToInvoice + EXCLUDED.NetAmtToInvoice;
+	GET DIAGNOSTICS v_count = ROW_COUNT;
+
+	DELETE FROM de_metas_invoicecandidate.C_Invoice_Candidate_Summary WHERE CandidateCount = 0 AND NetAmtToInvoice = 0;
+
+	RETURN v_count;
+END;
+$BODY$
+LANGUAGE plpgsql VOLATILE;
+COMMENT ON FUNCTION de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Compact() IS
+'Adds the rows of de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Delta to de_metas_invoicecandidate.C_Invoice_Candidate_Summary and deletes them.
+Returns the number of summary rows which were inserted or updated, or 0 if another compaction is running.'
+;
+
+
+--
+-- initial totals; we lock C_Invoice_Candidate, so that no change gets lost between aggregating it and creating the triggers
+--
+LOCK TABLE C_Invoice_Candidate IN SHARE MODE;
+
+INSERT INTO de_metas_invoicecandidate.C_Invoice_Candidate_Summary (Bill_BPartner_ID, AD_Org_ID, C_Currency_ID, InvoiceRule, IsToClear, CandidateCount, NetAmtToInvoice)
+SELECT
+	COALESCE(Bill_BPartner_ID, 0),
+	AD_Org_ID,
+	COALESCE(C_Currency_ID, 0),
+	COALESCE(NULLIF(TRIM(InvoiceRule_Override), ''), InvoiceRule, ''),
+	IsToClear,
+	COUNT(1),
+	COALESCE(SUM(NetAmtToInvoice), 0)
+FROM C_Invoice_Candidate
+WHERE IsActive='Y' AND Processed='N'
+GROUP BY 1, 2, 3, 4, 5;
+
+CREATE TRIGGER C_Invoice_Candidate_Summary_Insert_Delete_Trigger
+	AFTER INSERT OR DELETE ON C_Invoice_Candidate
+	FOR EACH ROW
+	EXECUTE PROCEDURE de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Trigger();
+
+-- the updater saves candidates without changing anything we are interested in all the time, so we only fire if something relevant changed
+CREATE TRIGGER C_Invoice_Candidate_Summary_Update_Trigger
+	AFTER UPDATE ON C_Invoice_Candidate
+	FOR EACH ROW
+	WHEN (OLD.IsActive IS DISTINCT FROM NEW.IsActive
+		OR OLD.Processed IS DISTINCT FROM NEW.Processed
+		OR OLD.NetAmtToInvoice IS DISTINCT FROM NEW.NetAmtToInvoice
+		OR OLD.Bill_BPartner_ID IS DISTINCT FROM NEW.Bill_BPartner_ID
+		OR OLD.AD_Org_ID IS DISTINCT FROM NEW.AD_Org_ID
+		OR OLD.C_Currency_ID IS DISTINCT FROM NEW.C_Currency_ID
+		OR OLD.InvoiceRule IS DISTINCT FROM NEW.InvoiceRule
+		OR OLD.InvoiceRule_Override IS DISTINCT FROM NEW.InvoiceRule_Override
+		OR OLD.IsToClear IS DISTINCT FROM NEW.IsToClear)
+	EXECUTE PROCEDURE de_metas_invoicecandidate.C_Invoice_Candidate_Summary_Trigger();
@@ -23,12 +23,15 @@ package de.metas.inoutcandidate.api.impl;
  */
 
 
+import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.Map;
 
 import org.adempiere.ad.trx.api.ITrx;
 import org.adempiere.model.InterfaceWrapperHelper;
 import org.adempiere.test.AdempiereTestHelper;
 import org.adempiere.util.Services;
+import org.compiere.model.I_M_InOutLine;
 import org.compiere.util.Env;
 import org.junit.Assert;
 import org.junit.Before;
@@ -90,6 +93,42 @@ public class ShipmentScheduleAllocDAOTest
 
 	}
 
+	/**
+	 * Tests {@link IShipmentScheduleAllocDAO#retrieveQtyDelivered(java.util.Collection)}: only processed inout lines count, and each of them only once per schedule.
+	 */
+	@Test
+	public void test_retrieveQtyDelivered_multipleSchedules()
+	{
+		final I_M_InOutLine processedLine1 = createInOutLine(5, true);
+		final I_M_InOutLine processedLine2 = createInOutLine(3, true);
+		final I_M_InOutLine draftLine = createInOutLine(7, false);
+
+		final I_M_ShipmentSchedule ss1 = createM_ShipmentSchedule();
+		createShipmentScheduleQtyPickedRecord(ss1, processedLine1.getM_InOutLine_ID());
+		createShipmentScheduleQtyPickedRecord(ss1, processedLine1.getM_InOutLine_ID());
+		createShipmentScheduleQtyPickedRecord(ss1, processedLine2.getM_InOutLine_ID());
+		createShipmentScheduleQtyPickedRecord(ss1, draftLine.getM_InOutLine_ID());
+		createShipmentScheduleQtyPickedRecord(ss1, 0);
+
+		final I_M_ShipmentSchedule ss2 = createM_ShipmentSchedule();
+		createShipmentScheduleQtyPickedRecord(ss2, 0);
+
+		final Map<Integer, BigDecimal> qtyDelivered = dao.retrieveQtyDelivered(Arrays.asList(ss1, ss2));
+
+		Assert.assertEquals(2, qtyDelivered.size());
+		Assert.assertEquals(0, new BigDecimal("8").compareTo(qtyDelivered.get(ss1.getM_ShipmentSchedule_ID())));
+		Assert.assertEquals(0, BigDecimal.ZERO.compareTo(qtyDelivered.get(ss2.getM_ShipmentSchedule_ID())));
+	}
+
+	private final I_M_InOutLine createInOutLine(final int movementQty, final boolean processed)
+	{
+		final I_M_InOutLine inoutLine = InterfaceWrapperHelper.create(Env.getCtx(), I_M_InOutLine.class, ITrx.TRXNAME_None);
+		inoutLine.setMovementQty(BigDecimal.valueOf(movementQty));
+		inoutLine.setProcessed(processed);
+		InterfaceWrapperHelper.save(inoutLine);
+		return inoutLine;
+	}
+
 	private final I_M_ShipmentSchedule createM_ShipmentSchedule()
 	{
 		final I_M_ShipmentSchedule ss = InterfaceWrapperHelper.create(Env.getCtx(), I_M_ShipmentSchedule.class, ITrx.TRXNAME_None);
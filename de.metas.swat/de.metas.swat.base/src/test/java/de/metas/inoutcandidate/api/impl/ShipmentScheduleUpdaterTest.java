@@ -0,0 +1,113 @@
+package de.metas.inoutcandidate.api.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.test.AdempiereTestHelper;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import de.metas.inoutcandidate.api.OlAndSched;
+import de.metas.inoutcandidate.model.I_M_ShipmentSchedule;
+
+/*
+ * #%L
+ * de.metas.swat.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+public class ShipmentScheduleUpdaterTest
+{
+	private OlAndSched s1;
+	private OlAndSched s2;
+	private OlAndSched s3;
+	private OlAndSched s4;
+	private OlAndSched s5;
+	private OlAndSched s6;
+
+	@Before
+	public void init()
+	{
+		AdempiereTestHelper.get().init();
+
+		s1 = createOlAndSched(1, 10, 100);
+		s2 = createOlAndSched(1, 11, 101); // same product as s1
+		s3 = createOlAndSched(2, 11, 102); // same bpartner as s2
+		s4 = createOlAndSched(3, 12, 103);
+		s5 = createOlAndSched(4, 13, 103); // same order as s4
+		s6 = createOlAndSched(5, 14, 0);
+	}
+
+	@Test
+	public void partitionIntoBatches_dependentSchedulesStayTogether()
+	{
+		final List<List<OlAndSched>> batches = ShipmentScheduleUpdater.partitionIntoBatches(ImmutableList.of(s1, s2, s3, s4, s5, s6), 3);
+
+		assertThat(batches).containsExactly(
+				ImmutableList.of(s1, s2, s3),
+				ImmutableList.of(s4, s5),
+				ImmutableList.of(s6));
+	}
+
+	@Test
+	public void partitionIntoBatches_groupsAreBalancedOverBatches()
+	{
+		final List<List<OlAndSched>> batches = ShipmentScheduleUpdater.partitionIntoBatches(ImmutableList.of(s1, s2, s3, s4, s5, s6), 2);
+
+		assertThat(batches).containsExactly(
+				ImmutableList.of(s1, s2, s3),
+				ImmutableList.of(s4, s5, s6));
+	}
+
+	@Test
+	public void partitionIntoBatches_sequential()
+	{
+		final List<OlAndSched> olsAndScheds = ImmutableList.of(s1, s2, s3, s4, s5, s6);
+
+		assertThat(ShipmentScheduleUpdater.partitionIntoBatches(olsAndScheds, 1)).containsExactly(olsAndScheds);
+	}
+
+	@Test
+	public void partitionIntoBatches_allDependent()
+	{
+		final OlAndSched s1SameBPartner = createOlAndSched(6, 10, 104);
+		final List<OlAndSched> olsAndScheds = ImmutableList.of(s1, s2, s3, s1SameBPartner);
+
+		assertThat(ShipmentScheduleUpdater.partitionIntoBatches(olsAndScheds, 4)).containsExactly(olsAndScheds);
+	}
+
+	private static OlAndSched createOlAndSched(final int productId, final int bpartnerId, final int orderId)
+	{
+		final I_M_ShipmentSchedule sched = InterfaceWrapperHelper.newInstance(I_M_ShipmentSchedule.class);
+		sched.setM_Product_ID(productId);
+		sched.setC_BPartner_ID(bpartnerId);
+		sched.setC_Order_ID(orderId);
+		InterfaceWrapperHelper.save(sched);
+
+		return OlAndSched.builder()
+				.shipmentSchedule(sched)
+				.deliverRequest(() -> BigDecimal.TEN)
+				.build();
+	}
+}
@@ -0,0 +1,138 @@
+package de.metas.inoutcandidate.api.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import de.metas.storage.IStorageSegment;
+import de.metas.storage.impl.ImmutableStorageSegment;
+
+/*
+ * #%L
+ * de.metas.swat.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+public class StorageSegmentsCoalescerTest
+{
+	@Test
+	public void duplicatesAreMerged()
+	{
+		final List<IStorageSegment> coalesced = StorageSegmentsCoalescer.coalesce(ImmutableList.of(
+				segment(1, 10, 100),
+				segment(1, 10, 100),
+				segment(1, 10, 100)));
+
+		assertThat(coalesced).hasSize(1);
+		assertThat(coalesced.get(0).getM_Product_IDs()).containsOnly(1);
+		assertThat(coalesced.get(0).getC_BPartner_IDs()).containsOnly(10);
+		assertThat(coalesced.get(0).getM_Locator_IDs()).containsOnly(100);
+	}
+
+	@Test
+	public void productsOfSameBPartnerAndLocatorAreMerged()
+	{
+		final List<IStorageSegment> coalesced = StorageSegmentsCoalescer.coalesce(ImmutableList.of(
+				segment(1, 10, 100),
+				segment(2, 10, 100),
+				segment(3, 11, 100)));
+
+		assertThat(coalesced).hasSize(2);
+		assertThat(coalesced.get(0).getM_Product_IDs()).containsOnly(1, 2);
+		assertThat(coalesced.get(1).getM_Product_IDs()).containsOnly(3);
+		assertThat(coalesced.get(1).getC_BPartner_IDs()).containsOnly(11);
+	}
+
+	@Test
+	public void anyProductSubsumesOtherProducts()
+	{
+		final IStorageSegment anyProduct = ImmutableStorageSegment.builder()
+				.anyM_Product_ID()
+				.C_BPartner_ID(10)
+				.M_Locator_ID(100)
+				.build();
+
+		final List<IStorageSegment> coalesced = StorageSegmentsCoalescer.coalesce(ImmutableList.of(
+				segment(1, 10, 100),
+				anyProduct,
+				segment(2, 10, 100)));
+
+		assertThat(coalesced).hasSize(1);
+		assertThat(coalesced.get(0).getM_Product_IDs()).containsOnly(0);
+	}
+
+	/**
+	 * A segment which is "all" in every dimension is ignored when the SQL is built, so it must not swallow the specific products.
+	 */
+	@Test
+	public void anyProductDoesNotSubsumeOtherProductsIfNothingElseIsRestricted()
+	{
+		final IStorageSegment anyProduct = ImmutableStorageSegment.builder()
+				.anyM_Product_ID()
+				.anyC_BPartner_ID()
+				.anyM_Locator_ID()
+				.build();
+
+		final List<IStorageSegment> coalesced = StorageSegmentsCoalescer.coalesce(ImmutableList.of(
+				anyProduct,
+				segmentForAnyBPartnerAndLocator(1),
+				segmentForAnyBPartnerAndLocator(2)));
+
+		assertThat(coalesced).hasSize(1);
+		assertThat(coalesced.get(0).getM_Product_IDs()).containsOnly(1, 2);
+		assertThat(coalesced.get(0).getC_BPartner_IDs()).containsOnly(0);
+		assertThat(coalesced.get(0).getM_Locator_IDs()).containsOnly(0);
+	}
+
+	@Test
+	public void segmentsWithoutLocatorsAreDropped()
+	{
+		final IStorageSegment noLocators = ImmutableStorageSegment.builder()
+				.M_Product_ID(1)
+				.C_BPartner_ID(10)
+				.build();
+
+		final List<IStorageSegment> coalesced = StorageSegmentsCoalescer.coalesce(ImmutableList.of(noLocators, segment(2, 10, 100)));
+
+		assertThat(coalesced).hasSize(1);
+		assertThat(coalesced.get(0).getM_Product_IDs()).containsOnly(2);
+	}
+
+	private static IStorageSegment segmentForAnyBPartnerAndLocator(final int productId)
+	{
+		return ImmutableStorageSegment.builder()
+				.M_Product_ID(productId)
+				.anyC_BPartner_ID()
+				.anyM_Locator_ID()
+				.build();
+	}
+
+	private static IStorageSegment segment(final int productId, final int bpartnerId, final int locatorId)
+	{
+		return ImmutableStorageSegment.builder()
+				.M_Product_ID(productId)
+				.C_BPartner_ID(bpartnerId)
+				.M_Locator_ID(locatorId)
+				.build();
+	}
+}
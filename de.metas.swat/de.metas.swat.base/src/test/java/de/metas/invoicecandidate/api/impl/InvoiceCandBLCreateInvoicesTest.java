@@ -1,7 +1,12 @@
 package de.metas.invoicecandidate.api.impl;
 
 import static org.hamcrest.Matchers.comparesEqualTo;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 /*
@@ -27,32 +32,41 @@ import static org.junit.Assert.assertThat;
  */
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
+import org.adempiere.ad.modelvalidator.IModelInterceptorRegistry;
+import org.adempiere.ad.modelvalidator.annotations.Interceptor;
+import org.adempiere.ad.modelvalidator.annotations.ModelChange;
 import org.adempiere.model.InterfaceWrapperHelper;
 import org.adempiere.util.Check;
 import org.adempiere.util.Services;
 import org.compiere.model.I_AD_Note;
 import org.compiere.model.I_C_BPartner;
+import org.compiere.model.MInvoiceLine;
+import org.compiere.model.ModelValidator;
 import org.compiere.util.Env;
 import org.compiere.util.Trx;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import de.metas.adempiere.model.I_C_InvoiceLine;
 import de.metas.bpartner.service.IBPartnerStatisticsUpdater;
 import de.metas.bpartner.service.impl.AsyncBPartnerStatisticsUpdater;
 import de.metas.invoicecandidate.AbstractICTestSupport;
 import de.metas.invoicecandidate.api.IInvoiceCandAggregate;
 import de.metas.invoicecandidate.api.IInvoiceCandBL.IInvoiceGenerateResult;
+import de.metas.invoicecandidate.api.IInvoiceCandidateListeners;
 import de.metas.invoicecandidate.api.IInvoiceHeader;
 import de.metas.invoicecandidate.api.impl.InvoiceCandBLCreateInvoices.IInvoiceGeneratorRunnable;
 import de.metas.invoicecandidate.expectations.InvoiceCandidateExpectation;
 import de.metas.invoicecandidate.model.I_C_Invoice;
 import de.metas.invoicecandidate.model.I_C_Invoice_Candidate;
+import de.metas.invoicecandidate.spi.InvoiceCandidateListenerAdapter;
 import de.metas.order.IOrderLineBL;
 
 public class InvoiceCandBLCreateInvoicesTest extends AbstractICTestSupport
@@ -378,4 +392,64 @@ public class InvoiceCandBLCreateInvoicesTest extends AbstractICTestSupport
 		assertThat(discount_override2, comparesEqualTo(BigDecimal.ZERO));
 		assertThat(discount_override2After, comparesEqualTo(BigDecimal.ZERO));
 	}
+
+	/**
+	 * Records the value of {@link MInvoiceLine#DYNATTR_SkipUpdateHeaderTax} when an invoice line is saved and when its invoice is about to be completed.
+	 */
+	@Interceptor(I_C_InvoiceLine.class)
+	public static class SkipUpdateHeaderTaxRecorder extends InvoiceCandidateListenerAdapter
+	{
+		private final List<I_C_InvoiceLine> savedLines = new ArrayList<>();
+		private final List<Boolean> skipUpdateHeaderTaxOnSave = new ArrayList<>();
+		private final List<Boolean> skipUpdateHeaderTaxBeforeComplete = new ArrayList<>();
+
+		@ModelChange(timings = ModelValidator.TYPE_BEFORE_NEW)
+		public void beforeNew(final I_C_InvoiceLine invoiceLine)
+		{
+			savedLines.add(invoiceLine);
+			skipUpdateHeaderTaxOnSave.add(MInvoiceLine.DYNATTR_SkipUpdateHeaderTax.getValue(invoiceLine));
+		}
+
+		@Override
+		public void onBeforeInvoiceComplete(final I_C_Invoice invoice, final List<I_C_Invoice_Candidate> fromCandidates)
+		{
+			for (final I_C_InvoiceLine invoiceLine : savedLines)
+			{
+				skipUpdateHeaderTaxBeforeComplete.add(MInvoiceLine.DYNATTR_SkipUpdateHeaderTax.getValue(invoiceLine));
+			}
+		}
+	}
+
+	/**
+	 * Test: the invoice lines are saved without updating the invoice's taxes and totals each time,
+	 * but the flag is removed before the invoice is completed, so that later changes of the lines do update them again.
+	 */
+	@Test
+	public void test_SkipUpdateHeaderTax_setWhileCreatingLines_clearedBeforeComplete()
+	{
+		final SkipUpdateHeaderTaxRecorder recorder = new SkipUpdateHeaderTaxRecorder();
+		Services.get(IModelInterceptorRegistry.class).addModelInterceptor(recorder);
+		Services.get(IInvoiceCandidateListeners.class).addListener(recorder);
+
+		final Properties ctx = Env.getCtx();
+		final String trxName = Trx.createTrxName();
+
+		final I_C_BPartner bpartner = bpartner("test-bp");
+		final I_C_Invoice_Candidate ic1 = createInvoiceCandidate(bpartner.getC_BPartner_ID(), 10, 3, false, true);
+		final I_C_Invoice_Candidate ic2 = createInvoiceCandidate(bpartner.getC_BPartner_ID(), 20, 3, false, true);
+		final List<I_C_Invoice_Candidate> invoiceCandidates = Arrays.asList(ic1, ic2);
+		updateInvalid(invoiceCandidates);
+
+		invoiceCandBLCreateInvoices
+				.setContext(ctx, trxName)
+				.setIgnoreInvoiceSchedule(true)
+				.generateInvoices(invoiceCandidates.iterator());
+
+		// the recorder's assertions would be swallowed by the invoice generator, so we check what it recorded
+		assertThat(recorder.skipUpdateHeaderTaxOnSave, not(empty()));
+		assertThat(recorder.skipUpdateHeaderTaxOnSave, everyItem(is(true)));
+
+		assertThat(recorder.skipUpdateHeaderTaxBeforeComplete, hasSize(recorder.skipUpdateHeaderTaxOnSave.size()));
+		assertThat(recorder.skipUpdateHeaderTaxBeforeComplete, everyItem(nullValue(Boolean.class)));
+	}
 }
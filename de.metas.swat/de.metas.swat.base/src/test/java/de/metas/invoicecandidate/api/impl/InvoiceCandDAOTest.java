@@ -6,16 +6,24 @@ import static org.adempiere.model.InterfaceWrapperHelper.refreshAll;
 import static org.adempiere.model.InterfaceWrapperHelper.save;
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.List;
+
 import org.adempiere.ad.dao.IQueryBL;
+import org.adempiere.ad.trx.api.ITrx;
 import org.adempiere.test.AdempiereTestHelper;
 import org.adempiere.util.Services;
 import org.compiere.model.I_C_PaymentTerm;
+import org.compiere.util.Env;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableList;
 
+import de.metas.invoicecandidate.api.IInvoiceCandRecomputeTagger;
+import de.metas.invoicecandidate.api.IInvoiceCandUpdateSchedulerService;
+import de.metas.invoicecandidate.api.InvoiceCandRecomputeTag;
 import de.metas.invoicecandidate.model.I_C_Invoice_Candidate;
+import de.metas.invoicecandidate.model.I_C_Invoice_Candidate_Recompute;
 import lombok.NonNull;
 
 /*
@@ -104,6 +112,101 @@ public class InvoiceCandDAOTest
 				.isLessThanOrEqualTo(0);
 	}
 
+	@Test
+	public void invalidateCands_doesNotDuplicateUntaggedRecomputeRecords()
+	{
+		Services.registerService(IInvoiceCandUpdateSchedulerService.class, request -> {});
+
+		final I_C_Invoice_Candidate ic1 = newInstance(I_C_Invoice_Candidate.class);
+		save(ic1);
+		final I_C_Invoice_Candidate ic2 = newInstance(I_C_Invoice_Candidate.class);
+		save(ic2);
+
+		final InvoiceCandDAO invoiceCandDAO = new InvoiceCandDAO();
+
+		invoiceCandDAO.invalidateCands(ImmutableList.of(ic1));
+		invoiceCandDAO.invalidateCands(ImmutableList.of(ic1, ic2));
+		invoiceCandDAO.invalidateCand(ic1);
+		invoiceCandDAO.invalidateAllCands(Env.getCtx(), ITrx.TRXNAME_None);
+
+		assertThat(retrieveRecomputeRecords(ic1)).hasSize(1);
+		assertThat(retrieveRecomputeRecords(ic2)).hasSize(1);
+
+		// an updater tags ic1's record; it might have loaded ic1 before the next change, so the next invalidation needs its own record again
+		final InvoiceCandRecomputeTag recomputeTag = InvoiceCandRecomputeTag.ofAD_PInstance_ID(12345);
+		final IInvoiceCandRecomputeTagger tagger = invoiceCandDAO.tagToRecompute()
+				.setContext(Env.getCtx(), ITrx.TRXNAME_None)
+				.setRecomputeTag(recomputeTag)
+				.setTaggedWithNoTag()
+				.setOnlyC_Invoice_Candidates(ImmutableList.of(ic1));
+		tagger.tag();
+
+		invoiceCandDAO.invalidateCand(ic1);
+		assertThat(retrieveRecomputeRecords(ic1)).hasSize(2);
+
+		// when the updater is done, only its own record is deleted, so ic1 is updated once more
+		tagger.deleteTagged(ImmutableList.of(ic1.getC_Invoice_Candidate_ID()));
+
+		assertThat(retrieveRecomputeRecords(ic1))
+				.hasSize(1)
+				.allMatch(record -> record.getAD_PInstance_ID() <= 0);
+		assertThat(retrieveRecomputeRecords(ic2)).hasSize(1);
+	}
+
+	/**
+	 * Concurrent transactions might still insert a record each for the same invoice candidate.
+	 */
+	@Test
+	public void tagToRecompute_duplicateRecomputeRecordsAreCoalesced()
+	{
+		final I_C_Invoice_Candidate ic1 = newInstance(I_C_Invoice_Candidate.class);
+		save(ic1);
+		final I_C_Invoice_Candidate ic2 = newInstance(I_C_Invoice_Candidate.class);
+		save(ic2);
+
+		createRecomputeRecord(ic1);
+		createRecomputeRecord(ic1);
+		createRecomputeRecord(ic1);
+		createRecomputeRecord(ic2);
+
+		final InvoiceCandDAO invoiceCandDAO = new InvoiceCandDAO();
+		final long coalescedBefore = invoiceCandDAO.getInvalidationStatistics().getCoalescedRecomputeRecordsCount();
+
+		// the tagger's limit applies to the records, but it tags all records of the invoice candidates it picked
+		final InvoiceCandRecomputeTag recomputeTag = InvoiceCandRecomputeTag.ofAD_PInstance_ID(12345);
+		final IInvoiceCandRecomputeTagger tagger = invoiceCandDAO.tagToRecompute()
+				.setContext(Env.getCtx(), ITrx.TRXNAME_None)
+				.setRecomputeTag(recomputeTag)
+				.setTaggedWithNoTag()
+				.setLimit(1);
+		tagger.tag();
+
+		assertThat(retrieveRecomputeRecords(ic1)).allMatch(record -> record.getAD_PInstance_ID() == recomputeTag.getAD_PInstance_ID());
+		assertThat(retrieveRecomputeRecords(ic2)).allMatch(record -> record.getAD_PInstance_ID() <= 0);
+
+		// one update of ic1 takes care of all three invalidations
+		tagger.deleteTagged(ImmutableList.of(ic1.getC_Invoice_Candidate_ID()));
+
+		assertThat(retrieveRecomputeRecords(ic1)).isEmpty();
+		assertThat(retrieveRecomputeRecords(ic2)).hasSize(1);
+		assertThat(invoiceCandDAO.getInvalidationStatistics().getCoalescedRecomputeRecordsCount()).isEqualTo(coalescedBefore + 2);
+	}
+
+	private static void createRecomputeRecord(final I_C_Invoice_Candidate ic)
+	{
+		final I_C_Invoice_Candidate_Recompute recomputeRecord = newInstance(I_C_Invoice_Candidate_Recompute.class);
+		recomputeRecord.setC_Invoice_Candidate_ID(ic.getC_Invoice_Candidate_ID());
+		save(recomputeRecord);
+	}
+
+	private static List<I_C_Invoice_Candidate_Recompute> retrieveRecomputeRecords(final I_C_Invoice_Candidate ic)
+	{
+		return Services.get(IQueryBL.class).createQueryBuilder(I_C_Invoice_Candidate_Recompute.class)
+				.addEqualsFilter(I_C_Invoice_Candidate_Recompute.COLUMN_C_Invoice_Candidate_ID, ic.getC_Invoice_Candidate_ID())
+				.create()
+				.list();
+	}
+
 	private int getPaymentTermId(@NonNull final I_C_Invoice_Candidate ic)
 	{
 		final Integer paymentTermIdOrNull = getValueOverrideOrValue(ic, I_C_Invoice_Candidate.COLUMNNAME_C_PaymentTerm_ID);
@@ -0,0 +1,180 @@
+package de.metas.invoicecandidate.api.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.adempiere.ad.dao.IQueryBL;
+import org.adempiere.ad.trx.api.ITrx;
+import org.adempiere.exceptions.AdempiereException;
+import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.service.ISysConfigBL;
+import org.adempiere.util.ILoggable;
+import org.adempiere.util.Loggables;
+import org.adempiere.util.Services;
+import org.adempiere.util.lang.IAutoCloseable;
+import org.compiere.util.Env;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.helpers.MessageFormatter;
+
+import de.metas.invoicecandidate.AbstractICTestSupport;
+import de.metas.invoicecandidate.model.I_C_Invoice_Candidate;
+import de.metas.invoicecandidate.model.I_C_Invoice_Candidate_Recompute;
+
+/*
+ * #%L
+ * de.metas.swat.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Tests {@link InvoiceCandInvalidUpdater} with {@link InvoiceCandInvalidUpdater#SYSCONFIG_Parallelism} greater than one.
+ * <p>
+ * Note: in unit test mode, the partitions are updated one after the other in the caller's thread.
+ */
+public class InvoiceCandInvalidUpdaterParallelTest extends AbstractICTestSupport
+{
+	private final List<String> logs = new ArrayList<>();
+
+	@Before
+	public void init()
+	{
+		Services.get(ISysConfigBL.class).setValue(InvoiceCandInvalidUpdater.SYSCONFIG_ItemsPerBatch, 1, 0);
+	}
+
+	@Test
+	public void getPartitionIndex()
+	{
+		final I_C_Invoice_Candidate ic = InterfaceWrapperHelper.newInstance(I_C_Invoice_Candidate.class);
+
+		ic.setBill_BPartner_ID(20);
+		assertThat(InvoiceCandInvalidUpdater.getPartitionIndex(ic, 2)).isEqualTo(0);
+		assertThat(InvoiceCandInvalidUpdater.getPartitionIndex(ic, 3)).isEqualTo(2);
+
+		ic.setBill_BPartner_ID(21);
+		assertThat(InvoiceCandInvalidUpdater.getPartitionIndex(ic, 2)).isEqualTo(1);
+	}
+
+	@Test
+	public void updateInParallel_SameResultAsSequential()
+	{
+		final List<I_C_Invoice_Candidate> icsSequential = createInvoiceCandidates(10, 11, 12);
+		updateInvalid(1);
+
+		final List<I_C_Invoice_Candidate> icsParallel = createInvoiceCandidates(20, 21, 22);
+		updateInvalid(2);
+
+		assertThat(retrieveRecomputeRecords()).isEmpty();
+		assertThat(icsParallel).hasSameSizeAs(icsSequential);
+		for (int i = 0; i < icsSequential.size(); i++)
+		{
+			final I_C_Invoice_Candidate icSequential = InterfaceWrapperHelper.refresh(icsSequential.get(i));
+			final I_C_Invoice_Candidate icParallel = InterfaceWrapperHelper.refresh(icsParallel.get(i));
+
+			assertThat(icParallel.isError()).isEqualTo(icSequential.isError());
+			assertThat(icParallel.getPriceActual()).isEqualByComparingTo(icSequential.getPriceActual());
+			assertThat(icParallel.getQtyToInvoice()).isEqualByComparingTo(icSequential.getQtyToInvoice());
+			assertThat(icParallel.getNetAmtToInvoice()).isEqualByComparingTo(icSequential.getNetAmtToInvoice());
+		}
+
+		// bpartners 20 and 22 are updated by partition 1/2, bpartner 21 by partition 2/2
+		assertThat(logs).anyMatch(log -> log.startsWith("Partition 1/2: Updated 6 invoice candidates, 0 errors in "));
+		assertThat(logs).anyMatch(log -> log.startsWith("Partition 2/2: Updated 3 invoice candidates, 0 errors in "));
+		assertThat(logs).anyMatch(log -> log.startsWith("Update invalid result: Updated 9 invoice candidates, 0 errors in 2 partitions"));
+	}
+
+	/**
+	 * Verifies that if one partition fails, the other one is still updated,
+	 * and that the candidates which the failed partition did not update are untagged, so that the next run can pick them up.
+	 */
+	@Test
+	public void updateInParallel_FailingPartition()
+	{
+		final List<I_C_Invoice_Candidate> icsOfFailingPartition = new ArrayList<>();
+		for (int i = 0; i < 12; i++)
+		{
+			icsOfFailingPartition.add(createInvoiceCandidate(20, 10, 5, false, true));
+		}
+		final List<I_C_Invoice_Candidate> icsOfOtherPartition = createInvoiceCandidates(21);
+
+		// fail partition 1/2 when it logs its progress, i.e. after its 10th chunk
+		final ILoggable failingLoggable = (msg, msgParameters) -> {
+			if (msg.startsWith("Partition {}: {} so far") && "1/2".equals(msgParameters[0]))
+			{
+				throw new AdempiereException("partition 1/2 failed");
+			}
+		};
+		try (final IAutoCloseable loggableCloseable = Loggables.temporarySetLoggable(failingLoggable))
+		{
+			assertThatThrownBy(() -> invoiceCandBL.updateInvalid()
+					.setContext(Env.getCtx(), ITrx.TRXNAME_None)
+					.setTaggedWithAnyTag()
+					.update())
+							.hasMessageContaining("1 of 2 invoice candidate update partitions failed");
+		}
+
+		final List<I_C_Invoice_Candidate_Recompute> recomputeRecords = retrieveRecomputeRecords();
+		assertThat(recomputeRecords).allMatch(recomputeRecord -> recomputeRecord.getAD_PInstance_ID() <= 0);
+		assertThat(recomputeRecords)
+				.extracting(I_C_Invoice_Candidate_Recompute::getC_Invoice_Candidate_ID)
+				.contains(icsOfFailingPartition.get(10).getC_Invoice_Candidate_ID(), icsOfFailingPartition.get(11).getC_Invoice_Candidate_ID())
+				.doesNotContain(icsOfFailingPartition.get(0).getC_Invoice_Candidate_ID())
+				.doesNotContainAnyElementsOf(icsOfOtherPartition.stream().map(I_C_Invoice_Candidate::getC_Invoice_Candidate_ID).collect(Collectors.toList()));
+	}
+
+	/**
+	 * @return three invoice candidates per given bill partner, in the order of their creation
+	 */
+	private List<I_C_Invoice_Candidate> createInvoiceCandidates(final int... billBPartnerIds)
+	{
+		final List<I_C_Invoice_Candidate> ics = new ArrayList<>();
+		for (final int billBPartnerId : billBPartnerIds)
+		{
+			ics.add(createInvoiceCandidate(billBPartnerId, 10, 5, false, true));
+			ics.add(createInvoiceCandidate(billBPartnerId, 20, 3, false, true));
+			ics.add(createInvoiceCandidate(billBPartnerId, 15, 7, 10, false, true));
+		}
+		return ics;
+	}
+
+	private void updateInvalid(final int parallelism)
+	{
+		Services.get(ISysConfigBL.class).setValue(InvoiceCandInvalidUpdater.SYSCONFIG_Parallelism, parallelism, 0);
+
+		final ILoggable collectingLoggable = (msg, msgParameters) -> logs.add(MessageFormatter.arrayFormat(msg, msgParameters).getMessage());
+		try (final IAutoCloseable loggableCloseable = Loggables.temporarySetLoggable(collectingLoggable))
+		{
+			invoiceCandBL.updateInvalid()
+					.setContext(Env.getCtx(), ITrx.TRXNAME_None)
+					.setTaggedWithAnyTag()
+					.update();
+		}
+	}
+
+	private static List<I_C_Invoice_Candidate_Recompute> retrieveRecomputeRecords()
+	{
+		return Services.get(IQueryBL.class).createQueryBuilder(I_C_Invoice_Candidate_Recompute.class)
+				.create()
+				.list();
+	}
+}
@@ -0,0 +1,73 @@
+package de.metas.invoicecandidate.api.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import de.metas.invoicecandidate.api.impl.InvoiceCandidatesSummary.Mismatch;
+import de.metas.invoicecandidate.api.impl.InvoiceCandidatesSummary.SummaryKey;
+import de.metas.invoicecandidate.api.impl.InvoiceCandidatesSummary.Totals;
+import de.metas.invoicecandidate.model.X_C_Invoice_Candidate;
+
+/*
+ * #%L
+ * de.metas.swat.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+public class InvoiceCandidatesSummaryTest
+{
+	private static final SummaryKey KEY1 = new SummaryKey(10, 1, 102, X_C_Invoice_Candidate.INVOICERULE_Sofort, false);
+	private static final SummaryKey KEY2 = new SummaryKey(20, 1, 102, X_C_Invoice_Candidate.INVOICERULE_Sofort, true);
+	private static final SummaryKey KEY3 = new SummaryKey(30, 1, 102, X_C_Invoice_Candidate.INVOICERULE_Sofort, false);
+
+	@Test
+	public void compare_sameTotals()
+	{
+		final List<Mismatch> mismatches = InvoiceCandidatesSummary.compare(
+				ImmutableMap.of(KEY1, totals(2, "10.00")),
+				ImmutableMap.of(KEY1, totals(2, "10")));
+
+		// the amounts' scales don't matter
+		assertThat(mismatches).isEmpty();
+	}
+
+	@Test
+	public void compare_differentAndMissingTotals()
+	{
+		final List<Mismatch> mismatches = InvoiceCandidatesSummary.compare(
+				ImmutableMap.of(KEY1, totals(2, "10"), KEY2, totals(1, "5")),
+				ImmutableMap.of(KEY1, totals(2, "11"), KEY3, totals(1, "7")));
+
+		assertThat(mismatches).containsExactlyInAnyOrder(
+				new Mismatch(KEY1, totals(2, "10"), totals(2, "11")),
+				new Mismatch(KEY2, totals(1, "5"), Totals.ZERO),
+				new Mismatch(KEY3, Totals.ZERO, totals(1, "7")));
+	}
+
+	private static Totals totals(final int count, final String netAmtToInvoice)
+	{
+		return new Totals(count, new BigDecimal(netAmtToInvoice));
+	}
+}
@@ -29,6 +29,7 @@ import java.math.BigDecimal;
 import java.util.List;
 
 import org.adempiere.ad.wrapper.POJOWrapper;
+import org.adempiere.exceptions.AdempiereException;
 import org.adempiere.model.InterfaceWrapperHelper;
 import org.compiere.model.X_C_DocType;
 import org.junit.Assert;
@@ -95,6 +96,62 @@ public class LegacyAggregationEngineTests extends AbstractAggregationEngineTestB
 		// System.out.println(invoices);
 	}
 
+	@Test
+	public void test_streaming()
+	{
+		final I_C_Invoice_Candidate ic1 = createInvoiceCandidate(1, 1, 1, false, true); // BP, Price, Qty
+		POJOWrapper.setInstanceName(ic1, "ic1");
+		final I_C_Invoice_Candidate ic2 = createInvoiceCandidate(1, 2, 1, false, true);
+		POJOWrapper.setInstanceName(ic2, "ic2");
+		final I_C_Invoice_Candidate ic3 = createInvoiceCandidate(2, 3, 1, false, true);
+		POJOWrapper.setInstanceName(ic3, "ic3");
+
+		updateInvalidCandidates();
+		InterfaceWrapperHelper.refresh(ic1);
+		InterfaceWrapperHelper.refresh(ic2);
+		InterfaceWrapperHelper.refresh(ic3);
+
+		final AggregationEngine engine = new AggregationEngine();
+		Assert.assertTrue(engine.aggregateIfHeaderAggregationKeyChanged(ic1).isEmpty());
+		engine.addInvoiceCandidate(ic1);
+		Assert.assertTrue(engine.aggregateIfHeaderAggregationKeyChanged(ic2).isEmpty());
+		engine.addInvoiceCandidate(ic2);
+
+		// ic3 has another bill partner => the invoice of ic1 and ic2 is complete
+		final List<IInvoiceHeader> invoices1 = engine.aggregateIfHeaderAggregationKeyChanged(ic3);
+		Assert.assertEquals("We are expecting the invoice of ic1 and ic2: " + invoices1, 1, invoices1.size());
+		validateInvoiceHeader("Invoice1", invoices1.get(0), ic1);
+		Assert.assertEquals(2, getInvoiceLines(invoices1.get(0)).size());
+		engine.addInvoiceCandidate(ic3);
+
+		final List<IInvoiceHeader> invoices2 = invokeAggregationEngine(engine);
+		Assert.assertEquals("We are expecting only the invoice of ic3: " + invoices2, 1, invoices2.size());
+		validateInvoiceHeader("Invoice2", invoices2.get(0), ic3);
+		Assert.assertEquals(1, getInvoiceLines(invoices2.get(0)).size());
+	}
+
+	@Test(expected = AdempiereException.class)
+	public void test_streaming_notOrderedByHeaderAggregationKey()
+	{
+		final I_C_Invoice_Candidate ic1 = createInvoiceCandidate(1, 1, 1, false, true); // BP, Price, Qty
+		final I_C_Invoice_Candidate ic2 = createInvoiceCandidate(2, 1, 1, false, true);
+		final I_C_Invoice_Candidate ic3 = createInvoiceCandidate(1, 1, 1, false, true);
+
+		updateInvalidCandidates();
+		InterfaceWrapperHelper.refresh(ic1);
+		InterfaceWrapperHelper.refresh(ic2);
+		InterfaceWrapperHelper.refresh(ic3);
+
+		final AggregationEngine engine = new AggregationEngine();
+		engine.aggregateIfHeaderAggregationKeyChanged(ic1);
+		engine.addInvoiceCandidate(ic1);
+		engine.aggregateIfHeaderAggregationKeyChanged(ic2);
+		engine.addInvoiceCandidate(ic2);
+
+		// ic1's key was already aggregated
+		engine.aggregateIfHeaderAggregationKeyChanged(ic3);
+	}
+
 	@Test
 	public void test_API()
 	{
@@ -0,0 +1,167 @@
+package org.adempiere.invoice.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.adempiere.ad.trx.api.ITrx;
+import org.adempiere.ad.trx.api.ITrxManager;
+import org.adempiere.invoice.service.IInvoiceBL;
+import org.adempiere.model.InterfaceWrapperHelper;
+import org.adempiere.util.Check;
+import org.adempiere.util.Services;
+import org.compiere.Adempiere.RunMode;
+import org.compiere.model.I_C_Invoice;
+import org.compiere.model.I_C_InvoiceLine;
+import org.compiere.model.MInvoice;
+import org.compiere.model.MInvoiceLine;
+import org.compiere.model.MInvoiceTax;
+import org.compiere.util.Env;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import de.metas.document.IDocLineCopyHandler;
+import de.metas.document.engine.IDocument;
+import de.metas.document.engine.IDocumentBL;
+
+/*
+ * #%L
+ * de.metas.swat.base
+ * %%
+ * Copyright (C) 2018 metas GmbH
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+/**
+ * Database coupled test which makes sure that an invoice whose lines were saved with {@link MInvoiceLine#DYNATTR_SkipUpdateHeaderTax}
+ * ends up with the same <code>C_InvoiceTax</code> records, <code>TotalLines</code> and <code>GrandTotal</code> as one whose lines updated the header on each save,
+ * once both are prepared.
+ * <p>
+ * Copies the lines of the invoice given by the system property <code>C_Invoice_ID</code> twice and rolls back everything afterwards.
+ */
+@Ignore
+// requires database connection
+public class InvoiceLineSkipUpdateHeaderTax_DBTest
+{
+	public static void main(final String[] args)
+	{
+		final InvoiceLineSkipUpdateHeaderTax_DBTest test = new InvoiceLineSkipUpdateHeaderTax_DBTest();
+
+		test.setupAdempiere();
+
+		test.sameTaxesAndTotalsWithAndWithoutSkipUpdateHeaderTax();
+	}
+
+	private void setupAdempiere()
+	{
+		//
+		// Use hardcoded default PropertyFile if none found
+		if (Check.isEmpty(System.getProperty("PropertyFile"), true))
+		{
+			final String propertyFile = new File(".").getAbsolutePath() // e.g. C:\workspaces\\de.metas.swat\de.metas.swat.base\
+					+ File.separator + ".." + File.separator + ".." // e.g. C:\workspaces\
+					+ File.separator + "de.metas.endcustomer."
+					+ File.separator + "Adempiere.properties_" + System.getProperty("user.name");
+			System.out.println("Set default PropertyFile=" + propertyFile);
+			System.setProperty("PropertyFile", propertyFile);
+		}
+
+		Env.getSingleAdempiereInstance(null).startup(RunMode.SWING_CLIENT);
+	}
+
+	@Test
+	public void sameTaxesAndTotalsWithAndWithoutSkipUpdateHeaderTax()
+	{
+		final int invoiceId = Integer.getInteger("C_Invoice_ID", -1);
+		Check.assume(invoiceId > 0, "System property C_Invoice_ID is set");
+
+		final ITrxManager trxManager = Services.get(ITrxManager.class);
+		final String trxName = trxManager.createTrxName("InvoiceLineSkipUpdateHeaderTax_DBTest", true);
+		final ITrx trx = trxManager.get(trxName, false);
+		try
+		{
+			final I_C_Invoice fromInvoice = InterfaceWrapperHelper.create(Env.getCtx(), invoiceId, I_C_Invoice.class, trxName);
+
+			// the lines update the invoice's taxes and totals on each save
+			final I_C_Invoice invoiceUpdatedPerLine = copyAndPrepare(fromInvoice, null);
+
+			// the lines don't update anything; like the invoice candidates' invoice generator, we rely on the prepare
+			final IDocLineCopyHandler<I_C_InvoiceLine> skipUpdateHeaderTax = new IDocLineCopyHandler<I_C_InvoiceLine>()
+			{
+				@Override
+				public void copyPreliminaryValues(final I_C_InvoiceLine from, final I_C_InvoiceLine to)
+				{
+					MInvoiceLine.DYNATTR_SkipUpdateHeaderTax.setValue(to, true);
+				}
+
+				@Override
+				public void copyValues(final I_C_InvoiceLine from, final I_C_InvoiceLine to)
+				{
+					// nothing
+				}
+			};
+			final I_C_Invoice invoiceUpdatedOnce = copyAndPrepare(fromInvoice, skipUpdateHeaderTax);
+
+			assertThat(invoiceUpdatedOnce.getTotalLines()).isEqualByComparingTo(invoiceUpdatedPerLine.getTotalLines());
+			assertThat(invoiceUpdatedOnce.getGrandTotal()).isEqualByComparingTo(invoiceUpdatedPerLine.getGrandTotal());
+			assertThat(retrieveTaxes(invoiceUpdatedOnce)).isEqualTo(retrieveTaxes(invoiceUpdatedPerLine));
+		}
+		finally
+		{
+			trx.rollback();
+			trx.close();
+		}
+	}
+
+	private static I_C_Invoice copyAndPrepare(final I_C_Invoice fromInvoice, final IDocLineCopyHandler<I_C_InvoiceLine> additionalDocLineHandler)
+	{
+		final IInvoiceBL invoiceBL = Services.get(IInvoiceBL.class);
+
+		final boolean counter = false;
+		final boolean setOrderRef = false;
+		final boolean setInvoiceRef = false;
+		final boolean copyLines = false;
+		final I_C_Invoice invoice = invoiceBL.copyFrom(fromInvoice, fromInvoice.getDateInvoiced(), fromInvoice.getC_DocTypeTarget_ID(), fromInvoice.isSOTrx(),
+				counter, setOrderRef, setInvoiceRef, copyLines);
+		invoiceBL.copyLinesFrom(fromInvoice, invoice, counter, setOrderRef, setInvoiceRef, additionalDocLineHandler);
+
+		Services.get(IDocumentBL.class).processEx(invoice, IDocument.ACTION_Prepare, IDocument.STATUS_InProgress);
+		InterfaceWrapperHelper.refresh(invoice);
+		return invoice;
+	}
+
+	/**
+	 * @return one "C_Tax_ID: TaxBaseAmt / TaxAmt" string per <code>C_InvoiceTax</code> record, sorted by C_Tax_ID
+	 */
+	private static List<String> retrieveTaxes(final I_C_Invoice invoice)
+	{
+		final MInvoice invoicePO = InterfaceWrapperHelper.getPO(invoice);
+		final boolean requery = true;
+		return Arrays.stream(invoicePO.getTaxes(requery))
+				.sorted((tax1, tax2) -> Integer.compare(tax1.getC_Tax_ID(), tax2.getC_Tax_ID()))
+				.map(InvoiceLineSkipUpdateHeaderTax_DBTest::toString)
+				.collect(Collectors.toList());
+	}
+
+	private static String toString(final MInvoiceTax tax)
+	{
+		return tax.getC_Tax_ID() + ": " + tax.getTaxBaseAmt().stripTrailingZeros().toPlainString() + " / " + tax.getTaxAmt().stripTrailingZeros().toPlainString();
+	}
+}